@@ -1,40 +1,95 @@
 package com.abt;
 
+import akka.NotUsed;
 import akka.actor.typed.ActorSystem;
 import akka.http.javadsl.marshallers.jackson.Jackson;
+import akka.http.javadsl.model.ContentType;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpCharsets;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.MediaTypes;
+import akka.http.javadsl.model.StatusCode;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.ContentDisposition;
+import akka.http.javadsl.model.headers.ContentDispositionTypes;
+import akka.http.javadsl.model.headers.ContentEncoding;
+import akka.http.javadsl.model.headers.HttpEncodings;
 import akka.http.javadsl.server.Route;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import com.abt.integration.config.PostgresConnectionFactory;
+import com.abt.integration.exception.DatabaseUnavailableException;
+import com.abt.integration.exception.ExportInProgressException;
+import com.abt.integration.exception.QueryTimeoutException;
 import com.abt.integration.exception.ValidationException;
 import com.abt.integration.model.ApiErrorResponse;
+import com.abt.integration.model.ChangeFeedRequest;
+import com.abt.integration.model.ExportRequest;
 import com.abt.integration.model.IntegrationRequest;
 import com.abt.integration.model.VerificationResultsRequest;
+import com.abt.integration.service.ClosedWindowResponseCache;
+import com.abt.integration.service.Ctc2htsExportService;
 import com.abt.integration.service.IntegrationEndpointService;
+import com.abt.integration.service.IntegrationRecordStream;
 import com.abt.integration.service.OpenSrpIntegrationService;
 import com.abt.integration.service.OpenSrpVerificationResultsService;
 import com.abt.integration.service.VerificationResultsEndpointService;
+import com.abt.util.CustomJacksonObjectMapper;
 import com.abt.util.CustomJacksonSupport;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 
 import static akka.http.javadsl.server.Directives.complete;
 import static akka.http.javadsl.server.Directives.concat;
 import static akka.http.javadsl.server.Directives.entity;
 import static akka.http.javadsl.server.Directives.get;
+import static akka.http.javadsl.server.Directives.getFromFile;
+import static akka.http.javadsl.server.Directives.onComplete;
+import static akka.http.javadsl.server.Directives.optionalHeaderValueByName;
 import static akka.http.javadsl.server.Directives.path;
 import static akka.http.javadsl.server.Directives.pathPrefix;
 import static akka.http.javadsl.server.Directives.post;
+import static akka.http.javadsl.server.Directives.respondWithHeader;
+import static akka.http.javadsl.server.Directives.withRequestTimeoutResponse;
+import static akka.http.javadsl.server.PathMatchers.segment;
 
 public class UcsCbhtsCtsIntegrationRoutes {
     private static final Logger log = LoggerFactory.getLogger(UcsCbhtsCtsIntegrationRoutes.class);
+    private static final String NDJSON_MEDIA_SUBTYPE = "x-ndjson";
+    private static final ContentType NDJSON_CONTENT_TYPE =
+            ContentTypes.create(MediaTypes.applicationWithFixedCharset(NDJSON_MEDIA_SUBTYPE, HttpCharsets.UTF_8));
+    private static final ByteString NDJSON_LINE_SEPARATOR = ByteString.fromString("\n");
+    private static final ContentType GZIP_CONTENT_TYPE =
+            ContentTypes.create(MediaTypes.applicationBinary("gzip", MediaTypes.NOT_COMPRESSIBLE));
+    private static final ObjectMapper RESPONSE_MAPPER = new ObjectMapper().enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY);
 
     private final IntegrationEndpointService integrationEndpointService;
     private final VerificationResultsEndpointService verificationResultsEndpointService;
+    private final ClosedWindowResponseCache responseCache;
+    private final Ctc2htsExportService exportService;
 
     public UcsCbhtsCtsIntegrationRoutes(ActorSystem<?> system) {
-        this(new OpenSrpIntegrationService(), new OpenSrpVerificationResultsService());
+        this(OpenSrpIntegrationService.fromEnv(), new OpenSrpVerificationResultsService());
     }
 
     public UcsCbhtsCtsIntegrationRoutes(IntegrationEndpointService integrationEndpointService) {
@@ -43,63 +98,302 @@ public class UcsCbhtsCtsIntegrationRoutes {
 
     public UcsCbhtsCtsIntegrationRoutes(IntegrationEndpointService integrationEndpointService,
                                         VerificationResultsEndpointService verificationResultsEndpointService) {
+        this(integrationEndpointService, verificationResultsEndpointService, ClosedWindowResponseCache.fromEnv());
+    }
+
+    public UcsCbhtsCtsIntegrationRoutes(IntegrationEndpointService integrationEndpointService,
+                                        VerificationResultsEndpointService verificationResultsEndpointService,
+                                        ClosedWindowResponseCache responseCache) {
+        this(
+                integrationEndpointService,
+                verificationResultsEndpointService,
+                responseCache,
+                Ctc2htsExportService.fromEnv(integrationEndpointService)
+        );
+    }
+
+    public UcsCbhtsCtsIntegrationRoutes(IntegrationEndpointService integrationEndpointService,
+                                        VerificationResultsEndpointService verificationResultsEndpointService,
+                                        ClosedWindowResponseCache responseCache,
+                                        Ctc2htsExportService exportService) {
         this.integrationEndpointService = integrationEndpointService;
         this.verificationResultsEndpointService = verificationResultsEndpointService;
+        this.responseCache = responseCache;
+        this.exportService = exportService;
     }
 
     public Route integrationRoutes() {
         return concat(
                 path("health", () -> get(() -> complete(StatusCodes.OK, Map.of("status", "ok"), Jackson.marshaller()))),
+                path("metrics", () -> get(() -> complete(StatusCodes.OK, metrics(), Jackson.marshaller()))),
                 pathPrefix("integration", () ->
                         concat(
                                 path("ctc2hts", () ->
+                                        post(() -> optionalHeaderValueByName("Accept", accept ->
+                                                optionalHeaderValueByName("Accept-Encoding", acceptEncoding ->
+                                                        entity(CustomJacksonSupport.customJacksonUnmarshaller(IntegrationRequest.class), request -> {
+                                                            if (acceptsNdjson(accept)) {
+                                                                return streamIntegrationRecords(request);
+                                                            }
+                                                            return fetchIntegrationRecords(request, acceptsGzip(acceptEncoding));
+                                                        })
+                                                )
+                                        ))
+                                ),
+                                path(segment("ctc2hts").slash("changes"), () ->
+                                        post(() ->
+                                                entity(CustomJacksonSupport.customJacksonUnmarshaller(ChangeFeedRequest.class), request ->
+                                                        completeAsync(
+                                                                () -> integrationEndpointService.fetchChanges(request),
+                                                                response -> complete(StatusCodes.OK, response, Jackson.marshaller()),
+                                                                "Failed to process CTC2HTS change feed request"
+                                                        )
+                                                )
+                                        )
+                                ),
+                                path(segment("ctc2hts").slash("exports"), () ->
                                         post(() ->
-                                                entity(CustomJacksonSupport.customJacksonUnmarshaller(IntegrationRequest.class), request -> {
-                                                    try {
-                                                        Map<String, Object> response = integrationEndpointService.fetch(request);
-                                                        return complete(StatusCodes.OK, response, Jackson.marshaller());
-                                                    } catch (ValidationException e) {
-                                                        return complete(
-                                                                StatusCodes.BAD_REQUEST,
-                                                                new ApiErrorResponse("Invalid request payload", e.getErrors()),
-                                                                Jackson.marshaller()
-                                                        );
-                                                    } catch (Exception e) {
-                                                        log.error("Failed to process CTC2HTS integration request", e);
-                                                        return complete(
-                                                                StatusCodes.INTERNAL_SERVER_ERROR,
-                                                                new ApiErrorResponse("Failed to process integration request", List.of(e.getMessage())),
-                                                                Jackson.marshaller()
-                                                        );
-                                                    }
-                                                })
+                                                entity(CustomJacksonSupport.customJacksonUnmarshaller(ExportRequest.class), this::submitExport)
                                         )
                                 ),
+                                path(segment("ctc2hts").slash("exports").slash(segment()), jobId ->
+                                        get(() -> exportService.status(jobId)
+                                                .<Route>map(status -> complete(StatusCodes.OK, status, Jackson.marshaller()))
+                                                .orElseGet(() -> exportNotFound(jobId)))
+                                ),
+                                path(segment("ctc2hts").slash("exports").slash(segment()).slash("file"), jobId ->
+                                        get(() -> downloadExport(jobId))
+                                ),
                                 path("verification-results", () ->
                                         post(() ->
-                                                entity(CustomJacksonSupport.customJacksonUnmarshaller(VerificationResultsRequest.class), request -> {
-                                                    try {
-                                                        Map<String, Object> response = verificationResultsEndpointService.process(request);
-                                                        return complete(StatusCodes.OK, response, Jackson.marshaller());
-                                                    } catch (ValidationException e) {
-                                                        return complete(
-                                                                StatusCodes.BAD_REQUEST,
-                                                                new ApiErrorResponse("Invalid request payload", e.getErrors()),
-                                                                Jackson.marshaller()
-                                                        );
-                                                    } catch (Exception e) {
-                                                        log.error("Failed to process HIV verification results request", e);
-                                                        return complete(
-                                                                StatusCodes.INTERNAL_SERVER_ERROR,
-                                                                new ApiErrorResponse("Failed to process integration request", List.of(e.getMessage())),
-                                                                Jackson.marshaller()
-                                                        );
-                                                    }
-                                                })
+                                                entity(CustomJacksonSupport.customJacksonUnmarshaller(VerificationResultsRequest.class), request ->
+                                                        completeAsync(
+                                                                () -> verificationResultsEndpointService.process(request),
+                                                                response -> complete(StatusCodes.OK, response, Jackson.marshaller()),
+                                                                "Failed to process HIV verification results request"
+                                                        )
+                                                )
                                         )
                                 )
                         )
                 )
         );
     }
+
+    private Route fetchIntegrationRecords(IntegrationRequest request, boolean acceptsGzip) {
+        try {
+            if (responseCache != null && responseCache.isCacheable(request)) {
+                return fetchCachedIntegrationRecords(request, acceptsGzip);
+            }
+        } catch (Exception e) {
+            return failure(e, "Failed to process CTC2HTS integration request");
+        }
+
+        return completeAsync(
+                () -> integrationEndpointService.fetch(request),
+                response -> complete(StatusCodes.OK, response, Jackson.marshaller()),
+                "Failed to process CTC2HTS integration request"
+        );
+    }
+
+    private Route fetchCachedIntegrationRecords(IntegrationRequest request, boolean acceptsGzip) throws IOException {
+        ByteBuffer gzippedBody = responseCache.getGzipped(request);
+        if (gzippedBody != null) {
+            ByteString body = ByteString.fromByteBuffer(gzippedBody);
+            if (acceptsGzip) {
+                return complete(HttpResponse.create()
+                        .withStatus(StatusCodes.OK)
+                        .addHeader(ContentEncoding.create(HttpEncodings.GZIP))
+                        .withEntity(HttpEntities.create(ContentTypes.APPLICATION_JSON, body)));
+            }
+            try (GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(body.toArray()))) {
+                return complete(HttpEntities.create(ContentTypes.APPLICATION_JSON, gunzip.readAllBytes()));
+            }
+        }
+
+        // The body is serialized once the fetch completes so an abandoned request still cancels the fetch itself.
+        return completeAsync(
+                () -> integrationEndpointService.fetch(request),
+                response -> {
+                    try {
+                        byte[] jsonBody = RESPONSE_MAPPER.writeValueAsBytes(response);
+                        responseCache.put(request, jsonBody);
+                        return complete(HttpEntities.create(ContentTypes.APPLICATION_JSON, jsonBody));
+                    } catch (JsonProcessingException e) {
+                        return failure(e, "Failed to process CTC2HTS integration request");
+                    }
+                },
+                "Failed to process CTC2HTS integration request"
+        );
+    }
+
+    private <T> Route completeAsync(Supplier<CompletionStage<T>> call,
+                                    Function<T, Route> onSuccess,
+                                    String failureLogMessage) {
+        CompletionStage<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+
+        // When Akka HTTP times the request out, cancelling the future lets the service cancel its running statements.
+        CompletionStage<T> pending = result;
+        return withRequestTimeoutResponse(
+                timedOutRequest -> {
+                    pending.toCompletableFuture().cancel(true);
+                    return errorResponse(StatusCodes.GATEWAY_TIMEOUT, "Integration request timed out", "Request was cancelled");
+                },
+                () -> onComplete(pending, outcome -> outcome.isSuccess()
+                        ? onSuccess.apply(outcome.get())
+                        : failure(outcome.failed().get(), failureLogMessage))
+        );
+    }
+
+    private static HttpResponse errorResponse(StatusCode status, String message, String error) {
+        try {
+            return HttpResponse.create()
+                    .withStatus(status)
+                    .withEntity(HttpEntities.create(
+                            ContentTypes.APPLICATION_JSON,
+                            CustomJacksonObjectMapper.mapper.writeValueAsBytes(new ApiErrorResponse(message, List.of(error)))
+                    ));
+        } catch (JsonProcessingException e) {
+            return HttpResponse.create().withStatus(status);
+        }
+    }
+
+    private Route failure(Throwable error, String failureLogMessage) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        if (cause instanceof ValidationException validationException) {
+            return complete(
+                    StatusCodes.BAD_REQUEST,
+                    new ApiErrorResponse("Invalid request payload", validationException.getErrors()),
+                    Jackson.marshaller()
+            );
+        }
+
+        if (cause instanceof QueryTimeoutException || cause instanceof CancellationException) {
+            log.warn("{}: {}", failureLogMessage, cause.getMessage());
+            return complete(
+                    StatusCodes.GATEWAY_TIMEOUT,
+                    new ApiErrorResponse("Integration request timed out", List.of(String.valueOf(cause.getMessage()))),
+                    Jackson.marshaller()
+            );
+        }
+
+        if (cause instanceof DatabaseUnavailableException) {
+            log.warn("{}: {}", failureLogMessage, cause.getMessage());
+            return complete(
+                    StatusCodes.SERVICE_UNAVAILABLE,
+                    new ApiErrorResponse("Integration database is unavailable", List.of(String.valueOf(cause.getMessage()))),
+                    Jackson.marshaller()
+            );
+        }
+
+        log.error(failureLogMessage, cause);
+        return complete(
+                StatusCodes.INTERNAL_SERVER_ERROR,
+                new ApiErrorResponse("Failed to process integration request", List.of(String.valueOf(cause.getMessage()))),
+                Jackson.marshaller()
+        );
+    }
+
+    private Route submitExport(ExportRequest request) {
+        try {
+            return complete(StatusCodes.ACCEPTED, exportService.submit(request), Jackson.marshaller());
+        } catch (ExportInProgressException e) {
+            return complete(
+                    StatusCodes.CONFLICT,
+                    exportService.status(e.getJobId()).orElseGet(() -> Map.of("jobId", e.getJobId())),
+                    Jackson.marshaller()
+            );
+        } catch (Exception e) {
+            return failure(e, "Failed to submit CTC2HTS export");
+        }
+    }
+
+    private Route downloadExport(String jobId) {
+        Optional<Ctc2htsExportService.ExportFile> exportFile = exportService.file(jobId);
+        if (exportFile.isEmpty()) {
+            return exportService.status(jobId)
+                    .<Route>map(status -> complete(
+                            StatusCodes.CONFLICT,
+                            new ApiErrorResponse("Export is not complete", List.of(String.valueOf(status.get("status")))),
+                            Jackson.marshaller()
+                    ))
+                    .orElseGet(() -> exportNotFound(jobId));
+        }
+
+        // getFromFile answers Range requests with 206 Partial Content, so interrupted downloads can resume.
+        Ctc2htsExportService.ExportFile file = exportFile.get();
+        return respondWithHeader(
+                ContentDisposition.create(ContentDispositionTypes.ATTACHMENT, Map.of("filename", file.fileName())),
+                () -> getFromFile(file.path().toFile(), GZIP_CONTENT_TYPE)
+        );
+    }
+
+    private static Route exportNotFound(String jobId) {
+        return complete(
+                StatusCodes.NOT_FOUND,
+                new ApiErrorResponse("Export not found", List.of(jobId)),
+                Jackson.marshaller()
+        );
+    }
+
+    private Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("ctc2htsResponseCache", responseCache == null ? Map.of("enabled", false) : responseCache.stats());
+        metrics.put("ctc2htsPrefetch", integrationEndpointService.prefetchStats());
+        metrics.put("opensrpDbPool", PostgresConnectionFactory.poolStats());
+        metrics.put("opensrpDbReadPool", PostgresConnectionFactory.readPoolStats());
+        return metrics;
+    }
+
+    private Route streamIntegrationRecords(IntegrationRequest request) {
+        try {
+            IntegrationRecordStream recordStream = integrationEndpointService.openStream(request);
+            Source<ByteString, NotUsed> records = Source.unfoldResource(
+                            () -> recordStream,
+                            stream -> {
+                                List<Map<String, Object>> batch = stream.nextBatch();
+                                return batch.isEmpty() ? Optional.empty() : Optional.of(batch);
+                            },
+                            IntegrationRecordStream::close
+                    )
+                    .mapConcat(batch -> batch)
+                    .map(this::toNdjsonLine);
+            return complete(HttpEntities.create(NDJSON_CONTENT_TYPE, records));
+        } catch (ValidationException e) {
+            return complete(
+                    StatusCodes.BAD_REQUEST,
+                    new ApiErrorResponse("Invalid request payload", e.getErrors()),
+                    Jackson.marshaller()
+            );
+        } catch (Exception e) {
+            log.error("Failed to open CTC2HTS integration stream", e);
+            return complete(
+                    StatusCodes.INTERNAL_SERVER_ERROR,
+                    new ApiErrorResponse("Failed to process integration request", List.of(e.getMessage())),
+                    Jackson.marshaller()
+            );
+        }
+    }
+
+    private ByteString toNdjsonLine(Map<String, Object> record) throws JsonProcessingException {
+        return ByteString.fromArray(CustomJacksonObjectMapper.mapper.writeValueAsBytes(record))
+                .concat(NDJSON_LINE_SEPARATOR);
+    }
+
+    private static boolean acceptsNdjson(Optional<String> accept) {
+        return accept.map(value -> value.toLowerCase(Locale.ROOT).contains(NDJSON_MEDIA_SUBTYPE)).orElse(false);
+    }
+
+    private static boolean acceptsGzip(Optional<String> acceptEncoding) {
+        return acceptEncoding.map(value -> value.toLowerCase(Locale.ROOT).contains("gzip")).orElse(false);
+    }
 }
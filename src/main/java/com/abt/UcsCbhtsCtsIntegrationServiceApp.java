@@ -8,6 +8,7 @@ import akka.actor.typed.javadsl.Behaviors;
 import akka.http.javadsl.Http;
 import akka.http.javadsl.ServerBinding;
 import akka.http.javadsl.server.Route;
+import com.abt.integration.db.OpenSrpSchemaBootstrap;
 import com.abt.util.EnvConfig;
 
 import java.net.InetSocketAddress;
@@ -68,6 +69,7 @@ public class UcsCbhtsCtsIntegrationServiceApp {
                     concat(cbhtsRoutes.integrationRoutes(), ctcRoutes.ucsIntegrationRoutes()),
                     context.getSystem()
             );
+            new OpenSrpSchemaBootstrap().runAsync();
             return Behaviors.empty();
         });
 
@@ -0,0 +1,35 @@
+package com.abt.integration.config;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded thread pool for JDBC and outbound OpenSRP HTTP calls, so blocking I/O never runs on Akka's
+ * default dispatcher and a slow database cannot starve the HTTP server.
+ */
+public final class BlockingIoExecutor {
+    private BlockingIoExecutor() {
+    }
+
+    public static Executor shared() {
+        return Holder.EXECUTOR;
+    }
+
+    private static ExecutorService create() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newFixedThreadPool(
+                WorkerThreads.blockingIo(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "integration-blocking-io-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+    }
+
+    private static final class Holder {
+        private static final ExecutorService EXECUTOR = create();
+    }
+}
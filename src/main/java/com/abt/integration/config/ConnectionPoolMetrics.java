@@ -0,0 +1,61 @@
+package com.abt.integration.config;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects OpenSRP database pool gauges and connection acquisition wait times for {@code GET /metrics}.
+ */
+public class ConnectionPoolMetrics implements MetricsTrackerFactory, IMetricsTracker {
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    private volatile PoolStats poolStats;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return this;
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquisitions.increment();
+        waitNanos.add(elapsedAcquiredNanos);
+        maxWaitNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+        timeouts.increment();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        PoolStats current = poolStats;
+        if (current != null) {
+            stats.put("active", current.getActiveConnections());
+            stats.put("idle", current.getIdleConnections());
+            stats.put("total", current.getTotalConnections());
+            stats.put("pending", current.getPendingThreads());
+            stats.put("maxSize", current.getMaxConnections());
+        }
+
+        long acquired = acquisitions.sum();
+        long totalWaitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+        stats.put("acquisitions", acquired);
+        stats.put("timeouts", timeouts.sum());
+        stats.put("totalWaitMillis", totalWaitMillis);
+        stats.put("averageWaitMillis", acquired == 0 ? 0.0 : (double) totalWaitMillis / acquired);
+        stats.put("maxWaitMillis", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+        return stats;
+    }
+}
@@ -1,16 +1,50 @@
 package com.abt.integration.config;
 
+import com.abt.util.EnvConfig;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Objects;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 
 public class PostgresConnectionFactory {
+    private static final Logger log = LoggerFactory.getLogger(PostgresConnectionFactory.class);
     private static final String DEFAULT_HOST = "localhost";
     private static final String DEFAULT_PORT = "5432";
     private static final String DEFAULT_DB = "opensrp";
     private static final String DEFAULT_SCHEMA = "public";
+    private static final int DEFAULT_POOL_MIN_IDLE = 2;
+    private static final Duration DEFAULT_POOL_CONNECTION_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_POOL_VALIDATION_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_POOL_MAX_LIFETIME = Duration.ofMinutes(30);
+    private static final int DEFAULT_PREPARE_THRESHOLD = 1;
+    private static final int DEFAULT_PREPARED_STATEMENT_CACHE_QUERIES = 256;
+    private static final Duration DEFAULT_READ_MAX_LAG = Duration.ofSeconds(30);
+    private static final Duration DEFAULT_READ_LAG_CHECK_INTERVAL = Duration.ofSeconds(5);
+    // Zero while the replica has replayed everything it received, so an idle primary does not read as lag.
+    // NULL when the standby is not streaming: a disconnected receiver also leaves receive LSN = replay LSN. Without
+    // pg_read_all_stats the receiver's status reads as NULL, so only its presence is checked.
+    private static final String REPLICA_LAG_SQL =
+            "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 " +
+                    "WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE COALESCE(status, 'streaming') = 'streaming') THEN NULL " +
+                    "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+                    "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    private static final Object POOL_LOCK = new Object();
+    private static volatile HikariDataSource dataSource;
+    private static volatile ConnectionPoolMetrics poolMetrics;
+    private static volatile HikariDataSource readDataSource;
+    private static volatile ConnectionPoolMetrics readPoolMetrics;
+    private static volatile ReplicaLagGuard replicaLagGuard;
 
     static {
         try {
@@ -20,14 +54,222 @@ public class PostgresConnectionFactory {
         }
     }
 
+    /**
+     * Borrows a connection from the shared OpenSRP pool. Closing it returns it to the pool, which resets
+     * auto-commit, read-only and isolation settings changed by the caller.
+     */
     public Connection openConnection() throws SQLException {
-        String explicitUrl = env("OPENSRP_DB_URL");
-        String host = envOrDefault("OPENSRP_DB_HOST", DEFAULT_HOST);
-        String port = envOrDefault("OPENSRP_DB_PORT", DEFAULT_PORT);
+        return dataSource().getConnection();
+    }
+
+    /**
+     * Borrows a connection for read-only work. With {@code OPENSRP_DB_READ_URL} or {@code OPENSRP_DB_READ_HOST} set it
+     * comes from the read replica's pool, unless the replica's last check found it unreachable or more than
+     * {@code OPENSRP_DB_READ_MAX_LAG} behind, in which case the primary serves the read.
+     */
+    public Connection openReadConnection() throws SQLException {
+        if (!readReplicaConfigured()) {
+            return openConnection();
+        }
+
+        ReplicaLagGuard guard = replicaLagGuard();
+        boolean check = guard.needsCheck();
+        if (!check && !guard.usable()) {
+            return openConnection();
+        }
+
+        Connection replica;
+        try {
+            replica = readDataSource().getConnection();
+        } catch (SQLException e) {
+            guard.recordUnavailable();
+            log.warn("Read replica unavailable, reading from the primary database", e);
+            return openConnection();
+        }
+
+        if (check && !checkReplica(replica, guard)) {
+            replica.close();
+            return openConnection();
+        }
+        return replica;
+    }
+
+    /**
+     * True when the pool that would serve the next read has an idle connection and no borrower waiting, so
+     * speculative work can run without delaying real requests. False before the pool has started.
+     */
+    public boolean hasIdleReadCapacity() {
+        HikariDataSource pool = dataSource;
+        ReplicaLagGuard guard = replicaLagGuard;
+        if (readReplicaConfigured() && guard != null && guard.usable()) {
+            pool = readDataSource;
+        }
+        if (pool == null || pool.getHikariPoolMXBean() == null) {
+            return false;
+        }
+        return pool.getHikariPoolMXBean().getThreadsAwaitingConnection() == 0
+                && pool.getHikariPoolMXBean().getIdleConnections() > 0;
+    }
+
+    public boolean readReplicaConfigured() {
+        return hasText(env("OPENSRP_DB_READ_URL")) || hasText(env("OPENSRP_DB_READ_HOST"));
+    }
+
+    public String schema() {
+        String schema = envOrDefault("OPENSRP_DB_SCHEMA", DEFAULT_SCHEMA);
+        if (!schema.matches("^[A-Za-z0-9_]+$")) {
+            throw new IllegalArgumentException("Invalid OPENSRP_DB_SCHEMA value: " + schema);
+        }
+        return schema;
+    }
+
+    public int minimumIdle() {
+        return Math.min(maximumPoolSize(), Math.max(0, EnvConfig.getIntOrDefault("OPENSRP_DB_POOL_MIN_IDLE", DEFAULT_POOL_MIN_IDLE)));
+    }
+
+    /**
+     * Pool gauges and acquisition wait times, or {@code {"started": false}} before the first connection is requested.
+     */
+    public static Map<String, Object> poolStats() {
+        ConnectionPoolMetrics metrics = poolMetrics;
+        return metrics == null ? Map.of("started", false) : metrics.stats();
+    }
+
+    /**
+     * Read replica pool gauges plus the last measured lag, or {@code {"started": false}} when no replica is in use.
+     */
+    public static Map<String, Object> readPoolStats() {
+        ConnectionPoolMetrics metrics = readPoolMetrics;
+        ReplicaLagGuard guard = replicaLagGuard;
+        if (metrics == null || guard == null) {
+            return Map.of("started", false);
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>(metrics.stats());
+        Duration lag = guard.lastLag();
+        stats.put("replicaLagMillis", lag == null ? null : lag.toMillis());
+        stats.put("servingReads", guard.usable());
+        return stats;
+    }
+
+    private boolean checkReplica(Connection replica, ReplicaLagGuard guard) {
+        boolean wasUsable = guard.usable();
+        try (Statement statement = replica.createStatement();
+             ResultSet resultSet = statement.executeQuery(REPLICA_LAG_SQL)) {
+            resultSet.next();
+            long lagMillis = resultSet.getLong(1);
+            if (resultSet.wasNull()) {
+                guard.recordUnavailable();
+                if (wasUsable) {
+                    log.warn("Read replica is not streaming from the primary, reading from the primary database");
+                }
+                return false;
+            }
+            Duration lag = Duration.ofMillis(lagMillis);
+            boolean usable = guard.recordLag(lag);
+            if (!usable && wasUsable) {
+                log.warn("Read replica is {} ms behind, reading from the primary database", lag.toMillis());
+            } else if (usable && !wasUsable) {
+                log.info("Read replica is {} ms behind, serving reads from it", lag.toMillis());
+            }
+            return usable;
+        } catch (SQLException e) {
+            guard.recordUnavailable();
+            log.warn("Failed to check read replica lag, reading from the primary database", e);
+            return false;
+        }
+    }
+
+    private HikariDataSource dataSource() {
+        HikariDataSource current = dataSource;
+        if (current != null) {
+            return current;
+        }
+
+        synchronized (POOL_LOCK) {
+            if (dataSource == null) {
+                ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+                HikariConfig config = primaryPoolConfig();
+                config.setMetricsTrackerFactory(metrics);
+                dataSource = new HikariDataSource(config);
+                poolMetrics = metrics;
+            }
+            return dataSource;
+        }
+    }
+
+    private HikariDataSource readDataSource() {
+        HikariDataSource current = readDataSource;
+        if (current != null) {
+            return current;
+        }
+
+        synchronized (POOL_LOCK) {
+            if (readDataSource == null) {
+                ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+                HikariConfig config = readPoolConfig();
+                config.setMetricsTrackerFactory(metrics);
+                readDataSource = new HikariDataSource(config);
+                readPoolMetrics = metrics;
+            }
+            return readDataSource;
+        }
+    }
+
+    private static ReplicaLagGuard replicaLagGuard() {
+        ReplicaLagGuard current = replicaLagGuard;
+        if (current != null) {
+            return current;
+        }
+
+        synchronized (POOL_LOCK) {
+            if (replicaLagGuard == null) {
+                replicaLagGuard = new ReplicaLagGuard(
+                        EnvConfig.getDurationOrDefault("OPENSRP_DB_READ_MAX_LAG", DEFAULT_READ_MAX_LAG),
+                        EnvConfig.getDurationOrDefault("OPENSRP_DB_READ_LAG_CHECK_INTERVAL", DEFAULT_READ_LAG_CHECK_INTERVAL),
+                        Clock.systemUTC()
+                );
+            }
+            return replicaLagGuard;
+        }
+    }
+
+    private HikariConfig primaryPoolConfig() {
+        return poolConfig(
+                "opensrp-db",
+                env("OPENSRP_DB_URL"),
+                envOrDefault("OPENSRP_DB_HOST", DEFAULT_HOST),
+                envOrDefault("OPENSRP_DB_PORT", DEFAULT_PORT),
+                env("OPENSRP_DB_USER"),
+                env("OPENSRP_DB_PASSWORD"),
+                maximumPoolSize()
+        );
+    }
+
+    /**
+     * The replica pool takes its own URL or host and port, and otherwise reuses the primary's settings.
+     */
+    private HikariConfig readPoolConfig() {
+        return poolConfig(
+                "opensrp-db-read",
+                env("OPENSRP_DB_READ_URL"),
+                envOrDefault("OPENSRP_DB_READ_HOST", envOrDefault("OPENSRP_DB_HOST", DEFAULT_HOST)),
+                envOrDefault("OPENSRP_DB_READ_PORT", envOrDefault("OPENSRP_DB_PORT", DEFAULT_PORT)),
+                envOrDefault("OPENSRP_DB_READ_USER", env("OPENSRP_DB_USER")),
+                envOrDefault("OPENSRP_DB_READ_PASSWORD", env("OPENSRP_DB_PASSWORD")),
+                Math.max(1, EnvConfig.getIntOrDefault("OPENSRP_DB_READ_POOL_MAX_SIZE", maximumPoolSize()))
+        );
+    }
+
+    private HikariConfig poolConfig(String poolName,
+                                    String explicitUrl,
+                                    String host,
+                                    String port,
+                                    String user,
+                                    String password,
+                                    int maximumPoolSize) {
         String dbName = envOrDefault("OPENSRP_DB_NAME", DEFAULT_DB);
         String schema = envOrDefault("OPENSRP_DB_SCHEMA", DEFAULT_SCHEMA);
-        String user = env("OPENSRP_DB_USER");
-        String password = env("OPENSRP_DB_PASSWORD");
 
         String jdbcUrl = explicitUrl;
         if (jdbcUrl == null || jdbcUrl.isBlank()) {
@@ -47,15 +289,35 @@ public class PostgresConnectionFactory {
             properties.setProperty("sslmode", sslMode);
         }
 
-        return DriverManager.getConnection(jdbcUrl, properties);
+        // Pooled connections live long enough for PgJDBC to keep repeated statements prepared on the server.
+        properties.setProperty("prepareThreshold",
+                String.valueOf(EnvConfig.getIntOrDefault("OPENSRP_DB_PREPARE_THRESHOLD", DEFAULT_PREPARE_THRESHOLD)));
+        properties.setProperty("preparedStatementCacheQueries", String.valueOf(
+                EnvConfig.getIntOrDefault("OPENSRP_DB_PREPARED_STATEMENT_CACHE_QUERIES", DEFAULT_PREPARED_STATEMENT_CACHE_QUERIES)));
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setJdbcUrl(jdbcUrl);
+        config.setDataSourceProperties(properties);
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(Math.min(maximumPoolSize, minimumIdle()));
+        config.setConnectionTimeout(
+                EnvConfig.getDurationOrDefault("OPENSRP_DB_POOL_CONNECTION_TIMEOUT", DEFAULT_POOL_CONNECTION_TIMEOUT).toMillis());
+        config.setValidationTimeout(
+                EnvConfig.getDurationOrDefault("OPENSRP_DB_POOL_VALIDATION_TIMEOUT", DEFAULT_POOL_VALIDATION_TIMEOUT).toMillis());
+        config.setMaxLifetime(
+                EnvConfig.getDurationOrDefault("OPENSRP_DB_POOL_MAX_LIFETIME", DEFAULT_POOL_MAX_LIFETIME).toMillis());
+        // Start even while the database is unreachable; requests fail individually after the connection timeout.
+        config.setInitializationFailTimeout(-1);
+        return config;
     }
 
-    public String schema() {
-        String schema = envOrDefault("OPENSRP_DB_SCHEMA", DEFAULT_SCHEMA);
-        if (!schema.matches("^[A-Za-z0-9_]+$")) {
-            throw new IllegalArgumentException("Invalid OPENSRP_DB_SCHEMA value: " + schema);
-        }
-        return schema;
+    /**
+     * Defaults to {@link WorkerThreads#connections()}, so the blocking I/O threads cannot take every connection and
+     * then wait on lookups that have none left.
+     */
+    private static int maximumPoolSize() {
+        return Math.max(1, EnvConfig.getIntOrDefault("OPENSRP_DB_POOL_MAX_SIZE", WorkerThreads.connections()));
     }
 
     private String env(String key) {
@@ -63,6 +325,11 @@ public class PostgresConnectionFactory {
     }
 
     private String envOrDefault(String key, String fallback) {
-        return Objects.requireNonNullElse(env(key), fallback);
+        String value = env(key);
+        return value == null ? fallback : value;
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
     }
 }
@@ -0,0 +1,61 @@
+package com.abt.integration.config;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers whether the read replica was usable at its last check: reachable and no further behind the primary
+ * than the allowed lag. Reads go to the primary until the next check once the replica falls behind or fails.
+ */
+final class ReplicaLagGuard {
+    private final Duration maxLag;
+    private final Duration checkInterval;
+    private final Clock clock;
+    private final AtomicLong nextCheckAtMillis = new AtomicLong(Long.MIN_VALUE);
+    private volatile boolean usable;
+    private volatile Duration lastLag;
+
+    ReplicaLagGuard(Duration maxLag, Duration checkInterval, Clock clock) {
+        this.maxLag = maxLag;
+        this.checkInterval = checkInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns {@code true} to a single borrower once a check is due, which then records its outcome; the others keep
+     * the last outcome meanwhile instead of all measuring the lag at once.
+     */
+    boolean needsCheck() {
+        long due = nextCheckAtMillis.get();
+        long now = clock.millis();
+        return now >= due && nextCheckAtMillis.compareAndSet(due, now + checkInterval.toMillis());
+    }
+
+    boolean usable() {
+        return usable;
+    }
+
+    /**
+     * Records a measured lag and returns whether the replica may serve reads.
+     */
+    boolean recordLag(Duration lag) {
+        lastLag = lag;
+        return record(lag.compareTo(maxLag) <= 0);
+    }
+
+    void recordUnavailable() {
+        lastLag = null;
+        record(false);
+    }
+
+    Duration lastLag() {
+        return lastLag;
+    }
+
+    private boolean record(boolean usable) {
+        this.usable = usable;
+        nextCheckAtMillis.set(clock.millis() + checkInterval.toMillis());
+        return usable;
+    }
+}
@@ -0,0 +1,46 @@
+package com.abt.integration.config;
+
+import com.abt.util.EnvConfig;
+
+/**
+ * Sizes of the thread pools that borrow OpenSRP database connections. They are read here, in one place, because the
+ * default connection pool size is derived from them.
+ */
+public final class WorkerThreads {
+    private static final int DEFAULT_BLOCKING_IO_THREADS = 32;
+    private static final int DEFAULT_LOOKUP_THREADS = 6;
+    private static final int DEFAULT_EXPORT_THREADS = 2;
+    // The payload and HivST kit pairing refresh jobs.
+    private static final int BACKGROUND_JOB_CONNECTIONS = 2;
+
+    private WorkerThreads() {
+    }
+
+    public static int blockingIo() {
+        return Math.max(1, EnvConfig.getIntOrDefault("INTEGRATION_SERVICE_BLOCKING_THREADS", DEFAULT_BLOCKING_IO_THREADS));
+    }
+
+    /**
+     * The ctc2hts lookup pool, which also runs date slices; {@code 0} unless {@code CTC2HTS_PARALLEL_LOOKUPS=true}.
+     */
+    public static int lookups() {
+        if (!"true".equalsIgnoreCase(EnvConfig.getOrDefault("CTC2HTS_PARALLEL_LOOKUPS", "false"))) {
+            return 0;
+        }
+        return Math.max(1, EnvConfig.getIntOrDefault("CTC2HTS_LOOKUP_THREADS", DEFAULT_LOOKUP_THREADS));
+    }
+
+    public static int exports() {
+        return Math.max(1, EnvConfig.getIntOrDefault("CTC2HTS_EXPORT_THREADS", DEFAULT_EXPORT_THREADS));
+    }
+
+    /**
+     * Connections the workers can hold at once. A blocking I/O thread keeps its page connection while the lookup
+     * threads borrow one each for its lookups or date slices, and an export keeps its {@code COPY} connection while it
+     * borrows one for lookups. A pool smaller than this lets every blocking thread take a connection and then wait
+     * forever for a lookup connection, until the pool's connection timeout fails the requests.
+     */
+    public static int connections() {
+        return blockingIo() + lookups() + 2 * exports() + BACKGROUND_JOB_CONNECTIONS;
+    }
+}
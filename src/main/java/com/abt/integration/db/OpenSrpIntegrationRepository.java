@@ -1,27 +1,52 @@
 package com.abt.integration.db;
 
 import com.abt.integration.model.IntegrationRequest;
-
+import com.abt.integration.model.PageCursor;
+import com.abt.integration.model.RecordProjection;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyOut;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class OpenSrpIntegrationRepository {
     private static final long EPOCH_MILLIS_THRESHOLD = 10_000_000_000L;
     private static final long MILLIS_PER_SECOND = 1000L;
 
+    private static final String NORMALIZED_DATE_CREATED_EXPRESSION =
+            "(CASE WHEN %1$sdate_created > -" + EPOCH_MILLIS_THRESHOLD + " AND %1$sdate_created < " + EPOCH_MILLIS_THRESHOLD +
+                    " THEN %1$sdate_created * " + MILLIS_PER_SECOND + " ELSE %1$sdate_created END)";
+
     private static final String VERIFICATION_LOG_TABLE = "ctc_integration.received_verification_results_log";
     private static final String CREATE_VERIFICATION_LOG_SCHEMA_SQL = "CREATE SCHEMA IF NOT EXISTS ctc_integration";
     private static final String CREATE_VERIFICATION_LOG_TABLE_SQL =
@@ -37,29 +62,255 @@ public class OpenSrpIntegrationRepository {
                     "created_at TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
                     "PRIMARY KEY (\"clientCode\", \"visitId\")" +
                     ")";
+    private static final String CONSUMER_WATERMARK_TABLE = "ctc_integration.ctc2hts_consumer_watermarks";
+    private static final String CREATE_CONSUMER_WATERMARK_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS " + CONSUMER_WATERMARK_TABLE + " (" +
+                    "consumer_id VARCHAR(255) NOT NULL, " +
+                    "hfr_code VARCHAR(255) NOT NULL, " +
+                    "watermark TEXT NOT NULL, " +
+                    "updated_at TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                    "PRIMARY KEY (consumer_id, hfr_code)" +
+                    ")";
+    private static final String HTS_PAYLOAD_TABLE = "ctc_integration.hts_payload";
+    private static final String CREATE_HTS_PAYLOAD_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS " + HTS_PAYLOAD_TABLE + " (" +
+                    "event_id VARCHAR(255) PRIMARY KEY, " +
+                    "hfr_code VARCHAR(255), " +
+                    "council_code VARCHAR(255), " +
+                    "date_created BIGINT NOT NULL, " +
+                    "payload JSONB NOT NULL, " +
+                    "refreshed_at TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP" +
+                    ")";
+    private static final String CREATE_HTS_PAYLOAD_FACILITY_INDEX_SQL =
+            "CREATE INDEX IF NOT EXISTS hts_payload_facility_idx ON " + HTS_PAYLOAD_TABLE + " (hfr_code, date_created, event_id)";
+    private static final String CREATE_HTS_PAYLOAD_COUNCIL_INDEX_SQL =
+            "CREATE INDEX IF NOT EXISTS hts_payload_council_idx ON " + HTS_PAYLOAD_TABLE + " (council_code, date_created, event_id)";
+    private static final String HTS_PAYLOAD_WATERMARK_TABLE = "ctc_integration.hts_payload_watermarks";
+    private static final String CREATE_HTS_PAYLOAD_WATERMARK_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS " + HTS_PAYLOAD_WATERMARK_TABLE + " (" +
+                    "source VARCHAR(64) PRIMARY KEY, " +
+                    "watermark TEXT NOT NULL, " +
+                    "updated_at TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP" +
+                    ")";
+    private static final String HTS_PAYLOAD_HIVST_SEEN_TABLE = "ctc_integration.hts_payload_hivst_results";
+    private static final String CREATE_HTS_PAYLOAD_HIVST_SEEN_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS " + HTS_PAYLOAD_HIVST_SEEN_TABLE + " (event_id VARCHAR(255) PRIMARY KEY)";
+    private static final String HIVST_KIT_PAIRING_TABLE = "ctc_integration.hivst_kit_pairings";
+    private static final String CREATE_HIVST_KIT_PAIRING_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS " + HIVST_KIT_PAIRING_TABLE + " (" +
+                    "issue_event_id VARCHAR(255) NOT NULL, " +
+                    "kit_for VARCHAR(32) NOT NULL, " +
+                    "base_entity_id VARCHAR(255), " +
+                    "kit_code VARCHAR(255), " +
+                    "issue_event_date VARCHAR(64), " +
+                    "issue_date DATE, " +
+                    "kit_batch_number VARCHAR(255), " +
+                    "kit_expiry_date VARCHAR(64), " +
+                    "PRIMARY KEY (issue_event_id, kit_for)" +
+                    ")";
+    private static final String CREATE_HIVST_KIT_PAIRING_INDEX_SQL =
+            "CREATE INDEX IF NOT EXISTS hivst_kit_pairings_visit_idx ON " + HIVST_KIT_PAIRING_TABLE + " (base_entity_id, issue_date)";
+    private static final String UPSERT_HIVST_KIT_PAIRING_SQL =
+            "INSERT INTO " + HIVST_KIT_PAIRING_TABLE + " (" +
+                    "issue_event_id, kit_for, base_entity_id, kit_code, issue_event_date, issue_date, kit_batch_number, kit_expiry_date" +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (issue_event_id, kit_for) DO UPDATE SET " +
+                    "base_entity_id = EXCLUDED.base_entity_id, kit_code = EXCLUDED.kit_code, " +
+                    "issue_event_date = EXCLUDED.issue_event_date, issue_date = EXCLUDED.issue_date, " +
+                    "kit_batch_number = EXCLUDED.kit_batch_number, kit_expiry_date = EXCLUDED.kit_expiry_date";
+    private static final String VERIFICATION_RESULT_EXISTS_SQL =
+            "SELECT 1 FROM " + VERIFICATION_LOG_TABLE + " WHERE \"clientCode\" = ? AND \"visitId\" = ? LIMIT 1";
+    private static final String INSERT_VERIFICATION_RESULT_SQL =
+            "INSERT INTO " + VERIFICATION_LOG_TABLE + " (" +
+                    "\"clientCode\", \"visitId\", \"hfrCode\", \"verificationDate\", \"hivFinalVerificationResultCode\", " +
+                    "\"ctcId\", event_date, date_processed" +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String FIND_CONSUMER_WATERMARK_SQL =
+            "SELECT watermark FROM " + CONSUMER_WATERMARK_TABLE + " WHERE consumer_id = ? AND hfr_code = ?";
+    private static final String SAVE_CONSUMER_WATERMARK_SQL =
+            "INSERT INTO " + CONSUMER_WATERMARK_TABLE + " (consumer_id, hfr_code, watermark) VALUES (?, ?, ?) " +
+                    "ON CONFLICT (consumer_id, hfr_code) DO UPDATE SET watermark = EXCLUDED.watermark, updated_at = CURRENT_TIMESTAMP";
+    private static final String FIND_HTS_PAYLOAD_WATERMARK_SQL =
+            "SELECT watermark FROM " + HTS_PAYLOAD_WATERMARK_TABLE + " WHERE source = ?";
+    private static final String SAVE_HTS_PAYLOAD_WATERMARK_SQL =
+            "INSERT INTO " + HTS_PAYLOAD_WATERMARK_TABLE + " (source, watermark) VALUES (?, ?) " +
+                    "ON CONFLICT (source) DO UPDATE SET watermark = EXCLUDED.watermark, updated_at = CURRENT_TIMESTAMP";
+    private static final String MARK_HIVST_RESULTS_SEEN_SQL =
+            "INSERT INTO " + HTS_PAYLOAD_HIVST_SEEN_TABLE + " (event_id) SELECT UNNEST(?) ON CONFLICT (event_id) DO NOTHING";
+    private static final String UPSERT_HTS_PAYLOAD_SQL =
+            "INSERT INTO " + HTS_PAYLOAD_TABLE + " AS p (event_id, hfr_code, council_code, date_created, payload) " +
+                    "VALUES (?, ?, ?, ?, ?::jsonb) " +
+                    "ON CONFLICT (event_id) DO UPDATE SET hfr_code = EXCLUDED.hfr_code, council_code = EXCLUDED.council_code, " +
+                    "date_created = EXCLUDED.date_created, payload = EXCLUDED.payload, refreshed_at = CURRENT_TIMESTAMP " +
+                    "WHERE (p.hfr_code, p.council_code, p.date_created, p.payload) IS DISTINCT FROM (EXCLUDED.hfr_code, EXCLUDED.council_code, EXCLUDED.date_created, EXCLUDED.payload)";
+    private static final String DELETE_HTS_PAYLOAD_WATERMARK_SQL =
+            "DELETE FROM " + HTS_PAYLOAD_WATERMARK_TABLE + " WHERE source = ?";
+    private static final String INDEX_LEADING_COLUMN_SQL =
+            "SELECT 1 FROM pg_index i " +
+                    "JOIN pg_class t ON t.oid = i.indrelid " +
+                    "JOIN pg_namespace n ON n.oid = t.relnamespace " +
+                    "JOIN pg_attribute a ON a.attrelid = t.oid AND a.attnum = i.indkey[0] " +
+                    "WHERE n.nspname = ? AND t.relname = ? AND a.attname = ? AND i.indisvalid " +
+                    "LIMIT 1";
+    private static final String INVALID_INDEX_SQL =
+            "SELECT 1 FROM pg_index i " +
+                    "JOIN pg_class c ON c.oid = i.indexrelid " +
+                    "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                    "WHERE n.nspname = ? AND c.relname = ? AND NOT i.indisvalid";
+    private static final String VALID_INDEX_SQL =
+            "SELECT 1 FROM pg_index i " +
+                    "JOIN pg_class c ON c.oid = i.indexrelid " +
+                    "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                    "WHERE n.nspname = ? AND c.relname = ? AND i.indisvalid";
+    private static final String SERVICE_CHANGES_INDEX = "cbhts_services_date_created_ms_idx";
+    private static final String ESTIMATED_ROW_COUNT_SQL =
+            "SELECT c.reltuples::bigint FROM pg_class c " +
+                    "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                    "WHERE n.nspname = ? AND c.relname = ?";
+    private static final String EXPORT_SNAPSHOT_SQL = "SELECT pg_export_snapshot()";
+    private static final String DATE_CREATED_HISTOGRAM_SQL =
+            "SELECT histogram_bounds::text FROM pg_stats " +
+                    "WHERE schemaname = ? AND tablename = 'cbhts_services' AND attname = 'date_created'";
+    private static final String SET_LOCAL_STATEMENT_TIMEOUT_SQL = "SELECT set_config('statement_timeout', ?, true)";
+    private static final String EXPLAIN_SAMPLE_KEY = "__explain__";
+    private static final ObjectMapper AGGREGATED_ROWS_MAPPER = new ObjectMapper();
+    private static final TypeReference<List<Map<String, Object>>> AGGREGATED_ROWS_TYPE = new TypeReference<>() {
+    };
+    private static final String PROVIDER_LOCATION_COLUMNS =
+            "l.hfr_code, l.region, l.district, l.council_code AS provider_council_code, l.ward, l.village, " +
+                    "COALESCE(tm.name, tm.identifier) AS counsellor_name";
+
+    private static final List<String> SERVICE_DETAIL_COLUMNS = List.of(
+            "hts_testing_approach", "hts_visit_type", "hts_has_the_client_recently_tested_with_hivst",
+            "hts_previous_hivst_client_type", "hts_previous_hivst_test_type", "hts_previous_hivst_test_results",
+            "hts_client_type", "hts_testing_point", "hts_type_of_counselling_provided", "hts_clients_tb_screening_outcome",
+            "hts_has_post_test_counselling_been_provided", "hts_hiv_results_disclosure", "hts_were_condoms_distributed",
+            "hts_number_of_male_condoms_provided", "hts_number_of_female_condoms_provided", "hts_preventive_services",
+            "final_hiv_test_result");
+    private static final List<String> CLIENT_COLUMNS = List.of(
+            "unique_id", "first_name", "middle_name", "last_name", "phone_number", "national_id", "voter_id",
+            "driver_license", "passport", "sex", "birth_date", "marital_status", "preg_1yr");
+    private static final Set<FacilityScope> REQUEST_SCOPES =
+            EnumSet.of(FacilityScope.HFR_CODE, FacilityScope.HFR_CODES, FacilityScope.COUNCIL_CODE, FacilityScope.PROVIDERS);
+    private static final Set<FacilityScope> CHANGE_FEED_SCOPES =
+            EnumSet.of(FacilityScope.ALL, FacilityScope.HFR_CODE, FacilityScope.PROVIDERS);
+    private static final Set<FacilityScope> PAYLOAD_SCOPES =
+            EnumSet.of(FacilityScope.HFR_CODE, FacilityScope.HFR_CODES, FacilityScope.COUNCIL_CODE);
 
     private final String schema;
+    private final boolean normalizedDateCreatedFilter;
+
+    // Every statement is rendered once per schema so each request reuses identical SQL text, which lets
+    // PgJDBC's per-connection statement cache match it and keep the server-side prepared statement.
+    private final Map<FacilityScope, String> countServicesSql;
+    private final Map<FacilityScope, String> countServicesByFacilitySql;
+    private final Map<QueryShape, String> servicesSql;
+    private final Map<ProjectedQueryShape, String> projectedServicesSql;
+    private final Map<LookupQueryShape, String> servicesWithLookupsSql = new ConcurrentHashMap<>();
+    private final Map<FacilityScope, String> exportServicesSql;
+    private final Map<QueryShape, String> serviceChangesSql;
+    private final Map<FacilityScope, String> countHtsPayloadsSql;
+    private final Map<QueryShape, String> htsPayloadsSql;
+    private final String providerLocationsSql;
+    private final String serviceMetadataSql;
+    private final String servicesForSourceChangesSql;
+    private final String testChangesSql;
+    private final String testChangesSinceSql;
+    private final String latestTestChangeSql;
+    private final String enrollmentChangesSql;
+    private final String enrollmentChangesSinceSql;
+    private final String latestEnrollmentChangeSql;
+    private final String unseenHivstResultsSql;
+    private final String markAllHivstResultsSeenSql;
+    private final String testsSql;
+    private final String hivstSql;
+    private final String hivstForVisitsSql;
+    private final String changedHivstIssueKitsSql;
+    private final String enrollmentSql;
 
     public OpenSrpIntegrationRepository(String schema) {
+        this(schema, false);
+    }
+
+    public OpenSrpIntegrationRepository(String schema, boolean normalizedDateCreatedFilter) {
         this.schema = schema;
+        this.normalizedDateCreatedFilter = normalizedDateCreatedFilter;
+
+        Map<FacilityScope, String> countServices = new EnumMap<>(FacilityScope.class);
+        Map<FacilityScope, String> countServicesByFacility = new EnumMap<>(FacilityScope.class);
+        Map<QueryShape, String> services = new HashMap<>();
+        Map<ProjectedQueryShape, String> projectedServices = new HashMap<>();
+        Map<FacilityScope, String> exportServices = new EnumMap<>(FacilityScope.class);
+        for (FacilityScope scope : REQUEST_SCOPES) {
+            countServices.put(scope, countServicesQuery(scope));
+            exportServices.put(scope, exportServicesQuery(scope));
+            countServicesByFacility.put(scope, countServicesByFacilityQuery(scope));
+            for (boolean includeTotal : new boolean[]{false, true}) {
+                for (boolean keyset : new boolean[]{false, true}) {
+                    QueryShape shape = new QueryShape(scope, includeTotal, keyset);
+                    services.put(shape, servicesQuery(shape, ColumnGroups.ALL));
+                    for (ColumnGroups columns : ColumnGroups.NARROWED) {
+                        projectedServices.put(new ProjectedQueryShape(shape, columns), servicesQuery(shape, columns));
+                    }
+                }
+            }
+        }
+
+        Map<QueryShape, String> serviceChanges = new HashMap<>();
+        for (FacilityScope scope : CHANGE_FEED_SCOPES) {
+            for (boolean keyset : new boolean[]{false, true}) {
+                serviceChanges.put(new QueryShape(scope, false, keyset), serviceChangesQuery(scope, keyset));
+            }
+        }
+
+        Map<FacilityScope, String> countHtsPayloads = new EnumMap<>(FacilityScope.class);
+        Map<QueryShape, String> htsPayloads = new HashMap<>();
+        for (FacilityScope scope : PAYLOAD_SCOPES) {
+            countHtsPayloads.put(scope, countHtsPayloadsQuery(scope));
+            for (boolean includeTotal : new boolean[]{false, true}) {
+                for (boolean keyset : new boolean[]{false, true}) {
+                    htsPayloads.put(new QueryShape(scope, includeTotal, keyset), htsPayloadsQuery(scope, includeTotal, keyset));
+                }
+            }
+        }
+
+        this.countServicesSql = countServices;
+        this.countServicesByFacilitySql = countServicesByFacility;
+        this.servicesSql = Map.copyOf(services);
+        this.projectedServicesSql = Map.copyOf(projectedServices);
+        this.exportServicesSql = exportServices;
+        this.serviceChangesSql = Map.copyOf(serviceChanges);
+        this.countHtsPayloadsSql = countHtsPayloads;
+        this.htsPayloadsSql = Map.copyOf(htsPayloads);
+        this.providerLocationsSql = providerLocationsQuery();
+        this.serviceMetadataSql = serviceMetadataQuery();
+        this.servicesForSourceChangesSql = servicesForSourceChangesQuery();
+        this.testChangesSql = sourceChangesQuery("cbhts_tests", true, false);
+        this.testChangesSinceSql = sourceChangesQuery("cbhts_tests", true, true);
+        this.latestTestChangeSql = latestSourceChangeQuery("cbhts_tests");
+        this.enrollmentChangesSql = sourceChangesQuery("cbhts_enrollment", false, false);
+        this.enrollmentChangesSinceSql = sourceChangesQuery("cbhts_enrollment", false, true);
+        this.latestEnrollmentChangeSql = latestSourceChangeQuery("cbhts_enrollment");
+        this.unseenHivstResultsSql = unseenHivstResultsQuery();
+        this.markAllHivstResultsSeenSql = markAllHivstResultsSeenQuery();
+        this.testsSql = testsQuery();
+        this.hivstSql = hivstQuery();
+        this.hivstForVisitsSql = hivstForVisitsQuery();
+        this.changedHivstIssueKitsSql = changedHivstIssueKitsQuery();
+        this.enrollmentSql = enrollmentQuery();
     }
 
     public long countServices(Connection connection, IntegrationRequest request) throws SQLException {
-        String sql = "SELECT COUNT(*) " +
-                "FROM " + schema + ".cbhts_services s " +
-                "JOIN " + schema + ".team_members tm ON tm.identifier = s.provider_id " +
-                "JOIN " + schema + ".tanzania_locations l ON l.location_uuid = tm.location_uuid " +
-                "WHERE l.hfr_code = ? " +
-                "AND ((s.date_created BETWEEN ? AND ?) OR (s.date_created BETWEEN ? AND ?))";
+        return countServices(connection, request, null);
+    }
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+    public long countServices(Connection connection,
+                              IntegrationRequest request,
+                              FacilityProviders facility) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(countServicesSql.get(FacilityScope.of(request, facility)))) {
             DateCreatedTimeRange range = toDateCreatedRange(request.getStartDate(), request.getEndDate());
 
-            statement.setString(1, request.getHfrCode());
-            statement.setLong(2, range.startSec());
-            statement.setLong(3, range.endSec());
-            statement.setLong(4, range.startMs());
-            statement.setLong(5, range.endMs());
+            bindFacilityFilter(connection, statement, 1, request, facility);
+            bindDateCreatedRange(statement, 2, range);
 
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
@@ -70,6 +321,65 @@ public class OpenSrpIntegrationRepository {
         }
     }
 
+    private String countServicesQuery(FacilityScope scope) {
+        return "SELECT COUNT(*) " +
+                "FROM " + schema + ".cbhts_services s " +
+                providerLocationJoins(scope) +
+                "WHERE " + scope.servicesFilter() + " " +
+                "AND " + dateCreatedFilter("s");
+    }
+
+    public Map<String, Long> countServicesByFacility(Connection connection,
+                                                     IntegrationRequest request,
+                                                     FacilityProviders facility) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(countServicesByFacilitySql.get(FacilityScope.of(request, facility)))) {
+            DateCreatedTimeRange range = toDateCreatedRange(request.getStartDate(), request.getEndDate());
+
+            bindFacilityFilter(connection, statement, 1, request, facility);
+            bindDateCreatedRange(statement, 2, range);
+
+            Map<String, Long> countsByFacility = new TreeMap<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String groupKey = resultSet.getString("group_key");
+                    String hfrCode = facility == null ? groupKey : facility.provider(groupKey).hfrCode();
+                    countsByFacility.merge(hfrCode, resultSet.getLong("total_records"), Long::sum);
+                }
+            }
+            return countsByFacility;
+        }
+    }
+
+    private String countServicesByFacilityQuery(FacilityScope scope) {
+        String groupColumn = scope.joinsProviderLocations() ? "l.hfr_code" : "s.provider_id";
+        return "SELECT " + groupColumn + " AS group_key, COUNT(*) AS total_records " +
+                "FROM " + schema + ".cbhts_services s " +
+                providerLocationJoins(scope) +
+                "WHERE " + scope.servicesFilter() + " " +
+                "AND " + dateCreatedFilter("s") + " " +
+                "GROUP BY " + groupColumn;
+    }
+
+    public List<ProviderLocation> findProviderLocations(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(providerLocationsSql);
+             ResultSet resultSet = statement.executeQuery()) {
+            List<ProviderLocation> providerLocations = new ArrayList<>();
+            while (resultSet.next()) {
+                providerLocations.add(readProviderLocation(resultSet));
+            }
+            return providerLocations;
+        }
+    }
+
+    private String providerLocationsQuery() {
+        return "SELECT l.hfr_code, tm.identifier AS provider_id, COALESCE(tm.name, tm.identifier) AS counsellor_name, " +
+                "l.region, l.district, l.council_code AS provider_council_code, l.ward, l.village " +
+                "FROM " + schema + ".team_members tm " +
+                "JOIN " + schema + ".tanzania_locations l ON l.location_uuid = tm.location_uuid " +
+                "WHERE l.hfr_code IS NOT NULL AND tm.identifier IS NOT NULL " +
+                "ORDER BY l.hfr_code ASC, tm.identifier ASC, l.location_uuid ASC";
+    }
+
     public void ensureReceivedVerificationResultsLogTable(Connection connection) throws SQLException {
         try (PreparedStatement createSchemaStatement = connection.prepareStatement(CREATE_VERIFICATION_LOG_SCHEMA_SQL)) {
             createSchemaStatement.execute();
@@ -80,11 +390,252 @@ public class OpenSrpIntegrationRepository {
         }
     }
 
+    public void ensureNormalizedDateCreatedIndexes(Connection connection) throws SQLException {
+        ensureServiceChangesIndex(connection);
+        createIndexConcurrently(connection, "cbhts_tests_date_created_ms_idx",
+                "cbhts_tests (" + normalizedDateCreated("") + ")");
+    }
+
+    /**
+     * The {@code (normalized date_created, event_id)} index the change feed and the payload refresh seek and sort on;
+     * services pages sort on the same key. It is needed whatever {@code CTC2HTS_DATE_FILTER_MODE} is.
+     */
+    public void ensureServiceChangesIndex(Connection connection) throws SQLException {
+        createIndexConcurrently(connection, SERVICE_CHANGES_INDEX,
+                "cbhts_services (" + normalizedDateCreated("") + ", event_id)");
+    }
+
+    public boolean hasServiceChangesIndex(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(VALID_INDEX_SQL)) {
+            statement.setString(1, schema);
+            statement.setString(2, SERVICE_CHANGES_INDEX);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    public boolean hasIndexLeadingWith(Connection connection, String table, String column) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INDEX_LEADING_COLUMN_SQL)) {
+            statement.setString(1, schema);
+            statement.setString(2, table);
+            statement.setString(3, column);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    public void createIndexConcurrently(Connection connection,
+                                        String indexName,
+                                        String table,
+                                        String column) throws SQLException {
+        createIndexConcurrently(connection, indexName, table + " (" + column + ")");
+    }
+
+    /**
+     * A failed or interrupted concurrent build leaves an invalid index under its name, which {@code IF NOT EXISTS}
+     * would then keep for good, so such a leftover is dropped before the index is built again.
+     */
+    private void createIndexConcurrently(Connection connection, String indexName, String tableAndKeys) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (isInvalidIndex(connection, indexName)) {
+                statement.execute("DROP INDEX CONCURRENTLY IF EXISTS " + schema + "." + indexName);
+            }
+            statement.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + indexName + " ON " + schema + "." + tableAndKeys);
+        }
+    }
+
+    private boolean isInvalidIndex(Connection connection, String indexName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INVALID_INDEX_SQL)) {
+            statement.setString(1, schema);
+            statement.setString(2, indexName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    /**
+     * Limits every later statement of the current transaction to {@code timeout}; a zero timeout leaves the
+     * server default. The setting ends with the transaction, so pooled connections are not affected.
+     */
+    public void setStatementTimeout(Connection connection, Duration timeout) throws SQLException {
+        if (timeout.isZero() || timeout.isNegative()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(SET_LOCAL_STATEMENT_TIMEOUT_SQL)) {
+            statement.setString(1, Long.toString(timeout.toMillis()));
+            statement.execute();
+        }
+    }
+
+    public long estimatedRowCount(Connection connection, String table) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(ESTIMATED_ROW_COUNT_SQL)) {
+            statement.setString(1, schema);
+            statement.setString(2, table);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0L;
+            }
+        }
+    }
+
+    /**
+     * Exports the snapshot of the connection's open REPEATABLE READ transaction. The identifier stays importable until
+     * that transaction ends.
+     */
+    public String exportSnapshot(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(EXPORT_SNAPSHOT_SQL);
+             ResultSet resultSet = statement.executeQuery()) {
+            if (!resultSet.next()) {
+                throw new SQLException("pg_export_snapshot() returned no row");
+            }
+            return resultSet.getString(1);
+        }
+    }
+
+    /**
+     * Makes the connection's new REPEATABLE READ transaction see an exported snapshot; this must be its first
+     * statement. Returns {@code false}, with the transaction rolled back, when the snapshot cannot be imported, for
+     * example because the connection reached another server than the exporting one.
+     */
+    public boolean importSnapshot(Connection connection, String snapshotId) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            // SET TRANSACTION SNAPSHOT takes no bind parameters.
+            statement.execute("SET TRANSACTION SNAPSHOT " + textLiteral(snapshotId));
+            return true;
+        } catch (SQLException e) {
+            connection.rollback();
+            return false;
+        }
+    }
+
+    /**
+     * The planner's equal-frequency histogram bounds for {@code cbhts_services.date_created}, as stored (seconds or
+     * milliseconds), or an empty list before the table has been analyzed.
+     */
+    public List<Long> findDateCreatedHistogramBounds(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(DATE_CREATED_HISTOGRAM_SQL)) {
+            statement.setString(1, schema);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                String bounds = resultSet.next() ? resultSet.getString(1) : null;
+                if (bounds == null || bounds.length() < 2) {
+                    return List.of();
+                }
+
+                List<Long> values = new ArrayList<>();
+                for (String bound : bounds.substring(1, bounds.length() - 1).split(",")) {
+                    try {
+                        values.add(Long.parseLong(bound.trim()));
+                    } catch (NumberFormatException e) {
+                        return List.of();
+                    }
+                }
+                return values;
+            }
+        }
+    }
+
+    public Map<String, List<String>> explainStatements(Connection connection,
+                                                       IntegrationRequest sampleRequest) throws SQLException {
+        DateCreatedTimeRange range = toDateCreatedRange(sampleRequest.getStartDate(), sampleRequest.getEndDate());
+        Set<String> sampleKeys = Set.of(EXPLAIN_SAMPLE_KEY);
+
+        Map<String, List<String>> plans = new LinkedHashMap<>();
+        plans.put("countServices", explain(connection, countServicesSql.get(FacilityScope.HFR_CODE), statement -> {
+            statement.setString(1, sampleRequest.getHfrCode());
+            bindDateCreatedRange(statement, 2, range);
+        }));
+        plans.put("findServices", explain(connection, servicesSql.get(new QueryShape(FacilityScope.HFR_CODE, false, false)),
+                statement -> bindServicesQuery(connection, statement, sampleRequest, null, null)));
+        plans.put("findTestsForServices", explain(connection, testsSql, statement -> {
+            int index = bindDateCreatedRange(statement, 1, range);
+            statement.setArray(index++, textArray(connection, sampleKeys));
+            statement.setArray(index, textArray(connection, sampleKeys));
+        }));
+        plans.put("findHivstTestByBaseEntity", explain(connection, hivstSql,
+                statement -> statement.setArray(1, textArray(connection, sampleKeys))));
+        plans.put("findEnrollmentEligibilityByBaseEntity", explain(connection, enrollmentSql,
+                statement -> statement.setArray(1, textArray(connection, sampleKeys))));
+        plans.put("findLatestServiceMetadataByClientCode", explain(connection, serviceMetadataSql, statement -> {
+            statement.setString(1, EXPLAIN_SAMPLE_KEY);
+            statement.setString(2, sampleRequest.getHfrCode());
+        }));
+        return plans;
+    }
+
+    private static List<String> explain(Connection connection, String sql, StatementBinder binder) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            binder.bind(statement);
+
+            List<String> planLines = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    planLines.add(resultSet.getString(1));
+                }
+            }
+            return planLines;
+        }
+    }
+
+    /**
+     * Runs the per-request ctc2hts and verification statements with keys that match no rows, as many times as the
+     * driver's {@code prepareThreshold} requires, so the connection already holds them as server-side prepared
+     * statements when the first real request borrows it. Returns the number of statements prepared.
+     */
+    public int prepareHotStatements(Connection connection, IntegrationRequest sampleRequest) throws SQLException {
+        int prepareThreshold = connection.isWrapperFor(PGConnection.class)
+                ? connection.unwrap(PGConnection.class).getPrepareThreshold()
+                : 1;
+        if (prepareThreshold <= 0) {
+            return 0;
+        }
+
+        DateCreatedTimeRange range = toDateCreatedRange(sampleRequest.getStartDate(), sampleRequest.getEndDate());
+        Set<String> sampleKeys = Set.of(EXPLAIN_SAMPLE_KEY);
+        PageCursor sampleCursor = new PageCursor(range.startMs(), EXPLAIN_SAMPLE_KEY);
+        Map<String, StatementBinder> statements = new LinkedHashMap<>();
+
+        for (FacilityProviders facility : Arrays.asList(null, new FacilityProviders(sampleRequest.getHfrCode(), Map.of()))) {
+            FacilityScope scope = FacilityScope.of(sampleRequest, facility);
+            statements.put(countServicesSql.get(scope), statement -> {
+                bindFacilityFilter(connection, statement, 1, sampleRequest, facility);
+                bindDateCreatedRange(statement, 2, range);
+            });
+            for (boolean includeTotal : new boolean[]{false, true}) {
+                statements.put(servicesSql.get(new QueryShape(scope, includeTotal, false)),
+                        statement -> bindServicesQuery(connection, statement, sampleRequest, null, facility));
+                statements.put(servicesSql.get(new QueryShape(scope, includeTotal, true)),
+                        statement -> bindServicesQuery(connection, statement, sampleRequest, sampleCursor, facility));
+            }
+        }
+        statements.put(testsSql, statement -> {
+            int index = bindDateCreatedRange(statement, 1, range);
+            statement.setArray(index++, textArray(connection, sampleKeys));
+            statement.setArray(index, textArray(connection, sampleKeys));
+        });
+        statements.put(hivstSql, statement -> statement.setArray(1, textArray(connection, sampleKeys)));
+        statements.put(enrollmentSql, statement -> statement.setArray(1, textArray(connection, sampleKeys)));
+        statements.put(serviceMetadataSql, statement -> {
+            statement.setString(1, EXPLAIN_SAMPLE_KEY);
+            statement.setString(2, sampleRequest.getHfrCode());
+        });
+
+        for (Map.Entry<String, StatementBinder> entry : statements.entrySet()) {
+            for (int execution = 0; execution < prepareThreshold; execution++) {
+                try (PreparedStatement statement = connection.prepareStatement(entry.getKey())) {
+                    entry.getValue().bind(statement);
+                    statement.executeQuery().close();
+                }
+            }
+        }
+        return statements.size();
+    }
+
     public boolean receivedVerificationResultExists(Connection connection,
                                                     String clientCode,
                                                     String visitId) throws SQLException {
-        String sql = "SELECT 1 FROM " + VERIFICATION_LOG_TABLE + " WHERE \"clientCode\" = ? AND \"visitId\" = ? LIMIT 1";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = connection.prepareStatement(VERIFICATION_RESULT_EXISTS_SQL)) {
             statement.setString(1, clientCode);
             statement.setString(2, visitId);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -95,12 +646,7 @@ public class OpenSrpIntegrationRepository {
 
     public void saveReceivedVerificationResult(Connection connection,
                                                ReceivedVerificationResultLogEntry entry) throws SQLException {
-        String sql = "INSERT INTO " + VERIFICATION_LOG_TABLE + " (" +
-                "\"clientCode\", \"visitId\", \"hfrCode\", \"verificationDate\", \"hivFinalVerificationResultCode\", " +
-                "\"ctcId\", event_date, date_processed" +
-                ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
-
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_VERIFICATION_RESULT_SQL)) {
             statement.setString(1, entry.clientCode());
             statement.setString(2, entry.visitId());
             statement.setString(3, entry.hfrCode());
@@ -116,17 +662,7 @@ public class OpenSrpIntegrationRepository {
     public Optional<VerificationServiceMetadataRow> findLatestServiceMetadataByClientCode(Connection connection,
                                                                                            String hfrCode,
                                                                                            String clientCode) throws SQLException {
-        String sql = "SELECT s.base_entity_id, s.provider_id, s.team, s.team_id, s.location_id, s.entity_type " +
-                "FROM " + schema + ".cbhts_services s " +
-                "JOIN " + schema + ".client c ON c.base_entity_id = s.base_entity_id " +
-                "JOIN " + schema + ".team_members tm ON tm.identifier = s.provider_id " +
-                "JOIN " + schema + ".tanzania_locations l ON l.location_uuid = tm.location_uuid " +
-                "WHERE c.unique_id = ? " +
-                "AND l.hfr_code = ? " +
-                "ORDER BY s.date_created DESC NULLS LAST, s.event_id DESC " +
-                "LIMIT 1";
-
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = connection.prepareStatement(serviceMetadataSql)) {
             statement.setString(1, clientCode);
             statement.setString(2, hfrCode);
 
@@ -147,96 +683,866 @@ public class OpenSrpIntegrationRepository {
         }
     }
 
-    public List<ServiceRow> findServices(Connection connection, IntegrationRequest request) throws SQLException {
-        String sql = "SELECT " +
-                "s.event_id, s.base_entity_id, s.hts_visit_group, s.visit_date, s.hts_visit_date, s.date_created, " +
-                "tm.identifier AS provider_id, s.hts_testing_approach, s.hts_visit_type, s.hts_has_the_client_recently_tested_with_hivst, " +
-                "s.hts_previous_hivst_client_type, s.hts_previous_hivst_test_type, s.hts_previous_hivst_test_results, s.hts_client_type, s.hts_testing_point, " +
-                "s.hts_type_of_counselling_provided, s.hts_clients_tb_screening_outcome, s.hts_has_post_test_counselling_been_provided, " +
-                "s.hts_hiv_results_disclosure, s.hts_were_condoms_distributed, s.hts_number_of_male_condoms_provided, " +
-                "s.hts_number_of_female_condoms_provided, s.hts_preventive_services, s.final_hiv_test_result, " +
-                "c.unique_id, c.first_name, c.middle_name, c.last_name, c.phone_number, c.national_id, c.voter_id, c.driver_license, " +
-                "c.passport, c.sex, c.birth_date, c.marital_status, c.preg_1yr, " +
-                "l.hfr_code, l.region, l.district, l.council_code AS provider_council_code, l.ward, " +
-                "hl.village_code AS household_village_code, l.village, " +
-                "COALESCE(tm.name, tm.identifier) AS counsellor_name " +
+    private String serviceMetadataQuery() {
+        return "SELECT s.base_entity_id, s.provider_id, s.team, s.team_id, s.location_id, s.entity_type " +
                 "FROM " + schema + ".cbhts_services s " +
+                "JOIN " + schema + ".client c ON c.base_entity_id = s.base_entity_id " +
                 "JOIN " + schema + ".team_members tm ON tm.identifier = s.provider_id " +
                 "JOIN " + schema + ".tanzania_locations l ON l.location_uuid = tm.location_uuid " +
-                "LEFT JOIN " + schema + ".household h ON h.primary_caregiver = s.base_entity_id " +
-                "LEFT JOIN " + schema + ".tanzania_locations hl ON hl.location_uuid = NULLIF(TRIM(h.location_id), '') " +
-                "LEFT JOIN " + schema + ".client c ON c.base_entity_id = s.base_entity_id " +
-                "WHERE l.hfr_code = ? " +
-                "AND ((s.date_created BETWEEN ? AND ?) OR (s.date_created BETWEEN ? AND ?)) " +
-                "ORDER BY s.date_created ASC, s.event_id ASC " +
-                "LIMIT ? OFFSET ?";
+                "WHERE c.unique_id = ? " +
+                "AND l.hfr_code = ? " +
+                "ORDER BY s.date_created DESC NULLS LAST, s.event_id DESC " +
+                "LIMIT 1";
+    }
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            DateCreatedTimeRange range = toDateCreatedRange(request.getStartDate(), request.getEndDate());
-            int offset = (request.getPageIndex() - 1) * request.getPageSize();
+    public List<ServiceRow> findServices(Connection connection, IntegrationRequest request) throws SQLException {
+        return findServices(connection, request, null);
+    }
 
-            statement.setString(1, request.getHfrCode());
-            statement.setLong(2, range.startSec());
-            statement.setLong(3, range.endSec());
-            statement.setLong(4, range.startMs());
-            statement.setLong(5, range.endMs());
-            statement.setInt(6, request.getPageSize());
-            statement.setInt(7, offset);
+    public List<ServiceRow> findServices(Connection connection,
+                                         IntegrationRequest request,
+                                         FacilityProviders facility) throws SQLException {
+        PageCursor cursor = request.getCursor() == null ? null : PageCursor.decode(request.getCursor());
+
+        try (PreparedStatement statement = connection.prepareStatement(servicesSql(request, cursor, false, facility))) {
+            bindServicesQuery(connection, statement, request, cursor, facility);
 
             List<ServiceRow> rows = new ArrayList<>();
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
-                    rows.add(new ServiceRow(
+                    rows.add(readServiceRow(resultSet, facility));
+                }
+            }
+            return rows;
+        }
+    }
+
+    public ServicePage findServicePageWithTotal(Connection connection, IntegrationRequest request) throws SQLException {
+        return findServicePageWithTotal(connection, request, null);
+    }
+
+    public ServicePage findServicePageWithTotal(Connection connection,
+                                                IntegrationRequest request,
+                                                FacilityProviders facility) throws SQLException {
+        PageCursor cursor = request.getCursor() == null ? null : PageCursor.decode(request.getCursor());
+
+        try (PreparedStatement statement = connection.prepareStatement(servicesSql(request, cursor, true, facility))) {
+            bindServicesQuery(connection, statement, request, cursor, facility);
+
+            List<ServiceRow> rows = new ArrayList<>();
+            Long totalRecords = null;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (totalRecords == null) {
+                        totalRecords = resultSet.getLong("total_records");
+                    }
+                    rows.add(readServiceRow(resultSet, facility));
+                }
+            }
+            return new ServicePage(rows, totalRecords);
+        }
+    }
+
+    /**
+     * Reads a services page together with its tests, HivST results and latest enrollment in one statement: each
+     * child lookup is a {@code LEFT JOIN LATERAL} that aggregates the page row's children with {@code json_agg},
+     * decoded here into the same rows and maps the separate lookups return. Lookups the request's projection does not
+     * need are left out of the statement, as are HivST results when {@code includeHivst} is false, for callers that
+     * read them through {@link #findHivstTestsForVisits} instead.
+     */
+    public ServicePageWithLookups findServicePageWithLookups(Connection connection,
+                                                             IntegrationRequest request,
+                                                             FacilityProviders facility,
+                                                             boolean includeTotal,
+                                                             boolean includeHivst) throws SQLException {
+        PageCursor cursor = request.getCursor() == null ? null : PageCursor.decode(request.getCursor());
+        RecordProjection projection = RecordProjection.forRequest(request);
+        LookupQueryShape shape = new LookupQueryShape(
+                new QueryShape(FacilityScope.of(request, facility), includeTotal, cursor != null),
+                ColumnGroups.of(projection),
+                projection.needsTests(),
+                includeHivst && projection.needsHivstSelfTests(),
+                projection.needsEnrollment()
+        );
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                servicesWithLookupsSql.computeIfAbsent(shape, this::servicesWithLookupsQuery))) {
+            int index = bindServicesQuery(connection, statement, request, cursor, facility);
+            if (shape.tests()) {
+                bindDateCreatedRange(statement, index, toDateCreatedRange(request.getStartDate(), request.getEndDate()));
+            }
+
+            List<ServiceRow> rows = new ArrayList<>();
+            Long totalRecords = null;
+            Map<String, List<TestRow>> testsByKey = new HashMap<>();
+            Map<String, List<HivstSelfTestRow>> hivstRowsByBaseEntity = new HashMap<>();
+            Map<String, Boolean> eligibilityByBaseEntity = new HashMap<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (includeTotal && totalRecords == null) {
+                        totalRecords = resultSet.getLong("total_records");
+                    }
+                    ServiceRow row = readServiceRow(resultSet, facility);
+                    rows.add(row);
+
+                    if (shape.tests()) {
+                        testsByKey.putIfAbsent(serviceKey(row),
+                                readAggregatedRows(resultSet.getString("tests_json"), OpenSrpIntegrationRepository::readTestRow));
+                    }
+                    if (!hasText(row.baseEntityId())) {
+                        continue;
+                    }
+                    if (shape.hivst()) {
+                        hivstRowsByBaseEntity.putIfAbsent(row.baseEntityId(),
+                                readAggregatedRows(resultSet.getString("hivst_json"), OpenSrpIntegrationRepository::readHivstSelfTestRow));
+                    }
+                    if (shape.enrollment() && resultSet.getBoolean("enrolled")) {
+                        eligibilityByBaseEntity.putIfAbsent(row.baseEntityId(),
+                                parseEnrollmentEligibility(resultSet.getString("eligibility_for_testing")));
+                    }
+                }
+            }
+            return new ServicePageWithLookups(rows, totalRecords, testsByKey, hivstRowsByBaseEntity, eligibilityByBaseEntity);
+        }
+    }
+
+    private String servicesWithLookupsQuery(LookupQueryShape shape) {
+        return "SELECT page.*" +
+                (shape.tests() ? ", tests.items AS tests_json" : "") +
+                (shape.hivst() ? ", hivst.items AS hivst_json" : "") +
+                (shape.enrollment() ? ", enrollment.eligibility_for_testing, enrollment.enrolled" : "") +
+                " FROM (" + servicesQuery(shape.shape(), shape.columns()) + ") page " +
+                (shape.tests()
+                        ? "LEFT JOIN LATERAL (SELECT json_agg(to_json(pt) ORDER BY pt.date_created ASC, pt.event_id ASC) AS items " +
+                        "FROM (" + testsSelect(
+                                "((NULLIF(TRIM(page.hts_visit_group), '') IS NOT NULL AND t.hts_visit_group = page.hts_visit_group) " +
+                                        "OR (NULLIF(TRIM(page.hts_visit_group), '') IS NULL AND t.hts_visit_group IS NULL " +
+                                        "AND t.base_entity_id = page.base_entity_id))") + ") pt) tests ON TRUE "
+                        : "") +
+                (shape.hivst()
+                        ? "LEFT JOIN LATERAL (SELECT json_agg(to_json(ph) ORDER BY ph.result_date ASC, ph.result_event_id ASC) AS items " +
+                        "FROM (" + hivstSelect("r.base_entity_id = page.base_entity_id") + ") ph) hivst ON TRUE "
+                        : "") +
+                (shape.enrollment()
+                        ? "LEFT JOIN LATERAL (SELECT e.eligibility_for_testing, TRUE AS enrolled " +
+                        "FROM " + schema + ".cbhts_enrollment e " +
+                        "WHERE e.base_entity_id = page.base_entity_id " +
+                        "ORDER BY e.date_created DESC NULLS LAST, e.event_id DESC " +
+                        "LIMIT 1) enrollment ON TRUE "
+                        : "") +
+                "ORDER BY " + dateCreatedSortKey("page") + " ASC, page.event_id ASC";
+    }
+
+    private static <T> List<T> readAggregatedRows(String json, AggregatedRowReader<T> reader) throws SQLException {
+        if (json == null) {
+            return List.of();
+        }
+
+        List<Map<String, Object>> objects;
+        try {
+            objects = AGGREGATED_ROWS_MAPPER.readValue(json, AGGREGATED_ROWS_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Failed to decode aggregated child rows", e);
+        }
+        List<T> rows = new ArrayList<>(objects.size());
+        for (Map<String, Object> object : objects) {
+            rows.add(reader.read(new JsonColumns(object)));
+        }
+        return rows;
+    }
+
+    public ServiceRowCursor openServiceCursor(Connection connection,
+                                              IntegrationRequest request,
+                                              int fetchSize) throws SQLException {
+        return openServiceCursor(connection, request, fetchSize, null);
+    }
+
+    public ServiceRowCursor openServiceCursor(Connection connection,
+                                              IntegrationRequest request,
+                                              int fetchSize,
+                                              FacilityProviders facility) throws SQLException {
+        PageCursor cursor = request.getCursor() == null ? null : PageCursor.decode(request.getCursor());
+
+        PreparedStatement statement = connection.prepareStatement(servicesSql(request, cursor, false, facility));
+        try {
+            statement.setFetchSize(fetchSize);
+            bindServicesQuery(connection, statement, request, cursor, facility);
+            return new ServiceRowCursor(statement, statement.executeQuery(), facility);
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Streams every service row of the request's facility and date range with {@code COPY ... TO STDOUT}, ignoring
+     * paging. COPY takes no bind parameters, so the filter values are inlined as escaped literals. The connection
+     * cannot run other statements until the returned copy is exhausted or closed.
+     */
+    public ServiceRowCopy copyServices(Connection connection,
+                                       IntegrationRequest request,
+                                       FacilityProviders facility) throws SQLException {
+        FacilityScope scope = FacilityScope.of(request, facility);
+        DateCreatedTimeRange range = toDateCreatedRange(request.getStartDate(), request.getEndDate());
+
+        List<String> literals = new ArrayList<>();
+        literals.add(facilityFilterLiteral(request, facility, scope));
+        if (!normalizedDateCreatedFilter) {
+            literals.add(String.valueOf(range.startSec()));
+            literals.add(String.valueOf(range.endSec()));
+        }
+        literals.add(String.valueOf(range.startMs()));
+        literals.add(String.valueOf(range.endMs()));
+        String query = inlineParameters(exportServicesSql.get(scope), literals);
+
+        List<String> columns = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            ResultSetMetaData metaData = statement.getMetaData();
+            for (int column = 1; column <= metaData.getColumnCount(); column++) {
+                columns.add(metaData.getColumnLabel(column));
+            }
+        }
+
+        CopyOut copyOut = connection.unwrap(PGConnection.class).getCopyAPI().copyOut("COPY (" + query + ") TO STDOUT");
+        return new ServiceRowCopy(copyOut, columns, facility);
+    }
+
+    private String exportServicesQuery(FacilityScope scope) {
+        return serviceSelect(false, scope.joinsProviderLocations()) +
+                "WHERE " + scope.servicesFilter() + " " +
+                "AND " + dateCreatedFilter("s") + " " +
+                "ORDER BY " + dateCreatedSortKey("s") + " ASC, s.event_id ASC";
+    }
+
+    private static String facilityFilterLiteral(IntegrationRequest request, FacilityProviders facility, FacilityScope scope) {
+        return switch (scope) {
+            case PROVIDERS -> textArrayLiteral(facility.providersById().keySet());
+            case HFR_CODES -> {
+                Set<String> hfrCodes = new LinkedHashSet<>();
+                for (String hfrCode : request.getHfrCodes()) {
+                    hfrCodes.add(hfrCode.trim());
+                }
+                yield textArrayLiteral(hfrCodes);
+            }
+            case COUNCIL_CODE -> textLiteral(request.getCouncilCode().trim());
+            default -> textLiteral(request.getHfrCode());
+        };
+    }
+
+    private static String textLiteral(String value) {
+        // Escape-string syntax is parsed the same way whatever standard_conforming_strings is set to.
+        return "E'" + value.replace("\\", "\\\\").replace("'", "''") + "'";
+    }
+
+    private static String textArrayLiteral(Set<String> values) {
+        List<String> literals = new ArrayList<>();
+        for (String value : values) {
+            literals.add(textLiteral(value));
+        }
+        return "ARRAY[" + String.join(", ", literals) + "]::text[]";
+    }
+
+    private static String inlineParameters(String sql, List<String> literals) {
+        StringBuilder inlined = new StringBuilder(sql.length() + 64);
+        int literalIndex = 0;
+        for (int index = 0; index < sql.length(); index++) {
+            char character = sql.charAt(index);
+            if (character == '?') {
+                inlined.append(literals.get(literalIndex++));
+            } else {
+                inlined.append(character);
+            }
+        }
+        if (literalIndex != literals.size()) {
+            throw new IllegalStateException("Expected " + literals.size() + " parameters but found " + literalIndex);
+        }
+        return inlined.toString();
+    }
+
+    /**
+     * Services after {@code since} whose normalized {@code date_created} is at most {@code untilMillis}, oldest first.
+     * Callers pass a bound behind the current time so that a watermark taken from the last row never passes services
+     * still being committed with an earlier {@code date_created}.
+     */
+    public List<ServiceRow> findServiceChanges(Connection connection,
+                                               String hfrCode,
+                                               PageCursor since,
+                                               long untilMillis,
+                                               int limit,
+                                               FacilityProviders facility) throws SQLException {
+        FacilityScope scope = facility == null ? FacilityScope.HFR_CODE : FacilityScope.PROVIDERS;
+        try (PreparedStatement statement = connection.prepareStatement(serviceChangesSql.get(new QueryShape(scope, false, since != null)))) {
+            bindFacilityFilter(connection, statement, 1, hfrCode, facility);
+            return readServiceChanges(statement, 2, since, untilMillis, limit, facility);
+        }
+    }
+
+    public List<ServiceRow> findServiceChanges(Connection connection,
+                                               PageCursor since,
+                                               long untilMillis,
+                                               int limit) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(serviceChangesSql.get(new QueryShape(FacilityScope.ALL, false, since != null)))) {
+            return readServiceChanges(statement, 1, since, untilMillis, limit, null);
+        }
+    }
+
+    private static List<ServiceRow> readServiceChanges(PreparedStatement statement,
+                                                       int index,
+                                                       PageCursor since,
+                                                       long untilMillis,
+                                                       int limit,
+                                                       FacilityProviders facility) throws SQLException {
+        if (since != null) {
+            statement.setLong(index++, normalizeDateCreatedMillis(since.dateCreated()));
+            statement.setString(index++, since.eventId());
+        }
+        statement.setLong(index++, untilMillis);
+        statement.setInt(index, limit);
+
+        List<ServiceRow> rows = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                rows.add(readServiceRow(resultSet, facility));
+            }
+        }
+        return rows;
+    }
+
+    public void ensureConsumerWatermarkTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_VERIFICATION_LOG_SCHEMA_SQL);
+            statement.execute(CREATE_CONSUMER_WATERMARK_TABLE_SQL);
+        }
+    }
+
+    public Optional<String> findConsumerWatermark(Connection connection,
+                                                  String consumerId,
+                                                  String hfrCode) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(FIND_CONSUMER_WATERMARK_SQL)) {
+            statement.setString(1, consumerId);
+            statement.setString(2, hfrCode);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? Optional.ofNullable(resultSet.getString("watermark")) : Optional.empty();
+            }
+        }
+    }
+
+    public void saveConsumerWatermark(Connection connection,
+                                      String consumerId,
+                                      String hfrCode,
+                                      String watermark) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SAVE_CONSUMER_WATERMARK_SQL)) {
+            statement.setString(1, consumerId);
+            statement.setString(2, hfrCode);
+            statement.setString(3, watermark);
+            statement.executeUpdate();
+        }
+    }
+
+    public List<ServiceRow> findServicesForSourceChanges(Connection connection,
+                                                         Set<String> visitGroups,
+                                                         Set<String> baseEntityIds) throws SQLException {
+        if (visitGroups.isEmpty() && baseEntityIds.isEmpty()) {
+            return List.of();
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(servicesForSourceChangesSql)) {
+            statement.setArray(1, textArray(connection, visitGroups));
+            statement.setArray(2, textArray(connection, baseEntityIds));
+
+            List<ServiceRow> rows = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    rows.add(readServiceRow(resultSet, null));
+                }
+            }
+            return rows;
+        }
+    }
+
+    private String servicesForSourceChangesQuery() {
+        return serviceSelect(false, true) +
+                "WHERE s.hts_visit_group = ANY(?) OR s.base_entity_id = ANY(?) " +
+                "ORDER BY s.date_created ASC, s.event_id ASC";
+    }
+
+    /**
+     * Test rows after {@code since} whose normalized {@code date_created} is at most {@code untilMillis}, oldest first.
+     */
+    public List<SourceChange> findTestChanges(Connection connection,
+                                              PageCursor since,
+                                              long untilMillis,
+                                              int limit) throws SQLException {
+        return findSourceChanges(connection, since != null ? testChangesSinceSql : testChangesSql, since, untilMillis, limit);
+    }
+
+    /**
+     * The {@code cbhts_enrollment} counterpart of {@link #findTestChanges}; a new enrollment changes
+     * {@code eligibleForTesting} on every service of its client.
+     */
+    public List<SourceChange> findEnrollmentChanges(Connection connection,
+                                                    PageCursor since,
+                                                    long untilMillis,
+                                                    int limit) throws SQLException {
+        return findSourceChanges(connection, since != null ? enrollmentChangesSinceSql : enrollmentChangesSql, since, untilMillis, limit);
+    }
+
+    private static List<SourceChange> findSourceChanges(Connection connection,
+                                                        String sql,
+                                                        PageCursor since,
+                                                        long untilMillis,
+                                                        int limit) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int index = 1;
+            if (since != null) {
+                statement.setLong(index++, since.dateCreated());
+                statement.setString(index++, since.eventId());
+            }
+            statement.setLong(index++, untilMillis);
+            statement.setInt(index, limit);
+
+            List<SourceChange> changes = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    changes.add(new SourceChange(
                             resultSet.getString("event_id"),
-                            resultSet.getString("base_entity_id"),
                             resultSet.getString("hts_visit_group"),
-                            resultSet.getString("visit_date"),
-                            resultSet.getString("hts_visit_date"),
-                            resultSet.getLong("date_created"),
-                            resultSet.getString("provider_id"),
-                            resultSet.getString("hts_testing_approach"),
-                            resultSet.getString("hts_visit_type"),
-                            resultSet.getString("hts_has_the_client_recently_tested_with_hivst"),
-                            resultSet.getString("hts_previous_hivst_client_type"),
-                            resultSet.getString("hts_previous_hivst_test_type"),
-                            resultSet.getString("hts_previous_hivst_test_results"),
-                            resultSet.getString("hts_client_type"),
-                            resultSet.getString("hts_testing_point"),
-                            resultSet.getString("hts_type_of_counselling_provided"),
-                            resultSet.getString("hts_clients_tb_screening_outcome"),
-                            resultSet.getString("hts_has_post_test_counselling_been_provided"),
-                            resultSet.getString("hts_hiv_results_disclosure"),
-                            resultSet.getString("hts_were_condoms_distributed"),
-                            getNullableInteger(resultSet, "hts_number_of_male_condoms_provided"),
-                            getNullableInteger(resultSet, "hts_number_of_female_condoms_provided"),
-                            resultSet.getString("hts_preventive_services"),
-                            resultSet.getString("final_hiv_test_result"),
-                            resultSet.getString("unique_id"),
-                            resultSet.getString("first_name"),
-                            resultSet.getString("middle_name"),
-                            resultSet.getString("last_name"),
-                            resultSet.getString("phone_number"),
-                            resultSet.getString("national_id"),
-                            resultSet.getString("voter_id"),
-                            resultSet.getString("driver_license"),
-                            resultSet.getString("passport"),
-                            resultSet.getString("sex"),
-                            resultSet.getString("birth_date"),
-                            resultSet.getString("marital_status"),
-                            resultSet.getString("preg_1yr"),
+                            resultSet.getString("base_entity_id"),
+                            resultSet.getLong("date_created_ms")
+                    ));
+                }
+            }
+            return changes;
+        }
+    }
+
+    private String sourceChangesQuery(String table, boolean hasVisitGroup, boolean keyset) {
+        String normalizedDateCreated = normalizedDateCreated("t.");
+        return "SELECT t.event_id, " + (hasVisitGroup ? "t.hts_visit_group" : "NULL::text AS hts_visit_group") +
+                ", t.base_entity_id, " + normalizedDateCreated + " AS date_created_ms " +
+                "FROM " + schema + "." + table + " t " +
+                "WHERE " + (keyset ? "(" + normalizedDateCreated + ", t.event_id) > (?, ?) AND " : "") +
+                normalizedDateCreated + " <= ? " +
+                "ORDER BY " + normalizedDateCreated + " ASC, t.event_id ASC " +
+                "LIMIT ?";
+    }
+
+    public Optional<PageCursor> findLatestTestChange(Connection connection) throws SQLException {
+        return findLatestSourceChange(connection, latestTestChangeSql);
+    }
+
+    public Optional<PageCursor> findLatestEnrollmentChange(Connection connection) throws SQLException {
+        return findLatestSourceChange(connection, latestEnrollmentChangeSql);
+    }
+
+    private static Optional<PageCursor> findLatestSourceChange(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql);
+             ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next()
+                    ? Optional.of(new PageCursor(resultSet.getLong("date_created_ms"), resultSet.getString("event_id")))
+                    : Optional.empty();
+        }
+    }
+
+    private String latestSourceChangeQuery(String table) {
+        String normalizedDateCreated = normalizedDateCreated("t.");
+        return "SELECT t.event_id, " + normalizedDateCreated + " AS date_created_ms " +
+                "FROM " + schema + "." + table + " t " +
+                "ORDER BY " + normalizedDateCreated + " DESC, t.event_id DESC " +
+                "LIMIT 1";
+    }
+
+    public Map<String, String> findUnseenHivstResults(Connection connection, int limit) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(unseenHivstResultsSql)) {
+            statement.setInt(1, limit);
+
+            Map<String, String> baseEntityIdsByEventId = new LinkedHashMap<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    baseEntityIdsByEventId.put(resultSet.getString("event_id"), resultSet.getString("base_entity_id"));
+                }
+            }
+            return baseEntityIdsByEventId;
+        }
+    }
+
+    private String unseenHivstResultsQuery() {
+        return "SELECT r.event_id, r.base_entity_id " +
+                "FROM " + schema + ".hivst_results r " +
+                "WHERE NOT EXISTS (SELECT 1 FROM " + HTS_PAYLOAD_HIVST_SEEN_TABLE + " seen WHERE seen.event_id = r.event_id) " +
+                "LIMIT ?";
+    }
+
+    public void markHivstResultsSeen(Connection connection, Set<String> eventIds) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(MARK_HIVST_RESULTS_SEEN_SQL)) {
+            statement.setArray(1, textArray(connection, eventIds));
+            statement.executeUpdate();
+        }
+    }
+
+    public void markAllHivstResultsSeen(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(markAllHivstResultsSeenSql);
+        }
+    }
+
+    private String markAllHivstResultsSeenQuery() {
+        return "INSERT INTO " + HTS_PAYLOAD_HIVST_SEEN_TABLE + " (event_id) " +
+                "SELECT r.event_id FROM " + schema + ".hivst_results r ON CONFLICT (event_id) DO NOTHING";
+    }
+
+    public void ensureHtsPayloadTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_VERIFICATION_LOG_SCHEMA_SQL);
+            statement.execute(CREATE_HTS_PAYLOAD_TABLE_SQL);
+            statement.execute(CREATE_HTS_PAYLOAD_FACILITY_INDEX_SQL);
+            statement.execute(CREATE_HTS_PAYLOAD_COUNCIL_INDEX_SQL);
+            statement.execute(CREATE_HTS_PAYLOAD_WATERMARK_TABLE_SQL);
+            statement.execute(CREATE_HTS_PAYLOAD_HIVST_SEEN_TABLE_SQL);
+        }
+    }
+
+    public Optional<String> findHtsPayloadWatermark(Connection connection, String source) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(FIND_HTS_PAYLOAD_WATERMARK_SQL)) {
+            statement.setString(1, source);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? Optional.ofNullable(resultSet.getString("watermark")) : Optional.empty();
+            }
+        }
+    }
+
+    public void saveHtsPayloadWatermark(Connection connection, String source, String watermark) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SAVE_HTS_PAYLOAD_WATERMARK_SQL)) {
+            statement.setString(1, source);
+            statement.setString(2, watermark);
+            statement.executeUpdate();
+        }
+    }
+
+    public void deleteHtsPayloadWatermark(Connection connection, String source) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(DELETE_HTS_PAYLOAD_WATERMARK_SQL)) {
+            statement.setString(1, source);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Writes the payloads and returns how many rows were inserted or changed; a payload equal to the stored one is
+     * left untouched, so re-mapping a row that did not change costs no write.
+     */
+    public int upsertHtsPayloads(Connection connection, List<HtsPayloadRow> payloads) throws SQLException {
+        if (payloads.isEmpty()) {
+            return 0;
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(UPSERT_HTS_PAYLOAD_SQL)) {
+            for (HtsPayloadRow payload : payloads) {
+                statement.setString(1, payload.eventId());
+                statement.setString(2, payload.hfrCode());
+                statement.setString(3, payload.councilCode());
+                statement.setLong(4, payload.dateCreated());
+                statement.setString(5, payload.payload());
+                statement.addBatch();
+            }
+            int[] updateCounts = statement.executeBatch();
+            if (updateCounts == null) {
+                return 0;
+            }
+
+            int written = 0;
+            for (int updateCount : updateCounts) {
+                written += updateCount == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, updateCount);
+            }
+            return written;
+        }
+    }
+
+    public Map<String, Long> countHtsPayloadsByFacility(Connection connection, IntegrationRequest request) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(countHtsPayloadsSql.get(FacilityScope.of(request, null)))) {
+            DateCreatedTimeRange range = toDateCreatedRange(request.getStartDate(), request.getEndDate());
+
+            bindFacilityFilter(connection, statement, 1, request, null);
+            statement.setLong(2, range.startMs());
+            statement.setLong(3, range.endMs());
+
+            Map<String, Long> countsByFacility = new TreeMap<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    countsByFacility.put(resultSet.getString("hfr_code"), resultSet.getLong("total_records"));
+                }
+            }
+            return countsByFacility;
+        }
+    }
+
+    private static String countHtsPayloadsQuery(FacilityScope scope) {
+        return "SELECT p.hfr_code, COUNT(*) AS total_records " +
+                "FROM " + HTS_PAYLOAD_TABLE + " p " +
+                "WHERE " + scope.payloadFilter() + " " +
+                "AND p.date_created BETWEEN ? AND ? " +
+                "GROUP BY p.hfr_code";
+    }
+
+    public List<HtsPayloadRow> findHtsPayloads(Connection connection, IntegrationRequest request) throws SQLException {
+        return readHtsPayloads(connection, request, false).rows();
+    }
+
+    public HtsPayloadPage findHtsPayloadPageWithTotal(Connection connection, IntegrationRequest request) throws SQLException {
+        return readHtsPayloads(connection, request, true);
+    }
+
+    private HtsPayloadPage readHtsPayloads(Connection connection,
+                                           IntegrationRequest request,
+                                           boolean includeTotal) throws SQLException {
+        PageCursor cursor = request.getCursor() == null ? null : PageCursor.decode(request.getCursor());
+        QueryShape shape = new QueryShape(FacilityScope.of(request, null), includeTotal, cursor != null);
+
+        try (PreparedStatement statement = connection.prepareStatement(htsPayloadsSql.get(shape))) {
+            DateCreatedTimeRange range = toDateCreatedRange(request.getStartDate(), request.getEndDate());
+
+            bindFacilityFilter(connection, statement, 1, request, null);
+            statement.setLong(2, range.startMs());
+            statement.setLong(3, range.endMs());
+            int index = 4;
+            if (cursor != null) {
+                statement.setLong(index++, normalizeDateCreatedMillis(cursor.dateCreated()));
+                statement.setString(index++, cursor.eventId());
+                statement.setInt(index, request.getPageSize());
+            } else {
+                statement.setInt(index++, request.getPageSize());
+                statement.setInt(index, (request.getPageIndex() - 1) * request.getPageSize());
+            }
+
+            List<HtsPayloadRow> rows = new ArrayList<>();
+            Long totalRecords = null;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (includeTotal && totalRecords == null) {
+                        totalRecords = resultSet.getLong("total_records");
+                    }
+                    rows.add(new HtsPayloadRow(
+                            resultSet.getString("event_id"),
                             resultSet.getString("hfr_code"),
-                            resultSet.getString("region"),
-                            resultSet.getString("district"),
-                            resultSet.getString("provider_council_code"),
-                            resultSet.getString("ward"),
-                            resultSet.getString("household_village_code"),
-                            resultSet.getString("village"),
-                            resultSet.getString("counsellor_name")
+                            resultSet.getString("council_code"),
+                            resultSet.getLong("date_created"),
+                            resultSet.getString("payload")
                     ));
                 }
             }
-            return rows;
+            return new HtsPayloadPage(rows, totalRecords);
+        }
+    }
+
+    private static String htsPayloadsQuery(FacilityScope scope, boolean includeTotal, boolean keyset) {
+        return "SELECT p.event_id, p.hfr_code, p.council_code, p.date_created, p.payload::text AS payload" +
+                (includeTotal ? ", COUNT(*) OVER() AS total_records " : " ") +
+                "FROM " + HTS_PAYLOAD_TABLE + " p " +
+                "WHERE " + scope.payloadFilter() + " " +
+                "AND p.date_created BETWEEN ? AND ? " +
+                (keyset ? "AND (p.date_created, p.event_id) > (?, ?) " : "") +
+                "ORDER BY p.date_created ASC, p.event_id ASC " +
+                (keyset ? "LIMIT ?" : "LIMIT ? OFFSET ?");
+    }
+
+    private String servicesSql(IntegrationRequest request,
+                               PageCursor cursor,
+                               boolean includeTotal,
+                               FacilityProviders facility) {
+        QueryShape shape = new QueryShape(FacilityScope.of(request, facility), includeTotal, cursor != null);
+        ColumnGroups columns = ColumnGroups.of(RecordProjection.forRequest(request));
+        if (columns.equals(ColumnGroups.ALL)) {
+            return servicesSql.get(shape);
+        }
+        return projectedServicesSql.get(new ProjectedQueryShape(shape, columns));
+    }
+
+    private String servicesQuery(QueryShape shape, ColumnGroups columns) {
+        FacilityScope scope = shape.scope();
+        boolean keyset = shape.keyset();
+        return serviceSelect(shape.includeTotal(), scope.joinsProviderLocations(), columns) +
+                "WHERE " + scope.servicesFilter() + " " +
+                "AND " + dateCreatedFilter("s") + " " +
+                (keyset ? "AND (" + dateCreatedSortKey("s") + ", s.event_id) > (?, ?) " : "") +
+                "ORDER BY " + dateCreatedSortKey("s") + " ASC, s.event_id ASC " +
+                (keyset ? "LIMIT ?" : "LIMIT ? OFFSET ?");
+    }
+
+    private String serviceChangesQuery(FacilityScope scope, boolean keyset) {
+        String normalizedDateCreated = normalizedDateCreated("s.");
+        return serviceSelect(false, scope.joinsProviderLocations()) +
+                "WHERE " + scope.servicesFilter() + " " +
+                (keyset ? "AND (" + normalizedDateCreated + ", s.event_id) > (?, ?) " : "") +
+                "AND " + normalizedDateCreated + " <= ? " +
+                "ORDER BY " + normalizedDateCreated + " ASC, s.event_id ASC " +
+                "LIMIT ?";
+    }
+
+    private String serviceSelect(boolean includeTotal, boolean joinsProviderLocations) {
+        return serviceSelect(includeTotal, joinsProviderLocations, ColumnGroups.ALL);
+    }
+
+    /**
+     * Column groups left out of {@code columns} are selected as typed NULLs so every variant reads through
+     * {@link #readServiceRow}; their joins are dropped with them.
+     */
+    private String serviceSelect(boolean includeTotal, boolean joinsProviderLocations, ColumnGroups columns) {
+        return "SELECT " +
+                "s.event_id, s.base_entity_id, s.hts_visit_group, s.visit_date, s.hts_visit_date, s.date_created, " +
+                (joinsProviderLocations ? "tm.identifier AS provider_id, " : "s.provider_id, ") +
+                selectColumns(columns.service(), "s", SERVICE_DETAIL_COLUMNS) + ", " +
+                selectColumns(columns.client(), "c", CLIENT_COLUMNS) + ", " +
+                (columns.household() ? "hl.village_code" : "NULL::text") + " AS household_village_code" +
+                (joinsProviderLocations ? ", " + PROVIDER_LOCATION_COLUMNS : "") +
+                (includeTotal ? ", COUNT(*) OVER() AS total_records " : " ") +
+                "FROM " + schema + ".cbhts_services s " +
+                (joinsProviderLocations ? providerLocationJoins() : "") +
+                (columns.household()
+                        ? "LEFT JOIN " + schema + ".household h ON h.primary_caregiver = s.base_entity_id " +
+                        "LEFT JOIN " + schema + ".tanzania_locations hl ON hl.location_uuid = NULLIF(TRIM(h.location_id), '') "
+                        : "") +
+                (columns.client() ? "LEFT JOIN " + schema + ".client c ON c.base_entity_id = s.base_entity_id " : "");
+    }
+
+    private static String selectColumns(boolean selected, String alias, List<String> columns) {
+        List<String> expressions = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            expressions.add(selected ? alias + "." + column : "NULL::text AS " + column);
         }
+        return String.join(", ", expressions);
+    }
+
+    private String providerLocationJoins(FacilityScope scope) {
+        return scope.joinsProviderLocations() ? providerLocationJoins() : "";
+    }
+
+    private String providerLocationJoins() {
+        return "JOIN " + schema + ".team_members tm ON tm.identifier = s.provider_id " +
+                "JOIN " + schema + ".tanzania_locations l ON l.location_uuid = tm.location_uuid ";
+    }
+
+    private static void bindFacilityFilter(Connection connection,
+                                           PreparedStatement statement,
+                                           int index,
+                                           IntegrationRequest request,
+                                           FacilityProviders facility) throws SQLException {
+        if (facility == null && hasText(request.getCouncilCode())) {
+            statement.setString(index, request.getCouncilCode().trim());
+        } else if (facility == null && request.getHfrCodes() != null) {
+            Set<String> hfrCodes = new LinkedHashSet<>();
+            for (String hfrCode : request.getHfrCodes()) {
+                hfrCodes.add(hfrCode.trim());
+            }
+            statement.setArray(index, textArray(connection, hfrCodes));
+        } else {
+            bindFacilityFilter(connection, statement, index, request.getHfrCode(), facility);
+        }
+    }
+
+    private static void bindFacilityFilter(Connection connection,
+                                           PreparedStatement statement,
+                                           int index,
+                                           String hfrCode,
+                                           FacilityProviders facility) throws SQLException {
+        if (facility == null) {
+            statement.setString(index, hfrCode);
+        } else {
+            statement.setArray(index, textArray(connection, facility.providersById().keySet()));
+        }
+    }
+
+    private int bindServicesQuery(Connection connection,
+                                  PreparedStatement statement,
+                                  IntegrationRequest request,
+                                  PageCursor cursor,
+                                  FacilityProviders facility) throws SQLException {
+        DateCreatedTimeRange range = toDateCreatedRange(request.getStartDate(), request.getEndDate());
+
+        bindFacilityFilter(connection, statement, 1, request, facility);
+        int index = bindDateCreatedRange(statement, 2, range);
+        if (cursor != null) {
+            statement.setLong(index++, normalizeDateCreatedMillis(cursor.dateCreated()));
+            statement.setString(index++, cursor.eventId());
+            statement.setInt(index++, request.getPageSize());
+        } else {
+            statement.setInt(index++, request.getPageSize());
+            statement.setInt(index++, (request.getPageIndex() - 1) * request.getPageSize());
+        }
+        return index;
+    }
+
+    private static ServiceRow readServiceRow(ResultSet resultSet, FacilityProviders facility) throws SQLException {
+        return readServiceRow(new ResultSetColumns(resultSet), facility);
+    }
+
+    private static ServiceRow readServiceRow(ServiceColumns resultSet, FacilityProviders facility) throws SQLException {
+        ProviderLocation provider = facility == null
+                ? readProviderLocation(resultSet)
+                : facility.provider(resultSet.getString("provider_id"));
+
+        return new ServiceRow(
+                resultSet.getString("event_id"),
+                resultSet.getString("base_entity_id"),
+                resultSet.getString("hts_visit_group"),
+                resultSet.getString("visit_date"),
+                resultSet.getString("hts_visit_date"),
+                resultSet.getLong("date_created"),
+                provider.providerId(),
+                resultSet.getString("hts_testing_approach"),
+                resultSet.getString("hts_visit_type"),
+                resultSet.getString("hts_has_the_client_recently_tested_with_hivst"),
+                resultSet.getString("hts_previous_hivst_client_type"),
+                resultSet.getString("hts_previous_hivst_test_type"),
+                resultSet.getString("hts_previous_hivst_test_results"),
+                resultSet.getString("hts_client_type"),
+                resultSet.getString("hts_testing_point"),
+                resultSet.getString("hts_type_of_counselling_provided"),
+                resultSet.getString("hts_clients_tb_screening_outcome"),
+                resultSet.getString("hts_has_post_test_counselling_been_provided"),
+                resultSet.getString("hts_hiv_results_disclosure"),
+                resultSet.getString("hts_were_condoms_distributed"),
+                resultSet.getNullableInteger("hts_number_of_male_condoms_provided"),
+                resultSet.getNullableInteger("hts_number_of_female_condoms_provided"),
+                resultSet.getString("hts_preventive_services"),
+                resultSet.getString("final_hiv_test_result"),
+                resultSet.getString("unique_id"),
+                resultSet.getString("first_name"),
+                resultSet.getString("middle_name"),
+                resultSet.getString("last_name"),
+                resultSet.getString("phone_number"),
+                resultSet.getString("national_id"),
+                resultSet.getString("voter_id"),
+                resultSet.getString("driver_license"),
+                resultSet.getString("passport"),
+                resultSet.getString("sex"),
+                resultSet.getString("birth_date"),
+                resultSet.getString("marital_status"),
+                resultSet.getString("preg_1yr"),
+                provider.hfrCode(),
+                provider.region(),
+                provider.district(),
+                provider.councilCode(),
+                provider.ward(),
+                resultSet.getString("household_village_code"),
+                provider.village(),
+                provider.counsellorName()
+        );
+    }
+
+    private static ProviderLocation readProviderLocation(ResultSet resultSet) throws SQLException {
+        return readProviderLocation(new ResultSetColumns(resultSet));
+    }
+
+    private static ProviderLocation readProviderLocation(ServiceColumns resultSet) throws SQLException {
+        return new ProviderLocation(
+                resultSet.getString("provider_id"),
+                resultSet.getString("counsellor_name"),
+                resultSet.getString("hfr_code"),
+                resultSet.getString("region"),
+                resultSet.getString("district"),
+                resultSet.getString("provider_council_code"),
+                resultSet.getString("ward"),
+                resultSet.getString("village")
+        );
     }
 
     public Map<String, List<TestRow>> findTestsForServices(Connection connection,
@@ -256,63 +1562,21 @@ public class OpenSrpIntegrationRepository {
         }
 
         if (visitGroups.isEmpty() && baseEntityIds.isEmpty()) {
-            return Map.of();
-        }
-
-        StringBuilder query = new StringBuilder();
-        query.append("SELECT t.event_id, t.hts_visit_group, t.base_entity_id, t.type_of_test_kit_used, t.test_kit_batch_number, ")
-                .append("t.test_kit_expire_date, t.test_result, t.syphilis_test_results, t.test_type, t.date_created ")
-                .append("FROM ").append(schema).append(".cbhts_tests t ")
-                .append("WHERE ((t.date_created BETWEEN ? AND ?) OR (t.date_created BETWEEN ? AND ?)) AND (");
-
-        if (!visitGroups.isEmpty()) {
-            query.append("t.hts_visit_group IN (").append(placeholders(visitGroups.size())).append(")");
-        }
-
-        if (!visitGroups.isEmpty() && !baseEntityIds.isEmpty()) {
-            query.append(" OR ");
-        }
-
-        if (!baseEntityIds.isEmpty()) {
-            query.append("(t.hts_visit_group IS NULL AND t.base_entity_id IN (")
-                    .append(placeholders(baseEntityIds.size()))
-                    .append("))");
+            return Map.of();
         }
 
-        query.append(") ORDER BY t.date_created ASC, t.event_id ASC");
-
-        try (PreparedStatement statement = connection.prepareStatement(query.toString())) {
-            int index = 1;
+        try (PreparedStatement statement = connection.prepareStatement(testsSql)) {
             DateCreatedTimeRange range = toDateCreatedRange(startDate, endDate);
 
-            statement.setLong(index++, range.startSec());
-            statement.setLong(index++, range.endSec());
-            statement.setLong(index++, range.startMs());
-            statement.setLong(index++, range.endMs());
-
-            for (String visitGroup : visitGroups) {
-                statement.setString(index++, visitGroup);
-            }
-            for (String baseEntityId : baseEntityIds) {
-                statement.setString(index++, baseEntityId);
-            }
+            int index = bindDateCreatedRange(statement, 1, range);
+            statement.setArray(index++, textArray(connection, visitGroups));
+            statement.setArray(index, textArray(connection, baseEntityIds));
 
             Map<String, List<TestRow>> groupedTests = new HashMap<>();
 
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
-                    TestRow testRow = new TestRow(
-                            resultSet.getString("event_id"),
-                            resultSet.getString("hts_visit_group"),
-                            resultSet.getString("base_entity_id"),
-                            resultSet.getString("type_of_test_kit_used"),
-                            resultSet.getString("test_kit_batch_number"),
-                            resultSet.getString("test_kit_expire_date"),
-                            resultSet.getString("test_result"),
-                            resultSet.getString("syphilis_test_results"),
-                            resultSet.getString("test_type"),
-                            resultSet.getLong("date_created")
-                    );
+                    TestRow testRow = readTestRow(new ResultSetColumns(resultSet));
 
                     groupedTests.computeIfAbsent(testKey(testRow.htsVisitGroup(), testRow.baseEntityId()), unused -> new ArrayList<>())
                             .add(testRow);
@@ -323,6 +1587,34 @@ public class OpenSrpIntegrationRepository {
         }
     }
 
+    private static TestRow readTestRow(ServiceColumns columns) throws SQLException {
+        return new TestRow(
+                columns.getString("event_id"),
+                columns.getString("hts_visit_group"),
+                columns.getString("base_entity_id"),
+                columns.getString("type_of_test_kit_used"),
+                columns.getString("test_kit_batch_number"),
+                columns.getString("test_kit_expire_date"),
+                columns.getString("test_result"),
+                columns.getString("syphilis_test_results"),
+                columns.getString("test_type"),
+                columns.getLong("date_created")
+        );
+    }
+
+    private String testsQuery() {
+        return testsSelect("(t.hts_visit_group = ANY(?) OR (t.hts_visit_group IS NULL AND t.base_entity_id = ANY(?)))") +
+                "ORDER BY t.date_created ASC, t.event_id ASC";
+    }
+
+    private String testsSelect(String serviceFilter) {
+        return "SELECT t.event_id, t.hts_visit_group, t.base_entity_id, t.type_of_test_kit_used, t.test_kit_batch_number, " +
+                "t.test_kit_expire_date, t.test_result, t.syphilis_test_results, t.test_type, t.date_created " +
+                "FROM " + schema + ".cbhts_tests t " +
+                "WHERE " + dateCreatedFilter("t") + " " +
+                "AND " + serviceFilter + " ";
+    }
+
     public Map<String, List<HivstSelfTestRow>> findHivstTestByBaseEntity(Connection connection,
                                                                           List<ServiceRow> serviceRows) throws SQLException {
         Set<String> baseEntityIds = new HashSet<>();
@@ -336,7 +1628,50 @@ public class OpenSrpIntegrationRepository {
             return Map.of();
         }
 
-        String sql = "SELECT " +
+        try (PreparedStatement statement = connection.prepareStatement(hivstSql)) {
+            statement.setArray(1, textArray(connection, baseEntityIds));
+
+            Map<String, List<HivstSelfTestRow>> rowsByBaseEntity = new HashMap<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    HivstSelfTestRow row = readHivstSelfTestRow(new ResultSetColumns(resultSet));
+
+                    if (!hasText(row.baseEntityId())) {
+                        continue;
+                    }
+
+                    rowsByBaseEntity.computeIfAbsent(row.baseEntityId(), unused -> new ArrayList<>()).add(row);
+                }
+            }
+
+            return rowsByBaseEntity;
+        }
+    }
+
+    private static HivstSelfTestRow readHivstSelfTestRow(ServiceColumns columns) throws SQLException {
+        return new HivstSelfTestRow(
+                columns.getString("result_event_id"),
+                columns.getString("result_event_date"),
+                columns.getString("base_entity_id"),
+                columns.getString("kit_for"),
+                columns.getString("result_kit_code"),
+                columns.getString("hivst_result"),
+                columns.getString("result_date"),
+                columns.getString("register_to_hts"),
+                columns.getString("issue_event_id"),
+                columns.getString("issue_event_date"),
+                columns.getString("kit_batch_number"),
+                columns.getString("kit_expiry_date")
+        );
+    }
+
+    private String hivstQuery() {
+        return hivstSelect("r.base_entity_id = ANY(?)") +
+                "ORDER BY r.base_entity_id ASC, r.result_date ASC, r.event_id ASC";
+    }
+
+    private String hivstSelect(String baseEntityFilter) {
+        return "SELECT " +
                 "r.event_id AS result_event_id, " +
                 "r.event_date AS result_event_date, " +
                 "r.base_entity_id, " +
@@ -364,42 +1699,150 @@ public class OpenSrpIntegrationRepository {
                 "    WHEN r.kit_for = 'sexual_partner' THEN k.sexual_partner_kit_code " +
                 "    WHEN r.kit_for IN ('peer_friend','peer_fried') THEN k.peer_friend_kit_code " +
                 "END " +
-                "WHERE r.base_entity_id IN (" + placeholders(baseEntityIds.size()) + ") " +
-                "ORDER BY r.base_entity_id ASC, r.result_date ASC, r.event_id ASC";
+                "WHERE " + baseEntityFilter + " ";
+    }
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            int index = 1;
-            for (String baseEntityId : baseEntityIds) {
-                statement.setString(index++, baseEntityId);
-            }
+    /**
+     * The bounded counterpart of {@link #findHivstTestByBaseEntity}: only results whose kit was issued on one of the
+     * given visit dates, at most {@code limitPerVisit} per visit (the latest ones), paired through
+     * {@code ctc_integration.hivst_kit_pairings} with an indexed equality instead of the {@code CASE} join.
+     * Results of issue events the pairing job has not copied yet are added through the direct join, for every
+     * visit date, and left for the mapper to match against the visit.
+     */
+    public Map<String, List<HivstSelfTestRow>> findHivstTestsForVisits(Connection connection,
+                                                                       Collection<HivstVisit> visits,
+                                                                       int limitPerVisit) throws SQLException {
+        if (visits.isEmpty()) {
+            return Map.of();
+        }
+
+        String[] baseEntityIds = new String[visits.size()];
+        Date[] visitDates = new Date[visits.size()];
+        int index = 0;
+        for (HivstVisit visit : visits) {
+            baseEntityIds[index] = visit.baseEntityId();
+            visitDates[index] = Date.valueOf(visit.visitDate());
+            index++;
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(hivstForVisitsSql)) {
+            statement.setArray(1, connection.createArrayOf("text", baseEntityIds));
+            statement.setArray(2, connection.createArrayOf("date", visitDates));
+            statement.setInt(3, limitPerVisit);
+            statement.setArray(4, connection.createArrayOf("text", baseEntityIds));
 
             Map<String, List<HivstSelfTestRow>> rowsByBaseEntity = new HashMap<>();
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
-                    HivstSelfTestRow row = new HivstSelfTestRow(
-                            resultSet.getString("result_event_id"),
-                            resultSet.getString("result_event_date"),
-                            resultSet.getString("base_entity_id"),
-                            resultSet.getString("kit_for"),
-                            resultSet.getString("result_kit_code"),
-                            resultSet.getString("hivst_result"),
-                            resultSet.getString("result_date"),
-                            resultSet.getString("register_to_hts"),
+                    HivstSelfTestRow row = readHivstSelfTestRow(new ResultSetColumns(resultSet));
+                    rowsByBaseEntity.computeIfAbsent(row.baseEntityId(), unused -> new ArrayList<>()).add(row);
+                }
+            }
+            return rowsByBaseEntity;
+        }
+    }
+
+    private String hivstForVisitsQuery() {
+        return "SELECT h.* FROM (" +
+                "SELECT paired.* FROM (" +
+                "SELECT DISTINCT v.base_entity_id, v.visit_date FROM unnest(?::text[], ?::date[]) AS v(base_entity_id, visit_date)" +
+                ") v " +
+                "CROSS JOIN LATERAL (SELECT " +
+                "r.event_id AS result_event_id, " +
+                "r.event_date AS result_event_date, " +
+                "r.base_entity_id, " +
+                "r.kit_for, " +
+                "r.kit_code AS result_kit_code, " +
+                "r.hivst_result, " +
+                "r.result_date, " +
+                "r.register_to_hts, " +
+                "p.issue_event_id, " +
+                "p.issue_event_date, " +
+                "p.kit_batch_number, " +
+                "p.kit_expiry_date " +
+                "FROM " + HIVST_KIT_PAIRING_TABLE + " p " +
+                "JOIN " + schema + ".hivst_results r ON r.base_entity_id = p.base_entity_id AND r.kit_code = p.kit_code " +
+                "AND (r.kit_for = p.kit_for OR (p.kit_for = 'peer_friend' AND r.kit_for = 'peer_fried')) " +
+                "WHERE p.base_entity_id = v.base_entity_id AND p.issue_date = v.visit_date " +
+                "ORDER BY r.result_date DESC, r.event_id DESC " +
+                "LIMIT ?) paired " +
+                "UNION ALL " +
+                hivstSelect("r.base_entity_id = ANY(?::text[]) " +
+                        "AND NOT EXISTS (SELECT 1 FROM " + HIVST_KIT_PAIRING_TABLE + " p WHERE p.issue_event_id = k.event_id)") +
+                ") h " +
+                "ORDER BY h.base_entity_id ASC, h.result_date ASC, h.result_event_id ASC";
+    }
+
+    public void ensureHivstKitPairingTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_VERIFICATION_LOG_SCHEMA_SQL);
+            statement.execute(CREATE_HIVST_KIT_PAIRING_TABLE_SQL);
+            statement.execute(CREATE_HIVST_KIT_PAIRING_INDEX_SQL);
+        }
+    }
+
+    /**
+     * Up to {@code limit} kit slots ({@code client}, {@code sexual_partner}, {@code peer_friend}) of issue events whose
+     * row in {@code ctc_integration.hivst_kit_pairings} is missing or no longer matches the issue event, so corrected
+     * events are paired again; {@code issueDate} is left for the caller.
+     */
+    public List<HivstKitPairing> findChangedHivstIssueKits(Connection connection, int limit) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(changedHivstIssueKitsSql)) {
+            statement.setInt(1, limit);
+            List<HivstKitPairing> pairings = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    pairings.add(new HivstKitPairing(
                             resultSet.getString("issue_event_id"),
+                            resultSet.getString("kit_for"),
+                            resultSet.getString("base_entity_id"),
+                            resultSet.getString("kit_code"),
                             resultSet.getString("issue_event_date"),
                             resultSet.getString("kit_batch_number"),
-                            resultSet.getString("kit_expiry_date")
-                    );
-
-                    if (!hasText(row.baseEntityId())) {
-                        continue;
-                    }
-
-                    rowsByBaseEntity.computeIfAbsent(row.baseEntityId(), unused -> new ArrayList<>()).add(row);
+                            resultSet.getString("kit_expiry_date"),
+                            null
+                    ));
                 }
             }
+            return pairings;
+        }
+    }
 
-            return rowsByBaseEntity;
+    private String changedHivstIssueKitsQuery() {
+        return "SELECT k.event_id AS issue_event_id, slot.kit_for, k.base_entity_id, slot.kit_code, " +
+                "k.event_date AS issue_event_date, slot.kit_batch_number, slot.kit_expiry_date " +
+                "FROM " + schema + ".hivst_issue_kits k " +
+                "CROSS JOIN LATERAL (VALUES " +
+                "('client', k.kit_code, k.client_kit_batch_number, k.client_kit_expiry_date), " +
+                "('sexual_partner', k.sexual_partner_kit_code, k.sexual_partner_kit_batch_number, k.sexual_partner_kit_expiry_date), " +
+                "('peer_friend', k.peer_friend_kit_code, k.peer_friend_kit_batch_number, k.peer_friend_kit_expiry_date)" +
+                ") AS slot(kit_for, kit_code, kit_batch_number, kit_expiry_date) " +
+                "WHERE NOT EXISTS (SELECT 1 FROM " + HIVST_KIT_PAIRING_TABLE + " p " +
+                "WHERE p.issue_event_id = k.event_id AND p.kit_for = slot.kit_for " +
+                "AND (p.base_entity_id, p.kit_code, p.issue_event_date, p.kit_batch_number, p.kit_expiry_date) IS NOT DISTINCT FROM " +
+                "(k.base_entity_id, slot.kit_code, k.event_date, slot.kit_batch_number, slot.kit_expiry_date)) " +
+                "ORDER BY k.event_id ASC, slot.kit_for ASC " +
+                "LIMIT ?";
+    }
+
+    public void upsertHivstKitPairings(Connection connection, List<HivstKitPairing> pairings) throws SQLException {
+        if (pairings.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(UPSERT_HIVST_KIT_PAIRING_SQL)) {
+            for (HivstKitPairing pairing : pairings) {
+                statement.setString(1, pairing.issueEventId());
+                statement.setString(2, pairing.kitFor());
+                statement.setString(3, pairing.baseEntityId());
+                statement.setString(4, pairing.kitCode());
+                statement.setString(5, pairing.issueEventDate());
+                statement.setDate(6, pairing.issueDate() == null ? null : Date.valueOf(pairing.issueDate()));
+                statement.setString(7, pairing.kitBatchNumber());
+                statement.setString(8, pairing.kitExpiryDate());
+                statement.addBatch();
+            }
+            statement.executeBatch();
         }
     }
 
@@ -421,16 +1864,8 @@ public class OpenSrpIntegrationRepository {
             return Map.of();
         }
 
-        String sql = "SELECT e.base_entity_id, e.eligibility_for_testing, e.date_created, e.event_id " +
-                "FROM " + schema + ".cbhts_enrollment e " +
-                "WHERE e.base_entity_id IN (" + placeholders(baseEntityIds.size()) + ") " +
-                "ORDER BY e.base_entity_id ASC, e.date_created DESC NULLS LAST, e.event_id DESC";
-
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            int index = 1;
-            for (String baseEntityId : baseEntityIds) {
-                statement.setString(index++, baseEntityId);
-            }
+        try (PreparedStatement statement = connection.prepareStatement(enrollmentSql)) {
+            statement.setArray(1, textArray(connection, baseEntityIds));
 
             Map<String, Boolean> eligibilityByBaseEntity = new HashMap<>();
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -449,6 +1884,25 @@ public class OpenSrpIntegrationRepository {
         }
     }
 
+    private String enrollmentQuery() {
+        return "SELECT e.base_entity_id, e.eligibility_for_testing, e.date_created, e.event_id " +
+                "FROM " + schema + ".cbhts_enrollment e " +
+                "WHERE e.base_entity_id = ANY(?) " +
+                "ORDER BY e.base_entity_id ASC, e.date_created DESC NULLS LAST, e.event_id DESC";
+    }
+
+    public static long normalizeDateCreatedMillis(long dateCreated) {
+        return isEpochMillis(dateCreated) ? dateCreated : secondsToMillis(dateCreated);
+    }
+
+    /**
+     * The last millisecond an inclusive {@code endDate} covers: the value itself in milliseconds, or the end of
+     * its second when it is in seconds.
+     */
+    public static long normalizeDateCreatedEndMillis(long endDate) {
+        return isEpochMillis(endDate) ? endDate : inclusiveSecondsToMillisEnd(endDate);
+    }
+
     public static String serviceKey(ServiceRow serviceRow) {
         return testKey(serviceRow.htsVisitGroup(), serviceRow.baseEntityId());
     }
@@ -460,12 +1914,40 @@ public class OpenSrpIntegrationRepository {
         return "entity:" + baseEntityId;
     }
 
-    private static String placeholders(int count) {
-        StringJoiner joiner = new StringJoiner(",");
-        for (int i = 0; i < count; i++) {
-            joiner.add("?");
+    private static Array textArray(Connection connection, Set<String> values) throws SQLException {
+        return connection.createArrayOf("text", values.toArray(new String[0]));
+    }
+
+    private String dateCreatedFilter(String alias) {
+        if (normalizedDateCreatedFilter) {
+            return normalizedDateCreated(alias + ".") + " BETWEEN ? AND ?";
+        }
+        return "((" + alias + ".date_created BETWEEN ? AND ?) OR (" + alias + ".date_created BETWEEN ? AND ?))";
+    }
+
+    /**
+     * Every mode sorts and seeks on epoch milliseconds, the unit of the payload table and of every cursor, so a walk
+     * can move between the live and payload paths. In normalized mode the filter uses the same expression and its
+     * index serves the range, the order and the keyset.
+     */
+    private static String dateCreatedSortKey(String alias) {
+        return normalizedDateCreated(alias + ".");
+    }
+
+    private int bindDateCreatedRange(PreparedStatement statement,
+                                     int index,
+                                     DateCreatedTimeRange range) throws SQLException {
+        if (!normalizedDateCreatedFilter) {
+            statement.setLong(index++, range.startSec());
+            statement.setLong(index++, range.endSec());
         }
-        return joiner.toString();
+        statement.setLong(index++, range.startMs());
+        statement.setLong(index++, range.endMs());
+        return index;
+    }
+
+    private static String normalizedDateCreated(String qualifier) {
+        return String.format(NORMALIZED_DATE_CREATED_EXPRESSION, qualifier);
     }
 
     private static DateCreatedTimeRange toDateCreatedRange(long startDate, long endDate) {
@@ -475,7 +1957,7 @@ public class OpenSrpIntegrationRepository {
         long startSec = startIsMillis ? millisToSeconds(startDate) : startDate;
         long endSec = endIsMillis ? millisToSeconds(endDate) : endDate;
         long startMs = startIsMillis ? startDate : secondsToMillis(startDate);
-        long endMs = endIsMillis ? endDate : inclusiveSecondsToMillisEnd(endDate);
+        long endMs = normalizeDateCreatedEndMillis(endDate);
 
         return new DateCreatedTimeRange(startSec, endSec, startMs, endMs);
     }
@@ -535,6 +2017,214 @@ public class OpenSrpIntegrationRepository {
         return true;
     }
 
+    private interface ServiceColumns {
+        String getString(String column) throws SQLException;
+
+        long getLong(String column) throws SQLException;
+
+        Integer getNullableInteger(String column) throws SQLException;
+    }
+
+    private record ResultSetColumns(ResultSet resultSet) implements ServiceColumns {
+        @Override
+        public String getString(String column) throws SQLException {
+            return resultSet.getString(column);
+        }
+
+        @Override
+        public long getLong(String column) throws SQLException {
+            return resultSet.getLong(column);
+        }
+
+        @Override
+        public Integer getNullableInteger(String column) throws SQLException {
+            return OpenSrpIntegrationRepository.getNullableInteger(resultSet, column);
+        }
+    }
+
+    /**
+     * One row of {@code COPY ... TO STDOUT} text output: tab separated, {@code \N} for NULL and backslash escapes.
+     */
+    private record CopiedColumns(Map<String, Integer> columnIndexes, String[] values) implements ServiceColumns {
+        static CopiedColumns parse(Map<String, Integer> columnIndexes, byte[] line) {
+            String[] values = new String[columnIndexes.size()];
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            int column = 0;
+            boolean isNull = false;
+            int end = line.length > 0 && line[line.length - 1] == '\n' ? line.length - 1 : line.length;
+            for (int index = 0; index <= end; index++) {
+                if (index == end || line[index] == '\t') {
+                    if (column < values.length) {
+                        values[column] = isNull ? null : value.toString(StandardCharsets.UTF_8);
+                    }
+                    column++;
+                    value.reset();
+                    isNull = false;
+                } else if (line[index] == '\\' && index + 1 < end) {
+                    byte escaped = line[++index];
+                    switch (escaped) {
+                        case 'N' -> isNull = true;
+                        case 'b' -> value.write('\b');
+                        case 'f' -> value.write('\f');
+                        case 'n' -> value.write('\n');
+                        case 'r' -> value.write('\r');
+                        case 't' -> value.write('\t');
+                        case 'v' -> value.write(0x0B);
+                        default -> value.write(escaped);
+                    }
+                } else {
+                    value.write(line[index]);
+                }
+            }
+            if (column != values.length) {
+                throw new IllegalStateException("COPY row has " + column + " columns, expected " + values.length);
+            }
+            return new CopiedColumns(columnIndexes, values);
+        }
+
+        @Override
+        public String getString(String column) throws SQLException {
+            Integer index = columnIndexes.get(column);
+            if (index == null) {
+                throw new SQLException("Column not found in COPY output: " + column);
+            }
+            return values[index];
+        }
+
+        @Override
+        public long getLong(String column) throws SQLException {
+            String value = getString(column);
+            return value == null ? 0L : Long.parseLong(value);
+        }
+
+        @Override
+        public Integer getNullableInteger(String column) throws SQLException {
+            String value = getString(column);
+            return value == null ? null : Integer.valueOf(value);
+        }
+    }
+
+    /**
+     * One object of a {@code json_agg(to_json(row))} array, keyed by the aggregated subquery's column labels.
+     */
+    private record JsonColumns(Map<String, Object> values) implements ServiceColumns {
+        @Override
+        public String getString(String column) {
+            Object value = values.get(column);
+            return value == null ? null : String.valueOf(value);
+        }
+
+        @Override
+        public long getLong(String column) {
+            Object value = values.get(column);
+            if (value instanceof Number number) {
+                return number.longValue();
+            }
+            return value == null ? 0L : Long.parseLong(String.valueOf(value));
+        }
+
+        @Override
+        public Integer getNullableInteger(String column) {
+            Object value = values.get(column);
+            if (value instanceof Number number) {
+                return number.intValue();
+            }
+            return value == null ? null : Integer.valueOf(String.valueOf(value));
+        }
+    }
+
+    @FunctionalInterface
+    private interface AggregatedRowReader<T> {
+        T read(ServiceColumns columns) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface StatementBinder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    private enum FacilityScope {
+        ALL("TRUE", null),
+        HFR_CODE("l.hfr_code = ?", "p.hfr_code = ?"),
+        HFR_CODES("l.hfr_code = ANY(?)", "p.hfr_code = ANY(?)"),
+        COUNCIL_CODE("l.council_code = ?", "p.council_code = ?"),
+        PROVIDERS("s.provider_id = ANY(?)", null);
+
+        private final String servicesFilter;
+        private final String payloadFilter;
+
+        FacilityScope(String servicesFilter, String payloadFilter) {
+            this.servicesFilter = servicesFilter;
+            this.payloadFilter = payloadFilter;
+        }
+
+        static FacilityScope of(IntegrationRequest request, FacilityProviders facility) {
+            if (facility != null) {
+                return PROVIDERS;
+            }
+            if (hasText(request.getCouncilCode())) {
+                return COUNCIL_CODE;
+            }
+            return request.getHfrCodes() != null ? HFR_CODES : HFR_CODE;
+        }
+
+        String servicesFilter() {
+            return servicesFilter;
+        }
+
+        String payloadFilter() {
+            return payloadFilter;
+        }
+
+        boolean joinsProviderLocations() {
+            return this != PROVIDERS;
+        }
+    }
+
+    private record QueryShape(FacilityScope scope, boolean includeTotal, boolean keyset) {
+    }
+
+    private record ProjectedQueryShape(QueryShape shape, ColumnGroups columns) {
+    }
+
+    private record LookupQueryShape(QueryShape shape, ColumnGroups columns, boolean tests, boolean hivst, boolean enrollment) {
+    }
+
+    /**
+     * The optional column groups of the services query: the HTS service details, the client table and the
+     * household village.
+     */
+    private record ColumnGroups(boolean service, boolean client, boolean household) {
+        static final ColumnGroups ALL = new ColumnGroups(true, true, true);
+        static final List<ColumnGroups> NARROWED = narrowed();
+
+        static ColumnGroups of(RecordProjection projection) {
+            if (projection.isAll()) {
+                return ALL;
+            }
+            return new ColumnGroups(
+                    projection.needsServiceColumns(),
+                    projection.needsClientColumns(),
+                    projection.needsHouseholdColumns()
+            );
+        }
+
+        private static List<ColumnGroups> narrowed() {
+            List<ColumnGroups> narrowed = new ArrayList<>();
+            for (boolean service : new boolean[]{false, true}) {
+                for (boolean client : new boolean[]{false, true}) {
+                    for (boolean household : new boolean[]{false, true}) {
+                        ColumnGroups columns = new ColumnGroups(service, client, household);
+                        if (!columns.equals(ALL)) {
+                            narrowed.add(columns);
+                        }
+                    }
+                }
+            }
+            return List.copyOf(narrowed);
+        }
+    }
+
     private record DateCreatedTimeRange(
             long startSec,
             long endSec,
@@ -543,6 +2233,28 @@ public class OpenSrpIntegrationRepository {
     ) {
     }
 
+    public record ProviderLocation(
+            String providerId,
+            String counsellorName,
+            String hfrCode,
+            String region,
+            String district,
+            String councilCode,
+            String ward,
+            String village
+    ) {
+    }
+
+    public record FacilityProviders(String hfrCode, Map<String, ProviderLocation> providersById) {
+        public ProviderLocation provider(String providerId) {
+            ProviderLocation provider = providersById.get(providerId);
+            if (provider != null) {
+                return provider;
+            }
+            return new ProviderLocation(providerId, providerId, hfrCode, null, null, null, null, null);
+        }
+    }
+
     public record VerificationServiceMetadataRow(
             String baseEntityId,
             String providerId,
@@ -696,6 +2408,83 @@ public class OpenSrpIntegrationRepository {
         }
     }
 
+    public record ServicePage(
+            List<ServiceRow> rows,
+            Long totalRecords
+    ) {
+    }
+
+    public record ServicePageWithLookups(
+            List<ServiceRow> rows,
+            Long totalRecords,
+            Map<String, List<TestRow>> testsByKey,
+            Map<String, List<HivstSelfTestRow>> hivstRowsByBaseEntity,
+            Map<String, Boolean> enrollmentEligibilityByBaseEntity
+    ) {
+    }
+
+    public static final class ServiceRowCursor implements AutoCloseable {
+        private final PreparedStatement statement;
+        private final ResultSet resultSet;
+        private final FacilityProviders facility;
+
+        private ServiceRowCursor(PreparedStatement statement, ResultSet resultSet, FacilityProviders facility) {
+            this.statement = statement;
+            this.resultSet = resultSet;
+            this.facility = facility;
+        }
+
+        public List<ServiceRow> next(int maxRows) throws SQLException {
+            List<ServiceRow> rows = new ArrayList<>();
+            while (rows.size() < maxRows && resultSet.next()) {
+                rows.add(readServiceRow(resultSet, facility));
+            }
+            return rows;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                resultSet.close();
+            } finally {
+                statement.close();
+            }
+        }
+    }
+
+    public static final class ServiceRowCopy implements AutoCloseable {
+        private final CopyOut copyOut;
+        private final Map<String, Integer> columnIndexes = new HashMap<>();
+        private final FacilityProviders facility;
+
+        private ServiceRowCopy(CopyOut copyOut, List<String> columns, FacilityProviders facility) {
+            this.copyOut = copyOut;
+            for (int index = 0; index < columns.size(); index++) {
+                columnIndexes.put(columns.get(index), index);
+            }
+            this.facility = facility;
+        }
+
+        public List<ServiceRow> next(int maxRows) throws SQLException {
+            List<ServiceRow> rows = new ArrayList<>();
+            while (rows.size() < maxRows) {
+                byte[] line = copyOut.readFromCopy();
+                if (line == null) {
+                    break;
+                }
+                rows.add(readServiceRow(CopiedColumns.parse(columnIndexes, line), facility));
+            }
+            return rows;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (copyOut.isActive()) {
+                copyOut.cancelCopy();
+            }
+        }
+    }
+
     public record TestRow(
             String eventId,
             String htsVisitGroup,
@@ -726,6 +2515,51 @@ public class OpenSrpIntegrationRepository {
     ) {
     }
 
+    public record SourceChange(
+            String eventId,
+            String htsVisitGroup,
+            String baseEntityId,
+            long dateCreated
+    ) {
+    }
+
+    public record HivstVisit(String baseEntityId, LocalDate visitDate) {
+    }
+
+    /**
+     * One kit slot of a {@code hivst_issue_kits} event, resolved to the code, batch and expiry of that slot.
+     */
+    public record HivstKitPairing(
+            String issueEventId,
+            String kitFor,
+            String baseEntityId,
+            String kitCode,
+            String issueEventDate,
+            String kitBatchNumber,
+            String kitExpiryDate,
+            LocalDate issueDate
+    ) {
+        public HivstKitPairing withIssueDate(LocalDate issueDate) {
+            return new HivstKitPairing(
+                    issueEventId, kitFor, baseEntityId, kitCode, issueEventDate, kitBatchNumber, kitExpiryDate, issueDate);
+        }
+    }
+
+    public record HtsPayloadPage(
+            List<HtsPayloadRow> rows,
+            Long totalRecords
+    ) {
+    }
+
+    public record HtsPayloadRow(
+            String eventId,
+            String hfrCode,
+            String councilCode,
+            long dateCreated,
+            String payload
+    ) {
+    }
+
     public record ReceivedVerificationResultLogEntry(
             String hfrCode,
             String clientCode,
@@ -0,0 +1,256 @@
+package com.abt.integration.db;
+
+import com.abt.integration.config.PostgresConnectionFactory;
+import com.abt.integration.model.IntegrationRequest;
+import com.abt.util.EnvConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class OpenSrpSchemaBootstrap {
+    private static final Logger log = LoggerFactory.getLogger(OpenSrpSchemaBootstrap.class);
+
+    private static final String DATE_FILTER_MODE_ENV_KEY = "CTC2HTS_DATE_FILTER_MODE";
+    private static final String NORMALIZED_DATE_FILTER_MODE = "normalized";
+    private static final String INDEX_BOOTSTRAP_ENV_KEY = "CTC2HTS_INDEX_BOOTSTRAP";
+    private static final String SEQ_SCAN_WARN_ROWS_ENV_KEY = "CTC2HTS_SEQ_SCAN_WARN_ROWS";
+    private static final String PREPARE_WARMUP_ENV_KEY = "OPENSRP_DB_PREPARE_WARMUP";
+    private static final int DEFAULT_SEQ_SCAN_WARN_ROWS = 100_000;
+    private static final String EXPLAIN_SAMPLE_HFR_CODE = "__explain__";
+    private static final Duration EXPLAIN_SAMPLE_WINDOW = Duration.ofDays(30);
+    private static final int EXPLAIN_SAMPLE_PAGE_SIZE = 100;
+    private static final Pattern SEQ_SCAN_PATTERN = Pattern.compile("Seq Scan on (?:\\w+\\.)?(\\w+)");
+
+    static final List<RequiredIndex> REQUIRED_INDEXES = List.of(
+            new RequiredIndex("team_members_identifier_idx", "team_members", "identifier"),
+            new RequiredIndex("tanzania_locations_location_uuid_idx", "tanzania_locations", "location_uuid"),
+            new RequiredIndex("tanzania_locations_hfr_code_idx", "tanzania_locations", "hfr_code"),
+            new RequiredIndex("client_base_entity_id_idx", "client", "base_entity_id"),
+            new RequiredIndex("client_unique_id_idx", "client", "unique_id"),
+            new RequiredIndex("household_primary_caregiver_idx", "household", "primary_caregiver"),
+            new RequiredIndex("cbhts_services_provider_id_idx", "cbhts_services", "provider_id"),
+            new RequiredIndex("cbhts_services_base_entity_id_idx", "cbhts_services", "base_entity_id"),
+            new RequiredIndex("cbhts_tests_hts_visit_group_idx", "cbhts_tests", "hts_visit_group"),
+            new RequiredIndex("cbhts_tests_base_entity_id_idx", "cbhts_tests", "base_entity_id"),
+            new RequiredIndex("hivst_results_base_entity_id_idx", "hivst_results", "base_entity_id"),
+            new RequiredIndex("hivst_issue_kits_base_entity_id_idx", "hivst_issue_kits", "base_entity_id"),
+            new RequiredIndex("cbhts_enrollment_base_entity_id_idx", "cbhts_enrollment", "base_entity_id")
+    );
+
+    private final PostgresConnectionFactory connectionFactory;
+    private final OpenSrpIntegrationRepository repository;
+    private final boolean normalizedDateCreatedFilter;
+    private final boolean indexBootstrap;
+    private final long seqScanWarnRows;
+    private final int prepareWarmupConnections;
+
+    public OpenSrpSchemaBootstrap() {
+        this(new PostgresConnectionFactory());
+    }
+
+    private OpenSrpSchemaBootstrap(PostgresConnectionFactory connectionFactory) {
+        this(
+                connectionFactory,
+                new OpenSrpIntegrationRepository(connectionFactory.schema(), normalizedDateCreatedFilterEnabled()),
+                normalizedDateCreatedFilterEnabled(),
+                Boolean.parseBoolean(EnvConfig.getOrDefault(INDEX_BOOTSTRAP_ENV_KEY, "false")),
+                EnvConfig.getIntOrDefault(SEQ_SCAN_WARN_ROWS_ENV_KEY, DEFAULT_SEQ_SCAN_WARN_ROWS),
+                Boolean.parseBoolean(EnvConfig.getOrDefault(PREPARE_WARMUP_ENV_KEY, "true")) ? connectionFactory.minimumIdle() : 0
+        );
+    }
+
+    public OpenSrpSchemaBootstrap(PostgresConnectionFactory connectionFactory,
+                                  OpenSrpIntegrationRepository repository,
+                                  boolean normalizedDateCreatedFilter) {
+        this(connectionFactory, repository, normalizedDateCreatedFilter, false, DEFAULT_SEQ_SCAN_WARN_ROWS);
+    }
+
+    public OpenSrpSchemaBootstrap(PostgresConnectionFactory connectionFactory,
+                                  OpenSrpIntegrationRepository repository,
+                                  boolean normalizedDateCreatedFilter,
+                                  boolean indexBootstrap,
+                                  long seqScanWarnRows) {
+        this(connectionFactory, repository, normalizedDateCreatedFilter, indexBootstrap, seqScanWarnRows, 0);
+    }
+
+    public OpenSrpSchemaBootstrap(PostgresConnectionFactory connectionFactory,
+                                  OpenSrpIntegrationRepository repository,
+                                  boolean normalizedDateCreatedFilter,
+                                  boolean indexBootstrap,
+                                  long seqScanWarnRows,
+                                  int prepareWarmupConnections) {
+        this.connectionFactory = connectionFactory;
+        this.repository = repository;
+        this.normalizedDateCreatedFilter = normalizedDateCreatedFilter;
+        this.indexBootstrap = indexBootstrap;
+        this.seqScanWarnRows = seqScanWarnRows;
+        this.prepareWarmupConnections = prepareWarmupConnections;
+    }
+
+    public static boolean normalizedDateCreatedFilterEnabled() {
+        return NORMALIZED_DATE_FILTER_MODE.equalsIgnoreCase(EnvConfig.getOrDefault(DATE_FILTER_MODE_ENV_KEY, ""));
+    }
+
+    public CompletableFuture<Void> runAsync() {
+        return CompletableFuture.runAsync(this::run);
+    }
+
+    public void run() {
+        runSchemaChecks();
+        if (prepareWarmupConnections > 0) {
+            prepareHotStatements();
+        }
+    }
+
+    private void runSchemaChecks() {
+        try (Connection connection = connectionFactory.openConnection()) {
+            connection.setAutoCommit(true);
+
+            if (normalizedDateCreatedFilter) {
+                ensureNormalizedDateCreatedIndexes(connection);
+            } else {
+                ensureServiceChangesIndex(connection);
+            }
+            if (indexBootstrap) {
+                ensureRequiredIndexes(connection);
+                List<String> warnings = findSequentialScanWarnings(connection);
+                if (warnings.isEmpty()) {
+                    log.info("Query plan check found no sequential scans over large OpenSRP tables");
+                }
+                warnings.forEach(log::warn);
+            }
+        } catch (SQLException e) {
+            log.warn("OpenSRP schema bootstrap failed", e);
+        }
+    }
+
+    /**
+     * Borrows the pool's idle connections at once so each one, not just the first, gets the hot statements prepared.
+     * With a read replica configured its pool is warmed too, since it serves most ctc2hts reads.
+     */
+    public void prepareHotStatements() {
+        prepareHotStatements("primary", connectionFactory::openConnection);
+        if (connectionFactory.readReplicaConfigured()) {
+            prepareHotStatements("read", connectionFactory::openReadConnection);
+        }
+    }
+
+    private void prepareHotStatements(String pool, ConnectionSource connectionSource) {
+        List<Connection> connections = new ArrayList<>();
+        try {
+            int prepared = 0;
+            for (int i = 0; i < prepareWarmupConnections; i++) {
+                Connection connection = connectionSource.open();
+                connections.add(connection);
+                prepared = repository.prepareHotStatements(connection, explainSampleRequest());
+            }
+            log.info("Prepared {} hot statements on {} pooled {} connections", prepared, connections.size(), pool);
+        } catch (SQLException e) {
+            log.warn("Failed to pre-prepare ctc2hts statements; they will be prepared on first use", e);
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    log.debug("Failed to return warmed connection to the pool", e);
+                }
+            }
+        }
+    }
+
+    public List<String> ensureRequiredIndexes(Connection connection) throws SQLException {
+        List<String> created = new ArrayList<>();
+        for (RequiredIndex index : REQUIRED_INDEXES) {
+            if (repository.hasIndexLeadingWith(connection, index.table(), index.column())) {
+                continue;
+            }
+
+            try {
+                log.info("Creating missing index {} on {}({})", index.name(), index.table(), index.column());
+                repository.createIndexConcurrently(connection, index.name(), index.table(), index.column());
+                created.add(index.name());
+            } catch (SQLException e) {
+                log.warn("Failed to create index {} on {}({})", index.name(), index.table(), index.column(), e);
+            }
+        }
+        return created;
+    }
+
+    public List<String> findSequentialScanWarnings(Connection connection) throws SQLException {
+        Map<String, List<String>> plans = repository.explainStatements(connection, explainSampleRequest());
+        Map<String, Long> rowCounts = new HashMap<>();
+
+        List<String> warnings = new ArrayList<>();
+        for (Map.Entry<String, List<String>> plan : plans.entrySet()) {
+            for (String planLine : plan.getValue()) {
+                Matcher matcher = SEQ_SCAN_PATTERN.matcher(planLine);
+                if (!matcher.find()) {
+                    continue;
+                }
+
+                String table = matcher.group(1);
+                Long estimatedRows = rowCounts.get(table);
+                if (estimatedRows == null) {
+                    estimatedRows = repository.estimatedRowCount(connection, table);
+                    rowCounts.put(table, estimatedRows);
+                }
+                if (estimatedRows >= seqScanWarnRows) {
+                    warnings.add("Planner chose a sequential scan on " + table + " (~" + estimatedRows + " rows) for "
+                            + plan.getKey() + "; check the indexes on " + table);
+                }
+            }
+        }
+        return warnings;
+    }
+
+    private static IntegrationRequest explainSampleRequest() {
+        Instant now = Instant.now();
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode(EXPLAIN_SAMPLE_HFR_CODE);
+        request.setStartDate(now.minus(EXPLAIN_SAMPLE_WINDOW).getEpochSecond());
+        request.setEndDate(now.getEpochSecond());
+        request.setPageIndex(1);
+        request.setPageSize(EXPLAIN_SAMPLE_PAGE_SIZE);
+        return request;
+    }
+
+    private void ensureNormalizedDateCreatedIndexes(Connection connection) {
+        try {
+            repository.ensureNormalizedDateCreatedIndexes(connection);
+            log.info("Normalized date_created indexes are in place");
+        } catch (SQLException e) {
+            log.warn("Failed to create normalized date_created indexes; ctc2hts date filters may fall back to sequential scans", e);
+        }
+    }
+
+    /**
+     * The change feed is always routed, and without this index every poll sorts the facility's whole service history.
+     */
+    private void ensureServiceChangesIndex(Connection connection) {
+        try {
+            repository.ensureServiceChangesIndex(connection);
+        } catch (SQLException e) {
+            log.warn("Failed to create the cbhts_services normalized date_created index; the change feed and payload refresh will scan cbhts_services", e);
+        }
+    }
+
+    record RequiredIndex(String name, String table, String column) {
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection open() throws SQLException;
+    }
+}
@@ -0,0 +1,10 @@
+package com.abt.integration.exception;
+
+/**
+ * No database connection could be borrowed before the pool's connection timeout.
+ */
+public class DatabaseUnavailableException extends RuntimeException {
+    public DatabaseUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,14 @@
+package com.abt.integration.exception;
+
+public class ExportInProgressException extends RuntimeException {
+    private final String jobId;
+
+    public ExportInProgressException(String jobId) {
+        super("An export is already running for this facility");
+        this.jobId = jobId;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+}
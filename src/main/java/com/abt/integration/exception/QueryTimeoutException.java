@@ -0,0 +1,10 @@
+package com.abt.integration.exception;
+
+/**
+ * A database statement ran past its deadline or was cancelled because the HTTP request was abandoned.
+ */
+public class QueryTimeoutException extends RuntimeException {
+    public QueryTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
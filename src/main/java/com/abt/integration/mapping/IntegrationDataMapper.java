@@ -1,16 +1,12 @@
 package com.abt.integration.mapping;
 
 import com.abt.integration.db.OpenSrpIntegrationRepository;
+import com.abt.integration.model.HtsRecordSections;
+import com.abt.integration.model.RecordProjection;
 import com.abt.util.EnvConfig;
 import com.abt.util.Utils;
 
-import java.time.Instant;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.OffsetDateTime;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
@@ -189,40 +185,55 @@ public class IntegrationDataMapper {
                                              List<OpenSrpIntegrationRepository.TestRow> testRows,
                                              List<OpenSrpIntegrationRepository.HivstSelfTestRow> hivstSelfTestRows,
                                              Boolean enrollmentEligibility) {
+        return mapServiceRow(serviceRow, testRows, hivstSelfTestRows, enrollmentEligibility, RecordProjection.all());
+    }
+
+    /**
+     * Maps only the sections in {@code projection}, keeping the full record's field order.
+     */
+    public Map<String, Object> mapServiceRow(OpenSrpIntegrationRepository.ServiceRow serviceRow,
+                                             List<OpenSrpIntegrationRepository.TestRow> testRows,
+                                             List<OpenSrpIntegrationRepository.HivstSelfTestRow> hivstSelfTestRows,
+                                             Boolean enrollmentEligibility,
+                                             RecordProjection projection) {
         List<OpenSrpIntegrationRepository.TestRow> safeTestRows = testRows == null ? List.of() : testRows;
         List<OpenSrpIntegrationRepository.HivstSelfTestRow> safeHivstSelfTestRows = hivstSelfTestRows == null ? List.of() : hivstSelfTestRows;
+        List<HtsRecordSections.ReagentTest> reagentTesting = projection.needsTests() ? mapReagentTesting(safeTestRows) : List.of();
 
         Map<String, Object> item = new LinkedHashMap<>();
-        item.put("htcApproach", mapTestingApproach(serviceRow.htsTestingApproach()));
-        item.put("visitDate", normalizeDate(firstNonBlank(serviceRow.htsVisitDate(), serviceRow.visitDate())));
-        item.put("counsellor", mapCounsellor(serviceRow));
-        item.put("clientCode", firstNonBlank(serviceRow.uniqueId(), serviceRow.baseEntityId()));
-        item.put("cellPhoneNumber", normalizePhoneNumber(serviceRow.phoneNumber()));
-
-        item.put("clientIdentification", mapClientIdentification(serviceRow));
-        item.put("clientName", mapClientName(serviceRow));
-        item.put("demographics", mapDemographics(serviceRow));
-        item.put("residence", mapResidence(serviceRow));
-        item.put("clientClassification", mapClientClassification(serviceRow, enrollmentEligibility));
-        item.put("testingHistory", mapTestingHistory(serviceRow));
-        item.put("currentTesting", mapCurrentTesting(serviceRow));
-        item.put("selfTesting", mapSelfTesting(serviceRow, safeHivstSelfTestRows));
-        List<Map<String, Object>> reagentTesting = mapReagentTesting(safeTestRows);
-        item.put("reagentTesting", reagentTesting);
-        item.put("hivResultCode", mapFinalHivResultCode(serviceRow.finalHivTestResult()));
-        item.put("preventionServices", mapPreventionServices(serviceRow));
-        item.put("referralAndOutcome", mapReferralAndOutcome(serviceRow, hasReactiveUnigoldTest(reagentTesting)));
-        item.put("remarks", "Generated from cbhts_services event " + serviceRow.eventId());
-        item.put("createdAt", toEpochMilliseconds(serviceRow.dateCreated()));
+        for (String field : projection.fields()) {
+            item.put(field, switch (field) {
+                case "htcApproach" -> mapTestingApproach(serviceRow.htsTestingApproach());
+                case "visitDate" -> normalizeDate(firstNonBlank(serviceRow.htsVisitDate(), serviceRow.visitDate()));
+                case "counsellor" -> mapCounsellor(serviceRow);
+                case "clientCode" -> firstNonBlank(serviceRow.uniqueId(), serviceRow.baseEntityId());
+                case "cellPhoneNumber" -> normalizePhoneNumber(serviceRow.phoneNumber());
+                case "clientIdentification" -> mapClientIdentification(serviceRow);
+                case "clientName" -> mapClientName(serviceRow);
+                case "demographics" -> mapDemographics(serviceRow);
+                case "residence" -> mapResidence(serviceRow);
+                case "clientClassification" -> mapClientClassification(serviceRow, enrollmentEligibility);
+                case "testingHistory" -> mapTestingHistory(serviceRow);
+                case "currentTesting" -> mapCurrentTesting(serviceRow);
+                case "selfTesting" -> mapSelfTesting(serviceRow, safeHivstSelfTestRows);
+                case "reagentTesting" -> reagentTesting;
+                case "hivResultCode" -> mapFinalHivResultCode(serviceRow.finalHivTestResult());
+                case "preventionServices" -> mapPreventionServices(serviceRow);
+                case "referralAndOutcome" -> mapReferralAndOutcome(serviceRow, hasReactiveUnigoldTest(reagentTesting));
+                case "remarks" -> "Generated from cbhts_services event " + serviceRow.eventId();
+                case "createdAt" -> toEpochMilliseconds(serviceRow.dateCreated());
+                default -> throw new IllegalArgumentException("Unknown ctc2hts field: " + field);
+            });
+        }
 
         return item;
     }
 
-    private Map<String, Object> mapCounsellor(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
-        Map<String, Object> counsellor = new LinkedHashMap<>();
-        counsellor.put("counsellorID", serviceRow.providerId());
-        counsellor.put("counsellorName", firstNonBlank(serviceRow.counsellorName(), serviceRow.providerId()));
-        return counsellor;
+    private HtsRecordSections.Counsellor mapCounsellor(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
+        return new HtsRecordSections.Counsellor(
+                serviceRow.providerId(),
+                firstNonBlank(serviceRow.counsellorName(), serviceRow.providerId())
+        );
     }
 
     private String mapTestingApproach(String rawApproach) {
@@ -238,7 +249,7 @@ public class IntegrationDataMapper {
         return normalized;
     }
 
-    private Map<String, Object> mapClientIdentification(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
+    private HtsRecordSections.ClientIdentification mapClientIdentification(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
         if (hasText(serviceRow.nationalId())) {
             return buildClientIdentification("NIDA", serviceRow.nationalId());
         }
@@ -255,21 +266,19 @@ public class IntegrationDataMapper {
         return buildClientIdentification(null, null);
     }
 
-    private Map<String, Object> buildClientIdentification(String idType, String idValue) {
-        Map<String, Object> clientIdentification = new LinkedHashMap<>();
-        clientIdentification.put("clientUniqueIdentifierType",
-                maybeEncrypt(idType, "clientUniqueIdentifierType"));
-        clientIdentification.put("clientUniqueIdentifierCode",
-                maybeEncrypt(idValue, "clientUniqueIdentifierCode"));
-        return clientIdentification;
+    private HtsRecordSections.ClientIdentification buildClientIdentification(String idType, String idValue) {
+        return new HtsRecordSections.ClientIdentification(
+                maybeEncrypt(idType, "clientUniqueIdentifierType"),
+                maybeEncrypt(idValue, "clientUniqueIdentifierCode")
+        );
     }
 
-    private Map<String, Object> mapClientName(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
-        Map<String, Object> clientName = new LinkedHashMap<>();
-        clientName.put("firstName", maybeEncrypt(serviceRow.firstName(), "firstName"));
-        clientName.put("middleName", maybeEncrypt(serviceRow.middleName(), "middleName"));
-        clientName.put("lastName", maybeEncrypt(serviceRow.lastName(), "lastName"));
-        return clientName;
+    private HtsRecordSections.ClientName mapClientName(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
+        return new HtsRecordSections.ClientName(
+                maybeEncrypt(serviceRow.firstName(), "firstName"),
+                maybeEncrypt(serviceRow.middleName(), "middleName"),
+                maybeEncrypt(serviceRow.lastName(), "lastName")
+        );
     }
 
     private String maybeEncrypt(String value, String fieldName) {
@@ -284,16 +293,14 @@ public class IntegrationDataMapper {
         }
     }
 
-    private Map<String, Object> mapDemographics(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
-        Map<String, Object> demographics = new LinkedHashMap<>();
-
-        demographics.put("sexCode", serviceRow.sex());
-        demographics.put("dateOfBirth", normalizeDate(serviceRow.birthDate()));
-        demographics.put("maritalStatusCode", catalog.mapToIntegrationValue("MaritalStatusCode", serviceRow.maritalStatus(), MARITAL_ALIASES, DEFAULT_NOT_APPLICABLE_VALUE));
-        demographics.put("pregnancyStatusCode", mapPregnancyStatusBySex(serviceRow.sex()));
-        demographics.put("smsConsent", hasText(serviceRow.phoneNumber()));
-
-        return demographics;
+    private HtsRecordSections.Demographics mapDemographics(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
+        return new HtsRecordSections.Demographics(
+                serviceRow.sex(),
+                normalizeDate(serviceRow.birthDate()),
+                catalog.mapToIntegrationValue("MaritalStatusCode", serviceRow.maritalStatus(), MARITAL_ALIASES, DEFAULT_NOT_APPLICABLE_VALUE),
+                mapPregnancyStatusBySex(serviceRow.sex()),
+                hasText(serviceRow.phoneNumber())
+        );
     }
 
     private String mapPregnancyStatusBySex(String sex) {
@@ -308,44 +315,31 @@ public class IntegrationDataMapper {
         return "MALE".equals(normalized) || "M".equals(normalized);
     }
 
-    private Map<String, Object> mapResidence(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
-        Map<String, Object> residence = new LinkedHashMap<>();
-
+    private HtsRecordSections.Residence mapResidence(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
         String villageStreet = firstNonBlank(serviceRow.healthFacility());
         if (hasText(villageStreet)) {
-            residence.put("villageStreet", villageStreet);
-            return residence;
+            return new HtsRecordSections.Residence(villageStreet, null);
         }
 
         String council = firstNonBlank(serviceRow.districtCouncil());
-        if (hasText(council)) {
-            residence.put("council", council);
-        }
-
-        return residence;
+        return new HtsRecordSections.Residence(null, hasText(council) ? council : null);
     }
 
-    private Map<String, Object> mapClientClassification(OpenSrpIntegrationRepository.ServiceRow serviceRow,
-                                                        Boolean enrollmentEligibility) {
-        Map<String, Object> clientClassification = new LinkedHashMap<>();
-
-        clientClassification.put("previousTestClientType", mapPreviousTestClientType(serviceRow.htsPreviousHivstClientType()));
-
+    private HtsRecordSections.ClientClassification mapClientClassification(OpenSrpIntegrationRepository.ServiceRow serviceRow,
+                                                                           Boolean enrollmentEligibility) {
         String clientTypeValue = catalog.mapToIntegrationValue("ClientType", serviceRow.htsClientType(), CLIENT_TYPE_ALIASES, DEFAULT_NOT_APPLICABLE_VALUE);
-        clientClassification.put("clientType", clientTypeValue);
-
-        clientClassification.put("attendanceCode", catalog.mapToIntegrationValue(
-                "AttendanceCode",
-                serviceRow.htsVisitType(),
-                ATTENDANCE_ALIASES,
-                DEFAULT_NOT_APPLICABLE_VALUE));
-
-        clientClassification.put("relationshipIndexClient",
-                "INDEX_CONTACT".equals(clientTypeValue) ? "SEXUAL_PARTNER" : DEFAULT_NOT_APPLICABLE_VALUE);
-
-        clientClassification.put("eligibleForTesting", enrollmentEligibility == null ? true : enrollmentEligibility);
 
-        return clientClassification;
+        return new HtsRecordSections.ClientClassification(
+                mapPreviousTestClientType(serviceRow.htsPreviousHivstClientType()),
+                clientTypeValue,
+                catalog.mapToIntegrationValue(
+                        "AttendanceCode",
+                        serviceRow.htsVisitType(),
+                        ATTENDANCE_ALIASES,
+                        DEFAULT_NOT_APPLICABLE_VALUE),
+                "INDEX_CONTACT".equals(clientTypeValue) ? "SEXUAL_PARTNER" : DEFAULT_NOT_APPLICABLE_VALUE,
+                enrollmentEligibility == null || enrollmentEligibility
+        );
     }
 
     private String mapPreviousTestClientType(String rawValue) {
@@ -358,24 +352,19 @@ public class IntegrationDataMapper {
         };
     }
 
-    private Map<String, Object> mapTestingHistory(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
-        Map<String, Object> testingHistory = new LinkedHashMap<>();
-
-        testingHistory.put("testingTypePrevious", catalog.mapToIntegrationValue(
-                "TestingTypePrevious",
-                serviceRow.htsPreviousHivstTestType(),
-                TESTING_TYPE_ALIASES,
-                DEFAULT_NOT_APPLICABLE_VALUE));
-
-        String previousResultCode = catalog.mapToIntegrationValue(
-                "PreviousTestResult",
-                serviceRow.htsPreviousHivstTestResults(),
-                HIV_RESULT_ALIASES,
-                DEFAULT_NOT_APPLICABLE_VALUE
+    private HtsRecordSections.TestingHistory mapTestingHistory(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
+        return new HtsRecordSections.TestingHistory(
+                catalog.mapToIntegrationValue(
+                        "TestingTypePrevious",
+                        serviceRow.htsPreviousHivstTestType(),
+                        TESTING_TYPE_ALIASES,
+                        DEFAULT_NOT_APPLICABLE_VALUE),
+                catalog.mapToIntegrationValue(
+                        "PreviousTestResult",
+                        serviceRow.htsPreviousHivstTestResults(),
+                        HIV_RESULT_ALIASES,
+                        DEFAULT_NOT_APPLICABLE_VALUE)
         );
-
-        testingHistory.put("previousTestResult", previousResultCode);
-        return testingHistory;
     }
 
     private String mapFinalHivResultCode(String finalHivTestResult) {
@@ -387,9 +376,7 @@ public class IntegrationDataMapper {
         };
     }
 
-    private Map<String, Object> mapCurrentTesting(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
-        Map<String, Object> currentTesting = new LinkedHashMap<>();
-
+    private HtsRecordSections.CurrentTesting mapCurrentTesting(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
         String testingTypeSource = serviceRow.htsClientType();
         if (hasText(testingTypeSource) && MappingReferenceCatalog.normalize(testingTypeSource).contains("VERIFICATION")) {
             testingTypeSource = "verification_test";
@@ -397,39 +384,34 @@ public class IntegrationDataMapper {
             testingTypeSource = "initial_test";
         }
 
-        currentTesting.put("testingType", catalog.mapToIntegrationValue("TestingType", testingTypeSource, TESTING_TYPE_ALIASES, DEFAULT_NOT_APPLICABLE_VALUE));
-
-        currentTesting.put("counsellingTypeCode", catalog.mapToIntegrationValue(
-                "CounsellingTypeCode",
-                serviceRow.htsTypeOfCounsellingProvided(),
-                COUNSELLING_TYPE_ALIASES,
-                DEFAULT_NOT_APPLICABLE_VALUE));
-
-        currentTesting.put("tbScreeningDetails", catalog.mapToIntegrationValue(
-                "TBScreeningDetails",
-                serviceRow.htsClientsTbScreeningOutcome(),
-                TB_SCREENING_ALIASES,
-                DEFAULT_NOT_APPLICABLE_VALUE));
-
-        currentTesting.put("postTestCounsellingAndResultsGiven", toBoolean(serviceRow.htsHasPostTestCounsellingBeenProvided()));
-
-        List<Map<String, Object>> disclosures = new ArrayList<>();
+        List<HtsRecordSections.Disclosure> disclosures = new ArrayList<>();
         for (String disclosure : splitValues(serviceRow.htsHivResultsDisclosure())) {
             String code = catalog.mapToIntegrationValue("PostTestCounsellingAndResultsGiven", disclosure, DISCLOSURE_ALIASES, DEFAULT_NOT_APPLICABLE_VALUE);
             if (code != null) {
-                Map<String, Object> disclosureItem = new LinkedHashMap<>();
-                disclosureItem.put("disclosureCode", code);
-                disclosures.add(disclosureItem);
+                disclosures.add(new HtsRecordSections.Disclosure(code));
             }
         }
 
-        currentTesting.put("disclosure", disclosures);
-        return currentTesting;
+        return new HtsRecordSections.CurrentTesting(
+                catalog.mapToIntegrationValue("TestingType", testingTypeSource, TESTING_TYPE_ALIASES, DEFAULT_NOT_APPLICABLE_VALUE),
+                catalog.mapToIntegrationValue(
+                        "CounsellingTypeCode",
+                        serviceRow.htsTypeOfCounsellingProvided(),
+                        COUNSELLING_TYPE_ALIASES,
+                        DEFAULT_NOT_APPLICABLE_VALUE),
+                catalog.mapToIntegrationValue(
+                        "TBScreeningDetails",
+                        serviceRow.htsClientsTbScreeningOutcome(),
+                        TB_SCREENING_ALIASES,
+                        DEFAULT_NOT_APPLICABLE_VALUE),
+                toBoolean(serviceRow.htsHasPostTestCounsellingBeenProvided()),
+                disclosures
+        );
     }
 
-    private List<Map<String, Object>> mapSelfTesting(OpenSrpIntegrationRepository.ServiceRow serviceRow,
-                                                     List<OpenSrpIntegrationRepository.HivstSelfTestRow> hivstSelfTestRows) {
-        List<Map<String, Object>> selfTesting = new ArrayList<>();
+    private List<HtsRecordSections.SelfTest> mapSelfTesting(OpenSrpIntegrationRepository.ServiceRow serviceRow,
+                                                            List<OpenSrpIntegrationRepository.HivstSelfTestRow> hivstSelfTestRows) {
+        List<HtsRecordSections.SelfTest> selfTesting = new ArrayList<>();
         LocalDate serviceDate = parseLocalDate(serviceRow.visitDate());
 
         for (OpenSrpIntegrationRepository.HivstSelfTestRow hivstSelfTestRow : hivstSelfTestRows) {
@@ -439,18 +421,18 @@ public class IntegrationDataMapper {
                 continue;
             }
 
-            Map<String, Object> testItem = new LinkedHashMap<>();
-            testItem.put("selfTestKitCode", firstNonBlank(hivstSelfTestRow.resultKitCode(), hivstSelfTestRow.kitFor()));
-            testItem.put("selfTestBatchNo", hivstSelfTestRow.kitBatchNumber());
-            testItem.put("selfTestExpiryDate", normalizeDate(hivstSelfTestRow.kitExpiryDate()));
-            testItem.put("selfTestKitName", mapSelfTestKitName(hivstSelfTestRow.kitFor()));
-            testItem.put("selfTestingResults", catalog.mapToIntegrationValue(
-                    "PreviousTestResult",
-                    hivstSelfTestRow.hivstResult(),
-                    HIV_RESULT_ALIASES,
-                    DEFAULT_NOT_APPLICABLE_VALUE
+            selfTesting.add(new HtsRecordSections.SelfTest(
+                    firstNonBlank(hivstSelfTestRow.resultKitCode(), hivstSelfTestRow.kitFor()),
+                    hivstSelfTestRow.kitBatchNumber(),
+                    normalizeDate(hivstSelfTestRow.kitExpiryDate()),
+                    mapSelfTestKitName(hivstSelfTestRow.kitFor()),
+                    catalog.mapToIntegrationValue(
+                            "PreviousTestResult",
+                            hivstSelfTestRow.hivstResult(),
+                            HIV_RESULT_ALIASES,
+                            DEFAULT_NOT_APPLICABLE_VALUE
+                    )
             ));
-            selfTesting.add(testItem);
         }
 
         return selfTesting;
@@ -467,40 +449,37 @@ public class IntegrationDataMapper {
         return "SELF";
     }
 
-    private List<Map<String, Object>> mapReagentTesting(List<OpenSrpIntegrationRepository.TestRow> tests) {
-        List<Map<String, Object>> reagentTesting = new ArrayList<>();
+    private List<HtsRecordSections.ReagentTest> mapReagentTesting(List<OpenSrpIntegrationRepository.TestRow> tests) {
+        List<HtsRecordSections.ReagentTest> reagentTesting = new ArrayList<>();
 
         for (OpenSrpIntegrationRepository.TestRow test : tests) {
             if (isSelfTest(test)) {
                 continue;
             }
 
-            Map<String, Object> testItem = new LinkedHashMap<>();
-            testItem.put("reagentBatch", test.testKitBatchNumber());
-            testItem.put("reagentExpiry", normalizeDate(test.testKitExpireDate()));
-            testItem.put("reagentTest", mapKitName(test.typeOfTestKitUsed()));
-            testItem.put("testType", mapTestType(test.testType()));
-            testItem.put("reagentResult", catalog.mapToIntegrationValue("ReagentResultFirst", test.testResult(), HIV_RESULT_ALIASES, DEFAULT_NOT_APPLICABLE_VALUE));
-            testItem.put("syphilisResult", mapSyphilisResult(test.syphilisTestResults()));
-            reagentTesting.add(testItem);
+            reagentTesting.add(new HtsRecordSections.ReagentTest(
+                    test.testKitBatchNumber(),
+                    normalizeDate(test.testKitExpireDate()),
+                    mapKitName(test.typeOfTestKitUsed()),
+                    mapTestType(test.testType()),
+                    catalog.mapToIntegrationValue("ReagentResultFirst", test.testResult(), HIV_RESULT_ALIASES, DEFAULT_NOT_APPLICABLE_VALUE),
+                    mapSyphilisResult(test.syphilisTestResults())
+            ));
         }
 
         return reagentTesting;
     }
 
-    private Map<String, Object> mapPreventionServices(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
-        Map<String, Object> preventionServices = new LinkedHashMap<>();
-
-        preventionServices.put("condomGiven", toBoolean(serviceRow.htsWereCondomsDistributed()));
-        preventionServices.put("condomsIssuedMale", serviceRow.htsNumberOfMaleCondomsProvided());
-        preventionServices.put("condomsIssuedFemale", serviceRow.htsNumberOfFemaleCondomsProvided());
-
-        return preventionServices;
+    private HtsRecordSections.PreventionServices mapPreventionServices(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
+        return new HtsRecordSections.PreventionServices(
+                toBoolean(serviceRow.htsWereCondomsDistributed()),
+                serviceRow.htsNumberOfMaleCondomsProvided(),
+                serviceRow.htsNumberOfFemaleCondomsProvided()
+        );
     }
 
-    private List<Map<String, Object>> mapReferralAndOutcome(OpenSrpIntegrationRepository.ServiceRow serviceRow,
-                                                            boolean forceCtcClinicReferral) {
-        List<Map<String, Object>> referralAndOutcome = new ArrayList<>();
+    private List<HtsRecordSections.Referral> mapReferralAndOutcome(OpenSrpIntegrationRepository.ServiceRow serviceRow,
+                                                                   boolean forceCtcClinicReferral) {
 
         String referredToCode;
         if (forceCtcClinicReferral) {
@@ -519,19 +498,16 @@ public class IntegrationDataMapper {
             }
         }
 
-        Map<String, Object> referralItem = new LinkedHashMap<>();
-        referralItem.put("referredToCode", referredToCode);
-        referralItem.put("toFacility", serviceRow.hfrCode());
-        referralAndOutcome.add(referralItem);
-
+        List<HtsRecordSections.Referral> referralAndOutcome = new ArrayList<>();
+        referralAndOutcome.add(new HtsRecordSections.Referral(referredToCode, serviceRow.hfrCode()));
         return referralAndOutcome;
     }
 
-    private boolean hasReactiveUnigoldTest(List<Map<String, Object>> reagentTesting) {
-        for (Map<String, Object> reagentTest : reagentTesting) {
-            if ((valueMatches(reagentTest.get("testType"), "UNIGOLD")
-                    || valueMatches(reagentTest.get("testType"), "THIRD"))
-                    && valueMatches(reagentTest.get("reagentResult"), "REACTIVE")) {
+    private boolean hasReactiveUnigoldTest(List<HtsRecordSections.ReagentTest> reagentTesting) {
+        for (HtsRecordSections.ReagentTest reagentTest : reagentTesting) {
+            if ((valueMatches(reagentTest.testType(), "UNIGOLD")
+                    || valueMatches(reagentTest.testType(), "THIRD"))
+                    && valueMatches(reagentTest.reagentResult(), "REACTIVE")) {
                 return true;
             }
         }
@@ -647,77 +623,12 @@ public class IntegrationDataMapper {
         return rawValue.trim();
     }
 
-    private LocalDate parseLocalDate(String rawValue) {
-        if (isBlank(rawValue)) {
-            return null;
-        }
-
-        String trimmed = rawValue.trim();
-
-        if (trimmed.matches("^-?\\d+$")) {
-            long epoch = Long.parseLong(trimmed);
-            return LocalDateTime.ofInstant(Instant.ofEpochSecond(toEpochSeconds(epoch)), ZoneOffset.UTC)
-                    .toLocalDate();
-        }
-
-        List<DateTimeFormatter> localDateFormatters = List.of(
-                DateTimeFormatter.ISO_LOCAL_DATE,
-                DateTimeFormatter.ofPattern("dd-MM-yyyy")
-        );
-
-        for (DateTimeFormatter formatter : localDateFormatters) {
-            try {
-                return LocalDate.parse(trimmed, formatter);
-            } catch (DateTimeParseException ignored) {
-            }
-        }
-
-        List<DateTimeFormatter> localDateTimeFormatters = List.of(
-                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS"),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS")
-        );
-
-        for (DateTimeFormatter formatter : localDateTimeFormatters) {
-            try {
-                LocalDateTime dateTime = LocalDateTime.parse(trimmed, formatter);
-                return dateTime.toLocalDate();
-            } catch (DateTimeParseException ignored) {
-            }
-        }
-
-        List<DateTimeFormatter> offsetFormatters = List.of(
-                DateTimeFormatter.ISO_OFFSET_DATE_TIME,
-                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssX"),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssXXX"),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSX"),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSXXX"),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssX"),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSX")
-        );
-
-        for (DateTimeFormatter formatter : offsetFormatters) {
-            try {
-                OffsetDateTime offsetDateTime = OffsetDateTime.parse(trimmed, formatter);
-                return offsetDateTime.toLocalDate();
-            } catch (DateTimeParseException ignored) {
-            }
-        }
-
-        try {
-            return OffsetDateTime.parse(trimmed).toLocalDate();
-        } catch (DateTimeParseException ignored) {
-        }
-
-        return null;
-    }
-
-    private long toEpochSeconds(long rawTimestamp) {
-        if (Math.abs(rawTimestamp) > 9_999_999_999L) {
-            return rawTimestamp / 1000L;
-        }
-        return rawTimestamp;
+    /**
+     * Reads the calendar date of an OpenSRP date value: epoch seconds or milliseconds, {@code yyyy-MM-dd},
+     * {@code dd-MM-yyyy} or a local or offset date-time. Returns {@code null} when none of them match.
+     */
+    public static LocalDate parseLocalDate(String rawValue) {
+        return OpenSrpDateParser.parse(rawValue);
     }
 
     private long toEpochMilliseconds(long rawTimestamp) {
@@ -811,7 +722,7 @@ public class IntegrationDataMapper {
         return rawValue != null && "true".equalsIgnoreCase(rawValue.trim());
     }
 
-    private boolean isBlank(String value) {
+    private static boolean isBlank(String value) {
         return value == null || value.trim().isEmpty();
     }
 }
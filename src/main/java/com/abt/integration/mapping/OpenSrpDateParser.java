@@ -0,0 +1,288 @@
+package com.abt.integration.mapping;
+
+import java.time.LocalDate;
+
+/**
+ * Single-pass reader for the calendar date of an OpenSRP date value. It reads the shape of the value once and builds
+ * the {@link LocalDate} directly, accepting exactly what the {@code java.time} formatters it replaced accepted:
+ * <ul>
+ *     <li>epoch seconds or milliseconds, read as a UTC date;</li>
+ *     <li>{@code yyyy-MM-dd} (strict) and {@code dd-MM-yyyy};</li>
+ *     <li>{@code yyyy-MM-dd HH:mm:ss[.SSS]} and {@code yyyy-MM-dd'T'HH:mm:ss[.SSS]};</li>
+ *     <li>ISO offset date-times and {@code yyyy-MM-dd[' '|'T']HH:mm:ss[.SSS]} with an {@code X} or {@code XXX}
+ *     offset.</li>
+ * </ul>
+ * The pattern shapes resolve like {@code DateTimeFormatter.ofPattern}: a day past the end of its month is moved back
+ * to the last day and {@code 24:00:00} is midnight of the next day. The ISO shapes stay strict. Years have four
+ * digits.
+ */
+final class OpenSrpDateParser {
+    private static final long SECONDS_PER_DAY = 86_400L;
+    private static final int MAX_OFFSET_SECONDS = 18 * 3600;
+
+    private OpenSrpDateParser() {
+    }
+
+    static LocalDate parse(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+
+        char first = value.charAt(start);
+        if (first == '-' || isDigit(first)) {
+            if (allDigits(value, first == '-' ? start + 1 : start, end)) {
+                return epochDate(value, start, end);
+            }
+        }
+
+        if (end - start == 10 && isIsoDate(value, start)) {
+            return strictDate(digits(value, start, 4), digits(value, start + 5, 2), digits(value, start + 8, 2));
+        }
+        if (end - start == 10 && isDayFirstDate(value, start)) {
+            return smartDate(digits(value, start + 6, 4), digits(value, start + 3, 2), digits(value, start, 2), 0);
+        }
+        if (end - start < 16 || !isIsoDate(value, start)) {
+            return null;
+        }
+        return dateTime(value, start, end);
+    }
+
+    private static LocalDate dateTime(String value, int start, int end) {
+        char separator = value.charAt(start + 10);
+        if (separator != ' ' && separator != 'T' && separator != 't') {
+            return null;
+        }
+        int hourAt = start + 11;
+        if (!isDigit2(value, hourAt) || value.charAt(hourAt + 2) != ':' || !isDigit2(value, hourAt + 3)) {
+            return null;
+        }
+        int pos = hourAt + 5;
+
+        boolean hasSeconds = false;
+        int second = 0;
+        if (pos + 2 < end && value.charAt(pos) == ':' && isDigit2(value, pos + 1)) {
+            hasSeconds = true;
+            second = digits(value, pos + 1, 2);
+            pos += 3;
+        }
+
+        int fractionDigits = -1;
+        boolean zeroFraction = true;
+        if (hasSeconds && pos < end && value.charAt(pos) == '.') {
+            pos++;
+            fractionDigits = 0;
+            while (pos < end && isDigit(value.charAt(pos))) {
+                zeroFraction &= value.charAt(pos) == '0';
+                fractionDigits++;
+                pos++;
+            }
+        }
+
+        Offset offset = offset(value, pos, end);
+        if (offset == Offset.INVALID) {
+            return null;
+        }
+
+        int year = digits(value, start, 4);
+        int month = digits(value, start + 5, 2);
+        int day = digits(value, start + 8, 2);
+        int hour = digits(value, hourAt, 2);
+        int minute = digits(value, hourAt + 3, 2);
+        boolean patternFraction = fractionDigits == -1 || fractionDigits == 3;
+
+        if (offset == Offset.NONE) {
+            if (!hasSeconds || !patternFraction || separator == 't') {
+                return null;
+            }
+            return smartDateTime(year, month, day, hour, minute, second, zeroFraction);
+        }
+
+        if ((separator == 'T' || separator == 't') && offset.iso && fractionDigits <= 9) {
+            if (isTime(hour, minute, second)) {
+                LocalDate date = strictDate(year, month, day);
+                if (date != null) {
+                    return date;
+                }
+            }
+        }
+
+        boolean patternOffset = separator == ' ' ? offset.pattern : offset.pattern && offset != Offset.HOURS_COLON_MINUTES;
+        if (separator == 't' || !hasSeconds || !patternFraction || !patternOffset) {
+            return null;
+        }
+        return smartDateTime(year, month, day, hour, minute, second, zeroFraction);
+    }
+
+    /**
+     * The offset shapes the formatters read: {@code Z} or {@code z} and {@code +HH:MM[:ss]} for ISO, {@code Z},
+     * {@code +HH} and {@code +HHmm} for {@code X} and {@code +HH:MM} for {@code XXX}.
+     */
+    private enum Offset {
+        NONE(false, false),
+        INVALID(false, false),
+        UTC(true, true),
+        UTC_LOWER_CASE(true, false),
+        HOURS(true, true),
+        HOURS_MINUTES(false, true),
+        HOURS_COLON_MINUTES(true, true),
+        HOURS_COLON_MINUTES_SECONDS(true, false);
+
+        private final boolean iso;
+        private final boolean pattern;
+
+        Offset(boolean iso, boolean pattern) {
+            this.iso = iso;
+            this.pattern = pattern;
+        }
+    }
+
+    private static Offset offset(String value, int pos, int end) {
+        int length = end - pos;
+        if (length == 0) {
+            return Offset.NONE;
+        }
+        char sign = value.charAt(pos);
+        if (length == 1) {
+            return sign == 'Z' ? Offset.UTC : sign == 'z' ? Offset.UTC_LOWER_CASE : Offset.INVALID;
+        }
+        if (length < 3 || (sign != '+' && sign != '-') || !isDigit2(value, pos + 1)) {
+            return Offset.INVALID;
+        }
+
+        int hours = digits(value, pos + 1, 2);
+        Offset shape;
+        int minutes = 0;
+        int seconds = 0;
+        if (length == 3) {
+            shape = Offset.HOURS;
+        } else if (length == 5 && isDigit2(value, pos + 3)) {
+            shape = Offset.HOURS_MINUTES;
+            minutes = digits(value, pos + 3, 2);
+        } else if (length == 6 && value.charAt(pos + 3) == ':' && isDigit2(value, pos + 4)) {
+            shape = Offset.HOURS_COLON_MINUTES;
+            minutes = digits(value, pos + 4, 2);
+        } else if (length == 9 && value.charAt(pos + 3) == ':' && isDigit2(value, pos + 4)
+                && value.charAt(pos + 6) == ':' && isDigit2(value, pos + 7)) {
+            shape = Offset.HOURS_COLON_MINUTES_SECONDS;
+            minutes = digits(value, pos + 4, 2);
+            seconds = digits(value, pos + 7, 2);
+        } else {
+            return Offset.INVALID;
+        }
+
+        if (minutes > 59 || seconds > 59 || hours * 3600 + minutes * 60 + seconds > MAX_OFFSET_SECONDS) {
+            return Offset.INVALID;
+        }
+        return shape;
+    }
+
+    private static LocalDate epochDate(String value, int start, int end) {
+        boolean negative = value.charAt(start) == '-';
+        long epoch = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            int digit = value.charAt(i) - '0';
+            if (epoch < (Long.MIN_VALUE + digit) / 10) {
+                return null;
+            }
+            epoch = epoch * 10 - digit;
+        }
+        if (!negative) {
+            if (epoch == Long.MIN_VALUE) {
+                return null;
+            }
+            epoch = -epoch;
+        }
+
+        long seconds = Math.abs(epoch) > 9_999_999_999L ? epoch / 1000L : epoch;
+        long epochDay = Math.floorDiv(seconds, SECONDS_PER_DAY);
+        if (epochDay < LocalDate.MIN.toEpochDay() || epochDay > LocalDate.MAX.toEpochDay()) {
+            return null;
+        }
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static LocalDate strictDate(int year, int month, int day) {
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return null;
+        }
+        return LocalDate.of(year, month, day);
+    }
+
+    private static LocalDate smartDate(int year, int month, int day, int extraDays) {
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return null;
+        }
+        LocalDate date = LocalDate.of(year, month, Math.min(day, lengthOfMonth(year, month)));
+        return extraDays == 0 ? date : date.plusDays(extraDays);
+    }
+
+    private static LocalDate smartDateTime(int year, int month, int day, int hour, int minute, int second,
+                                           boolean zeroFraction) {
+        if (hour == 24 && minute == 0 && second == 0 && zeroFraction) {
+            return smartDate(year, month, day, 1);
+        }
+        return isTime(hour, minute, second) ? smartDate(year, month, day, 0) : null;
+    }
+
+    private static boolean isTime(int hour, int minute, int second) {
+        return hour <= 23 && minute <= 59 && second <= 59;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    private static boolean isIsoDate(String value, int start) {
+        return isDigit2(value, start) && isDigit2(value, start + 2) && value.charAt(start + 4) == '-'
+                && isDigit2(value, start + 5) && value.charAt(start + 7) == '-' && isDigit2(value, start + 8);
+    }
+
+    private static boolean isDayFirstDate(String value, int start) {
+        return isDigit2(value, start) && value.charAt(start + 2) == '-' && isDigit2(value, start + 3)
+                && value.charAt(start + 5) == '-' && isDigit2(value, start + 6) && isDigit2(value, start + 8);
+    }
+
+    private static boolean allDigits(String value, int from, int end) {
+        if (from == end) {
+            return false;
+        }
+        for (int i = from; i < end; i++) {
+            if (!isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit2(String value, int at) {
+        return isDigit(value.charAt(at)) && isDigit(value.charAt(at + 1));
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int digits(String value, int at, int count) {
+        int result = 0;
+        for (int i = at; i < at + count; i++) {
+            result = result * 10 + (value.charAt(i) - '0');
+        }
+        return result;
+    }
+}
@@ -0,0 +1,40 @@
+package com.abt.integration.model;
+
+public class ChangeFeedRequest {
+    private String hfrCode;
+    private String since;
+    private Integer limit;
+    private String consumerId;
+
+    public String getHfrCode() {
+        return hfrCode;
+    }
+
+    public void setHfrCode(String hfrCode) {
+        this.hfrCode = hfrCode;
+    }
+
+    public String getSince() {
+        return since;
+    }
+
+    public void setSince(String since) {
+        this.since = since;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+
+    public String getConsumerId() {
+        return consumerId;
+    }
+
+    public void setConsumerId(String consumerId) {
+        this.consumerId = consumerId;
+    }
+}
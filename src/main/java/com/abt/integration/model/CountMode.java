@@ -0,0 +1,30 @@
+package com.abt.integration.model;
+
+import java.util.Locale;
+
+public enum CountMode {
+    EXACT,
+    WINDOWED,
+    ESTIMATED,
+    NONE;
+
+    public static CountMode fromValue(String value) {
+        if (value == null || value.isBlank()) {
+            return EXACT;
+        }
+        return CountMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public static boolean isValid(String value) {
+        try {
+            fromValue(value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    public String value() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,84 @@
+package com.abt.integration.model;
+
+import java.util.List;
+import java.util.Locale;
+
+public class ExportRequest {
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_CSV = "csv";
+
+    private String hfrCode;
+    private List<String> hfrCodes;
+    private String councilCode;
+    private Long startDate;
+    private Long endDate;
+    private String format;
+
+    public String getHfrCode() {
+        return hfrCode;
+    }
+
+    public void setHfrCode(String hfrCode) {
+        this.hfrCode = hfrCode;
+    }
+
+    public List<String> getHfrCodes() {
+        return hfrCodes;
+    }
+
+    public void setHfrCodes(List<String> hfrCodes) {
+        this.hfrCodes = hfrCodes;
+    }
+
+    public String getCouncilCode() {
+        return councilCode;
+    }
+
+    public void setCouncilCode(String councilCode) {
+        this.councilCode = councilCode;
+    }
+
+    public Long getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(Long startDate) {
+        this.startDate = startDate;
+    }
+
+    public Long getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(Long endDate) {
+        this.endDate = endDate;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public String resolvedFormat() {
+        return format == null ? FORMAT_NDJSON : format.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The same facility and date filters as a ctc2hts page request; paging fields are placeholders because exports
+     * read the whole range.
+     */
+    public IntegrationRequest toIntegrationRequest() {
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode(hfrCode);
+        request.setHfrCodes(hfrCodes);
+        request.setCouncilCode(councilCode);
+        request.setStartDate(startDate);
+        request.setEndDate(endDate);
+        request.setPageIndex(1);
+        request.setPageSize(Integer.MAX_VALUE);
+        return request;
+    }
+}
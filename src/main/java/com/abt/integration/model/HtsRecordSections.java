@@ -0,0 +1,106 @@
+package com.abt.integration.model;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.List;
+
+/**
+ * Immutable sections of a ctc2hts record. Each serializes to the same object the mapper used to build as a map: the
+ * components are the JSON fields, in the order listed, so the wire format does not depend on a mapper's property
+ * sorting. The top-level record stays a map because {@code fields} and {@code projection} choose which keys it has.
+ */
+public final class HtsRecordSections {
+    private HtsRecordSections() {
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    @JsonPropertyOrder({"counsellorID", "counsellorName"})
+    public record Counsellor(String counsellorID, String counsellorName) {
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    @JsonPropertyOrder({"clientUniqueIdentifierType", "clientUniqueIdentifierCode"})
+    public record ClientIdentification(String clientUniqueIdentifierType, String clientUniqueIdentifierCode) {
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    @JsonPropertyOrder({"firstName", "middleName", "lastName"})
+    public record ClientName(String firstName, String middleName, String lastName) {
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    @JsonPropertyOrder({"sexCode", "dateOfBirth", "maritalStatusCode", "pregnancyStatusCode", "smsConsent"})
+    public record Demographics(String sexCode,
+                               String dateOfBirth,
+                               String maritalStatusCode,
+                               String pregnancyStatusCode,
+                               boolean smsConsent) {
+    }
+
+    /**
+     * Holds the village street when known, otherwise the council when known; absent fields are left out.
+     */
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonPropertyOrder({"villageStreet", "council"})
+    public record Residence(String villageStreet, String council) {
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    @JsonPropertyOrder({"previousTestClientType", "clientType", "attendanceCode", "relationshipIndexClient", "eligibleForTesting"})
+    public record ClientClassification(String previousTestClientType,
+                                       String clientType,
+                                       String attendanceCode,
+                                       String relationshipIndexClient,
+                                       boolean eligibleForTesting) {
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    @JsonPropertyOrder({"testingTypePrevious", "previousTestResult"})
+    public record TestingHistory(String testingTypePrevious, String previousTestResult) {
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    @JsonPropertyOrder({"testingType", "counsellingTypeCode", "tbScreeningDetails", "postTestCounsellingAndResultsGiven", "disclosure"})
+    public record CurrentTesting(String testingType,
+                                 String counsellingTypeCode,
+                                 String tbScreeningDetails,
+                                 boolean postTestCounsellingAndResultsGiven,
+                                 List<Disclosure> disclosure) {
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    public record Disclosure(String disclosureCode) {
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    @JsonPropertyOrder({"selfTestKitCode", "selfTestBatchNo", "selfTestExpiryDate", "selfTestKitName", "selfTestingResults"})
+    public record SelfTest(String selfTestKitCode,
+                           String selfTestBatchNo,
+                           String selfTestExpiryDate,
+                           String selfTestKitName,
+                           String selfTestingResults) {
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    @JsonPropertyOrder({"reagentBatch", "reagentExpiry", "reagentTest", "testType", "reagentResult", "syphilisResult"})
+    public record ReagentTest(String reagentBatch,
+                              String reagentExpiry,
+                              String reagentTest,
+                              String testType,
+                              String reagentResult,
+                              String syphilisResult) {
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    @JsonPropertyOrder({"condomGiven", "condomsIssuedMale", "condomsIssuedFemale"})
+    public record PreventionServices(boolean condomGiven, Integer condomsIssuedMale, Integer condomsIssuedFemale) {
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    @JsonPropertyOrder({"referredToCode", "toFacility"})
+    public record Referral(String referredToCode, String toFacility) {
+    }
+}
@@ -1,11 +1,35 @@
 package com.abt.integration.model;
 
+import java.util.List;
+
 public class IntegrationRequest {
     private String hfrCode;
+    private List<String> hfrCodes;
+    private String councilCode;
     private Long startDate;
     private Long endDate;
     private Integer pageIndex;
     private Integer pageSize;
+    private String cursor;
+    private String countMode;
+    private List<String> fields;
+    private String projection;
+
+    public IntegrationRequest copy() {
+        IntegrationRequest copy = new IntegrationRequest();
+        copy.hfrCode = hfrCode;
+        copy.hfrCodes = hfrCodes;
+        copy.councilCode = councilCode;
+        copy.startDate = startDate;
+        copy.endDate = endDate;
+        copy.pageIndex = pageIndex;
+        copy.pageSize = pageSize;
+        copy.cursor = cursor;
+        copy.countMode = countMode;
+        copy.fields = fields;
+        copy.projection = projection;
+        return copy;
+    }
 
     public String getHfrCode() {
         return hfrCode;
@@ -15,6 +39,22 @@ public class IntegrationRequest {
         this.hfrCode = hfrCode;
     }
 
+    public List<String> getHfrCodes() {
+        return hfrCodes;
+    }
+
+    public void setHfrCodes(List<String> hfrCodes) {
+        this.hfrCodes = hfrCodes;
+    }
+
+    public String getCouncilCode() {
+        return councilCode;
+    }
+
+    public void setCouncilCode(String councilCode) {
+        this.councilCode = councilCode;
+    }
+
     public Long getStartDate() {
         return startDate;
     }
@@ -46,4 +86,36 @@ public class IntegrationRequest {
     public void setPageSize(Integer pageSize) {
         this.pageSize = pageSize;
     }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public String getCountMode() {
+        return countMode;
+    }
+
+    public void setCountMode(String countMode) {
+        this.countMode = countMode;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public void setFields(List<String> fields) {
+        this.fields = fields;
+    }
+
+    public String getProjection() {
+        return projection;
+    }
+
+    public void setProjection(String projection) {
+        this.projection = projection;
+    }
 }
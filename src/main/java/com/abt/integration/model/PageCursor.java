@@ -0,0 +1,52 @@
+package com.abt.integration.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token for keyset pagination over {@code cbhts_services}.
+ * Encodes the {@code (date_created, event_id)} of the last row returned so the next page
+ * can seek past it instead of skipping rows with an OFFSET.
+ */
+public record PageCursor(long dateCreated, String eventId) {
+    private static final char SEPARATOR = ':';
+
+    public String encode() {
+        String raw = dateCreated + String.valueOf(SEPARATOR) + eventId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PageCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            throw new IllegalArgumentException("Cursor is blank");
+        }
+
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor is not a valid token", e);
+        }
+
+        int separatorIndex = raw.indexOf(SEPARATOR);
+        if (separatorIndex <= 0 || separatorIndex == raw.length() - 1) {
+            throw new IllegalArgumentException("Cursor is not a valid token");
+        }
+
+        try {
+            long dateCreated = Long.parseLong(raw.substring(0, separatorIndex));
+            return new PageCursor(dateCreated, raw.substring(separatorIndex + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor is not a valid token", e);
+        }
+    }
+
+    public static boolean isValid(String token) {
+        try {
+            decode(token);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.abt.integration.model;
+
+import com.abt.util.EnvConfig;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The top-level ctc2hts record fields a request asked for, compiled into the child lookups, source column groups
+ * and mapper sections needed to produce them. Requests without {@code fields} or {@code projection} get every field.
+ */
+public final class RecordProjection {
+    public static final List<String> FIELDS = List.of(
+            "htcApproach",
+            "visitDate",
+            "counsellor",
+            "clientCode",
+            "cellPhoneNumber",
+            "clientIdentification",
+            "clientName",
+            "demographics",
+            "residence",
+            "clientClassification",
+            "testingHistory",
+            "currentTesting",
+            "selfTesting",
+            "reagentTesting",
+            "hivResultCode",
+            "preventionServices",
+            "referralAndOutcome",
+            "remarks",
+            "createdAt"
+    );
+
+    private static final Set<String> CLIENT_FIELDS =
+            Set.of("clientCode", "cellPhoneNumber", "clientIdentification", "clientName", "demographics");
+    private static final Set<String> SERVICE_FIELDS = Set.of(
+            "htcApproach", "clientClassification", "testingHistory", "currentTesting", "hivResultCode",
+            "preventionServices", "referralAndOutcome");
+    private static final RecordProjection ALL = new RecordProjection(FIELDS);
+    private static final Map<String, RecordProjection> NAMED = parseNamed(EnvConfig.getOrDefault("CTC2HTS_PROJECTIONS", ""));
+
+    private final Set<String> fields;
+
+    private RecordProjection(Collection<String> fields) {
+        Set<String> ordered = new LinkedHashSet<>();
+        for (String field : FIELDS) {
+            if (fields.contains(field)) {
+                ordered.add(field);
+            }
+        }
+        this.fields = Collections.unmodifiableSet(ordered);
+    }
+
+    public static RecordProjection all() {
+        return ALL;
+    }
+
+    public static RecordProjection of(Collection<String> fields) {
+        List<String> unknown = unknownFields(fields);
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown ctc2hts fields: " + String.join(", ", unknown));
+        }
+        return fields.containsAll(FIELDS) ? ALL : new RecordProjection(trimmed(fields));
+    }
+
+    public static Optional<RecordProjection> named(String name) {
+        return Optional.ofNullable(name == null ? null : NAMED.get(name.trim()));
+    }
+
+    /**
+     * The projection of a validated request: its {@code fields}, its registered {@code projection}, or every field.
+     */
+    public static RecordProjection forRequest(IntegrationRequest request) {
+        if (request.getFields() != null) {
+            return of(request.getFields());
+        }
+        if (request.getProjection() != null) {
+            return named(request.getProjection())
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown ctc2hts projection: " + request.getProjection()));
+        }
+        return ALL;
+    }
+
+    public static List<String> unknownFields(Collection<String> fields) {
+        List<String> unknown = new ArrayList<>();
+        for (String field : fields) {
+            if (field == null || !FIELDS.contains(field.trim())) {
+                unknown.add(String.valueOf(field));
+            }
+        }
+        return unknown;
+    }
+
+    /**
+     * Parses {@code name=field,field;name=field} projection definitions, failing on unknown fields so a typo in
+     * {@code CTC2HTS_PROJECTIONS} is reported at startup.
+     */
+    static Map<String, RecordProjection> parseNamed(String definitions) {
+        Map<String, RecordProjection> named = new LinkedHashMap<>();
+        if (definitions == null || definitions.isBlank()) {
+            return named;
+        }
+
+        for (String definition : definitions.split(";")) {
+            if (definition.isBlank()) {
+                continue;
+            }
+            int separator = definition.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalStateException("Invalid CTC2HTS_PROJECTIONS entry: " + definition.trim());
+            }
+            String name = definition.substring(0, separator).trim();
+            List<String> fields = List.of(definition.substring(separator + 1).split(","));
+            try {
+                named.put(name, of(fields));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("Invalid CTC2HTS_PROJECTIONS entry '" + name + "': " + e.getMessage(), e);
+            }
+        }
+        return named;
+    }
+
+    public Set<String> fields() {
+        return fields;
+    }
+
+    public boolean isAll() {
+        return fields.size() == FIELDS.size();
+    }
+
+    public boolean includes(String field) {
+        return fields.contains(field);
+    }
+
+    /**
+     * {@code referralAndOutcome} reads the reagent tests too: a reactive Unigold test forces a CTC clinic referral.
+     */
+    public boolean needsTests() {
+        return includes("reagentTesting") || includes("referralAndOutcome");
+    }
+
+    public boolean needsHivstSelfTests() {
+        return includes("selfTesting");
+    }
+
+    public boolean needsEnrollment() {
+        return includes("clientClassification");
+    }
+
+    public boolean needsClientColumns() {
+        return fields.stream().anyMatch(CLIENT_FIELDS::contains);
+    }
+
+    public boolean needsServiceColumns() {
+        return fields.stream().anyMatch(SERVICE_FIELDS::contains);
+    }
+
+    public boolean needsHouseholdColumns() {
+        return includes("residence");
+    }
+
+    private static Set<String> trimmed(Collection<String> fields) {
+        Set<String> trimmed = new LinkedHashSet<>();
+        for (String field : fields) {
+            trimmed.add(field.trim());
+        }
+        return trimmed;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof RecordProjection projection && fields.equals(projection.fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return fields.hashCode();
+    }
+}
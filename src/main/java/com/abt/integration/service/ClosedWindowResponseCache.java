@@ -0,0 +1,215 @@
+package com.abt.integration.service;
+
+import com.abt.integration.db.OpenSrpIntegrationRepository;
+import com.abt.integration.model.CountMode;
+import com.abt.integration.model.IntegrationRequest;
+import com.abt.util.EnvConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Size-bounded cache of gzip'd ctc2hts JSON responses for windows whose {@code endDate} is far enough in the
+ * past that the underlying rows are no longer expected to change. Bodies are held in direct buffers so
+ * cached pages do not add to heap or GC pressure; entries live longer the older their window is.
+ */
+public class ClosedWindowResponseCache {
+    private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+    private static final Duration DEFAULT_CLOSED_AFTER = Duration.ofDays(1);
+    private static final Duration MIN_TTL = Duration.ofMinutes(10);
+    private static final Duration MAX_TTL = Duration.ofHours(24);
+    private static final int WINDOW_AGE_TTL_DIVISOR = 10;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private final Duration closedAfter;
+    private final Clock clock;
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ClosedWindowResponseCache(long maxBytes, Duration closedAfter) {
+        this(maxBytes, closedAfter, Clock.systemUTC());
+    }
+
+    public ClosedWindowResponseCache(long maxBytes, Duration closedAfter, Clock clock) {
+        this.maxBytes = maxBytes;
+        this.closedAfter = closedAfter;
+        this.clock = clock;
+    }
+
+    public static ClosedWindowResponseCache fromEnv() {
+        int maxMegabytes = EnvConfig.getIntOrDefault("CTC2HTS_RESPONSE_CACHE_MAX_MB", 0);
+        if (maxMegabytes <= 0) {
+            return null;
+        }
+
+        return new ClosedWindowResponseCache(
+                maxMegabytes * BYTES_PER_MEGABYTE,
+                EnvConfig.getDurationOrDefault("CTC2HTS_RESPONSE_CACHE_CLOSED_AFTER", DEFAULT_CLOSED_AFTER)
+        );
+    }
+
+    public boolean isCacheable(IntegrationRequest request) {
+        return key(request) != null;
+    }
+
+    public synchronized ByteBuffer getGzipped(IntegrationRequest request) {
+        Key key = key(request);
+        if (key == null) {
+            return null;
+        }
+
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAtMillis() <= clock.millis()) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry.gzippedBody().asReadOnlyBuffer();
+    }
+
+    public void put(IntegrationRequest request, byte[] jsonBody) {
+        Key key = key(request);
+        if (key == null) {
+            return;
+        }
+
+        byte[] gzipped = gzip(jsonBody);
+        if (gzipped.length > maxBytes) {
+            return;
+        }
+
+        ByteBuffer body = ByteBuffer.allocateDirect(gzipped.length);
+        body.put(gzipped).flip();
+        long expiresAtMillis = clock.millis() + ttlFor(key).toMillis();
+
+        synchronized (this) {
+            remove(key);
+            evictExpired();
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (totalBytes + gzipped.length > maxBytes && eldest.hasNext()) {
+                totalBytes -= eldest.next().getValue().gzippedBody().capacity();
+                eldest.remove();
+                evictions++;
+            }
+
+            entries.put(key, new Entry(body, expiresAtMillis));
+            totalBytes += gzipped.length;
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("bytes", totalBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    /**
+     * Only single-facility requests are cached. A request that also sets {@code hfrCodes} or {@code councilCode} is
+     * left to the validator, which rejects it, instead of matching the entry of its {@code hfrCode}.
+     */
+    private Key key(IntegrationRequest request) {
+        if (request == null
+                || request.getHfrCode() == null
+                || request.getHfrCodes() != null
+                || request.getCouncilCode() != null
+                || request.getStartDate() == null
+                || request.getEndDate() == null
+                || request.getPageSize() == null
+                || !CountMode.isValid(request.getCountMode())) {
+            return null;
+        }
+
+        long endMillis = OpenSrpIntegrationRepository.normalizeDateCreatedEndMillis(request.getEndDate());
+        if (endMillis > clock.millis() - closedAfter.toMillis()) {
+            return null;
+        }
+
+        long startMillis = OpenSrpIntegrationRepository.normalizeDateCreatedMillis(request.getStartDate());
+        return new Key(
+                request.getHfrCode().trim(),
+                startMillis,
+                endMillis,
+                request.getCursor() == null ? request.getPageIndex() : null,
+                request.getPageSize(),
+                request.getCursor(),
+                CountMode.fromValue(request.getCountMode()).value(),
+                request.getFields() == null ? null : List.copyOf(request.getFields()),
+                request.getProjection()
+        );
+    }
+
+    private Duration ttlFor(Key key) {
+        Duration windowAge = Duration.ofMillis(clock.millis() - key.endMillis()).dividedBy(WINDOW_AGE_TTL_DIVISOR);
+        if (windowAge.compareTo(MIN_TTL) < 0) {
+            return MIN_TTL;
+        }
+        return windowAge.compareTo(MAX_TTL) > 0 ? MAX_TTL : windowAge;
+    }
+
+    private void evictExpired() {
+        long now = clock.millis();
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.expiresAtMillis() <= now) {
+                totalBytes -= entry.gzippedBody().capacity();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.gzippedBody().capacity();
+        }
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compress ctc2hts response", e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private record Key(
+            String hfrCode,
+            long startMillis,
+            long endMillis,
+            Integer pageIndex,
+            int pageSize,
+            String cursor,
+            String countMode,
+            List<String> fields,
+            String projection
+    ) {
+    }
+
+    private record Entry(ByteBuffer gzippedBody, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,324 @@
+package com.abt.integration.service;
+
+import com.abt.integration.config.WorkerThreads;
+import com.abt.integration.exception.ExportInProgressException;
+import com.abt.integration.exception.ValidationException;
+import com.abt.integration.model.ExportRequest;
+import com.abt.integration.model.IntegrationRequest;
+import com.abt.integration.validation.ExportRequestValidator;
+import com.abt.util.CustomJacksonObjectMapper;
+import com.abt.util.EnvConfig;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs ctc2hts bulk exports in the background and writes each one to a gzip'd NDJSON or CSV file on local disk.
+ * Only one export per facility selector runs at a time; finished jobs and their files are dropped after the
+ * retention period.
+ */
+public class Ctc2htsExportService {
+    private static final Logger log = LoggerFactory.getLogger(Ctc2htsExportService.class);
+    private static final String DEFAULT_EXPORT_DIR = System.getProperty("java.io.tmpdir") + "/ctc2hts-exports";
+    private static final Duration DEFAULT_RETENTION = Duration.ofHours(24);
+
+    private final IntegrationEndpointService integrationEndpointService;
+    private final ExportRequestValidator validator = new ExportRequestValidator();
+    private final Path exportDirectory;
+    private final Executor workers;
+    private final Duration retention;
+    private final Clock clock;
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, String> activeJobsByFacility = new ConcurrentHashMap<>();
+
+    public Ctc2htsExportService(IntegrationEndpointService integrationEndpointService,
+                                Path exportDirectory,
+                                Executor workers,
+                                Duration retention,
+                                Clock clock) {
+        this.integrationEndpointService = integrationEndpointService;
+        this.exportDirectory = exportDirectory;
+        this.workers = workers;
+        this.retention = retention;
+        this.clock = clock;
+    }
+
+    public static Ctc2htsExportService fromEnv(IntegrationEndpointService integrationEndpointService) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        Executor workers = Executors.newFixedThreadPool(
+                WorkerThreads.exports(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ctc2hts-export-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        return new Ctc2htsExportService(
+                integrationEndpointService,
+                Path.of(EnvConfig.getOrDefault("CTC2HTS_EXPORT_DIR", DEFAULT_EXPORT_DIR)),
+                workers,
+                EnvConfig.getDurationOrDefault("CTC2HTS_EXPORT_RETENTION", DEFAULT_RETENTION),
+                Clock.systemUTC()
+        );
+    }
+
+    /**
+     * Queues an export and returns its status, or throws {@link ExportInProgressException} when the same facility
+     * selector already has an export queued or running.
+     */
+    public Map<String, Object> submit(ExportRequest request) {
+        List<String> validationErrors = validator.validate(request);
+        if (!validationErrors.isEmpty()) {
+            throw new ValidationException(validationErrors);
+        }
+
+        pruneExpiredJobs();
+
+        String facilityKey = facilityKey(request);
+        ExportJob job = new ExportJob(UUID.randomUUID().toString(), facilityKey, request, clock.instant());
+        String activeJobId = activeJobsByFacility.putIfAbsent(facilityKey, job.id);
+        if (activeJobId != null) {
+            throw new ExportInProgressException(activeJobId);
+        }
+
+        jobs.put(job.id, job);
+        try {
+            workers.execute(() -> run(job));
+        } catch (RuntimeException e) {
+            jobs.remove(job.id);
+            activeJobsByFacility.remove(facilityKey, job.id);
+            throw e;
+        }
+        return job.status();
+    }
+
+    public Optional<Map<String, Object>> status(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(ExportJob::status);
+    }
+
+    /**
+     * The finished file of a completed export; empty while the job is unknown, still running or failed.
+     */
+    public Optional<ExportFile> file(String jobId) {
+        ExportJob job = jobs.get(jobId);
+        if (job == null || job.state != ExportState.COMPLETED) {
+            return Optional.empty();
+        }
+        return Optional.of(new ExportFile(job.file, job.fileName()));
+    }
+
+    private void run(ExportJob job) {
+        job.state = ExportState.RUNNING;
+        job.startedAt = clock.instant();
+        Path partialFile = exportDirectory.resolve(job.fileName() + ".part");
+        try {
+            Files.createDirectories(exportDirectory);
+            try (IntegrationRecordStream stream = integrationEndpointService.openExportStream(job.request.toIntegrationRequest());
+                 OutputStream output = new GZIPOutputStream(Files.newOutputStream(partialFile), 64 * 1024);
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                RecordWriter recordWriter = job.csv() ? new CsvRecordWriter(writer) : new NdjsonRecordWriter(writer);
+                for (List<Map<String, Object>> batch = stream.nextBatch(); !batch.isEmpty(); batch = stream.nextBatch()) {
+                    for (Map<String, Object> record : batch) {
+                        recordWriter.write(record);
+                    }
+                    job.recordsWritten += batch.size();
+                }
+            }
+
+            Path file = exportDirectory.resolve(job.fileName());
+            Files.move(partialFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            job.file = file;
+            job.sizeBytes = Files.size(file);
+            job.state = ExportState.COMPLETED;
+        } catch (Exception e) {
+            log.error("ctc2hts export {} failed", job.id, e);
+            deleteQuietly(partialFile);
+            job.error = String.valueOf(e.getMessage());
+            job.state = ExportState.FAILED;
+        } finally {
+            job.completedAt = clock.instant();
+            activeJobsByFacility.remove(job.facilityKey, job.id);
+        }
+    }
+
+    private void pruneExpiredJobs() {
+        Instant expiredBefore = clock.instant().minus(retention);
+        for (ExportJob job : jobs.values()) {
+            Instant completedAt = job.completedAt;
+            if (completedAt != null && completedAt.isBefore(expiredBefore) && jobs.remove(job.id, job)) {
+                if (job.file != null) {
+                    deleteQuietly(job.file);
+                }
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete ctc2hts export file {}", file, e);
+        }
+    }
+
+    private static String facilityKey(ExportRequest request) {
+        if (request.getCouncilCode() != null) {
+            return "councilCode:" + request.getCouncilCode().trim();
+        }
+        if (request.getHfrCodes() != null) {
+            TreeSet<String> hfrCodes = new TreeSet<>();
+            for (String hfrCode : request.getHfrCodes()) {
+                hfrCodes.add(hfrCode.trim());
+            }
+            return "hfrCodes:" + String.join(",", hfrCodes);
+        }
+        return "hfrCode:" + request.getHfrCode().trim();
+    }
+
+    public record ExportFile(Path path, String fileName) {
+    }
+
+    private enum ExportState {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private static final class ExportJob {
+        private final String id;
+        private final String facilityKey;
+        private final ExportRequest request;
+        private final Instant createdAt;
+        private volatile ExportState state = ExportState.QUEUED;
+        private volatile Instant startedAt;
+        private volatile Instant completedAt;
+        private volatile long recordsWritten;
+        private volatile long sizeBytes;
+        private volatile Path file;
+        private volatile String error;
+
+        private ExportJob(String id, String facilityKey, ExportRequest request, Instant createdAt) {
+            this.id = id;
+            this.facilityKey = facilityKey;
+            this.request = request;
+            this.createdAt = createdAt;
+        }
+
+        private boolean csv() {
+            return ExportRequest.FORMAT_CSV.equals(request.resolvedFormat());
+        }
+
+        private String fileName() {
+            return "ctc2hts-" + id + (csv() ? ".csv.gz" : ".ndjson.gz");
+        }
+
+        private Map<String, Object> status() {
+            IntegrationRequest filters = request.toIntegrationRequest();
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("jobId", id);
+            status.put("status", state.name().toLowerCase(Locale.ROOT));
+            status.put("format", request.resolvedFormat());
+            status.put("hfrCode", filters.getHfrCode());
+            status.put("hfrCodes", filters.getHfrCodes());
+            status.put("councilCode", filters.getCouncilCode());
+            status.put("startDate", filters.getStartDate());
+            status.put("endDate", filters.getEndDate());
+            status.put("recordsWritten", recordsWritten);
+            status.put("sizeBytes", state == ExportState.COMPLETED ? sizeBytes : null);
+            status.put("createdAt", createdAt.toString());
+            status.put("startedAt", startedAt == null ? null : startedAt.toString());
+            status.put("completedAt", completedAt == null ? null : completedAt.toString());
+            status.put("error", error);
+            status.put("downloadPath", state == ExportState.COMPLETED ? "/integration/ctc2hts/exports/" + id + "/file" : null);
+            return status;
+        }
+    }
+
+    private interface RecordWriter {
+        void write(Map<String, Object> record) throws IOException;
+    }
+
+    private record NdjsonRecordWriter(Writer writer) implements RecordWriter {
+        @Override
+        public void write(Map<String, Object> record) throws IOException {
+            writer.write(CustomJacksonObjectMapper.mapper.writeValueAsString(record));
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Uses the first record's keys as the header; nested values are written as JSON text.
+     */
+    private static final class CsvRecordWriter implements RecordWriter {
+        private final Writer writer;
+        private List<String> columns;
+
+        private CsvRecordWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(Map<String, Object> record) throws IOException {
+            if (columns == null) {
+                columns = new ArrayList<>(record.keySet());
+                writeRow(columns);
+            }
+
+            List<Object> values = new ArrayList<>(columns.size());
+            for (String column : columns) {
+                values.add(record.get(column));
+            }
+            writeRow(values);
+        }
+
+        private void writeRow(Collection<?> values) throws IOException {
+            boolean first = true;
+            for (Object value : values) {
+                if (!first) {
+                    writer.write(',');
+                }
+                writer.write(csvField(value));
+                first = false;
+            }
+            writer.write("\r\n");
+        }
+
+        private static String csvField(Object value) throws JsonProcessingException {
+            if (value == null) {
+                return "";
+            }
+            String text = value instanceof String || value instanceof Number || value instanceof Boolean
+                    ? String.valueOf(value)
+                    : CustomJacksonObjectMapper.mapper.writeValueAsString(value);
+            if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+                return text;
+            }
+            return '"' + text.replace("\"", "\"\"") + '"';
+        }
+    }
+}
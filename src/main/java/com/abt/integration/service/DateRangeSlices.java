@@ -0,0 +1,60 @@
+package com.abt.integration.service;
+
+import com.abt.integration.db.OpenSrpIntegrationRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Splits a ctc2hts date window into adjacent, non-overlapping slices holding roughly the same number of services,
+ * cutting at the planner's {@code date_created} histogram bounds. Inner cuts fall on whole seconds in milliseconds, so
+ * the seconds and milliseconds halves of each slice's {@code date_created} filter stay disjoint.
+ */
+final class DateRangeSlices {
+    private static final long MILLIS_PER_SECOND = 1000L;
+
+    private DateRangeSlices() {
+    }
+
+    /**
+     * Returns at most {@code maxSlices} slices covering {@code [startDate, endDate]}, or a single slice when the
+     * histogram has no bound inside the window.
+     */
+    static List<Slice> split(long startDate, long endDate, List<Long> histogramBounds, int maxSlices) {
+        long startMs = OpenSrpIntegrationRepository.normalizeDateCreatedMillis(startDate);
+        long endMs = OpenSrpIntegrationRepository.normalizeDateCreatedEndMillis(endDate);
+
+        TreeSet<Long> innerBounds = new TreeSet<>();
+        for (Long bound : histogramBounds) {
+            long boundMs = OpenSrpIntegrationRepository.normalizeDateCreatedMillis(bound);
+            long cut = boundMs - Math.floorMod(boundMs, MILLIS_PER_SECOND);
+            if (cut > startMs && cut <= endMs) {
+                innerBounds.add(cut);
+            }
+        }
+
+        int sliceCount = Math.min(maxSlices, innerBounds.size() + 1);
+        if (sliceCount < 2) {
+            return List.of(new Slice(startDate, endDate));
+        }
+
+        List<Long> bounds = new ArrayList<>(innerBounds);
+        TreeSet<Long> cuts = new TreeSet<>();
+        for (int slice = 1; slice < sliceCount; slice++) {
+            cuts.add(bounds.get(slice * bounds.size() / sliceCount));
+        }
+
+        List<Slice> slices = new ArrayList<>(cuts.size() + 1);
+        long sliceStart = startDate;
+        for (long cut : cuts) {
+            slices.add(new Slice(sliceStart, cut - 1));
+            sliceStart = cut;
+        }
+        slices.add(new Slice(sliceStart, endDate));
+        return slices;
+    }
+
+    record Slice(long startDate, long endDate) {
+    }
+}
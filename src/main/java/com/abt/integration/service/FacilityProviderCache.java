@@ -0,0 +1,95 @@
+package com.abt.integration.service;
+
+import com.abt.integration.config.PostgresConnectionFactory;
+import com.abt.integration.db.OpenSrpIntegrationRepository;
+import com.abt.integration.db.OpenSrpIntegrationRepository.FacilityProviders;
+import com.abt.integration.db.OpenSrpIntegrationRepository.ProviderLocation;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * In-memory index of hfr_code to the providers registered at that facility, together with the
+ * location attributes ctc2hts projects, so service queries can filter {@code cbhts_services.provider_id}
+ * directly instead of joining {@code team_members} and {@code tanzania_locations} on every request.
+ */
+public class FacilityProviderCache {
+    private static final Duration MISS_REFRESH_INTERVAL = Duration.ofMinutes(1);
+
+    private final PostgresConnectionFactory connectionFactory;
+    private final OpenSrpIntegrationRepository repository;
+    private final Duration ttl;
+    private final Clock clock;
+    private volatile Snapshot snapshot;
+
+    public FacilityProviderCache(PostgresConnectionFactory connectionFactory,
+                                 OpenSrpIntegrationRepository repository,
+                                 Duration ttl) {
+        this(connectionFactory, repository, ttl, Clock.systemUTC());
+    }
+
+    public FacilityProviderCache(PostgresConnectionFactory connectionFactory,
+                                 OpenSrpIntegrationRepository repository,
+                                 Duration ttl,
+                                 Clock clock) {
+        this.connectionFactory = connectionFactory;
+        this.repository = repository;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    public Optional<FacilityProviders> find(String hfrCode) throws SQLException {
+        Snapshot current = snapshot;
+        if (current == null || current.ageMillis(clock) >= ttl.toMillis()) {
+            current = refreshIfOlderThan(current, ttl);
+        }
+
+        FacilityProviders facility = current.facilities().get(hfrCode);
+        if (facility == null && current.ageMillis(clock) >= MISS_REFRESH_INTERVAL.toMillis()) {
+            current = refreshIfOlderThan(current, MISS_REFRESH_INTERVAL);
+            facility = current.facilities().get(hfrCode);
+        }
+        return Optional.ofNullable(facility);
+    }
+
+    public void refresh() throws SQLException {
+        List<ProviderLocation> providerLocations;
+        try (Connection connection = connectionFactory.openReadConnection()) {
+            connection.setReadOnly(true);
+            providerLocations = repository.findProviderLocations(connection);
+        }
+
+        Map<String, Map<String, ProviderLocation>> providersByFacility = new HashMap<>();
+        for (ProviderLocation providerLocation : providerLocations) {
+            providersByFacility.computeIfAbsent(providerLocation.hfrCode(), unused -> new LinkedHashMap<>())
+                    .putIfAbsent(providerLocation.providerId(), providerLocation);
+        }
+
+        Map<String, FacilityProviders> facilities = new HashMap<>();
+        providersByFacility.forEach((hfrCode, providers) ->
+                facilities.put(hfrCode, new FacilityProviders(hfrCode, Map.copyOf(providers))));
+        snapshot = new Snapshot(Map.copyOf(facilities), clock.millis());
+    }
+
+    private synchronized Snapshot refreshIfOlderThan(Snapshot seen, Duration maxAge) throws SQLException {
+        Snapshot current = snapshot;
+        if (current != seen && current != null && current.ageMillis(clock) < maxAge.toMillis()) {
+            return current;
+        }
+        refresh();
+        return snapshot;
+    }
+
+    private record Snapshot(Map<String, FacilityProviders> facilities, long loadedAtMillis) {
+        private long ageMillis(Clock clock) {
+            return clock.millis() - loadedAtMillis;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.abt.integration.service;
+
+import com.abt.integration.config.PostgresConnectionFactory;
+import com.abt.integration.db.OpenSrpIntegrationRepository;
+import com.abt.integration.db.OpenSrpIntegrationRepository.HivstKitPairing;
+import com.abt.integration.mapping.IntegrationDataMapper;
+import com.abt.util.EnvConfig;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background job that copies every {@code hivst_issue_kits} event into {@code ctc_integration.hivst_kit_pairings},
+ * one row per kit slot with its code, batch and expiry resolved and its issue date parsed, so HivST lookups can
+ * pair results with kits by indexed equality. Each run reads the slots that are missing or no longer match their
+ * issue event and upserts them, so a corrected issue event replaces its stale pairing.
+ */
+public class HivstKitPairingRefreshJob extends RefreshJob {
+    private static final String PAIRING_TABLE_ENV_KEY = "CTC2HTS_HIVST_PAIRING_TABLE";
+    private static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMinutes(1);
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final PostgresConnectionFactory connectionFactory;
+    private final OpenSrpIntegrationRepository repository;
+    private final int batchSize;
+
+    public HivstKitPairingRefreshJob(PostgresConnectionFactory connectionFactory,
+                                     OpenSrpIntegrationRepository repository,
+                                     int batchSize) {
+        super("ctc2hts-hivst-pairing-refresh", "Paired {} HivST kit slots", "HivST kit pairing refresh failed");
+        this.connectionFactory = connectionFactory;
+        this.repository = repository;
+        this.batchSize = batchSize;
+    }
+
+    public static HivstKitPairingRefreshJob startFromEnv(PostgresConnectionFactory connectionFactory,
+                                                         OpenSrpIntegrationRepository repository) {
+        if (!enabled(PAIRING_TABLE_ENV_KEY)) {
+            return null;
+        }
+
+        HivstKitPairingRefreshJob job = new HivstKitPairingRefreshJob(
+                connectionFactory,
+                repository,
+                batchSize("CTC2HTS_HIVST_PAIRING_BATCH_SIZE", DEFAULT_BATCH_SIZE)
+        );
+        job.start(EnvConfig.getDurationOrDefault("CTC2HTS_HIVST_PAIRING_REFRESH_INTERVAL", DEFAULT_REFRESH_INTERVAL));
+        return job;
+    }
+
+    @Override
+    public int refresh() throws SQLException {
+        try (Connection connection = connectionFactory.openConnection()) {
+            connection.setAutoCommit(false);
+            repository.ensureHivstKitPairingTable(connection);
+            connection.commit();
+
+            int written = 0;
+            while (true) {
+                List<HivstKitPairing> changed = repository.findChangedHivstIssueKits(connection, batchSize);
+                List<HivstKitPairing> pairings = new ArrayList<>(changed.size());
+                for (HivstKitPairing pairing : changed) {
+                    pairings.add(pairing.withIssueDate(IntegrationDataMapper.parseLocalDate(pairing.issueEventDate())));
+                }
+                repository.upsertHivstKitPairings(connection, pairings);
+                connection.commit();
+                written += pairings.size();
+
+                if (changed.size() < batchSize) {
+                    markReady();
+                    return written;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.abt.integration.service;
+
+import com.abt.integration.config.PostgresConnectionFactory;
+import com.abt.integration.db.OpenSrpIntegrationRepository;
+import com.abt.integration.db.OpenSrpIntegrationRepository.HtsPayloadRow;
+import com.abt.integration.db.OpenSrpIntegrationRepository.ServiceRow;
+import com.abt.integration.db.OpenSrpIntegrationRepository.SourceChange;
+import com.abt.integration.mapping.IntegrationDataMapper;
+import com.abt.integration.model.PageCursor;
+import com.abt.util.EnvConfig;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Background job that keeps {@code ctc_integration.hts_payload} holding the mapped ctc2hts record of every
+ * {@code cbhts_services} event. New services are picked up from the highest {@code date_created} already
+ * processed, and services that gained {@code cbhts_tests}, {@code cbhts_enrollment} or {@code hivst_results} rows
+ * are re-mapped, so mapping runs once per change instead of once per read.
+ * <p>
+ * Each run reads only rows at least {@code CTC2HTS_PAYLOAD_COMMIT_LAG} old and re-scans the last
+ * {@code CTC2HTS_PAYLOAD_OVERLAP} before its watermarks, so a row committed late is still picked up. Inputs without
+ * a usable change column ({@code hivst_issue_kits}, {@code client}, {@code household}) and edits to existing rows are
+ * caught by a rolling sweep that re-maps {@code CTC2HTS_PAYLOAD_SWEEP_BATCHES} batches of services per run.
+ */
+public class HtsPayloadRefreshJob extends RefreshJob {
+    private static final String PAYLOAD_TABLE_ENV_KEY = "CTC2HTS_PAYLOAD_TABLE";
+    private static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMinutes(1);
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final String SERVICES_SOURCE = "cbhts_services";
+    private static final String TESTS_SOURCE = "cbhts_tests";
+    private static final String ENROLLMENT_SOURCE = "cbhts_enrollment";
+    private static final String SWEEP_SOURCE = "sweep";
+    private static final Duration DEFAULT_COMMIT_LAG = Duration.ofMinutes(1);
+    private static final Duration DEFAULT_OVERLAP = Duration.ofMinutes(10);
+    private static final int DEFAULT_SWEEP_BATCHES = 1;
+
+    private final PostgresConnectionFactory connectionFactory;
+    private final OpenSrpIntegrationRepository repository;
+    private final IntegrationDataMapper dataMapper;
+    private final int batchSize;
+    private final Clock clock;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Duration commitLag = EnvConfig.getDurationOrDefault("CTC2HTS_PAYLOAD_COMMIT_LAG", DEFAULT_COMMIT_LAG);
+    private final Duration overlap = EnvConfig.getDurationOrDefault("CTC2HTS_PAYLOAD_OVERLAP", DEFAULT_OVERLAP);
+    private final int sweepBatches = Math.max(0, EnvConfig.getIntOrDefault("CTC2HTS_PAYLOAD_SWEEP_BATCHES", DEFAULT_SWEEP_BATCHES));
+    private volatile long freshThroughMillis = Long.MIN_VALUE;
+
+    public HtsPayloadRefreshJob(PostgresConnectionFactory connectionFactory,
+                                OpenSrpIntegrationRepository repository,
+                                IntegrationDataMapper dataMapper,
+                                int batchSize) {
+        this(connectionFactory, repository, dataMapper, batchSize, Clock.systemUTC());
+    }
+
+    public HtsPayloadRefreshJob(PostgresConnectionFactory connectionFactory,
+                                OpenSrpIntegrationRepository repository,
+                                IntegrationDataMapper dataMapper,
+                                int batchSize,
+                                Clock clock) {
+        super("ctc2hts-payload-refresh", "Refreshed {} ctc2hts payload rows", "ctc2hts payload refresh failed");
+        this.connectionFactory = connectionFactory;
+        this.repository = repository;
+        this.dataMapper = dataMapper;
+        this.batchSize = batchSize;
+        this.clock = clock;
+    }
+
+    public static HtsPayloadRefreshJob startFromEnv(PostgresConnectionFactory connectionFactory,
+                                                    OpenSrpIntegrationRepository repository,
+                                                    IntegrationDataMapper dataMapper) {
+        if (!enabled(PAYLOAD_TABLE_ENV_KEY)) {
+            return null;
+        }
+
+        HtsPayloadRefreshJob job = new HtsPayloadRefreshJob(
+                connectionFactory,
+                repository,
+                dataMapper,
+                batchSize("CTC2HTS_PAYLOAD_BATCH_SIZE", DEFAULT_BATCH_SIZE)
+        );
+        job.start(EnvConfig.getDurationOrDefault("CTC2HTS_PAYLOAD_REFRESH_INTERVAL", DEFAULT_REFRESH_INTERVAL));
+        return job;
+    }
+
+    /**
+     * True when every service created up to {@code endMillis} was mapped by the last successful run, so a window
+     * ending there can be served from the payload table; later windows have to be read live.
+     */
+    public boolean isFreshThrough(long endMillis) {
+        return isReady() && endMillis <= freshThroughMillis;
+    }
+
+    @Override
+    public int refresh() throws SQLException {
+        try (Connection connection = connectionFactory.openConnection()) {
+            requireServiceChangesIndex(connection);
+            connection.setAutoCommit(false);
+            repository.ensureHtsPayloadTables(connection);
+            seedSourceWatermarks(connection);
+            connection.commit();
+
+            long untilMillis = clock.millis() - commitLag.toMillis();
+            int written = refreshNewServices(connection, untilMillis);
+            written += refreshChangedSource(connection, TESTS_SOURCE, untilMillis);
+            written += refreshChangedSource(connection, ENROLLMENT_SOURCE, untilMillis);
+            written += refreshNewHivstResults(connection);
+            written += sweep(connection, untilMillis);
+            freshThroughMillis = untilMillis;
+            markReady();
+            return written;
+        }
+    }
+
+    /**
+     * Every services batch seeks on the normalized {@code date_created} expression; without its index each batch
+     * sorts the whole table, so the job builds it (concurrently, outside a transaction) or refuses to run.
+     */
+    private void requireServiceChangesIndex(Connection connection) throws SQLException {
+        if (repository.hasServiceChangesIndex(connection)) {
+            return;
+        }
+
+        repository.ensureServiceChangesIndex(connection);
+        if (!repository.hasServiceChangesIndex(connection)) {
+            throw new IllegalStateException("cbhts_services_date_created_ms_idx is missing or not valid yet; " +
+                    "ctc2hts payload refresh needs it to seek on the normalized date_created");
+        }
+    }
+
+    private void seedSourceWatermarks(Connection connection) throws SQLException {
+        if (repository.findHtsPayloadWatermark(connection, SERVICES_SOURCE).isPresent()) {
+            return;
+        }
+
+        // The first services pass maps every row with its current children, so only child changes after it matter.
+        seedSourceWatermark(connection, TESTS_SOURCE, repository.findLatestTestChange(connection));
+        seedSourceWatermark(connection, ENROLLMENT_SOURCE, repository.findLatestEnrollmentChange(connection));
+        repository.markAllHivstResultsSeen(connection);
+    }
+
+    private void seedSourceWatermark(Connection connection, String source, Optional<PageCursor> latest) throws SQLException {
+        if (latest.isPresent() && repository.findHtsPayloadWatermark(connection, source).isEmpty()) {
+            repository.saveHtsPayloadWatermark(connection, source, latest.get().encode());
+        }
+    }
+
+    private int refreshNewServices(Connection connection, long untilMillis) throws SQLException {
+        PageCursor watermark = watermark(connection, SERVICES_SOURCE);
+        PageCursor since = rewind(watermark);
+        int written = 0;
+        while (true) {
+            List<ServiceRow> serviceRows = repository.findServiceChanges(connection, since, untilMillis, batchSize);
+            if (serviceRows.isEmpty()) {
+                connection.commit();
+                return written;
+            }
+
+            written += remap(connection, serviceRows);
+            ServiceRow lastRow = serviceRows.get(serviceRows.size() - 1);
+            since = new PageCursor(OpenSrpIntegrationRepository.normalizeDateCreatedMillis(lastRow.dateCreated()), lastRow.eventId());
+            if (isAfter(since, watermark)) {
+                repository.saveHtsPayloadWatermark(connection, SERVICES_SOURCE, since.encode());
+                watermark = since;
+            }
+            connection.commit();
+
+            if (serviceRows.size() < batchSize) {
+                return written;
+            }
+        }
+    }
+
+    private int refreshChangedSource(Connection connection, String source, long untilMillis) throws SQLException {
+        PageCursor watermark = watermark(connection, source);
+        PageCursor since = rewind(watermark);
+        int written = 0;
+        while (true) {
+            List<SourceChange> changes = TESTS_SOURCE.equals(source)
+                    ? repository.findTestChanges(connection, since, untilMillis, batchSize)
+                    : repository.findEnrollmentChanges(connection, since, untilMillis, batchSize);
+            if (changes.isEmpty()) {
+                connection.commit();
+                return written;
+            }
+
+            Set<String> visitGroups = new HashSet<>();
+            Set<String> baseEntityIds = new HashSet<>();
+            for (SourceChange change : changes) {
+                if (hasText(change.htsVisitGroup())) {
+                    visitGroups.add(change.htsVisitGroup());
+                } else if (hasText(change.baseEntityId())) {
+                    baseEntityIds.add(change.baseEntityId());
+                }
+            }
+
+            written += remap(connection, repository.findServicesForSourceChanges(connection, visitGroups, baseEntityIds));
+            SourceChange lastChange = changes.get(changes.size() - 1);
+            since = new PageCursor(lastChange.dateCreated(), lastChange.eventId());
+            if (isAfter(since, watermark)) {
+                repository.saveHtsPayloadWatermark(connection, source, since.encode());
+                watermark = since;
+            }
+            connection.commit();
+
+            if (changes.size() < batchSize) {
+                return written;
+            }
+        }
+    }
+
+    private int refreshNewHivstResults(Connection connection) throws SQLException {
+        int written = 0;
+        while (true) {
+            Map<String, String> baseEntityIdsByEventId = repository.findUnseenHivstResults(connection, batchSize);
+            if (baseEntityIdsByEventId.isEmpty()) {
+                connection.commit();
+                return written;
+            }
+
+            Set<String> baseEntityIds = new HashSet<>();
+            for (String baseEntityId : baseEntityIdsByEventId.values()) {
+                if (hasText(baseEntityId)) {
+                    baseEntityIds.add(baseEntityId);
+                }
+            }
+
+            written += remap(connection, repository.findServicesForSourceChanges(connection, Set.of(), baseEntityIds));
+            repository.markHivstResultsSeen(connection, baseEntityIdsByEventId.keySet());
+            connection.commit();
+
+            if (baseEntityIdsByEventId.size() < batchSize) {
+                return written;
+            }
+        }
+    }
+
+    /**
+     * Re-maps the next {@code sweepBatches} batches of services after the sweep watermark and starts over from the
+     * oldest service once it reaches the end, so every payload is rebuilt from all of its inputs periodically.
+     */
+    private int sweep(Connection connection, long untilMillis) throws SQLException {
+        int written = 0;
+        PageCursor since = watermark(connection, SWEEP_SOURCE);
+        for (int batch = 0; batch < sweepBatches; batch++) {
+            List<ServiceRow> serviceRows = repository.findServiceChanges(connection, since, untilMillis, batchSize);
+            written += remap(connection, serviceRows);
+            if (serviceRows.size() < batchSize) {
+                repository.deleteHtsPayloadWatermark(connection, SWEEP_SOURCE);
+                connection.commit();
+                return written;
+            }
+
+            ServiceRow lastRow = serviceRows.get(serviceRows.size() - 1);
+            since = new PageCursor(OpenSrpIntegrationRepository.normalizeDateCreatedMillis(lastRow.dateCreated()), lastRow.eventId());
+            repository.saveHtsPayloadWatermark(connection, SWEEP_SOURCE, since.encode());
+            connection.commit();
+        }
+        return written;
+    }
+
+    private int remap(Connection connection, List<ServiceRow> serviceRows) throws SQLException {
+        if (serviceRows.isEmpty()) {
+            return 0;
+        }
+        return repository.upsertHtsPayloads(connection, mapPayloads(connection, serviceRows));
+    }
+
+    private List<HtsPayloadRow> mapPayloads(Connection connection, List<ServiceRow> serviceRows) throws SQLException {
+        // Same child window as the change feed: tests recorded from the earliest service in the batch until now.
+        long startDate = Long.MAX_VALUE;
+        for (ServiceRow serviceRow : serviceRows) {
+            startDate = Math.min(startDate, OpenSrpIntegrationRepository.normalizeDateCreatedMillis(serviceRow.dateCreated()));
+        }
+        long endDate = clock.millis();
+
+        Map<String, List<OpenSrpIntegrationRepository.TestRow>> testsByKey =
+                repository.findTestsForServices(connection, serviceRows, startDate, endDate);
+        Map<String, List<OpenSrpIntegrationRepository.HivstSelfTestRow>> hivstRowsByBaseEntity =
+                repository.findHivstTestByBaseEntity(connection, serviceRows);
+        Map<String, Boolean> enrollmentEligibilityByBaseEntity =
+                repository.findEnrollmentEligibilityByBaseEntity(connection, serviceRows);
+
+        List<HtsPayloadRow> payloads = new ArrayList<>();
+        for (ServiceRow serviceRow : serviceRows) {
+            Map<String, Object> record = dataMapper.mapServiceRow(
+                    serviceRow,
+                    testsByKey.getOrDefault(OpenSrpIntegrationRepository.serviceKey(serviceRow), List.of()),
+                    hivstRowsByBaseEntity.getOrDefault(serviceRow.baseEntityId(), List.of()),
+                    enrollmentEligibilityByBaseEntity.get(serviceRow.baseEntityId())
+            );
+            payloads.add(new HtsPayloadRow(
+                    serviceRow.eventId(),
+                    serviceRow.hfrCode(),
+                    serviceRow.districtCouncil(),
+                    OpenSrpIntegrationRepository.normalizeDateCreatedMillis(serviceRow.dateCreated()),
+                    toJson(record)
+            ));
+        }
+        return payloads;
+    }
+
+    private PageCursor watermark(Connection connection, String source) throws SQLException {
+        return repository.findHtsPayloadWatermark(connection, source).map(PageCursor::decode).orElse(null);
+    }
+
+    /**
+     * Where a run starts reading: {@code overlap} before the watermark, ahead of every event id at that instant.
+     */
+    private PageCursor rewind(PageCursor watermark) {
+        return watermark == null ? null : new PageCursor(watermark.dateCreated() - overlap.toMillis(), "");
+    }
+
+    private static boolean isAfter(PageCursor cursor, PageCursor watermark) {
+        if (watermark == null) {
+            return true;
+        }
+        return cursor.dateCreated() != watermark.dateCreated()
+                ? cursor.dateCreated() > watermark.dateCreated()
+                : cursor.eventId().compareTo(watermark.eventId()) > 0;
+    }
+
+    private String toJson(Map<String, Object> record) {
+        try {
+            return objectMapper.writeValueAsString(record);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize ctc2hts payload", e);
+        }
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+}
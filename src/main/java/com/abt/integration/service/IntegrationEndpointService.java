@@ -1,9 +1,28 @@
 package com.abt.integration.service;
 
+import com.abt.integration.model.ChangeFeedRequest;
 import com.abt.integration.model.IntegrationRequest;
 
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 
 public interface IntegrationEndpointService {
-    Map<String, Object> fetch(IntegrationRequest request);
+    CompletionStage<Map<String, Object>> fetch(IntegrationRequest request);
+
+    IntegrationRecordStream openStream(IntegrationRequest request);
+
+    /**
+     * Streams every record in the request's facility and date range, ignoring paging. The request must already be
+     * validated.
+     */
+    IntegrationRecordStream openExportStream(IntegrationRequest request);
+
+    CompletionStage<Map<String, Object>> fetchChanges(ChangeFeedRequest request);
+
+    /**
+     * Next-page prefetch counters for {@code /metrics}.
+     */
+    default Map<String, Object> prefetchStats() {
+        return Map.of("enabled", false);
+    }
 }
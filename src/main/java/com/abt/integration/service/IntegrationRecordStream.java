@@ -0,0 +1,14 @@
+package com.abt.integration.service;
+
+import java.util.List;
+import java.util.Map;
+
+public interface IntegrationRecordStream extends AutoCloseable {
+    /**
+     * Returns the next batch of mapped records, or an empty list once the result set is exhausted.
+     */
+    List<Map<String, Object>> nextBatch();
+
+    @Override
+    void close();
+}
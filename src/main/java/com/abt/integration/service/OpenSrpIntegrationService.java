@@ -1,88 +1,1072 @@
 package com.abt.integration.service;
 
+import com.abt.integration.config.BlockingIoExecutor;
 import com.abt.integration.config.PostgresConnectionFactory;
+import com.abt.integration.config.WorkerThreads;
 import com.abt.integration.db.OpenSrpIntegrationRepository;
+import com.abt.integration.db.OpenSrpSchemaBootstrap;
+import com.abt.integration.exception.DatabaseUnavailableException;
+import com.abt.integration.exception.QueryTimeoutException;
 import com.abt.integration.exception.ValidationException;
 import com.abt.integration.mapping.IntegrationDataMapper;
+import com.abt.integration.model.ChangeFeedRequest;
+import com.abt.integration.model.CountMode;
 import com.abt.integration.model.IntegrationRequest;
+import com.abt.integration.model.PageCursor;
+import com.abt.integration.model.RecordProjection;
+import com.abt.integration.validation.ChangeFeedRequestValidator;
 import com.abt.integration.validation.IntegrationRequestValidator;
+import com.abt.util.EnvConfig;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class OpenSrpIntegrationService implements IntegrationEndpointService {
+    private static final int DEFAULT_STREAM_FETCH_SIZE = 500;
+    private static final Duration DEFAULT_COUNT_CACHE_TTL = Duration.ofMinutes(5);
+    private static final int DEFAULT_COUNT_CACHE_MAX_ENTRIES = 10_000;
+    private static final Duration DEFAULT_FACILITY_CACHE_TTL = Duration.ofMinutes(10);
+    private static final int DEFAULT_CHANGE_FEED_LIMIT = 500;
+    private static final int DEFAULT_HIVST_LOOKUP_LIMIT = 10;
+    private static final Duration DEFAULT_QUERY_TIMEOUT = Duration.ofSeconds(15);
+    private static final Duration DEFAULT_SPLIT_MIN_WINDOW = Duration.ofDays(30);
+    private static final Duration DEFAULT_CHANGES_COMMIT_LAG = Duration.ofMinutes(1);
+    private static final String PAGE_QUERY_LATERAL = "lateral";
+    private static final TypeReference<LinkedHashMap<String, Object>> PAYLOAD_TYPE = new TypeReference<>() {
+    };
 
     private final PostgresConnectionFactory connectionFactory;
     private final OpenSrpIntegrationRepository repository;
     private final IntegrationDataMapper dataMapper;
     private final IntegrationRequestValidator validator;
+    private final ChangeFeedRequestValidator changeFeedValidator = new ChangeFeedRequestValidator();
+    private final Executor lookupExecutor;
+    private final FacilityProviderCache facilityProviderCache;
+    private final HtsPayloadRefreshJob payloadRefreshJob;
+    private final Executor blockingExecutor;
+    private final HivstKitPairingRefreshJob hivstPairingJob;
+    private final ObjectMapper payloadMapper = new ObjectMapper();
+    private final int hivstLookupLimit =
+            Math.max(1, EnvConfig.getIntOrDefault("CTC2HTS_HIVST_LOOKUP_LIMIT", DEFAULT_HIVST_LOOKUP_LIMIT));
+    private final int streamFetchSize = EnvConfig.getIntOrDefault("CTC2HTS_STREAM_FETCH_SIZE", DEFAULT_STREAM_FETCH_SIZE);
+    private final boolean lateralPageQuery =
+            PAGE_QUERY_LATERAL.equalsIgnoreCase(EnvConfig.getOrDefault("CTC2HTS_PAGE_QUERY", "separate"));
+    private final QueryBudget pageBudget =
+            new QueryBudget(EnvConfig.getDurationOrDefault("CTC2HTS_QUERY_TIMEOUT", DEFAULT_QUERY_TIMEOUT), null);
+    private final QueryBudget changesBudget =
+            new QueryBudget(EnvConfig.getDurationOrDefault("CTC2HTS_CHANGES_QUERY_TIMEOUT", pageBudget.timeout()), null);
+    private final Duration changesCommitLag =
+            EnvConfig.getDurationOrDefault("CTC2HTS_CHANGES_COMMIT_LAG", DEFAULT_CHANGES_COMMIT_LAG);
+    private final int splitSlices = EnvConfig.getIntOrDefault("CTC2HTS_SPLIT_SLICES", 0);
+    private final Duration splitMinWindow = EnvConfig.getDurationOrDefault("CTC2HTS_SPLIT_MIN_WINDOW", DEFAULT_SPLIT_MIN_WINDOW);
+    private final PagePrefetchCache prefetchCache = PagePrefetchCache.fromEnv();
+    private final ServiceCountCache countCache = new ServiceCountCache(
+            EnvConfig.getDurationOrDefault("CTC2HTS_COUNT_CACHE_TTL", DEFAULT_COUNT_CACHE_TTL),
+            DEFAULT_COUNT_CACHE_MAX_ENTRIES
+    );
 
-    public OpenSrpIntegrationService() {
-        this.connectionFactory = new PostgresConnectionFactory();
-        this.repository = new OpenSrpIntegrationRepository(connectionFactory.schema());
-        this.dataMapper = new IntegrationDataMapper();
-        this.validator = new IntegrationRequestValidator();
+    private OpenSrpIntegrationService(Builder builder) {
+        this.connectionFactory = builder.connectionFactory;
+        this.repository = builder.repository;
+        this.dataMapper = builder.dataMapper;
+        this.validator = builder.validator;
+        this.lookupExecutor = builder.defaultLookupExecutor ? defaultLookupExecutor() : builder.lookupExecutor;
+        this.facilityProviderCache = builder.defaultFacilityProviderCache
+                ? defaultFacilityProviderCache(connectionFactory, repository)
+                : builder.facilityProviderCache;
+        this.payloadRefreshJob = builder.payloadRefreshJob;
+        this.blockingExecutor = builder.blockingExecutor == null ? BlockingIoExecutor.shared() : builder.blockingExecutor;
+        this.hivstPairingJob = builder.hivstPairingJob;
     }
 
-    public OpenSrpIntegrationService(PostgresConnectionFactory connectionFactory,
-                                     OpenSrpIntegrationRepository repository,
-                                     IntegrationDataMapper dataMapper,
-                                     IntegrationRequestValidator validator) {
-        this.connectionFactory = connectionFactory;
-        this.repository = repository;
-        this.dataMapper = dataMapper;
-        this.validator = validator;
+    /**
+     * The service the routes use: dependencies, executors, caches and refresh jobs are all configured from the
+     * environment, and the refresh jobs that are enabled are started.
+     */
+    public static OpenSrpIntegrationService fromEnv() {
+        PostgresConnectionFactory connectionFactory = new PostgresConnectionFactory();
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository(
+                connectionFactory.schema(),
+                OpenSrpSchemaBootstrap.normalizedDateCreatedFilterEnabled()
+        );
+        IntegrationDataMapper dataMapper = new IntegrationDataMapper();
+        return builder(connectionFactory, repository, dataMapper, new IntegrationRequestValidator())
+                .payloadRefreshJob(HtsPayloadRefreshJob.startFromEnv(connectionFactory, repository, dataMapper))
+                .hivstPairingJob(HivstKitPairingRefreshJob.startFromEnv(connectionFactory, repository))
+                .build();
+    }
+
+    public static Builder builder(PostgresConnectionFactory connectionFactory,
+                                  OpenSrpIntegrationRepository repository,
+                                  IntegrationDataMapper dataMapper,
+                                  IntegrationRequestValidator validator) {
+        return new Builder(connectionFactory, repository, dataMapper, validator);
+    }
+
+    /**
+     * Optional dependencies of the service. Unless set, the lookup executor and facility cache come from the
+     * environment, blocking work runs on {@link BlockingIoExecutor#shared()} and no refresh job is used; setting the
+     * lookup executor or facility cache to {@code null} turns them off.
+     */
+    public static final class Builder {
+        private final PostgresConnectionFactory connectionFactory;
+        private final OpenSrpIntegrationRepository repository;
+        private final IntegrationDataMapper dataMapper;
+        private final IntegrationRequestValidator validator;
+        private Executor lookupExecutor;
+        private boolean defaultLookupExecutor = true;
+        private FacilityProviderCache facilityProviderCache;
+        private boolean defaultFacilityProviderCache = true;
+        private HtsPayloadRefreshJob payloadRefreshJob;
+        private Executor blockingExecutor;
+        private HivstKitPairingRefreshJob hivstPairingJob;
+
+        private Builder(PostgresConnectionFactory connectionFactory,
+                        OpenSrpIntegrationRepository repository,
+                        IntegrationDataMapper dataMapper,
+                        IntegrationRequestValidator validator) {
+            this.connectionFactory = connectionFactory;
+            this.repository = repository;
+            this.dataMapper = dataMapper;
+            this.validator = validator;
+        }
+
+        public Builder lookupExecutor(Executor lookupExecutor) {
+            this.lookupExecutor = lookupExecutor;
+            this.defaultLookupExecutor = false;
+            return this;
+        }
+
+        public Builder facilityProviderCache(FacilityProviderCache facilityProviderCache) {
+            this.facilityProviderCache = facilityProviderCache;
+            this.defaultFacilityProviderCache = false;
+            return this;
+        }
+
+        public Builder payloadRefreshJob(HtsPayloadRefreshJob payloadRefreshJob) {
+            this.payloadRefreshJob = payloadRefreshJob;
+            return this;
+        }
+
+        public Builder blockingExecutor(Executor blockingExecutor) {
+            this.blockingExecutor = blockingExecutor;
+            return this;
+        }
+
+        public Builder hivstPairingJob(HivstKitPairingRefreshJob hivstPairingJob) {
+            this.hivstPairingJob = hivstPairingJob;
+            return this;
+        }
+
+        public OpenSrpIntegrationService build() {
+            return new OpenSrpIntegrationService(this);
+        }
     }
 
     @Override
-    public Map<String, Object> fetch(IntegrationRequest request) {
+    public CompletionStage<Map<String, Object>> fetch(IntegrationRequest request) {
         List<String> validationErrors = validator.validate(request);
         if (!validationErrors.isEmpty()) {
-            throw new ValidationException(validationErrors);
+            return CompletableFuture.failedFuture(new ValidationException(validationErrors));
+        }
+
+        CompletableFuture<Map<String, Object>> prefetched = prefetchCache == null ? null : prefetchCache.take(request);
+        CompletableFuture<Map<String, Object>> result = prefetched == null
+                ? fetchFresh(request)
+                : prefetched.exceptionallyCompose(error -> fetchFresh(request));
+        if (prefetchCache != null) {
+            result.thenAccept(response -> prefetchNextPage(request, response));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Object> prefetchStats() {
+        return prefetchCache == null ? Map.of("enabled", false) : prefetchCache.stats();
+    }
+
+    private CompletableFuture<Map<String, Object>> fetchFresh(IntegrationRequest request) {
+        QueryBudget budget = pageBudget.forRequest();
+        return cancelOnAbandon(CompletableFuture.supplyAsync(() -> fetchValidated(request, budget), blockingExecutor), budget);
+    }
+
+    /**
+     * Fetches the page a sequential poller asks for next while the read pool has idle connections, so its request
+     * only waits for serialization. Skipped under load: a prefetch never queues for a connection.
+     */
+    private void prefetchNextPage(IntegrationRequest request, Map<String, Object> response) {
+        IntegrationRequest next = PagePrefetchCache.nextPageRequest(request, response);
+        if (next == null || !connectionFactory.hasIdleReadCapacity()) {
+            return;
+        }
+
+        try {
+            prefetchCache.put(next, fetchFresh(next));
+        } catch (RejectedExecutionException ignored) {
+            // A saturated executor only means this page is fetched on demand.
         }
+    }
 
-        try (Connection connection = connectionFactory.openConnection()) {
-            long totalRecords = repository.countServices(connection, request);
-            List<OpenSrpIntegrationRepository.ServiceRow> serviceRows = totalRecords == 0
-                    ? List.of()
-                    : repository.findServices(connection, request);
+    private Map<String, Object> fetchValidated(IntegrationRequest request, QueryBudget budget) {
+        CountMode countMode = CountMode.fromValue(request.getCountMode());
 
-            Map<String, List<OpenSrpIntegrationRepository.TestRow>> testsByKey = serviceRows.isEmpty()
-                    ? Map.of()
-                    : repository.findTestsForServices(connection, serviceRows, request.getStartDate(), request.getEndDate());
+        boolean multiFacility = isMultiFacility(request);
+        boolean countPerFacility = multiFacility && countMode != CountMode.NONE;
 
-            Map<String, List<OpenSrpIntegrationRepository.HivstSelfTestRow>> hivstRowsByBaseEntity = serviceRows.isEmpty()
-                    ? Map.of()
-                    : repository.findHivstTestByBaseEntity(connection, serviceRows);
+        if (payloadRefreshJob != null && request.getEndDate() != null
+                && payloadRefreshJob.isFreshThrough(OpenSrpIntegrationRepository.normalizeDateCreatedEndMillis(request.getEndDate()))) {
+            return fetchFromPayloadTable(request, countMode, multiFacility, budget);
+        }
 
-            Map<String, Boolean> enrollmentEligibilityByBaseEntity = serviceRows.isEmpty()
-                    ? Map.of()
-                    : repository.findEnrollmentEligibilityByBaseEntity(connection, serviceRows);
-            if (enrollmentEligibilityByBaseEntity == null) {
-                enrollmentEligibilityByBaseEntity = Map.of();
+        try {
+            FacilityScope scope = resolveFacility(request);
+            if (!scope.known()) {
+                Long totalRecords = countMode == CountMode.NONE ? null : 0L;
+                Map<String, Long> facilityTotals = countPerFacility ? Map.of() : null;
+                return pageResponse(request, countMode, totalRecords, facilityTotals, null, new ArrayList<>());
             }
 
+            try (QueryCancellation.Registration registration = budget.cancellation().register(connectionFactory.openReadConnection())) {
+                Connection connection = registration.connection();
+                beginReadOnlySnapshot(connection, budget);
+
+                Map<String, Long> facilityTotals = countPerFacility
+                        ? repository.countServicesByFacility(connection, request, scope.facility())
+                        : null;
+                RecordProjection projection = RecordProjection.forRequest(request);
+                OpenSrpIntegrationRepository.ServicePage page;
+                List<Map<String, Object>> data;
+                if (lateralPageQuery) {
+                    OpenSrpIntegrationRepository.ServicePageWithLookups pageWithLookups =
+                            readPageWithLookups(connection, request, countMode, facilityTotals, scope.facility());
+                    page = new OpenSrpIntegrationRepository.ServicePage(pageWithLookups.rows(), pageWithLookups.totalRecords());
+                    data = mapServiceRows(page.rows(), new ChildLookups(
+                            pageWithLookups.testsByKey(),
+                            pageWithLookups.hivstRowsByBaseEntity(),
+                            pageWithLookups.enrollmentEligibilityByBaseEntity()
+                    ), projection);
+                } else {
+                    page = facilityTotals == null
+                            ? readPage(connection, request, countMode, scope.facility(), budget)
+                            : readFacilitiesPage(connection, request, facilityTotals, scope.facility(), budget);
+                    data = mapServiceRows(connection, request.getStartDate(), request.getEndDate(), page.rows(), projection, budget);
+                }
+                List<OpenSrpIntegrationRepository.ServiceRow> serviceRows = page.rows();
+                if (multiFacility) {
+                    tagFacilities(serviceRows, data);
+                }
+                connection.commit();
+
+                return pageResponse(request, countMode, page.totalRecords(), facilityTotals, nextCursor(serviceRows, request.getPageSize()), data);
+            }
+        } catch (SQLException e) {
+            throw databaseFailure(e);
+        }
+    }
+
+    private Map<String, Object> fetchFromPayloadTable(IntegrationRequest request,
+                                                      CountMode countMode,
+                                                      boolean multiFacility,
+                                                      QueryBudget budget) {
+        try (QueryCancellation.Registration registration = budget.cancellation().register(connectionFactory.openReadConnection())) {
+            Connection connection = registration.connection();
+            beginReadOnlySnapshot(connection, budget);
+
+            Map<String, Long> facilityTotals = multiFacility && countMode != CountMode.NONE
+                    ? repository.countHtsPayloadsByFacility(connection, request)
+                    : null;
+            OpenSrpIntegrationRepository.HtsPayloadPage page = readPayloadPage(connection, request, countMode, facilityTotals);
+            List<OpenSrpIntegrationRepository.HtsPayloadRow> payloadRows = page.rows();
+            connection.commit();
+
+            RecordProjection projection = RecordProjection.forRequest(request);
             List<Map<String, Object>> data = new ArrayList<>();
-            for (OpenSrpIntegrationRepository.ServiceRow serviceRow : serviceRows) {
-                String key = OpenSrpIntegrationRepository.serviceKey(serviceRow);
-                List<OpenSrpIntegrationRepository.TestRow> tests = testsByKey.getOrDefault(key, List.of());
-                List<OpenSrpIntegrationRepository.HivstSelfTestRow> hivstRows = hivstRowsByBaseEntity.getOrDefault(serviceRow.baseEntityId(), List.of());
-                Boolean enrollmentEligibility = enrollmentEligibilityByBaseEntity.get(serviceRow.baseEntityId());
-                data.add(dataMapper.mapServiceRow(serviceRow, tests, hivstRows, enrollmentEligibility));
-            }
-
-            Map<String, Object> response = new LinkedHashMap<>();
-            response.put("pageNumber", request.getPageIndex());
-            response.put("pageSize", request.getPageSize());
-            response.put("totalRecords", totalRecords);
-            response.put("data", data);
-            return response;
+            for (OpenSrpIntegrationRepository.HtsPayloadRow payloadRow : payloadRows) {
+                Map<String, Object> record = payloadMapper.readValue(payloadRow.payload(), PAYLOAD_TYPE);
+                if (!projection.isAll()) {
+                    record.keySet().retainAll(projection.fields());
+                }
+                if (multiFacility) {
+                    record.put("hfrCode", payloadRow.hfrCode());
+                }
+                data.add(record);
+            }
+
+            String nextCursor = null;
+            if (payloadRows.size() >= request.getPageSize()) {
+                OpenSrpIntegrationRepository.HtsPayloadRow lastRow = payloadRows.get(payloadRows.size() - 1);
+                nextCursor = new PageCursor(lastRow.dateCreated(), lastRow.eventId()).encode();
+            }
+            return pageResponse(request, countMode, page.totalRecords(), facilityTotals, nextCursor, data);
+        } catch (SQLException e) {
+            throw databaseFailure(e);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to read stored ctc2hts payload", e);
+        }
+    }
+
+    /**
+     * The payload-table counterpart of {@link #readPage}, honouring the same count modes.
+     */
+    private OpenSrpIntegrationRepository.HtsPayloadPage readPayloadPage(Connection connection,
+                                                                       IntegrationRequest request,
+                                                                       CountMode countMode,
+                                                                       Map<String, Long> facilityTotals) throws SQLException {
+        if (countMode == CountMode.NONE) {
+            return new OpenSrpIntegrationRepository.HtsPayloadPage(repository.findHtsPayloads(connection, request), null);
+        }
+
+        if (facilityTotals == null && countMode == CountMode.WINDOWED && request.getCursor() == null) {
+            OpenSrpIntegrationRepository.HtsPayloadPage page = repository.findHtsPayloadPageWithTotal(connection, request);
+            if (page.totalRecords() != null) {
+                return page;
+            }
+            return new OpenSrpIntegrationRepository.HtsPayloadPage(page.rows(), countHtsPayloads(connection, request));
+        }
+
+        long totalRecords;
+        if (facilityTotals != null) {
+            totalRecords = facilityTotals.values().stream().mapToLong(Long::longValue).sum();
+        } else if (countMode == CountMode.ESTIMATED) {
+            Long cachedCount = countCache.get(request.getHfrCode(), request.getStartDate(), request.getEndDate());
+            if (cachedCount != null) {
+                totalRecords = cachedCount;
+            } else {
+                totalRecords = countHtsPayloads(connection, request);
+                countCache.put(request.getHfrCode(), request.getStartDate(), request.getEndDate(), totalRecords);
+            }
+        } else {
+            totalRecords = countHtsPayloads(connection, request);
+        }
+
+        List<OpenSrpIntegrationRepository.HtsPayloadRow> payloadRows = totalRecords == 0
+                ? List.of()
+                : repository.findHtsPayloads(connection, request);
+        return new OpenSrpIntegrationRepository.HtsPayloadPage(payloadRows, totalRecords);
+    }
+
+    private long countHtsPayloads(Connection connection, IntegrationRequest request) throws SQLException {
+        return repository.countHtsPayloadsByFacility(connection, request).values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private Map<String, Object> pageResponse(IntegrationRequest request,
+                                             CountMode countMode,
+                                             Long totalRecords,
+                                             Map<String, Long> facilityTotals,
+                                             String nextCursor,
+                                             List<Map<String, Object>> data) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("pageNumber", request.getPageIndex());
+        response.put("pageSize", request.getPageSize());
+        response.put("totalRecords", totalRecords);
+        response.put("countMode", countMode.value());
+        if (facilityTotals != null) {
+            List<Map<String, Object>> facilities = new ArrayList<>();
+            facilityTotals.forEach((hfrCode, facilityTotal) -> {
+                Map<String, Object> facility = new LinkedHashMap<>();
+                facility.put("hfrCode", hfrCode);
+                facility.put("totalRecords", facilityTotal);
+                facilities.add(facility);
+            });
+            response.put("facilities", facilities);
+        }
+        response.put("nextCursor", nextCursor);
+        response.put("data", data);
+        return response;
+    }
+
+    private FacilityScope resolveFacility(IntegrationRequest request) throws SQLException {
+        if (request.getCouncilCode() != null) {
+            return new FacilityScope(true, null);
+        }
+        if (request.getHfrCodes() == null) {
+            return resolveFacility(request.getHfrCode());
+        }
+        if (facilityProviderCache == null) {
+            return new FacilityScope(true, null);
+        }
+
+        Map<String, OpenSrpIntegrationRepository.ProviderLocation> providersById = new HashMap<>();
+        for (String hfrCode : request.getHfrCodes()) {
+            facilityProviderCache.find(hfrCode.trim()).ifPresent(facility -> providersById.putAll(facility.providersById()));
+        }
+        if (providersById.isEmpty()) {
+            return new FacilityScope(false, null);
+        }
+        return new FacilityScope(true, new OpenSrpIntegrationRepository.FacilityProviders(null, providersById));
+    }
+
+    private static boolean isMultiFacility(IntegrationRequest request) {
+        return request.getHfrCodes() != null || request.getCouncilCode() != null;
+    }
+
+    private static void tagFacilities(List<OpenSrpIntegrationRepository.ServiceRow> serviceRows, List<Map<String, Object>> data) {
+        for (int index = 0; index < serviceRows.size(); index++) {
+            data.get(index).put("hfrCode", serviceRows.get(index).hfrCode());
+        }
+    }
+
+    private FacilityScope resolveFacility(String hfrCode) throws SQLException {
+        if (facilityProviderCache == null) {
+            return new FacilityScope(true, null);
+        }
+
+        return facilityProviderCache.find(hfrCode)
+                .map(facility -> new FacilityScope(true, facility))
+                .orElseGet(() -> new FacilityScope(false, null));
+    }
+
+    @Override
+    public IntegrationRecordStream openStream(IntegrationRequest request) {
+        List<String> validationErrors = validator.validate(request);
+        if (!validationErrors.isEmpty()) {
+            throw new ValidationException(validationErrors);
+        }
+
+        return new ServiceRecordStream(request);
+    }
+
+    @Override
+    public IntegrationRecordStream openExportStream(IntegrationRequest request) {
+        return new ServiceCopyStream(request);
+    }
+
+    @Override
+    public CompletionStage<Map<String, Object>> fetchChanges(ChangeFeedRequest request) {
+        List<String> validationErrors = changeFeedValidator.validate(request);
+        if (!validationErrors.isEmpty()) {
+            return CompletableFuture.failedFuture(new ValidationException(validationErrors));
+        }
+
+        QueryBudget budget = changesBudget.forRequest();
+        return cancelOnAbandon(CompletableFuture.supplyAsync(() -> fetchChangesValidated(request, budget), blockingExecutor), budget);
+    }
+
+    private Map<String, Object> fetchChangesValidated(ChangeFeedRequest request, QueryBudget budget) {
+        String hfrCode = request.getHfrCode().trim();
+        String consumerId = request.getConsumerId() == null ? null : request.getConsumerId().trim();
+        int limit = request.getLimit() == null ? DEFAULT_CHANGE_FEED_LIMIT : request.getLimit();
+
+        try {
+            FacilityScope scope = resolveFacility(hfrCode);
+
+            // Consumer watermarks are written, so acknowledged feeds stay on the primary.
+            try (QueryCancellation.Registration registration = budget.cancellation().register(consumerId == null
+                    ? connectionFactory.openReadConnection()
+                    : connectionFactory.openConnection())) {
+                Connection connection = registration.connection();
+                connection.setReadOnly(consumerId == null);
+                connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                connection.setAutoCommit(false);
+                repository.setStatementTimeout(connection, budget.timeout());
+
+                String since = request.getSince();
+                if (consumerId != null) {
+                    repository.ensureConsumerWatermarkTable(connection);
+                    if (since == null) {
+                        since = repository.findConsumerWatermark(connection, consumerId, hfrCode).orElse(null);
+                    } else {
+                        repository.saveConsumerWatermark(connection, consumerId, hfrCode, since);
+                    }
+                }
+
+                PageCursor sinceWatermark = since == null ? null : PageCursor.decode(since);
+                // Services are committed out of date_created order, so the feed stays behind the newest ones.
+                long untilMillis = System.currentTimeMillis() - changesCommitLag.toMillis();
+                List<OpenSrpIntegrationRepository.ServiceRow> serviceRows = scope.known()
+                        ? repository.findServiceChanges(connection, hfrCode, sinceWatermark, untilMillis, limit, scope.facility())
+                        : List.of();
+                List<Map<String, Object>> data = serviceRows.isEmpty()
+                        ? new ArrayList<>()
+                        : mapServiceRows(
+                                connection,
+                                OpenSrpIntegrationRepository.normalizeDateCreatedMillis(serviceRows.get(0).dateCreated()),
+                                System.currentTimeMillis(),
+                                serviceRows,
+                                RecordProjection.all(),
+                                budget
+                        );
+                connection.commit();
+
+                Map<String, Object> response = new LinkedHashMap<>();
+                response.put("hfrCode", hfrCode);
+                response.put("since", since);
+                response.put("nextWatermark", serviceRows.isEmpty() ? since : cursorAfter(serviceRows.get(serviceRows.size() - 1)));
+                response.put("hasMore", serviceRows.size() == limit);
+                response.put("data", data);
+                return response;
+            }
         } catch (SQLException e) {
-            throw new IllegalStateException("Failed to query OpenSRP database", e);
+            throw databaseFailure(e);
+        }
+    }
+
+    /**
+     * Cancels the statements still running for a request once its future is cancelled, which the routes do when
+     * Akka HTTP gives up on the request.
+     */
+    private static <T> CompletableFuture<T> cancelOnAbandon(CompletableFuture<T> result, QueryBudget budget) {
+        result.whenComplete((response, error) -> {
+            if (error instanceof CancellationException) {
+                budget.cancellation().cancel();
+            }
+        });
+        return result;
+    }
+
+    private static RuntimeException databaseFailure(SQLException e) {
+        if (QueryCancellation.QUERY_CANCELED_SQL_STATE.equals(e.getSQLState())) {
+            return new QueryTimeoutException("OpenSRP query exceeded its deadline or was cancelled", e);
+        }
+        if (e instanceof SQLTransientConnectionException) {
+            return new DatabaseUnavailableException("No OpenSRP database connection is available", e);
+        }
+        return new IllegalStateException("Failed to query OpenSRP database", e);
+    }
+
+    private OpenSrpIntegrationRepository.ServicePage readPage(Connection connection,
+                                                             IntegrationRequest request,
+                                                             CountMode countMode,
+                                                             OpenSrpIntegrationRepository.FacilityProviders facility,
+                                                             QueryBudget budget) throws SQLException {
+        if (countMode == CountMode.NONE) {
+            return new OpenSrpIntegrationRepository.ServicePage(findServices(connection, request, facility, budget), null);
+        }
+
+        if (countMode == CountMode.WINDOWED && request.getCursor() == null) {
+            OpenSrpIntegrationRepository.ServicePage page = repository.findServicePageWithTotal(connection, request, facility);
+            if (page.totalRecords() != null) {
+                return page;
+            }
+            return new OpenSrpIntegrationRepository.ServicePage(page.rows(), repository.countServices(connection, request, facility));
+        }
+
+        long totalRecords;
+        if (countMode == CountMode.ESTIMATED) {
+            Long cachedCount = countCache.get(request.getHfrCode(), request.getStartDate(), request.getEndDate());
+            if (cachedCount != null) {
+                totalRecords = cachedCount;
+            } else {
+                totalRecords = repository.countServices(connection, request, facility);
+                countCache.put(request.getHfrCode(), request.getStartDate(), request.getEndDate(), totalRecords);
+            }
+        } else {
+            totalRecords = repository.countServices(connection, request, facility);
+        }
+
+        List<OpenSrpIntegrationRepository.ServiceRow> serviceRows = totalRecords == 0
+                ? List.of()
+                : findServices(connection, request, facility, budget);
+        return new OpenSrpIntegrationRepository.ServicePage(serviceRows, totalRecords);
+    }
+
+    /**
+     * The {@code CTC2HTS_PAGE_QUERY=lateral} counterpart of {@link #readPage}: the page and its child lookups come from
+     * one statement, which also carries the total unless the count is cached, skipped, per facility or behind a cursor.
+     * Once the kit pairing table has caught up, HivST results are read through it after the page, on the same snapshot.
+     */
+    private OpenSrpIntegrationRepository.ServicePageWithLookups readPageWithLookups(Connection connection,
+                                                                                   IntegrationRequest request,
+                                                                                   CountMode countMode,
+                                                                                   Map<String, Long> facilityTotals,
+                                                                                   OpenSrpIntegrationRepository.FacilityProviders facility) throws SQLException {
+        Long totalRecords = null;
+        if (facilityTotals != null) {
+            totalRecords = facilityTotals.values().stream().mapToLong(Long::longValue).sum();
+        } else if (countMode == CountMode.ESTIMATED) {
+            totalRecords = countCache.get(request.getHfrCode(), request.getStartDate(), request.getEndDate());
+        }
+
+        boolean totalFromPage = countMode != CountMode.NONE && totalRecords == null && request.getCursor() == null;
+        if (countMode != CountMode.NONE && totalRecords == null && !totalFromPage) {
+            totalRecords = countEstimatedOrExact(connection, request, countMode, facility);
+        }
+        if (totalRecords != null && totalRecords == 0) {
+            return new OpenSrpIntegrationRepository.ServicePageWithLookups(List.of(), totalRecords, Map.of(), Map.of(), Map.of());
+        }
+
+        boolean pairedHivst = hivstKitsPaired();
+        OpenSrpIntegrationRepository.ServicePageWithLookups page =
+                repository.findServicePageWithLookups(connection, request, facility, totalFromPage, !pairedHivst);
+        if (totalFromPage) {
+            if (page.totalRecords() != null) {
+                totalRecords = page.totalRecords();
+                if (countMode == CountMode.ESTIMATED) {
+                    countCache.put(request.getHfrCode(), request.getStartDate(), request.getEndDate(), totalRecords);
+                }
+            } else {
+                // An empty page past the last row carries no window total.
+                totalRecords = countEstimatedOrExact(connection, request, countMode, facility);
+            }
+        }
+
+        Map<String, List<OpenSrpIntegrationRepository.HivstSelfTestRow>> hivstRowsByBaseEntity =
+                pairedHivst && RecordProjection.forRequest(request).needsHivstSelfTests()
+                        ? findHivstSelfTests(connection, page.rows())
+                        : page.hivstRowsByBaseEntity();
+        return new OpenSrpIntegrationRepository.ServicePageWithLookups(
+                page.rows(), totalRecords, page.testsByKey(), hivstRowsByBaseEntity, page.enrollmentEligibilityByBaseEntity());
+    }
+
+    private long countEstimatedOrExact(Connection connection,
+                                       IntegrationRequest request,
+                                       CountMode countMode,
+                                       OpenSrpIntegrationRepository.FacilityProviders facility) throws SQLException {
+        long totalRecords = repository.countServices(connection, request, facility);
+        if (countMode == CountMode.ESTIMATED) {
+            countCache.put(request.getHfrCode(), request.getStartDate(), request.getEndDate(), totalRecords);
+        }
+        return totalRecords;
+    }
+
+    private OpenSrpIntegrationRepository.ServicePage readFacilitiesPage(Connection connection,
+                                                                       IntegrationRequest request,
+                                                                       Map<String, Long> facilityTotals,
+                                                                       OpenSrpIntegrationRepository.FacilityProviders facility,
+                                                                       QueryBudget budget) throws SQLException {
+        long totalRecords = facilityTotals.values().stream().mapToLong(Long::longValue).sum();
+        List<OpenSrpIntegrationRepository.ServiceRow> serviceRows = totalRecords == 0
+                ? List.of()
+                : findServices(connection, request, facility, budget);
+        return new OpenSrpIntegrationRepository.ServicePage(serviceRows, totalRecords);
+    }
+
+    /**
+     * With {@code CTC2HTS_SPLIT_SLICES} set, a first page or cursor page over a window of at least
+     * {@code CTC2HTS_SPLIT_MIN_WINDOW} is read as parallel slices of the window, each on its own pooled connection and
+     * limited to the page size. Slice transactions import the caller's exported snapshot, so the page agrees with the
+     * count read on {@code connection}. The slices are disjoint and ascending in the order the database sorts on, so
+     * concatenating them keeps that order. Deeper {@code pageIndex} pages keep the single statement: an offset cannot
+     * be divided between slices without counting each one, and so does a page whose slice could not import the
+     * snapshot.
+     */
+    private List<OpenSrpIntegrationRepository.ServiceRow> findServices(Connection connection,
+                                                                       IntegrationRequest request,
+                                                                       OpenSrpIntegrationRepository.FacilityProviders facility,
+                                                                       QueryBudget budget) throws SQLException {
+        if (!splitsRange(request)) {
+            return repository.findServices(connection, request, facility);
+        }
+
+        List<DateRangeSlices.Slice> slices = DateRangeSlices.split(
+                request.getStartDate(), request.getEndDate(), repository.findDateCreatedHistogramBounds(connection), splitSlices);
+        if (slices.size() < 2) {
+            return repository.findServices(connection, request, facility);
+        }
+
+        String snapshotId = repository.exportSnapshot(connection);
+        List<CompletableFuture<List<OpenSrpIntegrationRepository.ServiceRow>>> sliceRows = new ArrayList<>(slices.size());
+        for (DateRangeSlices.Slice slice : slices) {
+            IntegrationRequest sliceRequest = request.copy();
+            sliceRequest.setStartDate(slice.startDate());
+            sliceRequest.setEndDate(slice.endDate());
+            sliceRows.add(snapshotLookupAsync(snapshotId,
+                    sliceConnection -> repository.findServices(sliceConnection, sliceRequest, facility), budget));
+        }
+
+        awaitLookups(sliceRows.toArray(CompletableFuture[]::new));
+        List<OpenSrpIntegrationRepository.ServiceRow> rows = new ArrayList<>();
+        for (CompletableFuture<List<OpenSrpIntegrationRepository.ServiceRow>> slice : sliceRows) {
+            if (slice.join() == null) {
+                return repository.findServices(connection, request, facility);
+            }
+        }
+        for (CompletableFuture<List<OpenSrpIntegrationRepository.ServiceRow>> slice : sliceRows) {
+            rows.addAll(slice.join());
+            if (rows.size() >= request.getPageSize()) {
+                return new ArrayList<>(rows.subList(0, request.getPageSize()));
+            }
+        }
+        return rows;
+    }
+
+    private boolean splitsRange(IntegrationRequest request) {
+        if (splitSlices < 2 || lookupExecutor == null) {
+            return false;
+        }
+        if (request.getCursor() == null && request.getPageIndex() != 1) {
+            return false;
+        }
+        long windowMillis = OpenSrpIntegrationRepository.normalizeDateCreatedMillis(request.getEndDate())
+                - OpenSrpIntegrationRepository.normalizeDateCreatedMillis(request.getStartDate());
+        return windowMillis >= splitMinWindow.toMillis();
+    }
+
+    private void beginReadOnlySnapshot(Connection connection, QueryBudget budget) throws SQLException {
+        connection.setReadOnly(true);
+        connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        connection.setAutoCommit(false);
+        repository.setStatementTimeout(connection, budget.timeout());
+    }
+
+    private List<Map<String, Object>> mapServiceRows(Connection connection,
+                                                     long startDate,
+                                                     long endDate,
+                                                     List<OpenSrpIntegrationRepository.ServiceRow> serviceRows,
+                                                     RecordProjection projection,
+                                                     QueryBudget budget) throws SQLException {
+        if (serviceRows.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        ChildLookups childLookups = lookupExecutor == null
+                ? findChildLookups(connection, startDate, endDate, serviceRows, projection)
+                : findChildLookupsConcurrently(startDate, endDate, serviceRows, projection, budget);
+        return mapServiceRows(serviceRows, childLookups, projection);
+    }
+
+    private List<Map<String, Object>> mapServiceRows(List<OpenSrpIntegrationRepository.ServiceRow> serviceRows,
+                                                     ChildLookups childLookups,
+                                                     RecordProjection projection) {
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (OpenSrpIntegrationRepository.ServiceRow serviceRow : serviceRows) {
+            String key = OpenSrpIntegrationRepository.serviceKey(serviceRow);
+            List<OpenSrpIntegrationRepository.TestRow> tests = childLookups.testsByKey().getOrDefault(key, List.of());
+            List<OpenSrpIntegrationRepository.HivstSelfTestRow> hivstRows = childLookups.hivstRowsByBaseEntity().getOrDefault(serviceRow.baseEntityId(), List.of());
+            Boolean enrollmentEligibility = childLookups.enrollmentEligibilityByBaseEntity().get(serviceRow.baseEntityId());
+            data.add(dataMapper.mapServiceRow(serviceRow, tests, hivstRows, enrollmentEligibility, projection));
+        }
+        return data;
+    }
+
+    private ChildLookups findChildLookups(Connection connection,
+                                          long startDate,
+                                          long endDate,
+                                          List<OpenSrpIntegrationRepository.ServiceRow> serviceRows,
+                                          RecordProjection projection) throws SQLException {
+        return new ChildLookups(
+                projection.needsTests() ? repository.findTestsForServices(connection, serviceRows, startDate, endDate) : null,
+                projection.needsHivstSelfTests() ? findHivstSelfTests(connection, serviceRows) : null,
+                projection.needsEnrollment() ? repository.findEnrollmentEligibilityByBaseEntity(connection, serviceRows) : null
+        );
+    }
+
+    private ChildLookups findChildLookupsConcurrently(long startDate,
+                                                      long endDate,
+                                                      List<OpenSrpIntegrationRepository.ServiceRow> serviceRows,
+                                                      RecordProjection projection,
+                                                      QueryBudget budget) throws SQLException {
+        CompletableFuture<Map<String, List<OpenSrpIntegrationRepository.TestRow>>> testsByKey = projection.needsTests()
+                ? lookupAsync(connection -> repository.findTestsForServices(connection, serviceRows, startDate, endDate), budget)
+                : CompletableFuture.completedFuture(null);
+        CompletableFuture<Map<String, List<OpenSrpIntegrationRepository.HivstSelfTestRow>>> hivstRowsByBaseEntity = projection.needsHivstSelfTests()
+                ? lookupAsync(connection -> findHivstSelfTests(connection, serviceRows), budget)
+                : CompletableFuture.completedFuture(null);
+        CompletableFuture<Map<String, Boolean>> enrollmentEligibilityByBaseEntity = projection.needsEnrollment()
+                ? lookupAsync(connection -> repository.findEnrollmentEligibilityByBaseEntity(connection, serviceRows), budget)
+                : CompletableFuture.completedFuture(null);
+
+        awaitLookups(testsByKey, hivstRowsByBaseEntity, enrollmentEligibilityByBaseEntity);
+        return new ChildLookups(testsByKey.join(), hivstRowsByBaseEntity.join(), enrollmentEligibilityByBaseEntity.join());
+    }
+
+    private static void awaitLookups(CompletableFuture<?>... lookups) throws SQLException {
+        try {
+            CompletableFuture.allOf(lookups).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Once the kit pairing table has caught up, reads only the latest results whose kit was issued on a page
+     * service's visit date, the only ones the mapper reports; until then every result of each client is read.
+     */
+    private Map<String, List<OpenSrpIntegrationRepository.HivstSelfTestRow>> findHivstSelfTests(
+            Connection connection,
+            List<OpenSrpIntegrationRepository.ServiceRow> serviceRows) throws SQLException {
+        if (!hivstKitsPaired()) {
+            return repository.findHivstTestByBaseEntity(connection, serviceRows);
+        }
+
+        Set<OpenSrpIntegrationRepository.HivstVisit> visits = new LinkedHashSet<>();
+        for (OpenSrpIntegrationRepository.ServiceRow serviceRow : serviceRows) {
+            LocalDate visitDate = IntegrationDataMapper.parseLocalDate(serviceRow.visitDate());
+            if (serviceRow.baseEntityId() != null && !serviceRow.baseEntityId().isBlank() && visitDate != null) {
+                visits.add(new OpenSrpIntegrationRepository.HivstVisit(serviceRow.baseEntityId(), visitDate));
+            }
+        }
+        return repository.findHivstTestsForVisits(connection, visits, hivstLookupLimit);
+    }
+
+    private boolean hivstKitsPaired() {
+        return hivstPairingJob != null && hivstPairingJob.isReady();
+    }
+
+    private <T> CompletableFuture<T> lookupAsync(ConnectionQuery<T> query, QueryBudget budget) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (QueryCancellation.Registration registration = budget.cancellation().register(connectionFactory.openReadConnection())) {
+                Connection connection = registration.connection();
+                connection.setReadOnly(true);
+                if (budget.timeout().isZero()) {
+                    return query.run(connection);
+                }
+                // The statement timeout is transaction-local, so a bounded lookup runs in its own transaction.
+                connection.setAutoCommit(false);
+                repository.setStatementTimeout(connection, budget.timeout());
+                T result = query.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, lookupExecutor);
+    }
+
+    /**
+     * Like {@link #lookupAsync}, but inside the snapshot exported by the caller's transaction. Completes with
+     * {@code null} when the borrowed connection cannot import it.
+     */
+    private <T> CompletableFuture<T> snapshotLookupAsync(String snapshotId, ConnectionQuery<T> query, QueryBudget budget) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (QueryCancellation.Registration registration = budget.cancellation().register(connectionFactory.openReadConnection())) {
+                Connection connection = registration.connection();
+                connection.setReadOnly(true);
+                connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                connection.setAutoCommit(false);
+                if (!repository.importSnapshot(connection, snapshotId)) {
+                    return null;
+                }
+                repository.setStatementTimeout(connection, budget.timeout());
+                T result = query.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, lookupExecutor);
+    }
+
+    private static String cursorAfter(OpenSrpIntegrationRepository.ServiceRow serviceRow) {
+        return new PageCursor(
+                OpenSrpIntegrationRepository.normalizeDateCreatedMillis(serviceRow.dateCreated()),
+                serviceRow.eventId()
+        ).encode();
+    }
+
+    private String nextCursor(List<OpenSrpIntegrationRepository.ServiceRow> serviceRows, int pageSize) {
+        if (serviceRows.size() < pageSize) {
+            return null;
+        }
+
+        return cursorAfter(serviceRows.get(serviceRows.size() - 1));
+    }
+
+    private final class ServiceRecordStream implements IntegrationRecordStream {
+        private final IntegrationRequest request;
+        private final QueryBudget budget = QueryBudget.unbounded();
+        private Connection connection;
+        private OpenSrpIntegrationRepository.ServiceRowCursor cursor;
+
+        private ServiceRecordStream(IntegrationRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public List<Map<String, Object>> nextBatch() {
+            try {
+                if (connection == null) {
+                    FacilityScope scope = resolveFacility(request);
+                    if (!scope.known()) {
+                        return List.of();
+                    }
+
+                    connection = connectionFactory.openReadConnection();
+                    connection.setAutoCommit(false);
+                    cursor = repository.openServiceCursor(connection, request, streamFetchSize, scope.facility());
+                }
+
+                List<OpenSrpIntegrationRepository.ServiceRow> serviceRows = cursor.next(streamFetchSize);
+                List<Map<String, Object>> data = mapServiceRows(
+                        connection, request.getStartDate(), request.getEndDate(), serviceRows, RecordProjection.forRequest(request),
+                        budget);
+                if (isMultiFacility(request)) {
+                    tagFacilities(serviceRows, data);
+                }
+                return data;
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to query OpenSRP database", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (connection != null) {
+                    connection.rollback();
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to release OpenSRP database connection", e);
+            } finally {
+                closeAll(cursor, connection);
+            }
+        }
+    }
+
+    private final class ServiceCopyStream implements IntegrationRecordStream {
+        private final IntegrationRequest request;
+        private final QueryBudget budget = QueryBudget.unbounded();
+        private Connection copyConnection;
+        private Connection lookupConnection;
+        private OpenSrpIntegrationRepository.ServiceRowCopy copy;
+
+        private ServiceCopyStream(IntegrationRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public List<Map<String, Object>> nextBatch() {
+            try {
+                if (copyConnection == null) {
+                    FacilityScope scope = resolveFacility(request);
+                    if (!scope.known()) {
+                        return List.of();
+                    }
+
+                    copyConnection = connectionFactory.openReadConnection();
+                    copyConnection.setReadOnly(true);
+                    copy = repository.copyServices(copyConnection, request, scope.facility());
+                    // The COPY holds its connection until it is drained, so child lookups need their own.
+                    if (lookupExecutor == null) {
+                        lookupConnection = connectionFactory.openReadConnection();
+                        lookupConnection.setReadOnly(true);
+                    }
+                }
+
+                List<OpenSrpIntegrationRepository.ServiceRow> serviceRows = copy.next(streamFetchSize);
+                List<Map<String, Object>> data = mapServiceRows(
+                        lookupConnection, request.getStartDate(), request.getEndDate(), serviceRows, RecordProjection.all(),
+                        budget);
+                if (isMultiFacility(request)) {
+                    tagFacilities(serviceRows, data);
+                }
+                return data;
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to copy from OpenSRP database", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            closeAll(copy, lookupConnection, copyConnection);
+        }
+    }
+
+    /**
+     * Closes each resource in turn, skipping nulls and carrying on past failures, then reports the first failure.
+     */
+    private static void closeAll(AutoCloseable... resources) {
+        Exception failure = null;
+        for (AutoCloseable resource : resources) {
+            if (resource == null) {
+                continue;
+            }
+            try {
+                resource.close();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Failed to release OpenSRP database connection", failure);
+        }
+    }
+
+    private static Executor defaultLookupExecutor() {
+        int threads = WorkerThreads.lookups();
+        if (threads == 0) {
+            return null;
+        }
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newFixedThreadPool(
+                threads,
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ctc2hts-lookup-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+    }
+
+    private static FacilityProviderCache defaultFacilityProviderCache(PostgresConnectionFactory connectionFactory,
+                                                                      OpenSrpIntegrationRepository repository) {
+        if (!"true".equalsIgnoreCase(EnvConfig.getOrDefault("CTC2HTS_FACILITY_CACHE", "false"))) {
+            return null;
+        }
+
+        return new FacilityProviderCache(
+                connectionFactory,
+                repository,
+                EnvConfig.getDurationOrDefault("CTC2HTS_FACILITY_CACHE_TTL", DEFAULT_FACILITY_CACHE_TTL)
+        );
+    }
+
+    @FunctionalInterface
+    private interface ConnectionQuery<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * The per-statement deadline of one route and the cancellation of the request being served; streams and exports
+     * run unbounded and are stopped by closing them.
+     */
+    private record QueryBudget(Duration timeout, QueryCancellation cancellation) {
+        /**
+         * No timeout, for streams and exports; each gets its own cancellation so one cannot cancel another.
+         */
+        private static QueryBudget unbounded() {
+            return new QueryBudget(Duration.ZERO, new QueryCancellation());
+        }
+
+        private QueryBudget forRequest() {
+            return new QueryBudget(timeout, new QueryCancellation());
+        }
+    }
+
+    private record FacilityScope(boolean known, OpenSrpIntegrationRepository.FacilityProviders facility) {
+    }
+
+    private record ChildLookups(
+            Map<String, List<OpenSrpIntegrationRepository.TestRow>> testsByKey,
+            Map<String, List<OpenSrpIntegrationRepository.HivstSelfTestRow>> hivstRowsByBaseEntity,
+            Map<String, Boolean> enrollmentEligibilityByBaseEntity
+    ) {
+        private ChildLookups {
+            testsByKey = testsByKey == null ? Map.of() : testsByKey;
+            hivstRowsByBaseEntity = hivstRowsByBaseEntity == null ? Map.of() : hivstRowsByBaseEntity;
+            enrollmentEligibilityByBaseEntity = enrollmentEligibilityByBaseEntity == null ? Map.of() : enrollmentEligibilityByBaseEntity;
         }
     }
 }
@@ -3,6 +3,7 @@ package com.abt.integration.service;
 import com.abt.domain.Event;
 import com.abt.domain.EventRequest;
 import com.abt.domain.Obs;
+import com.abt.integration.config.BlockingIoExecutor;
 import com.abt.integration.config.PostgresConnectionFactory;
 import com.abt.integration.db.OpenSrpIntegrationRepository;
 import com.abt.integration.exception.ValidationException;
@@ -25,6 +26,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
 public class OpenSrpVerificationResultsService implements VerificationResultsEndpointService {
     private static final Logger log = LoggerFactory.getLogger(OpenSrpVerificationResultsService.class);
@@ -42,6 +46,7 @@ public class OpenSrpVerificationResultsService implements VerificationResultsEnd
     private final String openSrpEventUrl;
     private final String openSrpUsername;
     private final String openSrpPassword;
+    private final Executor blockingExecutor;
 
     public OpenSrpVerificationResultsService() {
         this(defaultDependencies());
@@ -66,6 +71,26 @@ public class OpenSrpVerificationResultsService implements VerificationResultsEnd
                                              String openSrpEventUrl,
                                              String openSrpUsername,
                                              String openSrpPassword) {
+        this(
+                connectionFactory,
+                repository,
+                validator,
+                eventSender,
+                openSrpEventUrl,
+                openSrpUsername,
+                openSrpPassword,
+                BlockingIoExecutor.shared()
+        );
+    }
+
+    public OpenSrpVerificationResultsService(PostgresConnectionFactory connectionFactory,
+                                             OpenSrpIntegrationRepository repository,
+                                             VerificationResultsRequestValidator validator,
+                                             OpenSrpEventSender eventSender,
+                                             String openSrpEventUrl,
+                                             String openSrpUsername,
+                                             String openSrpPassword,
+                                             Executor blockingExecutor) {
         this.connectionFactory = connectionFactory;
         this.repository = repository;
         this.validator = validator;
@@ -73,15 +98,20 @@ public class OpenSrpVerificationResultsService implements VerificationResultsEnd
         this.openSrpEventUrl = openSrpEventUrl;
         this.openSrpUsername = openSrpUsername;
         this.openSrpPassword = openSrpPassword;
+        this.blockingExecutor = blockingExecutor;
     }
 
     @Override
-    public Map<String, Object> process(VerificationResultsRequest request) {
+    public CompletionStage<Map<String, Object>> process(VerificationResultsRequest request) {
         List<String> validationErrors = validator.validate(request);
         if (!validationErrors.isEmpty()) {
-            throw new ValidationException(validationErrors);
+            return CompletableFuture.failedFuture(new ValidationException(validationErrors));
         }
 
+        return CompletableFuture.supplyAsync(() -> processValidated(request), blockingExecutor);
+    }
+
+    private Map<String, Object> processValidated(VerificationResultsRequest request) {
         if (isBlank(openSrpEventUrl)) {
             throw new IllegalStateException("Missing OpenSRP destination URL. Set OPENSRP_SERVER_EVENT_URL or OPENSRP_SERVER_URL.");
         }
@@ -0,0 +1,175 @@
+package com.abt.integration.service;
+
+import com.abt.integration.model.CountMode;
+import com.abt.integration.model.IntegrationRequest;
+import com.abt.util.EnvConfig;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds the speculatively fetched next page of sequential ctc2hts pollers: one slot per facility selector, date
+ * window, page size and response shape. A slot only answers the exact page it predicted and is dropped after its TTL.
+ */
+public class PagePrefetchCache {
+    private static final Duration DEFAULT_TTL = Duration.ofSeconds(30);
+    private static final int DEFAULT_MAX_SLOTS = 256;
+
+    private final Map<SlotKey, Slot> slots = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final int maxSlots;
+    private final Clock clock;
+    private final LongAdder prefetched = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    public PagePrefetchCache(Duration ttl, int maxSlots, Clock clock) {
+        this.ttl = ttl;
+        this.maxSlots = maxSlots;
+        this.clock = clock;
+    }
+
+    public static PagePrefetchCache fromEnv() {
+        if (!"true".equalsIgnoreCase(EnvConfig.getOrDefault("CTC2HTS_PREFETCH", "false"))) {
+            return null;
+        }
+
+        return new PagePrefetchCache(
+                EnvConfig.getDurationOrDefault("CTC2HTS_PREFETCH_TTL", DEFAULT_TTL),
+                Math.max(1, EnvConfig.getIntOrDefault("CTC2HTS_PREFETCH_MAX_SLOTS", DEFAULT_MAX_SLOTS)),
+                Clock.systemUTC()
+        );
+    }
+
+    /**
+     * The request a sequential poller sends after {@code request}: the same request with {@code nextCursor} when it
+     * paged by cursor, otherwise the next {@code pageIndex}. Null when {@code response} was the last page.
+     */
+    public static IntegrationRequest nextPageRequest(IntegrationRequest request, Map<String, Object> response) {
+        Object nextCursor = response.get("nextCursor");
+        if (request.getCursor() != null && nextCursor == null) {
+            return null;
+        }
+        Object data = response.get("data");
+        if (!(data instanceof List<?> records) || records.size() < request.getPageSize()) {
+            return null;
+        }
+
+        IntegrationRequest next = request.copy();
+        if (request.getCursor() != null) {
+            next.setCursor((String) nextCursor);
+        } else {
+            next.setPageIndex(request.getPageIndex() + 1);
+        }
+        return next;
+    }
+
+    /**
+     * Takes the prefetched page for {@code request}, or returns null when the slot is empty, expired or holds
+     * another page. A taken page is removed, so each prefetch answers at most one request.
+     */
+    public CompletableFuture<Map<String, Object>> take(IntegrationRequest request) {
+        SlotKey key = SlotKey.of(request);
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            misses.increment();
+            return null;
+        }
+        if (slot.expiresAtMillis() <= clock.millis() || !slot.answers(request)) {
+            if (slots.remove(key, slot)) {
+                discarded.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        if (!slots.remove(key, slot)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return slot.page();
+    }
+
+    public void put(IntegrationRequest nextRequest, CompletableFuture<Map<String, Object>> page) {
+        if (slots.size() >= maxSlots) {
+            evictExpired();
+            if (slots.size() >= maxSlots) {
+                return;
+            }
+        }
+
+        Slot replaced = slots.put(SlotKey.of(nextRequest), new Slot(
+                nextRequest.getPageIndex(), nextRequest.getCursor(), page, clock.millis() + ttl.toMillis()));
+        prefetched.increment();
+        if (replaced != null) {
+            discarded.increment();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long requests = hitCount + misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("slots", slots.size());
+        stats.put("prefetched", prefetched.sum());
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.sum());
+        stats.put("discarded", discarded.sum());
+        stats.put("hitRate", requests == 0 ? 0.0 : (double) hitCount / requests);
+        return stats;
+    }
+
+    private void evictExpired() {
+        long now = clock.millis();
+        slots.values().removeIf(slot -> {
+            boolean expired = slot.expiresAtMillis() <= now;
+            if (expired) {
+                discarded.increment();
+            }
+            return expired;
+        });
+    }
+
+    private record SlotKey(
+            String hfrCode,
+            List<String> hfrCodes,
+            String councilCode,
+            Long startDate,
+            Long endDate,
+            Integer pageSize,
+            CountMode countMode,
+            List<String> fields,
+            String projection
+    ) {
+        private static SlotKey of(IntegrationRequest request) {
+            return new SlotKey(
+                    request.getHfrCode() == null ? null : request.getHfrCode().trim(),
+                    request.getHfrCodes(),
+                    request.getCouncilCode() == null ? null : request.getCouncilCode().trim(),
+                    request.getStartDate(),
+                    request.getEndDate(),
+                    request.getPageSize(),
+                    CountMode.fromValue(request.getCountMode()),
+                    request.getFields(),
+                    request.getProjection()
+            );
+        }
+    }
+
+    private record Slot(Integer pageIndex, String cursor, CompletableFuture<Map<String, Object>> page, long expiresAtMillis) {
+        private boolean answers(IntegrationRequest request) {
+            if (cursor != null) {
+                return cursor.equals(request.getCursor());
+            }
+            return request.getCursor() == null && Objects.equals(pageIndex, request.getPageIndex());
+        }
+    }
+}
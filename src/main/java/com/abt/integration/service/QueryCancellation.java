@@ -0,0 +1,76 @@
+package com.abt.integration.service;
+
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the connections serving one request so that, once the caller gives up on it, statements still running on
+ * them are cancelled server-side instead of finishing a scan nobody will read.
+ */
+final class QueryCancellation {
+    static final String QUERY_CANCELED_SQL_STATE = "57014";
+
+    private static final Logger log = LoggerFactory.getLogger(QueryCancellation.class);
+
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    /**
+     * Registers a borrowed connection until the returned registration is closed, which also returns the connection to
+     * the pool. Fails straight away, returning the connection, when the request was already cancelled.
+     */
+    Registration register(Connection connection) throws SQLException {
+        if (cancelled) {
+            connection.close();
+            throw new SQLException("Request was cancelled", QUERY_CANCELED_SQL_STATE);
+        }
+        connections.add(connection);
+        if (cancelled) {
+            connections.remove(connection);
+            connection.close();
+            throw new SQLException("Request was cancelled", QUERY_CANCELED_SQL_STATE);
+        }
+        return new Registration(connection);
+    }
+
+    void cancel() {
+        cancelled = true;
+        for (Connection connection : connections) {
+            try {
+                if (connection.isWrapperFor(PGConnection.class)) {
+                    connection.unwrap(PGConnection.class).cancelQuery();
+                }
+            } catch (SQLException e) {
+                log.warn("Failed to cancel OpenSRP query", e);
+            }
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    final class Registration implements AutoCloseable {
+        private final Connection connection;
+
+        private Registration(Connection connection) {
+            this.connection = connection;
+        }
+
+        Connection connection() {
+            return connection;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            connections.remove(connection);
+            connection.close();
+        }
+    }
+}
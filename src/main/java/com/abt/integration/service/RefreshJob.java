@@ -0,0 +1,87 @@
+package com.abt.integration.service;
+
+import com.abt.util.EnvConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduling shared by the ctc2hts background jobs that keep a derived table in step with OpenSRP: a daemon thread
+ * runs {@link #refresh()} with a fixed delay between runs, and a failed run is logged and retried on the next one.
+ * After {@value #MAX_CONSECUTIVE_FAILURES} failures in a row the job stops reporting ready, so readers fall back to
+ * the live queries instead of serving a table that is no longer kept up to date.
+ */
+abstract class RefreshJob {
+    static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final String threadName;
+    private final String refreshedMessage;
+    private final String failedMessage;
+    private volatile boolean ready;
+    private int consecutiveFailures;
+
+    /**
+     * @param refreshedMessage logged with the number of rows a run wrote, when it wrote any
+     */
+    RefreshJob(String threadName, String refreshedMessage, String failedMessage) {
+        this.threadName = threadName;
+        this.refreshedMessage = refreshedMessage;
+        this.failedMessage = failedMessage;
+    }
+
+    static boolean enabled(String envKey) {
+        return "true".equalsIgnoreCase(EnvConfig.getOrDefault(envKey, "false"));
+    }
+
+    static int batchSize(String envKey, int defaultBatchSize) {
+        return Math.max(1, EnvConfig.getIntOrDefault(envKey, defaultBatchSize));
+    }
+
+    public void start(Duration interval) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * True once a refresh has caught up with its source, so reads from the derived table are not missing older rows.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Runs one refresh and returns the number of rows written.
+     */
+    public abstract int refresh() throws SQLException;
+
+    void markReady() {
+        ready = true;
+    }
+
+    void runSafely() {
+        try {
+            int written = refresh();
+            consecutiveFailures = 0;
+            if (written > 0) {
+                log.info(refreshedMessage, written);
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.warn(failedMessage, e);
+            if (++consecutiveFailures >= MAX_CONSECUTIVE_FAILURES && ready) {
+                ready = false;
+                log.warn("{} failed {} times in a row; reads fall back to live queries", threadName, consecutiveFailures);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.abt.integration.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Short-lived cache of ctc2hts total counts keyed by facility and date window, used by the
+ * {@code estimated} count mode so repeated page requests for the same window skip the count query.
+ */
+public class ServiceCountCache {
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final int maxEntries;
+    private final Clock clock;
+
+    public ServiceCountCache(Duration ttl, int maxEntries) {
+        this(ttl, maxEntries, Clock.systemUTC());
+    }
+
+    public ServiceCountCache(Duration ttl, int maxEntries, Clock clock) {
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    public Long get(String hfrCode, long startDate, long endDate) {
+        Key key = new Key(hfrCode, startDate, endDate);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAtMillis() <= clock.millis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.count();
+    }
+
+    public void put(String hfrCode, long startDate, long endDate, long count) {
+        if (entries.size() >= maxEntries) {
+            evictExpired();
+            if (entries.size() >= maxEntries) {
+                entries.clear();
+            }
+        }
+        entries.put(new Key(hfrCode, startDate, endDate), new Entry(count, clock.millis() + ttl.toMillis()));
+    }
+
+    private void evictExpired() {
+        long now = clock.millis();
+        entries.values().removeIf(entry -> entry.expiresAtMillis() <= now);
+    }
+
+    private record Key(String hfrCode, long startDate, long endDate) {
+    }
+
+    private record Entry(long count, long expiresAtMillis) {
+    }
+}
@@ -3,7 +3,8 @@ package com.abt.integration.service;
 import com.abt.integration.model.VerificationResultsRequest;
 
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 
 public interface VerificationResultsEndpointService {
-    Map<String, Object> process(VerificationResultsRequest request);
+    CompletionStage<Map<String, Object>> process(VerificationResultsRequest request);
 }
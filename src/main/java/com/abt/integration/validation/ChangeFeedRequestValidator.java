@@ -0,0 +1,44 @@
+package com.abt.integration.validation;
+
+import com.abt.integration.model.ChangeFeedRequest;
+import com.abt.integration.model.PageCursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ChangeFeedRequestValidator {
+    public static final int MAX_LIMIT = 5000;
+    private static final int MAX_CONSUMER_ID_LENGTH = 255;
+
+    public List<String> validate(ChangeFeedRequest request) {
+        List<String> errors = new ArrayList<>();
+
+        if (request == null) {
+            errors.add("Request body is required");
+            return errors;
+        }
+
+        if (isBlank(request.getHfrCode())) {
+            errors.add("hfrCode is required");
+        }
+
+        if (request.getSince() != null && !PageCursor.isValid(request.getSince())) {
+            errors.add("since is invalid");
+        }
+
+        if (request.getLimit() != null && (request.getLimit() < 1 || request.getLimit() > MAX_LIMIT)) {
+            errors.add("limit must be between 1 and " + MAX_LIMIT);
+        }
+
+        if (request.getConsumerId() != null
+                && (isBlank(request.getConsumerId()) || request.getConsumerId().length() > MAX_CONSUMER_ID_LENGTH)) {
+            errors.add("consumerId must be between 1 and " + MAX_CONSUMER_ID_LENGTH + " characters");
+        }
+
+        return errors;
+    }
+
+    private boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
@@ -0,0 +1,28 @@
+package com.abt.integration.validation;
+
+import com.abt.integration.model.ExportRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ExportRequestValidator {
+    private final IntegrationRequestValidator integrationRequestValidator = new IntegrationRequestValidator();
+
+    public List<String> validate(ExportRequest request) {
+        List<String> errors = new ArrayList<>();
+
+        if (request == null) {
+            errors.add("Request body is required");
+            return errors;
+        }
+
+        errors.addAll(integrationRequestValidator.validate(request.toIntegrationRequest()));
+
+        String format = request.resolvedFormat();
+        if (!format.equals(ExportRequest.FORMAT_NDJSON) && !format.equals(ExportRequest.FORMAT_CSV)) {
+            errors.add("format must be one of ndjson, csv");
+        }
+
+        return errors;
+    }
+}
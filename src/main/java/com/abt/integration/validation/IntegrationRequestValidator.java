@@ -1,11 +1,15 @@
 package com.abt.integration.validation;
 
+import com.abt.integration.model.CountMode;
 import com.abt.integration.model.IntegrationRequest;
+import com.abt.integration.model.PageCursor;
+import com.abt.integration.model.RecordProjection;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class IntegrationRequestValidator {
+    public static final int MAX_HFR_CODES = 500;
 
     public List<String> validate(IntegrationRequest request) {
         List<String> errors = new ArrayList<>();
@@ -15,8 +19,27 @@ public class IntegrationRequestValidator {
             return errors;
         }
 
-        if (isBlank(request.getHfrCode())) {
+        int facilitySelectors = (isBlank(request.getHfrCode()) ? 0 : 1)
+                + (request.getHfrCodes() == null ? 0 : 1)
+                + (request.getCouncilCode() == null ? 0 : 1);
+        if (facilitySelectors == 0) {
             errors.add("hfrCode is required");
+        } else if (facilitySelectors > 1) {
+            errors.add("only one of hfrCode, hfrCodes or councilCode may be provided");
+        }
+
+        if (request.getHfrCodes() != null) {
+            if (request.getHfrCodes().isEmpty()) {
+                errors.add("hfrCodes must not be empty");
+            } else if (request.getHfrCodes().size() > MAX_HFR_CODES) {
+                errors.add("hfrCodes must contain at most " + MAX_HFR_CODES + " entries");
+            } else if (request.getHfrCodes().stream().anyMatch(this::isBlank)) {
+                errors.add("hfrCodes must not contain blank values");
+            }
+        }
+
+        if (request.getCouncilCode() != null && isBlank(request.getCouncilCode())) {
+            errors.add("councilCode must not be blank");
         }
 
         if (request.getStartDate() == null) {
@@ -31,9 +54,15 @@ public class IntegrationRequestValidator {
             errors.add("startDate must be less than or equal to endDate");
         }
 
-        if (request.getPageIndex() == null) {
+        if (request.getCursor() != null) {
+            if (!PageCursor.isValid(request.getCursor())) {
+                errors.add("cursor is invalid");
+            }
+        } else if (request.getPageIndex() == null) {
             errors.add("pageIndex is required");
-        } else if (request.getPageIndex() < 1) {
+        }
+
+        if (request.getPageIndex() != null && request.getPageIndex() < 1) {
             errors.add("pageIndex must be greater than or equal to 1");
         }
 
@@ -43,6 +72,28 @@ public class IntegrationRequestValidator {
             errors.add("pageSize must be greater than or equal to 1");
         }
 
+        if (!CountMode.isValid(request.getCountMode())) {
+            errors.add("countMode must be one of exact, windowed, estimated, none");
+        }
+
+        if (request.getFields() != null && request.getProjection() != null) {
+            errors.add("only one of fields or projection may be provided");
+        }
+
+        if (request.getFields() != null) {
+            List<String> unknownFields = RecordProjection.unknownFields(request.getFields());
+            if (request.getFields().isEmpty()) {
+                errors.add("fields must not be empty");
+            } else if (!unknownFields.isEmpty()) {
+                errors.add("fields must be among " + String.join(", ", RecordProjection.FIELDS)
+                        + "; unknown: " + String.join(", ", unknownFields));
+            }
+        }
+
+        if (request.getProjection() != null && RecordProjection.named(request.getProjection()).isEmpty()) {
+            errors.add("projection is not registered: " + request.getProjection());
+        }
+
         return errors;
     }
 
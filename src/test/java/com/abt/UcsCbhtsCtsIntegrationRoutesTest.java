@@ -4,23 +4,52 @@ import akka.http.javadsl.model.ContentTypes;
 import akka.http.javadsl.model.HttpRequest;
 import akka.http.javadsl.model.StatusCodes;
 import akka.http.javadsl.testkit.JUnitRouteTest;
+import akka.http.javadsl.testkit.TestRouteResult;
+import akka.http.javadsl.model.headers.ByteRange;
+import akka.http.javadsl.model.headers.Range;
+import akka.http.javadsl.model.headers.RangeUnits;
+import akka.http.javadsl.model.headers.RawHeader;
+import com.abt.integration.exception.DatabaseUnavailableException;
+import com.abt.integration.exception.QueryTimeoutException;
 import com.abt.integration.exception.ValidationException;
+import com.abt.integration.model.ChangeFeedRequest;
+import com.abt.integration.model.IntegrationRequest;
 import com.abt.integration.model.VerificationResultsRequest;
+import com.abt.integration.service.ClosedWindowResponseCache;
+import com.abt.integration.service.Ctc2htsExportService;
 import com.abt.integration.service.IntegrationEndpointService;
+import com.abt.integration.service.IntegrationRecordStream;
 import com.abt.integration.service.VerificationResultsEndpointService;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class UcsCbhtsCtsIntegrationRoutesTest extends JUnitRouteTest {
@@ -51,12 +80,12 @@ class UcsCbhtsCtsIntegrationRoutesTest extends JUnitRouteTest {
         );
 
         when(verificationResultsEndpointService.process(any(VerificationResultsRequest.class)))
-                .thenReturn(Map.of(
+                .thenReturn(CompletableFuture.completedFuture(Map.of(
                         "processedCount", 1,
                         "successCount", 1,
                         "failureCount", 0,
                         "errors", List.of()
-                ));
+                )));
 
         String payload = "{\n" +
                 "  \"hfrCode\": \"12123-1\",\n" +
@@ -115,4 +144,280 @@ class UcsCbhtsCtsIntegrationRoutesTest extends JUnitRouteTest {
         assertEquals("Invalid request payload", response.get("message").asText());
         assertTrue(response.get("details").toString().contains("visitId"));
     }
+
+    @Test
+    void ctc2htsRoute_shouldStreamNdjsonWhenRequested() {
+        UcsCbhtsCtsIntegrationRoutes routes = new UcsCbhtsCtsIntegrationRoutes(
+                integrationEndpointService,
+                verificationResultsEndpointService
+        );
+
+        Deque<List<Map<String, Object>>> batches = new ArrayDeque<>(List.of(
+                List.of(Map.of("clientCode", "CLT1"), Map.of("clientCode", "CLT2")),
+                List.of(Map.of("clientCode", "CLT3"))
+        ));
+        IntegrationRecordStream recordStream = mock(IntegrationRecordStream.class);
+        when(recordStream.nextBatch()).thenAnswer(invocation -> batches.isEmpty() ? List.of() : batches.poll());
+        when(integrationEndpointService.openStream(any(IntegrationRequest.class))).thenReturn(recordStream);
+
+        String payload = "{\"hfrCode\":\"124899-6\",\"startDate\":1768262400,\"endDate\":1768262800,\"pageIndex\":1,\"pageSize\":100}";
+
+        String responseBody = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.POST("/integration/ctc2hts")
+                        .addHeader(RawHeader.create("Accept", "application/x-ndjson"))
+                        .withEntity(ContentTypes.APPLICATION_JSON, payload))
+                .assertStatusCode(StatusCodes.OK)
+                .assertMediaType("application/x-ndjson")
+                .entityString();
+
+        assertEquals("{\"clientCode\":\"CLT1\"}\n{\"clientCode\":\"CLT2\"}\n{\"clientCode\":\"CLT3\"}\n", responseBody);
+        verify(recordStream).close();
+    }
+
+    @Test
+    void ctc2htsRoute_shouldServeClosedWindowPagesFromResponseCache() throws Exception {
+        UcsCbhtsCtsIntegrationRoutes routes = new UcsCbhtsCtsIntegrationRoutes(
+                integrationEndpointService,
+                verificationResultsEndpointService,
+                new ClosedWindowResponseCache(1024 * 1024, Duration.ofDays(1))
+        );
+
+        when(integrationEndpointService.fetch(any(IntegrationRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(
+                        Map.of("pageNumber", 1, "totalRecords", 1, "data", List.of(Map.of("clientCode", "CLT1")))));
+
+        String payload = "{\"hfrCode\":\"124899-6\",\"startDate\":1704067200,\"endDate\":1704153600,\"pageIndex\":1,\"pageSize\":100}";
+
+        String firstBody = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.POST("/integration/ctc2hts")
+                        .withEntity(ContentTypes.APPLICATION_JSON, payload))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString();
+
+        String cachedBody = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.POST("/integration/ctc2hts")
+                        .withEntity(ContentTypes.APPLICATION_JSON, payload))
+                .assertStatusCode(StatusCodes.OK)
+                .assertMediaType("application/json")
+                .entityString();
+
+        TestRouteResult gzippedResult = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.POST("/integration/ctc2hts")
+                        .addHeader(RawHeader.create("Accept-Encoding", "gzip, deflate"))
+                        .withEntity(ContentTypes.APPLICATION_JSON, payload))
+                .assertStatusCode(StatusCodes.OK)
+                .assertHeaderExists("Content-Encoding", "gzip");
+
+        String gunzippedBody;
+        try (GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(gzippedResult.entityBytes().toArray()))) {
+            gunzippedBody = new String(gunzip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        assertEquals(firstBody, cachedBody);
+        assertEquals(firstBody, gunzippedBody);
+        assertEquals(1, OBJECT_MAPPER.readTree(firstBody).get("totalRecords").asInt());
+        verify(integrationEndpointService, times(1)).fetch(any(IntegrationRequest.class));
+
+        JsonNode metrics = OBJECT_MAPPER.readTree(testRoute(routes.integrationRoutes())
+                .run(HttpRequest.GET("/metrics"))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString());
+        assertEquals(2, metrics.get("ctc2htsResponseCache").get("hits").asInt());
+        assertEquals(1, metrics.get("ctc2htsResponseCache").get("misses").asInt());
+        assertTrue(metrics.has("opensrpDbPool"));
+    }
+
+    @Test
+    void ctc2htsChangesRoute_shouldReturnRecordsAndNextWatermark() throws Exception {
+        UcsCbhtsCtsIntegrationRoutes routes = new UcsCbhtsCtsIntegrationRoutes(
+                integrationEndpointService,
+                verificationResultsEndpointService
+        );
+
+        when(integrationEndpointService.fetchChanges(any(ChangeFeedRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(
+                        Map.of("nextWatermark", "MTc2ODI2MjgwMDAwMDpldmVudC0x", "hasMore", false, "data", List.of())));
+
+        String responseBody = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.POST("/integration/ctc2hts/changes")
+                        .withEntity(ContentTypes.APPLICATION_JSON, "{\"hfrCode\":\"124899-6\",\"consumerId\":\"hts-sync\"}"))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString();
+
+        JsonNode response = OBJECT_MAPPER.readTree(responseBody);
+        assertEquals("MTc2ODI2MjgwMDAwMDpldmVudC0x", response.get("nextWatermark").asText());
+        assertTrue(response.get("data").isArray());
+    }
+
+    @Test
+    void ctc2htsRoute_shouldCompleteWhenServiceFinishesOnAnotherThread() throws Exception {
+        UcsCbhtsCtsIntegrationRoutes routes = new UcsCbhtsCtsIntegrationRoutes(
+                integrationEndpointService,
+                verificationResultsEndpointService
+        );
+
+        when(integrationEndpointService.fetch(any(IntegrationRequest.class)))
+                .thenReturn(CompletableFuture.supplyAsync(() -> Map.of("pageNumber", 1, "totalRecords", 0, "data", List.of())));
+
+        String responseBody = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.POST("/integration/ctc2hts")
+                        .withEntity(ContentTypes.APPLICATION_JSON, "{\"hfrCode\":\"124899-6\",\"startDate\":1768262400,\"endDate\":1768262800,\"pageIndex\":1,\"pageSize\":100}"))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString();
+
+        assertEquals(0, OBJECT_MAPPER.readTree(responseBody).get("totalRecords").asInt());
+    }
+
+    @Test
+    void ctc2htsRoute_shouldReturnBadRequestWhenServiceFailsWithValidationErrors() throws Exception {
+        UcsCbhtsCtsIntegrationRoutes routes = new UcsCbhtsCtsIntegrationRoutes(
+                integrationEndpointService,
+                verificationResultsEndpointService
+        );
+
+        when(integrationEndpointService.fetch(any(IntegrationRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(new ValidationException(List.of("hfrCode is required"))));
+
+        String responseBody = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.POST("/integration/ctc2hts")
+                        .withEntity(ContentTypes.APPLICATION_JSON, "{\"startDate\":1768262400,\"endDate\":1768262800}"))
+                .assertStatusCode(StatusCodes.BAD_REQUEST)
+                .entityString();
+
+        assertTrue(OBJECT_MAPPER.readTree(responseBody).get("details").toString().contains("hfrCode is required"));
+    }
+
+    @Test
+    void ctc2htsRoutes_shouldReturnGatewayTimeoutForQueryDeadlinesAndServiceUnavailableWithoutConnections() throws Exception {
+        UcsCbhtsCtsIntegrationRoutes routes = new UcsCbhtsCtsIntegrationRoutes(
+                integrationEndpointService,
+                verificationResultsEndpointService
+        );
+
+        when(integrationEndpointService.fetch(any(IntegrationRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(new QueryTimeoutException(
+                        "OpenSRP query exceeded its deadline or was cancelled",
+                        new SQLException("canceling statement due to statement timeout", "57014"))));
+        when(integrationEndpointService.fetchChanges(any(ChangeFeedRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(new DatabaseUnavailableException(
+                        "No OpenSRP database connection is available", new SQLException("Connection is not available"))));
+
+        String timeoutBody = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.POST("/integration/ctc2hts")
+                        .withEntity(ContentTypes.APPLICATION_JSON, "{\"hfrCode\":\"124899-6\",\"startDate\":1768262400,\"endDate\":1768262800,\"pageIndex\":1,\"pageSize\":100}"))
+                .assertStatusCode(StatusCodes.GATEWAY_TIMEOUT)
+                .entityString();
+        assertEquals("Integration request timed out", OBJECT_MAPPER.readTree(timeoutBody).get("message").asText());
+
+        testRoute(routes.integrationRoutes())
+                .run(HttpRequest.POST("/integration/ctc2hts/changes")
+                        .withEntity(ContentTypes.APPLICATION_JSON, "{\"hfrCode\":\"124899-6\"}"))
+                .assertStatusCode(StatusCodes.SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    void ctc2htsExportsRoute_shouldRunExportAndServeFileWithRangeSupport(@TempDir Path exportDirectory) throws Exception {
+        Ctc2htsExportService exportService = new Ctc2htsExportService(
+                integrationEndpointService, exportDirectory, Runnable::run, Duration.ofHours(1), Clock.systemUTC());
+        UcsCbhtsCtsIntegrationRoutes routes = new UcsCbhtsCtsIntegrationRoutes(
+                integrationEndpointService,
+                verificationResultsEndpointService,
+                null,
+                exportService
+        );
+
+        IntegrationRecordStream recordStream = mock(IntegrationRecordStream.class);
+        when(recordStream.nextBatch()).thenReturn(List.of(Map.of("clientCode", "CLT1"))).thenReturn(List.of());
+        when(integrationEndpointService.openExportStream(any(IntegrationRequest.class))).thenReturn(recordStream);
+
+        String submitted = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.POST("/integration/ctc2hts/exports")
+                        .withEntity(ContentTypes.APPLICATION_JSON, "{\"hfrCode\":\"124899-6\",\"startDate\":1768262400,\"endDate\":1768262800}"))
+                .assertStatusCode(StatusCodes.ACCEPTED)
+                .entityString();
+        String jobId = OBJECT_MAPPER.readTree(submitted).get("jobId").asText();
+
+        String status = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.GET("/integration/ctc2hts/exports/" + jobId))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString();
+        assertEquals("completed", OBJECT_MAPPER.readTree(status).get("status").asText());
+
+        byte[] file = Files.readAllBytes(exportService.file(jobId).orElseThrow().path());
+        byte[] firstBytes = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.GET("/integration/ctc2hts/exports/" + jobId + "/file")
+                        .addHeader(Range.create(RangeUnits.BYTES, ByteRange.createSlice(0, 9))))
+                .assertStatusCode(StatusCodes.PARTIAL_CONTENT)
+                .entityBytes()
+                .toArray();
+        assertArrayEquals(Arrays.copyOfRange(file, 0, 10), firstBytes);
+
+        byte[] wholeFile = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.GET("/integration/ctc2hts/exports/" + jobId + "/file"))
+                .assertStatusCode(StatusCodes.OK)
+                .assertHeaderExists("Content-Disposition", "attachment; filename=\"ctc2hts-" + jobId + ".ndjson.gz\"")
+                .entityBytes()
+                .toArray();
+        try (GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(wholeFile))) {
+            assertEquals("{\"clientCode\":\"CLT1\"}\n", new String(gunzip.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void ctc2htsExportsRoute_shouldReturnConflictWhileFacilityExportIsRunning(@TempDir Path exportDirectory) throws Exception {
+        Ctc2htsExportService exportService = new Ctc2htsExportService(
+                integrationEndpointService, exportDirectory, runnable -> {
+                }, Duration.ofHours(1), Clock.systemUTC());
+        UcsCbhtsCtsIntegrationRoutes routes = new UcsCbhtsCtsIntegrationRoutes(
+                integrationEndpointService,
+                verificationResultsEndpointService,
+                null,
+                exportService
+        );
+        String payload = "{\"hfrCode\":\"124899-6\",\"startDate\":1768262400,\"endDate\":1768262800}";
+
+        String first = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.POST("/integration/ctc2hts/exports").withEntity(ContentTypes.APPLICATION_JSON, payload))
+                .assertStatusCode(StatusCodes.ACCEPTED)
+                .entityString();
+        String jobId = OBJECT_MAPPER.readTree(first).get("jobId").asText();
+
+        String conflict = testRoute(routes.integrationRoutes())
+                .run(HttpRequest.POST("/integration/ctc2hts/exports").withEntity(ContentTypes.APPLICATION_JSON, payload))
+                .assertStatusCode(StatusCodes.CONFLICT)
+                .entityString();
+        assertEquals(jobId, OBJECT_MAPPER.readTree(conflict).get("jobId").asText());
+
+        testRoute(routes.integrationRoutes())
+                .run(HttpRequest.GET("/integration/ctc2hts/exports/" + jobId + "/file"))
+                .assertStatusCode(StatusCodes.CONFLICT);
+        testRoute(routes.integrationRoutes())
+                .run(HttpRequest.GET("/integration/ctc2hts/exports/unknown"))
+                .assertStatusCode(StatusCodes.NOT_FOUND);
+    }
+
+    @Test
+    void healthRoute_shouldRespondWhileIntegrationRequestIsPending() {
+        UcsCbhtsCtsIntegrationRoutes routes = new UcsCbhtsCtsIntegrationRoutes(
+                integrationEndpointService,
+                verificationResultsEndpointService
+        );
+
+        CompletableFuture<Map<String, Object>> pendingFetch = new CompletableFuture<>();
+        when(integrationEndpointService.fetch(any(IntegrationRequest.class))).thenReturn(pendingFetch);
+
+        CompletableFuture<String> pendingBody = CompletableFuture.supplyAsync(() -> testRoute(routes.integrationRoutes())
+                .run(HttpRequest.POST("/integration/ctc2hts")
+                        .withEntity(ContentTypes.APPLICATION_JSON, "{\"hfrCode\":\"124899-6\",\"startDate\":1768262400,\"endDate\":1768262800,\"pageIndex\":1,\"pageSize\":100}"))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString());
+
+        testRoute(routes.integrationRoutes())
+                .run(HttpRequest.GET("/health"))
+                .assertStatusCode(StatusCodes.OK);
+        assertFalse(pendingBody.isDone());
+
+        pendingFetch.complete(Map.of("pageNumber", 1, "totalRecords", 0, "data", List.of()));
+        assertTrue(pendingBody.join().contains("\"totalRecords\":0"));
+    }
 }
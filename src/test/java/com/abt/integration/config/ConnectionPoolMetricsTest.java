@@ -0,0 +1,54 @@
+package com.abt.integration.config;
+
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ConnectionPoolMetricsTest {
+
+    @Test
+    void stats_shouldReportPoolGaugesAndAcquisitionWaitTimes() {
+        ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+        metrics.create("opensrp-db", new PoolStats(0) {
+            @Override
+            protected void update() {
+                totalConnections = 5;
+                idleConnections = 2;
+                activeConnections = 3;
+                pendingThreads = 1;
+                maxConnections = 10;
+            }
+        });
+
+        metrics.recordConnectionAcquiredNanos(TimeUnit.MILLISECONDS.toNanos(4));
+        metrics.recordConnectionAcquiredNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        metrics.recordConnectionTimeout();
+
+        Map<String, Object> stats = metrics.stats();
+
+        assertEquals(3, stats.get("active"));
+        assertEquals(2, stats.get("idle"));
+        assertEquals(5, stats.get("total"));
+        assertEquals(1, stats.get("pending"));
+        assertEquals(10, stats.get("maxSize"));
+        assertEquals(2L, stats.get("acquisitions"));
+        assertEquals(1L, stats.get("timeouts"));
+        assertEquals(14L, stats.get("totalWaitMillis"));
+        assertEquals(7.0, stats.get("averageWaitMillis"));
+        assertEquals(10L, stats.get("maxWaitMillis"));
+    }
+
+    @Test
+    void stats_shouldReportZeroWaitBeforeAnyAcquisition() {
+        Map<String, Object> stats = new ConnectionPoolMetrics().stats();
+
+        assertFalse(stats.containsKey("active"));
+        assertEquals(0L, stats.get("acquisitions"));
+        assertEquals(0.0, stats.get("averageWaitMillis"));
+    }
+}
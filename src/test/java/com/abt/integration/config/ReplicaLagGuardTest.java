@@ -0,0 +1,63 @@
+package com.abt.integration.config;
+
+import com.abt.util.MutableClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicaLagGuardTest {
+
+    @Test
+    void recordLag_shouldServeReadsOnlyWithinMaxLagUntilNextCheck() {
+        MutableClock clock = new MutableClock(Instant.ofEpochMilli(1768300000000L));
+        ReplicaLagGuard guard = new ReplicaLagGuard(Duration.ofSeconds(30), Duration.ofSeconds(5), clock);
+
+        assertTrue(guard.needsCheck());
+        assertTrue(guard.recordLag(Duration.ofSeconds(2)));
+        assertFalse(guard.needsCheck());
+        assertTrue(guard.usable());
+
+        clock.advance(Duration.ofSeconds(5));
+        assertTrue(guard.needsCheck());
+        assertFalse(guard.recordLag(Duration.ofSeconds(45)));
+        assertFalse(guard.usable());
+        assertEquals(Duration.ofSeconds(45), guard.lastLag());
+    }
+
+    @Test
+    void recordUnavailable_shouldKeepReadsOnPrimaryUntilNextCheck() {
+        MutableClock clock = new MutableClock(Instant.ofEpochMilli(1768300000000L));
+        ReplicaLagGuard guard = new ReplicaLagGuard(Duration.ofSeconds(30), Duration.ofSeconds(5), clock);
+        guard.recordLag(Duration.ZERO);
+
+        guard.recordUnavailable();
+
+        assertFalse(guard.usable());
+        assertNull(guard.lastLag());
+        assertFalse(guard.needsCheck());
+        clock.advance(Duration.ofSeconds(5));
+        assertTrue(guard.needsCheck());
+    }
+
+    @Test
+    void needsCheck_shouldLetOneBorrowerCheckAtATime() {
+        MutableClock clock = new MutableClock(Instant.ofEpochMilli(1768300000000L));
+        ReplicaLagGuard guard = new ReplicaLagGuard(Duration.ofSeconds(30), Duration.ofSeconds(5), clock);
+
+        assertTrue(guard.needsCheck());
+        assertFalse(guard.needsCheck());
+        assertFalse(guard.usable());
+
+        guard.recordLag(Duration.ZERO);
+        clock.advance(Duration.ofSeconds(5));
+        assertTrue(guard.needsCheck());
+        assertFalse(guard.needsCheck());
+        assertTrue(guard.usable());
+    }
+}
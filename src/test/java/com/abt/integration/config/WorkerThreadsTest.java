@@ -0,0 +1,29 @@
+package com.abt.integration.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WorkerThreadsTest {
+
+    @Test
+    void connections_shouldCoverBlockingThreadsExportsAndBackgroundJobs() {
+        assertEquals(0, WorkerThreads.lookups());
+        assertEquals(32 + 2 * 2 + 2, WorkerThreads.connections());
+    }
+
+    @Test
+    void connections_shouldAddLookupThreadsWhenLookupsRunInParallel() {
+        System.setProperty("CTC2HTS_PARALLEL_LOOKUPS", "true");
+        System.setProperty("CTC2HTS_LOOKUP_THREADS", "8");
+        System.setProperty("INTEGRATION_SERVICE_BLOCKING_THREADS", "16");
+        try {
+            assertEquals(8, WorkerThreads.lookups());
+            assertEquals(16 + 8 + 2 * 2 + 2, WorkerThreads.connections());
+        } finally {
+            System.clearProperty("CTC2HTS_PARALLEL_LOOKUPS");
+            System.clearProperty("CTC2HTS_LOOKUP_THREADS");
+            System.clearProperty("INTEGRATION_SERVICE_BLOCKING_THREADS");
+        }
+    }
+}
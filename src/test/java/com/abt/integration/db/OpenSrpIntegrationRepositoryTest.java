@@ -1,22 +1,45 @@
 package com.abt.integration.db;
 
 import com.abt.integration.model.IntegrationRequest;
+import com.abt.integration.model.PageCursor;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.CopyOut;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Map;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -187,6 +210,765 @@ class OpenSrpIntegrationRepositoryTest {
         assertTrue(sql.contains("s.final_hiv_test_result"));
     }
 
+    @Test
+    void findServices_shouldDropClientAndHouseholdJoinsWhenFieldsDoNotNeedThem() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(10);
+        request.setFields(List.of("visitDate", "hivResultCode"));
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+
+        repository.findServices(connection, request);
+        repository.findServices(connection, request);
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("s.final_hiv_test_result"));
+        assertTrue(sql.contains("NULL::text AS unique_id"));
+        assertTrue(sql.contains("NULL::text AS household_village_code"));
+        assertFalse(sql.contains("public.client c"));
+        assertFalse(sql.contains("public.household h"));
+        assertSame(sqlCaptor.getAllValues().get(0), sqlCaptor.getAllValues().get(1));
+    }
+
+    @Test
+    void findServices_shouldFilterByCachedProvidersAndFillLocationFromCache() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        Array providerArray = mock(Array.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(10);
+
+        OpenSrpIntegrationRepository.FacilityProviders facility = new OpenSrpIntegrationRepository.FacilityProviders(
+                "124899-6",
+                Map.of("provider-1", new OpenSrpIntegrationRepository.ProviderLocation(
+                        "provider-1", "John Doe", "124899-6", "TZ.NT.MY", "TZ.NT.MY.ML", "TZ.NT.MY.ML.4", "TZ.NT.MY.ML.4.8", "TZ.NT.MY.ML.4.8.1.3"))
+        );
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(connection.createArrayOf("text", new String[]{"provider-1"})).thenReturn(providerArray);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString("provider_id")).thenReturn("provider-1");
+
+        List<OpenSrpIntegrationRepository.ServiceRow> rows = repository.findServices(connection, request, facility);
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("WHERE s.provider_id = ANY(?)"));
+        assertFalse(sql.contains("team_members"));
+        assertFalse(sql.contains("l.hfr_code"));
+        verify(statement).setArray(1, providerArray);
+        assertEquals("124899-6", rows.get(0).hfrCode());
+        assertEquals("TZ.NT.MY.ML.4", rows.get(0).districtCouncil());
+        assertEquals("TZ.NT.MY.ML.4.8.1.3", rows.get(0).village());
+        assertEquals("John Doe", rows.get(0).counsellorName());
+    }
+
+    @Test
+    void findServices_shouldFilterByHfrCodeArrayForMultiFacilityRequest() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        Array hfrCodeArray = mock(Array.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCodes(List.of(" 124899-6", "13211-1", "124899-6"));
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(10);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(connection.createArrayOf("text", new String[]{"124899-6", "13211-1"})).thenReturn(hfrCodeArray);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        repository.findServices(connection, request, null);
+
+        assertTrue(sqlCaptor.getValue().contains("WHERE l.hfr_code = ANY(?)"));
+        verify(statement).setArray(1, hfrCodeArray);
+    }
+
+    @Test
+    void countServicesByFacility_shouldGroupCouncilCountsByHfrCode() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setCouncilCode(" TZ.NT.MY.ML.4 ");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getString("group_key")).thenReturn("13211-1", "124899-6");
+        when(resultSet.getLong("total_records")).thenReturn(2L, 7L);
+
+        Map<String, Long> counts = repository.countServicesByFacility(connection, request, null);
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("WHERE l.council_code = ?"));
+        assertTrue(sql.contains("GROUP BY l.hfr_code"));
+        verify(statement).setString(1, "TZ.NT.MY.ML.4");
+        assertEquals(List.of("124899-6", "13211-1"), List.copyOf(counts.keySet()));
+        assertEquals(7L, counts.get("124899-6"));
+        assertEquals(2L, counts.get("13211-1"));
+    }
+
+    @Test
+    void countServicesByFacility_shouldMapCachedProvidersBackToTheirFacility() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        Array providerArray = mock(Array.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCodes(List.of("124899-6", "13211-1"));
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+
+        OpenSrpIntegrationRepository.FacilityProviders facility = new OpenSrpIntegrationRepository.FacilityProviders(
+                null,
+                Map.of(
+                        "provider-1", new OpenSrpIntegrationRepository.ProviderLocation(
+                                "provider-1", "John Doe", "124899-6", null, null, null, null, null),
+                        "provider-2", new OpenSrpIntegrationRepository.ProviderLocation(
+                                "provider-2", "Jane Doe", "124899-6", null, null, null, null, null))
+        );
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(connection.createArrayOf(org.mockito.ArgumentMatchers.eq("text"), org.mockito.ArgumentMatchers.any()))
+                .thenReturn(providerArray);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getString("group_key")).thenReturn("provider-1", "provider-2");
+        when(resultSet.getLong("total_records")).thenReturn(2L, 3L);
+
+        Map<String, Long> counts = repository.countServicesByFacility(connection, request, facility);
+
+        assertTrue(sqlCaptor.getValue().contains("GROUP BY s.provider_id"));
+        assertFalse(sqlCaptor.getValue().contains("team_members"));
+        assertEquals(Map.of("124899-6", 5L), counts);
+    }
+
+    @Test
+    void findServiceChanges_shouldSeekPastWatermarkOnNormalizedDateCreated() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        repository.findServiceChanges(connection, "124899-6", new PageCursor(1768262500000L, "event-9"), 1768263000000L, 200, null);
+
+        String sql = sqlCaptor.getValue();
+        String normalizedDateCreated = "(CASE WHEN s.date_created > -10000000000 AND s.date_created < 10000000000 " +
+                "THEN s.date_created * 1000 ELSE s.date_created END)";
+        assertTrue(sql.contains("WHERE l.hfr_code = ? AND (" + normalizedDateCreated + ", s.event_id) > (?, ?) " +
+                "AND " + normalizedDateCreated + " <= ? "));
+        assertTrue(sql.endsWith("ORDER BY " + normalizedDateCreated + " ASC, s.event_id ASC LIMIT ?"));
+        verify(statement).setString(1, "124899-6");
+        verify(statement).setLong(2, 1768262500000L);
+        verify(statement).setString(3, "event-9");
+        verify(statement).setLong(4, 1768263000000L);
+        verify(statement).setInt(5, 200);
+    }
+
+    @Test
+    void findTestChanges_shouldSeekPastWatermarkOnNormalizedDateCreated() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString("event_id")).thenReturn("test-2");
+        when(resultSet.getString("hts_visit_group")).thenReturn("visit-1");
+        when(resultSet.getString("base_entity_id")).thenReturn("base-1");
+        when(resultSet.getLong("date_created_ms")).thenReturn(1768262900000L);
+
+        List<OpenSrpIntegrationRepository.SourceChange> changes = repository.findTestChanges(
+                connection, new PageCursor(1768262850000L, "test-1"), 1768263000000L, 100);
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("FROM public.cbhts_tests t"));
+        assertTrue(sql.contains("t.event_id) > (?, ?) AND "));
+        verify(statement).setLong(1, 1768262850000L);
+        verify(statement).setString(2, "test-1");
+        verify(statement).setLong(3, 1768263000000L);
+        verify(statement).setInt(4, 100);
+        assertEquals(List.of(new OpenSrpIntegrationRepository.SourceChange("test-2", "visit-1", "base-1", 1768262900000L)), changes);
+    }
+
+    @Test
+    void findEnrollmentChanges_shouldReadFromStartWithoutVisitGroup() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+
+        repository.findEnrollmentChanges(connection, null, 1768263000000L, 100);
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("NULL::text AS hts_visit_group"));
+        assertTrue(sql.contains("FROM public.cbhts_enrollment t WHERE (CASE"));
+        assertFalse(sql.contains("(?, ?)"));
+        verify(statement).setLong(1, 1768263000000L);
+        verify(statement).setInt(2, 100);
+    }
+
+    @Test
+    void upsertHtsPayloads_shouldBatchJsonbUpsertsByEventId() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+
+        when(statement.executeBatch()).thenReturn(new int[]{1, 0});
+
+        int written = repository.upsertHtsPayloads(connection, List.of(
+                new OpenSrpIntegrationRepository.HtsPayloadRow("event-1", "124899-6", "TZ.NT.MY.ML.4", 1768262800000L, "{}"),
+                new OpenSrpIntegrationRepository.HtsPayloadRow("event-2", "124899-6", "TZ.NT.MY.ML.4", 1768262900000L, "{}")
+        ));
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("INSERT INTO ctc_integration.hts_payload"));
+        assertTrue(sql.contains("?::jsonb"));
+        assertTrue(sql.contains("ON CONFLICT (event_id) DO UPDATE"));
+        assertTrue(sql.endsWith("IS DISTINCT FROM (EXCLUDED.hfr_code, EXCLUDED.council_code, EXCLUDED.date_created, EXCLUDED.payload)"));
+        assertEquals(1, written);
+        verify(statement).setString(1, "event-2");
+        verify(statement, times(2)).addBatch();
+        verify(statement).executeBatch();
+    }
+
+    @Test
+    void findHtsPayloads_shouldSeekPastCursorOnFacilityIndex() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageSize(10);
+        request.setCursor(new PageCursor(1768262500000L, "event-0").encode());
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString("event_id")).thenReturn("event-1");
+        when(resultSet.getString("hfr_code")).thenReturn("124899-6");
+        when(resultSet.getLong("date_created")).thenReturn(1768262600000L);
+        when(resultSet.getString("payload")).thenReturn("{\"clientCode\":\"CLT1\"}");
+
+        List<OpenSrpIntegrationRepository.HtsPayloadRow> rows = repository.findHtsPayloads(connection, request);
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("FROM ctc_integration.hts_payload p WHERE p.hfr_code = ? AND p.date_created BETWEEN ? AND ?"));
+        assertTrue(sql.contains("AND (p.date_created, p.event_id) > (?, ?) ORDER BY p.date_created ASC, p.event_id ASC LIMIT ?"));
+        verify(statement).setString(1, "124899-6");
+        verify(statement).setLong(2, 1768262400000L);
+        verify(statement).setLong(3, 1768262800999L);
+        verify(statement).setLong(4, 1768262500000L);
+        verify(statement).setString(5, "event-0");
+        verify(statement).setInt(6, 10);
+        assertEquals("{\"clientCode\":\"CLT1\"}", rows.get(0).payload());
+    }
+
+    @Test
+    void findHtsPayloadPageWithTotal_shouldCountWithWindowFunctionAndReadSecondCursorsAsMilliseconds() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageSize(10);
+        request.setCursor(new PageCursor(1768262500L, "event-0").encode());
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getLong("total_records")).thenReturn(12L);
+        when(resultSet.getLong("date_created")).thenReturn(1768262600000L);
+
+        OpenSrpIntegrationRepository.HtsPayloadPage page = repository.findHtsPayloadPageWithTotal(connection, request);
+
+        assertTrue(sqlCaptor.getValue().contains("p.payload::text AS payload, COUNT(*) OVER() AS total_records FROM"));
+        verify(statement).setLong(4, 1768262500000L);
+        assertEquals(12L, page.totalRecords());
+        assertEquals(1, page.rows().size());
+    }
+
+    @Test
+    void saveConsumerWatermark_shouldUpsertByConsumerAndFacility() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+
+        repository.saveConsumerWatermark(connection, "hts-sync", "124899-6", "token");
+
+        assertTrue(sqlCaptor.getValue().startsWith("INSERT INTO ctc_integration.ctc2hts_consumer_watermarks"));
+        assertTrue(sqlCaptor.getValue().contains("ON CONFLICT (consumer_id, hfr_code) DO UPDATE SET watermark = EXCLUDED.watermark"));
+        verify(statement).setString(1, "hts-sync");
+        verify(statement).setString(2, "124899-6");
+        verify(statement).setString(3, "token");
+        verify(statement).executeUpdate();
+    }
+
+    @Test
+    void setStatementTimeout_shouldSetTransactionLocalTimeoutAndSkipZero() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement("SELECT set_config('statement_timeout', ?, true)")).thenReturn(statement);
+
+        repository.setStatementTimeout(connection, Duration.ofSeconds(15));
+        repository.setStatementTimeout(connection, Duration.ZERO);
+
+        verify(statement).setString(1, "15000");
+        verify(statement, times(1)).execute();
+    }
+
+    @Test
+    void findDateCreatedHistogramBounds_shouldParsePlannerStatisticsForSchema() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("opensrp");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(connection.prepareStatement(contains("FROM pg_stats"))).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getString(1)).thenReturn("{1740000000,1745000000000,1750000000}");
+
+        assertEquals(List.of(1740000000L, 1745000000000L, 1750000000L), repository.findDateCreatedHistogramBounds(connection));
+        verify(statement).setString(1, "opensrp");
+    }
+
+    @Test
+    void findServices_shouldReuseSqlCompiledAtConstruction() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(10);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+
+        repository.findServices(connection, request);
+        repository.findServices(connection, request);
+
+        assertSame(sqlCaptor.getAllValues().get(0), sqlCaptor.getAllValues().get(1));
+    }
+
+    @Test
+    void prepareHotStatements_shouldExecuteEachStatementUpToPrepareThreshold() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PGConnection pgConnection = mock(PGConnection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("__explain__");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(100);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.isWrapperFor(PGConnection.class)).thenReturn(true);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getPrepareThreshold()).thenReturn(2);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+
+        int prepared = repository.prepareHotStatements(connection, request);
+
+        assertEquals(14, prepared);
+        assertEquals(28, sqlCaptor.getAllValues().size());
+        assertEquals(14, Set.copyOf(sqlCaptor.getAllValues()).size());
+        assertTrue(sqlCaptor.getAllValues().stream().anyMatch(sql -> sql.contains("WHERE s.provider_id = ANY(?)")));
+        assertTrue(sqlCaptor.getAllValues().stream().anyMatch(sql -> sql.contains("FROM public.cbhts_enrollment e")));
+        verify(resultSet, times(28)).close();
+    }
+
+    @Test
+    void prepareHotStatements_shouldSkipWhenServerSidePrepareIsDisabled() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PGConnection pgConnection = mock(PGConnection.class);
+        when(connection.isWrapperFor(PGConnection.class)).thenReturn(true);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getPrepareThreshold()).thenReturn(0);
+
+        assertEquals(0, repository.prepareHotStatements(connection, new IntegrationRequest()));
+        verify(connection, never()).prepareStatement(anyString());
+    }
+
+    @Test
+    void copyServices_shouldInlineEscapedFiltersAndParseCopyTextRows() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+        String[] columns = {
+                "event_id", "base_entity_id", "hts_visit_group", "visit_date", "hts_visit_date", "date_created", "provider_id",
+                "hts_testing_approach", "hts_visit_type", "hts_has_the_client_recently_tested_with_hivst",
+                "hts_previous_hivst_client_type", "hts_previous_hivst_test_type", "hts_previous_hivst_test_results",
+                "hts_client_type", "hts_testing_point", "hts_type_of_counselling_provided", "hts_clients_tb_screening_outcome",
+                "hts_has_post_test_counselling_been_provided", "hts_hiv_results_disclosure", "hts_were_condoms_distributed",
+                "hts_number_of_male_condoms_provided", "hts_number_of_female_condoms_provided", "hts_preventive_services",
+                "final_hiv_test_result", "unique_id", "first_name", "middle_name", "last_name", "phone_number", "national_id",
+                "voter_id", "driver_license", "passport", "sex", "birth_date", "marital_status", "preg_1yr",
+                "household_village_code"
+        };
+        String[] values = new String[columns.length];
+        Arrays.fill(values, "\\N");
+        values[0] = "event-1";
+        values[1] = "base-1";
+        values[5] = "1768262500";
+        values[6] = "o'brien\\\\1";
+        values[20] = "3";
+        values[25] = "Line\\tTab\\nBreak";
+        byte[] copyRow = (String.join("\t", values) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement describeStatement = mock(PreparedStatement.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        PGConnection pgConnection = mock(PGConnection.class);
+        CopyManager copyManager = mock(CopyManager.class);
+        CopyOut copyOut = mock(CopyOut.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        OpenSrpIntegrationRepository.FacilityProviders facility = new OpenSrpIntegrationRepository.FacilityProviders(
+                "124899-6",
+                Map.of("o'brien\\1", new OpenSrpIntegrationRepository.ProviderLocation(
+                        "o'brien\\1", "John Doe", "124899-6", null, null, "TZ.NT.MY.ML.4", null, null))
+        );
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(describeStatement);
+        when(describeStatement.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(columns.length);
+        for (int index = 0; index < columns.length; index++) {
+            when(metaData.getColumnLabel(index + 1)).thenReturn(columns[index]);
+        }
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+        when(copyManager.copyOut(anyString())).thenReturn(copyOut);
+        when(copyOut.readFromCopy()).thenReturn(copyRow, (byte[]) null);
+
+        List<OpenSrpIntegrationRepository.ServiceRow> rows;
+        try (OpenSrpIntegrationRepository.ServiceRowCopy copy = repository.copyServices(connection, request, facility)) {
+            rows = copy.next(10);
+        }
+
+        String query = sqlCaptor.getValue();
+        assertFalse(query.contains("?"));
+        assertFalse(query.contains("LIMIT"));
+        assertTrue(query.contains("WHERE s.provider_id = ANY(ARRAY[E'o''brien\\\\1']::text[])"));
+        assertTrue(query.contains("s.date_created BETWEEN 1768262400 AND 1768262800"));
+        assertTrue(query.contains("s.date_created BETWEEN 1768262400000 AND 1768262800999"));
+        verify(copyManager).copyOut("COPY (" + query + ") TO STDOUT");
+        verify(describeStatement).close();
+
+        assertEquals(1, rows.size());
+        OpenSrpIntegrationRepository.ServiceRow row = rows.get(0);
+        assertEquals("event-1", row.eventId());
+        assertEquals(1768262500L, row.dateCreated());
+        assertEquals("o'brien\\1", row.providerId());
+        assertEquals("TZ.NT.MY.ML.4", row.districtCouncil());
+        assertEquals(3, row.htsNumberOfMaleCondomsProvided());
+        assertNull(row.htsNumberOfFemaleCondomsProvided());
+        assertEquals("Line\tTab\nBreak", row.firstName());
+        assertNull(row.lastName());
+    }
+
+    @Test
+    void findServices_shouldUseOffsetPaginationWithoutCursor() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(3);
+        request.setPageSize(10);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        repository.findServices(connection, request);
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.endsWith("LIMIT ? OFFSET ?"));
+        assertFalse(sql.contains("(s.date_created, s.event_id) > (?, ?)"));
+        verify(statement).setInt(6, 10);
+        verify(statement).setInt(7, 20);
+    }
+
+    @Test
+    void findServices_shouldSeekPastCursorInsteadOfOffset() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageSize(10);
+        request.setCursor(new PageCursor(1768262500000L, "event-9").encode());
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        repository.findServices(connection, request);
+
+        String sql = sqlCaptor.getValue();
+        String normalizedDateCreated = "(CASE WHEN s.date_created > -10000000000 AND s.date_created < 10000000000 " +
+                "THEN s.date_created * 1000 ELSE s.date_created END)";
+        assertTrue(sql.contains("AND (" + normalizedDateCreated + ", s.event_id) > (?, ?) " +
+                "ORDER BY " + normalizedDateCreated + " ASC, s.event_id ASC"));
+        assertTrue(sql.endsWith("LIMIT ?"));
+        assertFalse(sql.contains("OFFSET"));
+        verify(statement).setLong(6, 1768262500000L);
+        verify(statement).setString(7, "event-9");
+        verify(statement).setInt(8, 10);
+    }
+
+    @Test
+    void findServices_shouldSortAndSeekOnNormalizedExpressionInNormalizedMode() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public", true);
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageSize(10);
+        request.setCursor(new PageCursor(1768262500L, "event-9").encode());
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        repository.findServices(connection, request);
+
+        String normalizedDateCreated = "(CASE WHEN s.date_created > -10000000000 AND s.date_created < 10000000000 " +
+                "THEN s.date_created * 1000 ELSE s.date_created END)";
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("AND " + normalizedDateCreated + " BETWEEN ? AND ? " +
+                "AND (" + normalizedDateCreated + ", s.event_id) > (?, ?) " +
+                "ORDER BY " + normalizedDateCreated + " ASC, s.event_id ASC LIMIT ?"));
+        verify(statement).setLong(4, 1768262500000L);
+        verify(statement).setString(5, "event-9");
+        verify(statement).setInt(6, 10);
+    }
+
+    @Test
+    void findServicePageWithTotal_shouldCountWithWindowFunctionInPageStatement() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(10);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getLong("total_records")).thenReturn(57L);
+
+        OpenSrpIntegrationRepository.ServicePage page = repository.findServicePageWithTotal(connection, request);
+
+        assertTrue(sqlCaptor.getValue().contains("COUNT(*) OVER() AS total_records FROM public.cbhts_services s"));
+        assertEquals(1, page.rows().size());
+        assertEquals(57L, page.totalRecords());
+    }
+
+    @Test
+    void findServicePageWithLookups_shouldAggregateChildRowsThroughLateralJoins() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(10);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getLong("total_records")).thenReturn(3L);
+        when(resultSet.getString("base_entity_id")).thenReturn("base-1");
+        when(resultSet.getString("hts_visit_group")).thenReturn("visit-group-1");
+        when(resultSet.getString("tests_json")).thenReturn(
+                "[{\"event_id\":\"test-1\",\"hts_visit_group\":\"visit-group-1\",\"base_entity_id\":\"base-1\"," +
+                        "\"test_result\":\"non_reactive\",\"test_type\":\"first\",\"date_created\":1768262800000}]");
+        when(resultSet.getString("hivst_json")).thenReturn(null);
+        when(resultSet.getBoolean("enrolled")).thenReturn(true);
+        when(resultSet.getString("eligibility_for_testing")).thenReturn("no");
+
+        OpenSrpIntegrationRepository.ServicePageWithLookups page =
+                repository.findServicePageWithLookups(connection, request, null, true, true);
+        repository.findServicePageWithLookups(connection, request, null, true, true);
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.startsWith("SELECT page.*, tests.items AS tests_json, hivst.items AS hivst_json, "));
+        assertTrue(sql.contains("LEFT JOIN LATERAL (SELECT json_agg(to_json(pt) ORDER BY pt.date_created ASC, pt.event_id ASC) AS items"));
+        assertTrue(sql.contains("WHERE r.base_entity_id = page.base_entity_id"));
+        assertTrue(sql.contains("WHERE e.base_entity_id = page.base_entity_id"));
+        assertTrue(sql.endsWith("ORDER BY (CASE WHEN page.date_created > -10000000000 AND page.date_created < 10000000000 " +
+                "THEN page.date_created * 1000 ELSE page.date_created END) ASC, page.event_id ASC"));
+        assertSame(sqlCaptor.getAllValues().get(0), sqlCaptor.getAllValues().get(1));
+        verify(statement, times(2)).setInt(7, 0);
+        verify(statement, times(2)).setLong(8, 1768262400L);
+        verify(statement, times(2)).setLong(11, 1768262800999L);
+
+        assertEquals(3L, page.totalRecords());
+        assertEquals(1, page.rows().size());
+        OpenSrpIntegrationRepository.TestRow test = page.testsByKey().get("visit:visit-group-1").get(0);
+        assertEquals("test-1", test.eventId());
+        assertEquals("non_reactive", test.testResult());
+        assertEquals(1768262800000L, test.dateCreated());
+        assertNull(test.testKitBatchNumber());
+        assertEquals(List.of(), page.hivstRowsByBaseEntity().get("base-1"));
+        assertEquals(false, page.enrollmentEligibilityByBaseEntity().get("base-1"));
+    }
+
+    @Test
+    void findServicePageWithLookups_shouldLeaveOutLookupsTheFieldsDoNotNeed() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(10);
+        request.setFields(List.of("clientCode", "selfTesting"));
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+
+        repository.findServicePageWithLookups(connection, request, null, false, true);
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("hivst.items AS hivst_json"));
+        assertFalse(sql.contains("cbhts_tests"));
+        assertFalse(sql.contains("cbhts_enrollment"));
+        verify(statement, never()).setLong(eq(8), anyLong());
+    }
+
     @Test
     void countServices_shouldMapSecondInputToInclusiveMillisecondRange() throws SQLException {
         OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
@@ -237,6 +1019,285 @@ class OpenSrpIntegrationRepositoryTest {
         verify(statement).setLong(5, 1768262800456L);
     }
 
+    @Test
+    void findTestsForServices_shouldBindLookupKeysAsTextArrays() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        Array visitGroups = mock(Array.class);
+        Array baseEntityIds = mock(Array.class);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(connection.createArrayOf("text", new String[]{"visit-group-1"})).thenReturn(visitGroups);
+        when(connection.createArrayOf("text", new String[]{"base-1"})).thenReturn(baseEntityIds);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        repository.findTestsForServices(connection, List.of(buildServiceRow("base-1")), 1768262400L, 1768262800L);
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("AND (t.hts_visit_group = ANY(?) OR (t.hts_visit_group IS NULL AND t.base_entity_id = ANY(?)))"));
+        assertFalse(sql.contains("IN ("));
+        verify(statement).setArray(5, visitGroups);
+        verify(statement).setArray(6, baseEntityIds);
+    }
+
+    @Test
+    void countServices_shouldFilterOnNormalizedMillisecondsInNormalizedMode() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public", true);
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        repository.countServices(connection, request);
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("AND (CASE WHEN s.date_created > -10000000000 AND s.date_created < 10000000000 " +
+                "THEN s.date_created * 1000 ELSE s.date_created END) BETWEEN ? AND ?"));
+        assertFalse(sql.contains(" OR "));
+        verify(statement).setString(1, "124899-6");
+        verify(statement).setLong(2, 1768262400000L);
+        verify(statement).setLong(3, 1768262800999L);
+    }
+
+    @Test
+    void ensureNormalizedDateCreatedIndexes_shouldCreateExpressionIndexesConcurrently() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public", true);
+
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        PreparedStatement invalidIndexStatement = mock(PreparedStatement.class);
+        ResultSet invalidIndexResult = mock(ResultSet.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.prepareStatement(anyString())).thenReturn(invalidIndexStatement);
+        when(invalidIndexStatement.executeQuery()).thenReturn(invalidIndexResult);
+
+        repository.ensureNormalizedDateCreatedIndexes(connection);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        verify(statement, times(2)).execute(sqlCaptor.capture());
+        assertEquals("CREATE INDEX CONCURRENTLY IF NOT EXISTS cbhts_services_date_created_ms_idx ON public.cbhts_services " +
+                "((CASE WHEN date_created > -10000000000 AND date_created < 10000000000 THEN date_created * 1000 ELSE date_created END), event_id)",
+                sqlCaptor.getAllValues().get(0));
+        assertTrue(sqlCaptor.getAllValues().get(1).startsWith("CREATE INDEX CONCURRENTLY IF NOT EXISTS cbhts_tests_date_created_ms_idx ON public.cbhts_tests"));
+    }
+
+    @Test
+    void importSnapshot_shouldRollBackAndReportFalseWhenSnapshotIsUnknown() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.execute("SET TRANSACTION SNAPSHOT E'00000003-0000001B-1'"))
+                .thenThrow(new SQLException("invalid snapshot identifier", "22023"));
+
+        assertFalse(repository.importSnapshot(connection, "00000003-0000001B-1"));
+        verify(connection).rollback();
+    }
+
+    @Test
+    void hasIndexLeadingWith_shouldLookUpValidIndexBySchemaTableAndColumn() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        assertFalse(repository.hasIndexLeadingWith(connection, "team_members", "identifier"));
+        assertTrue(sqlCaptor.getValue().contains("a.attnum = i.indkey[0]"));
+        assertTrue(sqlCaptor.getValue().contains("i.indisvalid"));
+        verify(statement).setString(1, "public");
+        verify(statement).setString(2, "team_members");
+        verify(statement).setString(3, "identifier");
+    }
+
+    @Test
+    void createIndexConcurrently_shouldQualifyTableWithSchema() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        PreparedStatement invalidIndexStatement = mock(PreparedStatement.class);
+        ResultSet invalidIndexResult = mock(ResultSet.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.prepareStatement(anyString())).thenReturn(invalidIndexStatement);
+        when(invalidIndexStatement.executeQuery()).thenReturn(invalidIndexResult);
+
+        repository.createIndexConcurrently(connection, "client_unique_id_idx", "client", "unique_id");
+
+        verify(statement).execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS client_unique_id_idx ON public.client (unique_id)");
+        verify(statement, never()).execute(startsWith("DROP INDEX"));
+    }
+
+    @Test
+    void createIndexConcurrently_shouldDropInvalidIndexLeftByFailedBuildBeforeRecreating() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        PreparedStatement invalidIndexStatement = mock(PreparedStatement.class);
+        ResultSet invalidIndexResult = mock(ResultSet.class);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(invalidIndexStatement);
+        when(invalidIndexStatement.executeQuery()).thenReturn(invalidIndexResult);
+        when(invalidIndexResult.next()).thenReturn(true);
+
+        repository.createIndexConcurrently(connection, "client_unique_id_idx", "client", "unique_id");
+
+        assertTrue(sqlCaptor.getValue().contains("NOT i.indisvalid"));
+        verify(invalidIndexStatement).setString(1, "public");
+        verify(invalidIndexStatement).setString(2, "client_unique_id_idx");
+        InOrder inOrder = inOrder(statement);
+        inOrder.verify(statement).execute("DROP INDEX CONCURRENTLY IF EXISTS public.client_unique_id_idx");
+        inOrder.verify(statement).execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS client_unique_id_idx ON public.client (unique_id)");
+    }
+
+    @Test
+    void explainStatements_shouldExplainEveryRepositoryQuery() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        Array sampleArray = mock(Array.class);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(connection.createArrayOf(org.mockito.ArgumentMatchers.eq("text"), org.mockito.ArgumentMatchers.any())).thenReturn(sampleArray);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString(1)).thenReturn("Seq Scan on cbhts_services s  (cost=0.00..1.00 rows=1 width=8)");
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(100);
+
+        Map<String, List<String>> plans = repository.explainStatements(connection, request);
+
+        assertEquals(List.of(
+                "countServices",
+                "findServices",
+                "findTestsForServices",
+                "findHivstTestByBaseEntity",
+                "findEnrollmentEligibilityByBaseEntity",
+                "findLatestServiceMetadataByClientCode"
+        ), List.copyOf(plans.keySet()));
+        assertEquals(List.of("Seq Scan on cbhts_services s  (cost=0.00..1.00 rows=1 width=8)"), plans.get("countServices"));
+        assertTrue(sqlCaptor.getAllValues().stream().allMatch(sql -> sql.startsWith("EXPLAIN SELECT ")));
+    }
+
+    @Test
+    void findHivstTestsForVisits_shouldPairThroughLookupTableAndLimitPerVisit() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        Array baseEntityIds = mock(Array.class);
+        Array visitDates = mock(Array.class);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(connection.createArrayOf("text", new Object[]{"base-1"})).thenReturn(baseEntityIds);
+        when(connection.createArrayOf("date", new Object[]{java.sql.Date.valueOf("2026-01-14")})).thenReturn(visitDates);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        repository.findHivstTestsForVisits(connection,
+                List.of(new OpenSrpIntegrationRepository.HivstVisit("base-1", LocalDate.of(2026, 1, 14))), 10);
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("FROM unnest(?::text[], ?::date[]) AS v(base_entity_id, visit_date)"));
+        assertTrue(sql.contains("FROM ctc_integration.hivst_kit_pairings p "));
+        assertTrue(sql.contains("JOIN public.hivst_results r ON r.base_entity_id = p.base_entity_id AND r.kit_code = p.kit_code"));
+        assertTrue(sql.contains("WHERE p.base_entity_id = v.base_entity_id AND p.issue_date = v.visit_date"));
+        assertTrue(sql.contains("ORDER BY r.result_date DESC, r.event_id DESC LIMIT ?) paired UNION ALL "));
+        assertTrue(sql.contains("WHERE r.base_entity_id = ANY(?::text[]) AND NOT EXISTS " +
+                "(SELECT 1 FROM ctc_integration.hivst_kit_pairings p WHERE p.issue_event_id = k.event_id)"));
+        verify(statement).setArray(1, baseEntityIds);
+        verify(statement).setArray(2, visitDates);
+        verify(statement).setInt(3, 10);
+        verify(statement).setArray(4, baseEntityIds);
+    }
+
+    @Test
+    void findChangedHivstIssueKits_shouldSplitMissingOrStaleIssueEventsIntoKitSlots() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString("issue_event_id")).thenReturn("issue-1");
+        when(resultSet.getString("kit_for")).thenReturn("sexual_partner");
+        when(resultSet.getString("kit_code")).thenReturn("KIT-2");
+        when(resultSet.getString("issue_event_date")).thenReturn("2026-01-14");
+
+        List<OpenSrpIntegrationRepository.HivstKitPairing> pairings = repository.findChangedHivstIssueKits(connection, 500);
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("WHERE p.issue_event_id = k.event_id AND p.kit_for = slot.kit_for " +
+                "AND (p.base_entity_id, p.kit_code, p.issue_event_date, p.kit_batch_number, p.kit_expiry_date) IS NOT DISTINCT FROM " +
+                "(k.base_entity_id, slot.kit_code, k.event_date, slot.kit_batch_number, slot.kit_expiry_date))"));
+        assertTrue(sql.endsWith("LIMIT ?"));
+        assertTrue(sql.contains("('sexual_partner', k.sexual_partner_kit_code, k.sexual_partner_kit_batch_number, k.sexual_partner_kit_expiry_date)"));
+        verify(statement).setInt(1, 500);
+        assertEquals(1, pairings.size());
+        assertEquals("KIT-2", pairings.get(0).kitCode());
+        assertNull(pairings.get(0).issueDate());
+    }
+
+    @Test
+    void upsertHivstKitPairings_shouldReplaceStalePairingOfCorrectedIssueEvent() throws SQLException {
+        OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        when(connection.prepareStatement(sqlCaptor.capture())).thenReturn(statement);
+
+        repository.upsertHivstKitPairings(connection, List.of(new OpenSrpIntegrationRepository.HivstKitPairing(
+                "issue-1", "client", "base-1", "KIT-9", "2026-01-15", "B-2", "2027-02-01", LocalDate.of(2026, 1, 15))));
+
+        String sql = sqlCaptor.getValue();
+        assertTrue(sql.contains("ON CONFLICT (issue_event_id, kit_for) DO UPDATE SET "));
+        assertTrue(sql.contains("kit_code = EXCLUDED.kit_code"));
+        assertTrue(sql.contains("issue_date = EXCLUDED.issue_date"));
+        verify(statement).setString(4, "KIT-9");
+        verify(statement).setDate(6, java.sql.Date.valueOf("2026-01-15"));
+        verify(statement).executeBatch();
+    }
+
     @Test
     void findHivstTestByBaseEntity_shouldUseDynamicKitJoinAndCaseColumns() throws SQLException {
         OpenSrpIntegrationRepository repository = new OpenSrpIntegrationRepository("public");
@@ -267,7 +1328,7 @@ class OpenSrpIntegrationRepositoryTest {
         assertTrue(sql.contains("WHEN r.kit_for = 'sexual_partner' THEN k.sexual_partner_kit_expiry_date"));
         assertTrue(sql.contains("WHEN r.kit_for IN ('peer_friend','peer_fried') THEN k.peer_friend_kit_expiry_date"));
         assertTrue(sql.contains("END AS kit_expiry_date"));
-        assertTrue(sql.contains("WHERE r.base_entity_id IN ("));
+        assertTrue(sql.contains("WHERE r.base_entity_id = ANY(?)"));
     }
 
     @Test
@@ -326,7 +1387,7 @@ class OpenSrpIntegrationRepositoryTest {
 
         String sql = sqlCaptor.getValue();
         assertTrue(sql.contains("FROM public.cbhts_enrollment e"));
-        assertTrue(sql.contains("WHERE e.base_entity_id IN ("));
+        assertTrue(sql.contains("WHERE e.base_entity_id = ANY(?)"));
         assertTrue(sql.contains("ORDER BY e.base_entity_id ASC, e.date_created DESC NULLS LAST, e.event_id DESC"));
     }
 
@@ -0,0 +1,136 @@
+package com.abt.integration.db;
+
+import com.abt.integration.config.PostgresConnectionFactory;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OpenSrpSchemaBootstrapTest {
+
+    @Test
+    void ensureRequiredIndexes_shouldCreateOnlyMissingIndexes() throws SQLException {
+        OpenSrpIntegrationRepository repository = mock(OpenSrpIntegrationRepository.class);
+        Connection connection = mock(Connection.class);
+        when(repository.hasIndexLeadingWith(eq(connection), anyString(), anyString())).thenReturn(true);
+        when(repository.hasIndexLeadingWith(connection, "client", "unique_id")).thenReturn(false);
+        when(repository.hasIndexLeadingWith(connection, "household", "primary_caregiver")).thenReturn(false);
+
+        OpenSrpSchemaBootstrap bootstrap = new OpenSrpSchemaBootstrap(null, repository, false, true, 100_000L);
+
+        List<String> created = bootstrap.ensureRequiredIndexes(connection);
+
+        assertEquals(List.of("client_unique_id_idx", "household_primary_caregiver_idx"), created);
+        verify(repository).createIndexConcurrently(connection, "client_unique_id_idx", "client", "unique_id");
+        verify(repository).createIndexConcurrently(connection, "household_primary_caregiver_idx", "household", "primary_caregiver");
+        verify(repository, times(2)).createIndexConcurrently(eq(connection), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void ensureRequiredIndexes_shouldContinueWhenIndexCreationFails() throws SQLException {
+        OpenSrpIntegrationRepository repository = mock(OpenSrpIntegrationRepository.class);
+        Connection connection = mock(Connection.class);
+        when(repository.hasIndexLeadingWith(eq(connection), anyString(), anyString())).thenReturn(false);
+        doThrow(new SQLException("permission denied"))
+                .when(repository).createIndexConcurrently(connection, "team_members_identifier_idx", "team_members", "identifier");
+
+        OpenSrpSchemaBootstrap bootstrap = new OpenSrpSchemaBootstrap(null, repository, false, true, 100_000L);
+
+        List<String> created = bootstrap.ensureRequiredIndexes(connection);
+
+        assertEquals(OpenSrpSchemaBootstrap.REQUIRED_INDEXES.size() - 1, created.size());
+        assertFalse(created.contains("team_members_identifier_idx"));
+    }
+
+    @Test
+    void findSequentialScanWarnings_shouldReportSeqScansOnLargeTablesOnly() throws SQLException {
+        OpenSrpIntegrationRepository repository = mock(OpenSrpIntegrationRepository.class);
+        Connection connection = mock(Connection.class);
+
+        Map<String, List<String>> plans = new LinkedHashMap<>();
+        plans.put("findServices", List.of(
+                "Limit  (cost=10.00..20.00 rows=100 width=512)",
+                "  ->  Seq Scan on cbhts_services s  (cost=0.00..9000.00 rows=250000 width=512)",
+                "        ->  Seq Scan on tanzania_locations l  (cost=0.00..1.00 rows=40 width=64)"
+        ));
+        plans.put("countServices", List.of("  ->  Seq Scan on cbhts_services s  (cost=0.00..9000.00 rows=250000 width=8)"));
+        when(repository.explainStatements(eq(connection), any())).thenReturn(plans);
+        when(repository.estimatedRowCount(connection, "cbhts_services")).thenReturn(250_000L);
+        when(repository.estimatedRowCount(connection, "tanzania_locations")).thenReturn(40L);
+
+        OpenSrpSchemaBootstrap bootstrap = new OpenSrpSchemaBootstrap(null, repository, false, true, 100_000L);
+
+        List<String> warnings = bootstrap.findSequentialScanWarnings(connection);
+
+        assertEquals(2, warnings.size());
+        assertTrue(warnings.get(0).contains("cbhts_services"));
+        assertTrue(warnings.get(0).contains("findServices"));
+        assertTrue(warnings.get(1).contains("countServices"));
+        verify(repository).estimatedRowCount(connection, "cbhts_services");
+    }
+
+    @Test
+    void run_shouldPrepareHotStatementsOnEachWarmedConnection() throws SQLException {
+        PostgresConnectionFactory connectionFactory = mock(PostgresConnectionFactory.class);
+        OpenSrpIntegrationRepository repository = mock(OpenSrpIntegrationRepository.class);
+        Connection schema = mock(Connection.class);
+        Connection first = mock(Connection.class);
+        Connection second = mock(Connection.class);
+        when(connectionFactory.openConnection()).thenReturn(schema).thenReturn(first).thenReturn(second);
+
+        new OpenSrpSchemaBootstrap(connectionFactory, repository, false, false, 100_000L, 2).run();
+
+        verify(repository).prepareHotStatements(eq(first), any());
+        verify(repository).prepareHotStatements(eq(second), any());
+        verify(first).close();
+        verify(second).close();
+    }
+
+    @Test
+    void run_shouldAlsoWarmReadReplicaPoolWhenConfigured() throws SQLException {
+        PostgresConnectionFactory connectionFactory = mock(PostgresConnectionFactory.class);
+        OpenSrpIntegrationRepository repository = mock(OpenSrpIntegrationRepository.class);
+        Connection primary = mock(Connection.class);
+        Connection replica = mock(Connection.class);
+        when(connectionFactory.openConnection()).thenReturn(primary);
+        when(connectionFactory.readReplicaConfigured()).thenReturn(true);
+        when(connectionFactory.openReadConnection()).thenReturn(replica);
+
+        new OpenSrpSchemaBootstrap(connectionFactory, repository, false, false, 100_000L, 1).run();
+
+        verify(repository).prepareHotStatements(eq(primary), any());
+        verify(repository).prepareHotStatements(eq(replica), any());
+        verify(replica).close();
+    }
+
+    @Test
+    void run_shouldOnlyEnsureServiceChangesIndexWhenNothingElseIsEnabled() throws SQLException {
+        PostgresConnectionFactory connectionFactory = mock(PostgresConnectionFactory.class);
+        OpenSrpIntegrationRepository repository = mock(OpenSrpIntegrationRepository.class);
+        Connection connection = mock(Connection.class);
+        when(connectionFactory.openConnection()).thenReturn(connection);
+
+        new OpenSrpSchemaBootstrap(connectionFactory, repository, false, false, 100_000L).run();
+
+        verify(repository).ensureServiceChangesIndex(connection);
+        verify(repository, never()).ensureNormalizedDateCreatedIndexes(any());
+        verify(repository, never()).hasIndexLeadingWith(any(), anyString(), anyString());
+        verify(connection).close();
+    }
+}
@@ -1,10 +1,15 @@
 package com.abt.integration.mapping;
 
 import com.abt.integration.db.OpenSrpIntegrationRepository;
+import com.abt.integration.model.RecordProjection;
 import com.abt.util.Utils;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,12 +22,15 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class IntegrationDataMapperTest {
 
+    private static final TypeReference<LinkedHashMap<String, Object>> JSON_OBJECT = new TypeReference<>() {
+    };
     private static final String TEST_SECRET_KEY = "unit-test-secret-key";
     private static final String CBHTS_PAYLOAD_ENCRYPTION_SECRET_KEY_ENV_KEY =
             "CBHTS_PAYLOAD_ENCRYPTION_SECRET_KEY";
     private static final String ENCRYPT_DATA_ENV_KEY = "ENCRYPT_DATA";
     private static final String MISSING_SECRET_KEY_ERROR_MESSAGE =
             "ENCRYPT_DATA is true but CBHTS_PAYLOAD_ENCRYPTION_SECRET_KEY is missing or blank.";
+    private static final ObjectMapper JSON = new ObjectMapper();
     private final IntegrationDataMapper mapper = new IntegrationDataMapper("false", null);
 
     @AfterEach
@@ -115,34 +123,34 @@ class IntegrationDataMapperTest {
         assertEquals("CBHTS", mapped.get("htcApproach"));
         assertEquals("2025-12-20", mapped.get("visitDate"));
         assertEquals(1768262800000L, mapped.get("createdAt"));
-        Map<String, Object> counsellor = (Map<String, Object>) mapped.get("counsellor");
+        Map<String, Object> counsellor = (Map<String, Object>) json(mapped.get("counsellor"));
         assertEquals("provider-1", counsellor.get("counsellorID"));
         assertEquals("John Doe", counsellor.get("counsellorName"));
 
-        Map<String, Object> demographics = (Map<String, Object>) mapped.get("demographics");
+        Map<String, Object> demographics = (Map<String, Object>) json(mapped.get("demographics"));
         assertEquals("SINGLE", demographics.get("maritalStatusCode"));
         assertEquals("UNKNOWN", demographics.get("pregnancyStatusCode"));
 
-        Map<String, Object> clientClassification = (Map<String, Object>) mapped.get("clientClassification");
+        Map<String, Object> clientClassification = (Map<String, Object>) json(mapped.get("clientClassification"));
         assertEquals("SELF", clientClassification.get("previousTestClientType"));
         assertEquals("GENERAL_CLIENT", clientClassification.get("clientType"));
         assertEquals("NEW_CLIENT", clientClassification.get("attendanceCode"));
         assertTrue((Boolean) clientClassification.get("eligibleForTesting"));
 
-        Map<String, Object> currentTesting = (Map<String, Object>) mapped.get("currentTesting");
+        Map<String, Object> currentTesting = (Map<String, Object>) json(mapped.get("currentTesting"));
         assertTrue(!currentTesting.containsKey("referredFromCode"));
         assertEquals("INDIVIDUAL", currentTesting.get("counsellingTypeCode"));
         assertEquals("TB_PRESUMPTIVE", currentTesting.get("tbScreeningDetails"));
 
-        Map<String, Object> residence = (Map<String, Object>) mapped.get("residence");
+        Map<String, Object> residence = (Map<String, Object>) json(mapped.get("residence"));
         assertEquals(1, residence.size());
         assertEquals("TZ.NT.MY.ML.4.8.1", residence.get("villageStreet"));
 
-        Map<String, Object> testingHistory = (Map<String, Object>) mapped.get("testingHistory");
+        Map<String, Object> testingHistory = (Map<String, Object>) json(mapped.get("testingHistory"));
         assertEquals("SELF_TEST_ORAL", testingHistory.get("testingTypePrevious"));
         assertEquals("REACTIVE", testingHistory.get("previousTestResult"));
 
-        List<Map<String, Object>> selfTesting = (List<Map<String, Object>>) mapped.get("selfTesting");
+        List<Map<String, Object>> selfTesting = (List<Map<String, Object>>) json(mapped.get("selfTesting"));
         assertEquals(1, selfTesting.size());
         assertEquals("KIT001", selfTesting.get(0).get("selfTestKitCode"));
         assertEquals("BATCH001", selfTesting.get(0).get("selfTestBatchNo"));
@@ -151,22 +159,49 @@ class IntegrationDataMapperTest {
         assertNotEquals("Client", selfTesting.get(0).get("selfTestKitName"));
         assertEquals("REACTIVE", selfTesting.get(0).get("selfTestingResults"));
 
-        List<Map<String, Object>> reagentTesting = (List<Map<String, Object>>) mapped.get("reagentTesting");
+        List<Map<String, Object>> reagentTesting = (List<Map<String, Object>>) json(mapped.get("reagentTesting"));
         assertEquals(1, reagentTesting.size());
         assertEquals("DUAL", reagentTesting.get(0).get("reagentTest"));
         assertEquals("NON_REACTIVE", reagentTesting.get(0).get("reagentResult"));
         assertEquals("POSITIVE", reagentTesting.get(0).get("syphilisResult"));
         assertEquals("POSITIVE", mapped.get("hivResultCode"));
 
-        Map<String, Object> preventionServices = (Map<String, Object>) mapped.get("preventionServices");
+        Map<String, Object> preventionServices = (Map<String, Object>) json(mapped.get("preventionServices"));
         assertTrue((Boolean) preventionServices.get("condomGiven"));
 
-        List<Map<String, Object>> referralAndOutcome = (List<Map<String, Object>>) mapped.get("referralAndOutcome");
+        List<Map<String, Object>> referralAndOutcome = (List<Map<String, Object>>) json(mapped.get("referralAndOutcome"));
         assertEquals(1, referralAndOutcome.size());
         assertEquals("PREP_SERVICE", referralAndOutcome.get(0).get("referredToCode"));
         assertEquals("13211-1", referralAndOutcome.get(0).get("toFacility"));
     }
 
+    @Test
+    void mapServiceRow_shouldMapOnlyProjectedSectionsInRecordOrder() {
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("Single");
+
+        Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of(), List.of(), null,
+                RecordProjection.of(List.of("createdAt", "clientCode", "hivResultCode")));
+        Map<String, Object> full = mapper.mapServiceRow(serviceRow, List.of());
+
+        assertEquals(List.of("clientCode", "hivResultCode", "createdAt"), List.copyOf(mapped.keySet()));
+        assertEquals(full.get("clientCode"), mapped.get("clientCode"));
+        assertEquals(full.get("hivResultCode"), mapped.get("hivResultCode"));
+        assertEquals(RecordProjection.FIELDS, List.copyOf(full.keySet()));
+    }
+
+    @Test
+    void mapServiceRow_shouldSerializeSectionsInContractOrderEvenWhenPropertiesAreSorted() throws IOException {
+        ObjectMapper sortedJson = new ObjectMapper().enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY);
+        Map<String, Object> mapped = mapper.mapServiceRow(buildServiceRow("Single"), List.of());
+
+        assertEquals("{\"counsellorID\":\"provider-1\",\"counsellorName\":\"John Doe\"}",
+                sortedJson.writeValueAsString(mapped.get("counsellor")));
+        assertEquals(List.of("sexCode", "dateOfBirth", "maritalStatusCode", "pregnancyStatusCode", "smsConsent"),
+                List.copyOf(sortedJson.readValue(sortedJson.writeValueAsBytes(mapped.get("demographics")), JSON_OBJECT).keySet()));
+        assertEquals(List.of("testingType", "counsellingTypeCode", "tbScreeningDetails", "postTestCounsellingAndResultsGiven", "disclosure"),
+                List.copyOf(sortedJson.readValue(sortedJson.writeValueAsBytes(mapped.get("currentTesting")), JSON_OBJECT).keySet()));
+    }
+
     @Test
     void mapServiceRow_shouldConvertSecondBasedCreatedAtToMilliseconds() {
         OpenSrpIntegrationRepository.ServiceRow serviceRow = withDateCreated(buildServiceRow("Single"), 1768262800L);
@@ -186,10 +221,10 @@ class IntegrationDataMapperTest {
         Map<String, Object> mappedNull = mapper.mapServiceRow(serviceRow, List.of(), List.of(), null);
         Map<String, Object> mappedMissing = mapper.mapServiceRow(serviceRow, List.of());
 
-        Map<String, Object> clientClassificationTrue = (Map<String, Object>) mappedTrue.get("clientClassification");
-        Map<String, Object> clientClassificationFalse = (Map<String, Object>) mappedFalse.get("clientClassification");
-        Map<String, Object> clientClassificationNull = (Map<String, Object>) mappedNull.get("clientClassification");
-        Map<String, Object> clientClassificationMissing = (Map<String, Object>) mappedMissing.get("clientClassification");
+        Map<String, Object> clientClassificationTrue = (Map<String, Object>) json(mappedTrue.get("clientClassification"));
+        Map<String, Object> clientClassificationFalse = (Map<String, Object>) json(mappedFalse.get("clientClassification"));
+        Map<String, Object> clientClassificationNull = (Map<String, Object>) json(mappedNull.get("clientClassification"));
+        Map<String, Object> clientClassificationMissing = (Map<String, Object>) json(mappedMissing.get("clientClassification"));
 
         assertEquals(true, clientClassificationTrue.get("eligibleForTesting"));
         assertEquals(false, clientClassificationFalse.get("eligibleForTesting"));
@@ -225,7 +260,7 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of());
-        Map<String, Object> residence = (Map<String, Object>) mapped.get("residence");
+        Map<String, Object> residence = (Map<String, Object>) json(mapped.get("residence"));
 
         assertEquals(1, residence.size());
         assertEquals("VLG-123", residence.get("villageStreet"));
@@ -242,7 +277,7 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of());
-        Map<String, Object> residence = (Map<String, Object>) mapped.get("residence");
+        Map<String, Object> residence = (Map<String, Object>) json(mapped.get("residence"));
 
         assertEquals(1, residence.size());
         assertEquals("COUNCIL-2", residence.get("council"));
@@ -259,7 +294,7 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of());
-        Map<String, Object> residence = (Map<String, Object>) mapped.get("residence");
+        Map<String, Object> residence = (Map<String, Object>) json(mapped.get("residence"));
 
         assertEquals(1, residence.size());
         assertEquals("COUNCIL-3", residence.get("council"));
@@ -276,7 +311,7 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of());
-        Map<String, Object> residence = (Map<String, Object>) mapped.get("residence");
+        Map<String, Object> residence = (Map<String, Object>) json(mapped.get("residence"));
 
         assertEquals(1, residence.size());
         assertEquals("COUNCIL-4", residence.get("council"));
@@ -319,7 +354,7 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of(), List.of(clientResult, peerResult));
-        List<Map<String, Object>> selfTesting = (List<Map<String, Object>>) mapped.get("selfTesting");
+        List<Map<String, Object>> selfTesting = (List<Map<String, Object>>) json(mapped.get("selfTesting"));
 
         assertEquals(2, selfTesting.size());
         assertEquals("CLIENT-BATCH", selfTesting.get(0).get("selfTestBatchNo"));
@@ -387,7 +422,7 @@ class IntegrationDataMapperTest {
                 List.of(),
                 List.of(selfRow, sexualPartnerRow, peerFriendTypoRow)
         );
-        List<Map<String, Object>> selfTesting = (List<Map<String, Object>>) mapped.get("selfTesting");
+        List<Map<String, Object>> selfTesting = (List<Map<String, Object>>) json(mapped.get("selfTesting"));
 
         assertEquals(3, selfTesting.size());
         assertEquals("SELF", selfTesting.get(0).get("selfTestKitName"));
@@ -420,7 +455,7 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of(), List.of(differentDay));
-        List<Map<String, Object>> selfTesting = (List<Map<String, Object>>) mapped.get("selfTesting");
+        List<Map<String, Object>> selfTesting = (List<Map<String, Object>>) json(mapped.get("selfTesting"));
 
         assertEquals(0, selfTesting.size());
     }
@@ -451,7 +486,7 @@ class IntegrationDataMapperTest {
                 List.of(),
                 List.of(validIssueDate)
         );
-        List<Map<String, Object>> missingVisitDateSelfTesting = (List<Map<String, Object>>) missingVisitDateMapped.get("selfTesting");
+        List<Map<String, Object>> missingVisitDateSelfTesting = (List<Map<String, Object>>) json(missingVisitDateMapped.get("selfTesting"));
         assertEquals(0, missingVisitDateSelfTesting.size());
 
         OpenSrpIntegrationRepository.HivstSelfTestRow blankIssueDate = new OpenSrpIntegrationRepository.HivstSelfTestRow(
@@ -474,7 +509,7 @@ class IntegrationDataMapperTest {
                 List.of(),
                 List.of(blankIssueDate)
         );
-        List<Map<String, Object>> blankIssueDateSelfTesting = (List<Map<String, Object>>) blankIssueDateMapped.get("selfTesting");
+        List<Map<String, Object>> blankIssueDateSelfTesting = (List<Map<String, Object>>) json(blankIssueDateMapped.get("selfTesting"));
         assertEquals(0, blankIssueDateSelfTesting.size());
     }
 
@@ -517,19 +552,19 @@ class IntegrationDataMapperTest {
         Map<String, Object> mappedDriverLicense = mapper.mapServiceRow(withDriverLicense, List.of());
         Map<String, Object> mappedPassport = mapper.mapServiceRow(withPassport, List.of());
 
-        Map<String, Object> nationalIdentification = (Map<String, Object>) mappedNational.get("clientIdentification");
+        Map<String, Object> nationalIdentification = (Map<String, Object>) json(mappedNational.get("clientIdentification"));
         assertEquals("NIDA", nationalIdentification.get("clientUniqueIdentifierType"));
         assertEquals("NAT123", nationalIdentification.get("clientUniqueIdentifierCode"));
 
-        Map<String, Object> voterIdentification = (Map<String, Object>) mappedVoter.get("clientIdentification");
+        Map<String, Object> voterIdentification = (Map<String, Object>) json(mappedVoter.get("clientIdentification"));
         assertEquals("VOTER_ID", voterIdentification.get("clientUniqueIdentifierType"));
         assertEquals("VOT123", voterIdentification.get("clientUniqueIdentifierCode"));
 
-        Map<String, Object> driverLicenseIdentification = (Map<String, Object>) mappedDriverLicense.get("clientIdentification");
+        Map<String, Object> driverLicenseIdentification = (Map<String, Object>) json(mappedDriverLicense.get("clientIdentification"));
         assertEquals("DRIVER_LICENSE", driverLicenseIdentification.get("clientUniqueIdentifierType"));
         assertEquals("DL123", driverLicenseIdentification.get("clientUniqueIdentifierCode"));
 
-        Map<String, Object> passportIdentification = (Map<String, Object>) mappedPassport.get("clientIdentification");
+        Map<String, Object> passportIdentification = (Map<String, Object>) json(mappedPassport.get("clientIdentification"));
         assertEquals("PASSPORT", passportIdentification.get("clientUniqueIdentifierType"));
         assertEquals("P123", passportIdentification.get("clientUniqueIdentifierCode"));
     }
@@ -546,8 +581,8 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of());
-        assertTrue(mapped.get("clientIdentification") instanceof Map<?, ?>);
-        Map<String, Object> clientIdentification = (Map<String, Object>) mapped.get("clientIdentification");
+        assertTrue(json(mapped.get("clientIdentification")) instanceof Map<?, ?>);
+        Map<String, Object> clientIdentification = (Map<String, Object>) json(mapped.get("clientIdentification"));
         assertNull(clientIdentification.get("clientUniqueIdentifierType"));
         assertNull(clientIdentification.get("clientUniqueIdentifierCode"));
     }
@@ -566,8 +601,8 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = encryptedMapper.mapServiceRow(serviceRow, List.of());
-        Map<String, Object> clientIdentification = (Map<String, Object>) mapped.get("clientIdentification");
-        Map<String, Object> clientName = (Map<String, Object>) mapped.get("clientName");
+        Map<String, Object> clientIdentification = (Map<String, Object>) json(mapped.get("clientIdentification"));
+        Map<String, Object> clientName = (Map<String, Object>) json(mapped.get("clientName"));
 
         String encryptedIdType = (String) clientIdentification.get("clientUniqueIdentifierType");
         String encryptedIdCode = (String) clientIdentification.get("clientUniqueIdentifierCode");
@@ -602,8 +637,8 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = disabledMapper.mapServiceRow(serviceRow, List.of());
-        Map<String, Object> clientIdentification = (Map<String, Object>) mapped.get("clientIdentification");
-        Map<String, Object> clientName = (Map<String, Object>) mapped.get("clientName");
+        Map<String, Object> clientIdentification = (Map<String, Object>) json(mapped.get("clientIdentification"));
+        Map<String, Object> clientName = (Map<String, Object>) json(mapped.get("clientName"));
 
         assertEquals("NIDA", clientIdentification.get("clientUniqueIdentifierType"));
         assertEquals("NAT123", clientIdentification.get("clientUniqueIdentifierCode"));
@@ -626,8 +661,8 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = missingFlagMapper.mapServiceRow(serviceRow, List.of());
-        Map<String, Object> clientIdentification = (Map<String, Object>) mapped.get("clientIdentification");
-        Map<String, Object> clientName = (Map<String, Object>) mapped.get("clientName");
+        Map<String, Object> clientIdentification = (Map<String, Object>) json(mapped.get("clientIdentification"));
+        Map<String, Object> clientName = (Map<String, Object>) json(mapped.get("clientName"));
 
         assertEquals("NIDA", clientIdentification.get("clientUniqueIdentifierType"));
         assertEquals("NAT123", clientIdentification.get("clientUniqueIdentifierCode"));
@@ -648,12 +683,12 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = encryptedMapper.mapServiceRow(serviceRow, List.of());
-        assertTrue(mapped.get("clientIdentification") instanceof Map<?, ?>);
-        Map<String, Object> clientIdentification = (Map<String, Object>) mapped.get("clientIdentification");
+        assertTrue(json(mapped.get("clientIdentification")) instanceof Map<?, ?>);
+        Map<String, Object> clientIdentification = (Map<String, Object>) json(mapped.get("clientIdentification"));
         assertNull(clientIdentification.get("clientUniqueIdentifierType"));
         assertNull(clientIdentification.get("clientUniqueIdentifierCode"));
 
-        Map<String, Object> clientName = (Map<String, Object>) mapped.get("clientName");
+        Map<String, Object> clientName = (Map<String, Object>) json(mapped.get("clientName"));
         assertNull((String) clientName.get("firstName"));
         assertEquals("", clientName.get("middleName"));
         assertEquals("   ", clientName.get("lastName"));
@@ -690,7 +725,7 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = envMapper.mapServiceRow(serviceRow, List.of());
-        Map<String, Object> clientIdentification = (Map<String, Object>) mapped.get("clientIdentification");
+        Map<String, Object> clientIdentification = (Map<String, Object>) json(mapped.get("clientIdentification"));
         String encryptedIdCode = (String) clientIdentification.get("clientUniqueIdentifierCode");
 
         assertEquals("NAT123", Utils.decryptDataNew(encryptedIdCode, TEST_SECRET_KEY, null));
@@ -710,7 +745,7 @@ class IntegrationDataMapperTest {
             OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow(entry.getKey());
 
             Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of());
-            Map<String, Object> demographics = (Map<String, Object>) mapped.get("demographics");
+            Map<String, Object> demographics = (Map<String, Object>) json(mapped.get("demographics"));
 
             assertEquals(entry.getValue(), demographics.get("maritalStatusCode"),
                     "Unexpected marital value for status " + entry.getKey());
@@ -775,7 +810,7 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of(multiTest, bioline, firstResponse, unigold));
-        List<Map<String, Object>> reagentTesting = (List<Map<String, Object>>) mapped.get("reagentTesting");
+        List<Map<String, Object>> reagentTesting = (List<Map<String, Object>>) json(mapped.get("reagentTesting"));
 
         assertEquals(4, reagentTesting.size());
         assertEquals("DUAL", reagentTesting.get(0).get("reagentTest"));
@@ -807,7 +842,7 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of(unigoldReactive));
-        List<Map<String, Object>> referralAndOutcome = (List<Map<String, Object>>) mapped.get("referralAndOutcome");
+        List<Map<String, Object>> referralAndOutcome = (List<Map<String, Object>>) json(mapped.get("referralAndOutcome"));
 
         assertEquals(1, referralAndOutcome.size());
         assertEquals("CTC_CLINIC", referralAndOutcome.get(0).get("referredToCode"));
@@ -833,7 +868,7 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of(unigoldNonReactive));
-        List<Map<String, Object>> referralAndOutcome = (List<Map<String, Object>>) mapped.get("referralAndOutcome");
+        List<Map<String, Object>> referralAndOutcome = (List<Map<String, Object>>) json(mapped.get("referralAndOutcome"));
 
         assertEquals(1, referralAndOutcome.size());
         assertEquals("PREP_SERVICE", referralAndOutcome.get(0).get("referredToCode"));
@@ -894,8 +929,8 @@ class IntegrationDataMapperTest {
         Map<String, Object> femaleMapped = mapper.mapServiceRow(femaleServiceRow, List.of());
         Map<String, Object> maleMapped = mapper.mapServiceRow(maleServiceRow, List.of());
 
-        Map<String, Object> femaleDemographics = (Map<String, Object>) femaleMapped.get("demographics");
-        Map<String, Object> maleDemographics = (Map<String, Object>) maleMapped.get("demographics");
+        Map<String, Object> femaleDemographics = (Map<String, Object>) json(femaleMapped.get("demographics"));
+        Map<String, Object> maleDemographics = (Map<String, Object>) json(maleMapped.get("demographics"));
 
         assertEquals("UNKNOWN", femaleDemographics.get("pregnancyStatusCode"));
         assertEquals("NOT_APPLICABLE", maleDemographics.get("pregnancyStatusCode"));
@@ -913,7 +948,7 @@ class IntegrationDataMapperTest {
         for (Map.Entry<String, String> entry : expectedValues.entrySet()) {
             OpenSrpIntegrationRepository.ServiceRow serviceRow = withPreviousHivstClientType(baseServiceRow, entry.getKey());
             Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of());
-            Map<String, Object> clientClassification = (Map<String, Object>) mapped.get("clientClassification");
+            Map<String, Object> clientClassification = (Map<String, Object>) json(mapped.get("clientClassification"));
 
             assertEquals(entry.getValue(), clientClassification.get("previousTestClientType"));
             assertEquals("GENERAL_CLIENT", clientClassification.get("clientType"));
@@ -930,8 +965,8 @@ class IntegrationDataMapperTest {
         Map<String, Object> unknownMapped = mapper.mapServiceRow(unknownValue, List.of());
         Map<String, Object> blankMapped = mapper.mapServiceRow(blankValue, List.of());
 
-        Map<String, Object> unknownClientClassification = (Map<String, Object>) unknownMapped.get("clientClassification");
-        Map<String, Object> blankClientClassification = (Map<String, Object>) blankMapped.get("clientClassification");
+        Map<String, Object> unknownClientClassification = (Map<String, Object>) json(unknownMapped.get("clientClassification"));
+        Map<String, Object> blankClientClassification = (Map<String, Object>) json(blankMapped.get("clientClassification"));
 
         assertEquals("NOT_APPLICABLE", unknownClientClassification.get("previousTestClientType"));
         assertEquals("NOT_APPLICABLE", blankClientClassification.get("previousTestClientType"));
@@ -1002,7 +1037,7 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of(testRow));
-        Map<String, Object> testingHistory = (Map<String, Object>) mapped.get("testingHistory");
+        Map<String, Object> testingHistory = (Map<String, Object>) json(mapped.get("testingHistory"));
 
         assertEquals("SELF_TEST_BLOOD", testingHistory.get("testingTypePrevious"));
     }
@@ -1072,7 +1107,7 @@ class IntegrationDataMapperTest {
         );
 
         Map<String, Object> mapped = mapper.mapServiceRow(serviceRow, List.of(conflictingTestRow));
-        Map<String, Object> testingHistory = (Map<String, Object>) mapped.get("testingHistory");
+        Map<String, Object> testingHistory = (Map<String, Object>) json(mapped.get("testingHistory"));
 
         assertEquals("NON_REACTIVE", testingHistory.get("previousTestResult"));
     }
@@ -1502,4 +1537,15 @@ class IntegrationDataMapperTest {
                 serviceRow.counsellorName()
         );
     }
+
+    /**
+     * A record section as clients receive it: serialized and read back as maps and lists.
+     */
+    private static Object json(Object section) {
+        try {
+            return JSON.readValue(JSON.writeValueAsBytes(section), Object.class);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -0,0 +1,68 @@
+package com.abt.integration.mapping;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OpenSrpDateParserTest {
+
+    private static final LocalDate MARCH_14 = LocalDate.of(2025, 3, 14);
+
+    @Test
+    void parse_shouldReadEpochSecondsAndMillisecondsAsUtcDates() {
+        assertEquals(MARCH_14, OpenSrpDateParser.parse("1741910400"));
+        assertEquals(MARCH_14, OpenSrpDateParser.parse("1741996799999"));
+        assertEquals(LocalDate.of(1969, 12, 31), OpenSrpDateParser.parse("-1"));
+        assertEquals(LocalDate.of(1970, 1, 1), OpenSrpDateParser.parse(" 0 "));
+        assertNull(OpenSrpDateParser.parse("9223372036854775808"));
+        assertNull(OpenSrpDateParser.parse("-"));
+    }
+
+    @Test
+    void parse_shouldReadIsoDatesStrictlyAndDayFirstDatesSmartly() {
+        assertEquals(MARCH_14, OpenSrpDateParser.parse("2025-03-14"));
+        assertEquals(LocalDate.of(2024, 2, 29), OpenSrpDateParser.parse("2024-02-29"));
+        assertNull(OpenSrpDateParser.parse("2025-02-29"));
+        assertNull(OpenSrpDateParser.parse("2025-13-01"));
+
+        assertEquals(MARCH_14, OpenSrpDateParser.parse("14-03-2025"));
+        assertEquals(LocalDate.of(2025, 2, 28), OpenSrpDateParser.parse("30-02-2025"));
+        assertNull(OpenSrpDateParser.parse("32-01-2025"));
+    }
+
+    @Test
+    void parse_shouldReadLocalDateTimes() {
+        assertEquals(MARCH_14, OpenSrpDateParser.parse("2025-03-14 10:15:30"));
+        assertEquals(MARCH_14, OpenSrpDateParser.parse("2025-03-14T10:15:30.123"));
+        assertEquals(LocalDate.of(2025, 3, 15), OpenSrpDateParser.parse("2025-03-14 24:00:00"));
+        assertNull(OpenSrpDateParser.parse("2025-03-14 10:15"));
+        assertNull(OpenSrpDateParser.parse("2025-03-14 10:15:30.12"));
+        assertNull(OpenSrpDateParser.parse("2025-03-14 10:60:00"));
+    }
+
+    @Test
+    void parse_shouldKeepTheWrittenDateOfOffsetDateTimes() {
+        assertEquals(MARCH_14, OpenSrpDateParser.parse("2025-03-14T23:30:00+03:00"));
+        assertEquals(MARCH_14, OpenSrpDateParser.parse("2025-03-14T00:15Z"));
+        assertEquals(MARCH_14, OpenSrpDateParser.parse("2025-03-14T10:15:30.123456789-05:30"));
+        assertEquals(MARCH_14, OpenSrpDateParser.parse("2025-03-14 10:15:30+0300"));
+        assertEquals(MARCH_14, OpenSrpDateParser.parse("2025-03-14 10:15:30.123+03:00"));
+        assertEquals(LocalDate.of(2025, 2, 28), OpenSrpDateParser.parse("2025-02-30T10:15:30Z"));
+        assertNull(OpenSrpDateParser.parse("2025-02-30T10:15:30+03:00"));
+        assertNull(OpenSrpDateParser.parse("2025-03-14 10:15:30+03:00:00"));
+        assertNull(OpenSrpDateParser.parse("2025-03-14T10:15:30+19"));
+    }
+
+    @Test
+    void parse_shouldReturnNullForBlankAndUnknownShapes() {
+        assertNull(OpenSrpDateParser.parse(null));
+        assertNull(OpenSrpDateParser.parse("   "));
+        assertNull(OpenSrpDateParser.parse("2025/03/14"));
+        assertNull(OpenSrpDateParser.parse("2025-3-14"));
+        assertNull(OpenSrpDateParser.parse("2025-03-14x"));
+        assertNull(OpenSrpDateParser.parse("not a date"));
+    }
+}
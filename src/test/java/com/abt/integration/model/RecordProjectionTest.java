@@ -0,0 +1,51 @@
+package com.abt.integration.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecordProjectionTest {
+
+    @Test
+    void of_shouldKeepRecordFieldOrderAndDeriveLookups() {
+        RecordProjection projection = RecordProjection.of(List.of("referralAndOutcome", " clientCode"));
+
+        assertEquals(List.of("clientCode", "referralAndOutcome"), List.copyOf(projection.fields()));
+        assertFalse(projection.isAll());
+        assertTrue(projection.needsTests());
+        assertFalse(projection.needsHivstSelfTests());
+        assertFalse(projection.needsEnrollment());
+        assertTrue(projection.needsClientColumns());
+        assertTrue(projection.needsServiceColumns());
+        assertFalse(projection.needsHouseholdColumns());
+    }
+
+    @Test
+    void forRequest_shouldDefaultToEveryField() {
+        assertSame(RecordProjection.all(), RecordProjection.forRequest(new IntegrationRequest()));
+        assertSame(RecordProjection.all(), RecordProjection.of(RecordProjection.FIELDS));
+    }
+
+    @Test
+    void parseNamed_shouldReadProjectionDefinitions() {
+        Map<String, RecordProjection> named = RecordProjection.parseNamed("linkage=clientCode,referralAndOutcome; dates=visitDate,createdAt;");
+
+        assertEquals(List.of("linkage", "dates"), List.copyOf(named.keySet()));
+        assertEquals(RecordProjection.of(List.of("visitDate", "createdAt")), named.get("dates"));
+    }
+
+    @Test
+    void parseNamed_shouldFailOnUnknownField() {
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> RecordProjection.parseNamed("linkage=clientCode,clientAge"));
+
+        assertEquals("Invalid CTC2HTS_PROJECTIONS entry 'linkage': Unknown ctc2hts fields: clientAge", error.getMessage());
+    }
+}
@@ -0,0 +1,90 @@
+package com.abt.integration.service;
+
+import com.abt.integration.model.IntegrationRequest;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClosedWindowResponseCacheTest {
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2026-10-01T00:00:00Z"), ZoneOffset.UTC);
+
+    @Test
+    void isCacheable_shouldOnlyAcceptWindowsClosedLongEnoughAgo() {
+        ClosedWindowResponseCache cache = new ClosedWindowResponseCache(1024 * 1024, Duration.ofDays(1), CLOCK);
+
+        assertTrue(cache.isCacheable(request(1704067200L, 1704153600L, 1)));
+        assertFalse(cache.isCacheable(request(1790000000L, Instant.parse("2026-09-30T12:00:00Z").getEpochSecond(), 1)));
+        assertFalse(cache.isCacheable(new IntegrationRequest()));
+    }
+
+    @Test
+    void getGzipped_shouldNotServeRequestsWithOtherFacilitySelectors() {
+        ClosedWindowResponseCache cache = new ClosedWindowResponseCache(1024 * 1024, Duration.ofDays(1), CLOCK);
+        cache.put(request(1704067200L, 1704153600L, 1), "{\"data\":[]}".getBytes(StandardCharsets.UTF_8));
+
+        IntegrationRequest withCouncil = request(1704067200L, 1704153600L, 1);
+        withCouncil.setCouncilCode("TZ.NT.MY.ML");
+        IntegrationRequest withHfrCodes = request(1704067200L, 1704153600L, 1);
+        withHfrCodes.setHfrCodes(List.of("124899-6", "124900-1"));
+
+        assertFalse(cache.isCacheable(withCouncil));
+        assertFalse(cache.isCacheable(withHfrCodes));
+        assertNull(cache.getGzipped(withCouncil));
+        assertNull(cache.getGzipped(withHfrCodes));
+    }
+
+    @Test
+    void getGzipped_shouldMatchRequestsWithSecondsAndMillisecondWindows() {
+        ClosedWindowResponseCache cache = new ClosedWindowResponseCache(1024 * 1024, Duration.ofDays(1), CLOCK);
+
+        cache.put(request(1704067200L, 1704153600L, 1), "{\"data\":[]}".getBytes(StandardCharsets.UTF_8));
+
+        assertNotNull(cache.getGzipped(request(1704067200000L, 1704153600999L, 1)));
+        assertNull(cache.getGzipped(request(1704067200L, 1704153600L, 2)));
+        assertEquals(1L, cache.stats().get("hits"));
+        assertEquals(1L, cache.stats().get("misses"));
+    }
+
+    @Test
+    void put_shouldEvictLeastRecentlyUsedEntriesWhenFull() {
+        ClosedWindowResponseCache probe = new ClosedWindowResponseCache(1024 * 1024, Duration.ofDays(1), CLOCK);
+        byte[] body = "{\"data\":[{\"clientCode\":\"CLT1\"}]}".getBytes(StandardCharsets.UTF_8);
+        probe.put(request(1704067200L, 1704153600L, 1), body);
+        long entryBytes = (long) probe.stats().get("bytes");
+
+        ClosedWindowResponseCache cache = new ClosedWindowResponseCache(entryBytes * 2, Duration.ofDays(1), CLOCK);
+        cache.put(request(1704067200L, 1704153600L, 1), body);
+        cache.put(request(1704067200L, 1704153600L, 2), body);
+        cache.getGzipped(request(1704067200L, 1704153600L, 1));
+        cache.put(request(1704067200L, 1704153600L, 3), body);
+
+        ByteBuffer first = cache.getGzipped(request(1704067200L, 1704153600L, 1));
+        assertNotNull(first);
+        assertNull(cache.getGzipped(request(1704067200L, 1704153600L, 2)));
+        assertNotNull(cache.getGzipped(request(1704067200L, 1704153600L, 3)));
+        assertEquals(1L, cache.stats().get("evictions"));
+        assertEquals(entryBytes * 2, cache.stats().get("bytes"));
+    }
+
+    private static IntegrationRequest request(long startDate, long endDate, int pageIndex) {
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(startDate);
+        request.setEndDate(endDate);
+        request.setPageIndex(pageIndex);
+        request.setPageSize(100);
+        return request;
+    }
+}
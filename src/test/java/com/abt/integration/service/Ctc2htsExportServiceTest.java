@@ -0,0 +1,194 @@
+package com.abt.integration.service;
+
+import com.abt.integration.exception.ExportInProgressException;
+import com.abt.integration.exception.ValidationException;
+import com.abt.integration.model.ExportRequest;
+import com.abt.integration.model.HtsRecordSections;
+import com.abt.integration.model.IntegrationRequest;
+import com.abt.util.MutableClock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class Ctc2htsExportServiceTest {
+    private static final Clock CLOCK = Clock.fixed(Instant.ofEpochMilli(1768300000000L), ZoneOffset.UTC);
+
+    private final IntegrationEndpointService integrationEndpointService = mock(IntegrationEndpointService.class);
+    private final IntegrationRecordStream recordStream = mock(IntegrationRecordStream.class);
+
+    @TempDir
+    Path exportDirectory;
+
+    @Test
+    void submit_shouldWriteGzippedNdjsonAndReportCompletedStatus() throws IOException {
+        when(integrationEndpointService.openExportStream(any(IntegrationRequest.class))).thenReturn(recordStream);
+        when(recordStream.nextBatch())
+                .thenReturn(List.of(record("CLT1", "124899-6"), record("CLT2", "124899-6")))
+                .thenReturn(List.of(record("CLT3", "124899-6")))
+                .thenReturn(List.of());
+        Ctc2htsExportService exportService = new Ctc2htsExportService(
+                integrationEndpointService, exportDirectory, Runnable::run, Duration.ofHours(1), CLOCK);
+
+        Map<String, Object> submitted = exportService.submit(exportRequest("124899-6", null));
+        String jobId = (String) submitted.get("jobId");
+
+        Map<String, Object> status = exportService.status(jobId).orElseThrow();
+        assertEquals("completed", status.get("status"));
+        assertEquals(3L, status.get("recordsWritten"));
+        assertEquals("/integration/ctc2hts/exports/" + jobId + "/file", status.get("downloadPath"));
+
+        Ctc2htsExportService.ExportFile file = exportService.file(jobId).orElseThrow();
+        assertEquals("ctc2hts-" + jobId + ".ndjson.gz", file.fileName());
+        assertEquals(
+                "{\"clientCode\":\"CLT1\",\"hfrCode\":\"124899-6\"}\n" +
+                        "{\"clientCode\":\"CLT2\",\"hfrCode\":\"124899-6\"}\n" +
+                        "{\"clientCode\":\"CLT3\",\"hfrCode\":\"124899-6\"}\n",
+                gunzip(file.path())
+        );
+        assertEquals(Files.size(file.path()), status.get("sizeBytes"));
+        verify(recordStream).close();
+
+        ArgumentCaptor<IntegrationRequest> requestCaptor = ArgumentCaptor.forClass(IntegrationRequest.class);
+        verify(integrationEndpointService).openExportStream(requestCaptor.capture());
+        assertEquals("124899-6", requestCaptor.getValue().getHfrCode());
+        assertEquals(1768262400000L, requestCaptor.getValue().getStartDate());
+    }
+
+    @Test
+    void submit_shouldWriteCsvWithHeaderAndQuotedFields() throws IOException {
+        Map<String, Object> nested = record("CLT1", "124899-6");
+        nested.put("tests", List.of(Map.of("result", "NEGATIVE")));
+        nested.put("counsellor", new HtsRecordSections.Counsellor("provider-1", "John Doe"));
+        Map<String, Object> plain = record("CLT \"2\", jr", "124899-6");
+        plain.put("tests", List.of());
+        plain.put("counsellor", null);
+        when(integrationEndpointService.openExportStream(any(IntegrationRequest.class))).thenReturn(recordStream);
+        when(recordStream.nextBatch()).thenReturn(List.of(nested, plain)).thenReturn(List.of());
+        Ctc2htsExportService exportService = new Ctc2htsExportService(
+                integrationEndpointService, exportDirectory, Runnable::run, Duration.ofHours(1), CLOCK);
+
+        String jobId = (String) exportService.submit(exportRequest("124899-6", "CSV")).get("jobId");
+
+        Ctc2htsExportService.ExportFile file = exportService.file(jobId).orElseThrow();
+        assertTrue(file.fileName().endsWith(".csv.gz"));
+        assertEquals(
+                "clientCode,hfrCode,tests,counsellor\r\n" +
+                        "CLT1,124899-6,\"[{\"\"result\"\":\"\"NEGATIVE\"\"}]\"," +
+                        "\"{\"\"counsellorID\"\":\"\"provider-1\"\",\"\"counsellorName\"\":\"\"John Doe\"\"}\"\r\n" +
+                        "\"CLT \"\"2\"\", jr\",124899-6,[],\r\n",
+                gunzip(file.path())
+        );
+    }
+
+    @Test
+    void submit_shouldRejectSecondExportForFacilityUntilFirstFinishes() {
+        List<Runnable> queued = new ArrayList<>();
+        when(integrationEndpointService.openExportStream(any(IntegrationRequest.class))).thenReturn(recordStream);
+        when(recordStream.nextBatch()).thenReturn(List.of());
+        Ctc2htsExportService exportService = new Ctc2htsExportService(
+                integrationEndpointService, exportDirectory, queued::add, Duration.ofHours(1), CLOCK);
+
+        String firstJobId = (String) exportService.submit(exportRequest("124899-6", null)).get("jobId");
+        assertEquals("queued", exportService.status(firstJobId).orElseThrow().get("status"));
+        assertTrue(exportService.file(firstJobId).isEmpty());
+
+        ExportInProgressException conflict = assertThrows(
+                ExportInProgressException.class, () -> exportService.submit(exportRequest(" 124899-6 ", "csv")));
+        assertEquals(firstJobId, conflict.getJobId());
+        exportService.submit(exportRequest("111111-1", null));
+
+        queued.get(0).run();
+
+        assertEquals("completed", exportService.status(firstJobId).orElseThrow().get("status"));
+        exportService.submit(exportRequest("124899-6", null));
+        assertEquals(3, queued.size());
+    }
+
+    @Test
+    void submit_shouldMarkJobFailedAndRemovePartialFileWhenStreamFails() throws IOException {
+        when(integrationEndpointService.openExportStream(any(IntegrationRequest.class))).thenReturn(recordStream);
+        when(recordStream.nextBatch())
+                .thenReturn(List.of(record("CLT1", "124899-6")))
+                .thenThrow(new IllegalStateException("Failed to copy from OpenSRP database"));
+        Ctc2htsExportService exportService = new Ctc2htsExportService(
+                integrationEndpointService, exportDirectory, Runnable::run, Duration.ofHours(1), CLOCK);
+
+        String jobId = (String) exportService.submit(exportRequest("124899-6", null)).get("jobId");
+
+        Map<String, Object> status = exportService.status(jobId).orElseThrow();
+        assertEquals("failed", status.get("status"));
+        assertEquals("Failed to copy from OpenSRP database", status.get("error"));
+        assertTrue(exportService.file(jobId).isEmpty());
+        try (var files = Files.list(exportDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void submit_shouldRejectInvalidRequestAndPruneExpiredJobs() throws IOException {
+        when(integrationEndpointService.openExportStream(any(IntegrationRequest.class))).thenReturn(recordStream);
+        when(recordStream.nextBatch()).thenReturn(List.of());
+        MutableClock clock = new MutableClock(CLOCK.instant());
+        Ctc2htsExportService exportService = new Ctc2htsExportService(
+                integrationEndpointService, exportDirectory, Runnable::run, Duration.ofHours(1), clock);
+
+        ValidationException validationException = assertThrows(
+                ValidationException.class, () -> exportService.submit(exportRequest("124899-6", "xlsx")));
+        assertEquals(List.of("format must be one of ndjson, csv"), validationException.getErrors());
+
+        String expiredJobId = (String) exportService.submit(exportRequest("124899-6", null)).get("jobId");
+        Path expiredFile = exportService.file(expiredJobId).orElseThrow().path();
+        clock.advance(Duration.ofHours(2));
+
+        exportService.submit(exportRequest("111111-1", null));
+
+        assertTrue(exportService.status(expiredJobId).isEmpty());
+        assertFalse(Files.exists(expiredFile));
+    }
+
+    private static ExportRequest exportRequest(String hfrCode, String format) {
+        ExportRequest request = new ExportRequest();
+        request.setHfrCode(hfrCode);
+        request.setStartDate(1768262400000L);
+        request.setEndDate(1768348799000L);
+        request.setFormat(format);
+        return request;
+    }
+
+    private static Map<String, Object> record(String clientCode, String hfrCode) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("clientCode", clientCode);
+        record.put("hfrCode", hfrCode);
+        return record;
+    }
+
+    private static String gunzip(Path file) throws IOException {
+        try (InputStream input = new GZIPInputStream(Files.newInputStream(file))) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.abt.integration.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DateRangeSlicesTest {
+
+    @Test
+    void split_shouldCutAtHistogramBoundsInsideWindowOnWholeSeconds() {
+        List<DateRangeSlices.Slice> slices = DateRangeSlices.split(
+                1735689600L,
+                1767225599L,
+                List.of(1700000000L, 1740000000L, 1745000000500L, 1750000000L, 1760000000L, 1800000000L),
+                3
+        );
+
+        assertEquals(List.of(
+                new DateRangeSlices.Slice(1735689600L, 1745000000000L - 1),
+                new DateRangeSlices.Slice(1745000000000L, 1750000000000L - 1),
+                new DateRangeSlices.Slice(1750000000000L, 1767225599L)
+        ), slices);
+    }
+
+    @Test
+    void split_shouldKeepWholeWindowWithoutInnerBounds() {
+        assertEquals(
+                List.of(new DateRangeSlices.Slice(1735689600L, 1767225599L)),
+                DateRangeSlices.split(1735689600L, 1767225599L, List.of(1700000000L, 1800000000L), 4)
+        );
+        assertEquals(
+                List.of(new DateRangeSlices.Slice(1735689600L, 1767225599L)),
+                DateRangeSlices.split(1735689600L, 1767225599L, List.of(), 4)
+        );
+    }
+}
@@ -0,0 +1,77 @@
+package com.abt.integration.service;
+
+import com.abt.integration.config.PostgresConnectionFactory;
+import com.abt.integration.db.OpenSrpIntegrationRepository;
+import com.abt.integration.db.OpenSrpIntegrationRepository.FacilityProviders;
+import com.abt.integration.db.OpenSrpIntegrationRepository.ProviderLocation;
+import com.abt.util.MutableClock;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FacilityProviderCacheTest {
+
+    @Test
+    void find_shouldGroupProvidersByFacilityAndKeepFirstLocationPerProvider() throws SQLException {
+        PostgresConnectionFactory connectionFactory = mock(PostgresConnectionFactory.class);
+        OpenSrpIntegrationRepository repository = mock(OpenSrpIntegrationRepository.class);
+        Connection connection = mock(Connection.class);
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.findProviderLocations(connection)).thenReturn(List.of(
+                providerLocation("provider-1", "124899-6", "Village A"),
+                providerLocation("provider-1", "124899-6", "Village B"),
+                providerLocation("provider-2", "124899-6", "Village C"),
+                providerLocation("provider-3", "13211-1", "Village D")
+        ));
+
+        FacilityProviderCache cache = new FacilityProviderCache(connectionFactory, repository, Duration.ofMinutes(10));
+
+        Optional<FacilityProviders> facility = cache.find("124899-6");
+
+        assertTrue(facility.isPresent());
+        assertEquals(2, facility.get().providersById().size());
+        assertEquals("Village A", facility.get().provider("provider-1").village());
+        assertEquals("13211-1", cache.find("13211-1").orElseThrow().hfrCode());
+        verify(repository, times(1)).findProviderLocations(connection);
+        verify(connection).setReadOnly(true);
+    }
+
+    @Test
+    void find_shouldReloadAfterTtlAndRecheckUnknownFacilities() throws SQLException {
+        PostgresConnectionFactory connectionFactory = mock(PostgresConnectionFactory.class);
+        OpenSrpIntegrationRepository repository = mock(OpenSrpIntegrationRepository.class);
+        Connection connection = mock(Connection.class);
+        MutableClock clock = new MutableClock(Instant.parse("2026-01-13T00:00:00Z"));
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.findProviderLocations(connection))
+                .thenReturn(List.of(providerLocation("provider-1", "124899-6", "Village A")))
+                .thenReturn(List.of(providerLocation("provider-1", "124899-6", "Village A"), providerLocation("provider-9", "99999-9", "Village Z")));
+
+        FacilityProviderCache cache = new FacilityProviderCache(connectionFactory, repository, Duration.ofMinutes(10), clock);
+
+        assertTrue(cache.find("99999-9").isEmpty());
+        assertTrue(cache.find("99999-9").isEmpty());
+        verify(repository, times(1)).findProviderLocations(connection);
+
+        clock.advance(Duration.ofMinutes(2));
+
+        assertTrue(cache.find("99999-9").isPresent());
+        verify(repository, times(2)).findProviderLocations(connection);
+    }
+
+    private static ProviderLocation providerLocation(String providerId, String hfrCode, String village) {
+        return new ProviderLocation(providerId, providerId, hfrCode, "Region", "District", "Council", "Ward", village);
+    }
+}
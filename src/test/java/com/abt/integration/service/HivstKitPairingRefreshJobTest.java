@@ -0,0 +1,47 @@
+package com.abt.integration.service;
+
+import com.abt.integration.config.PostgresConnectionFactory;
+import com.abt.integration.db.OpenSrpIntegrationRepository;
+import com.abt.integration.db.OpenSrpIntegrationRepository.HivstKitPairing;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HivstKitPairingRefreshJobTest {
+    private final PostgresConnectionFactory connectionFactory = mock(PostgresConnectionFactory.class);
+    private final OpenSrpIntegrationRepository repository = mock(OpenSrpIntegrationRepository.class);
+    private final Connection connection = mock(Connection.class);
+
+    @Test
+    void refresh_shouldUpsertParsedIssueDatesUntilEveryChangedSlotIsPaired() throws SQLException {
+        HivstKitPairing client = new HivstKitPairing(
+                "issue-1", "client", "base-1", "KIT-1", "2026-01-14T09:30:00.000+03:00", "B-1", "2027-01-01", null);
+        HivstKitPairing partner = new HivstKitPairing(
+                "issue-1", "sexual_partner", "base-1", null, "2026-01-14T09:30:00.000+03:00", null, null, null);
+        when(connectionFactory.openConnection()).thenReturn(connection);
+        when(repository.findChangedHivstIssueKits(connection, 2)).thenReturn(List.of(client, partner)).thenReturn(List.of());
+
+        HivstKitPairingRefreshJob job = new HivstKitPairingRefreshJob(connectionFactory, repository, 2);
+        assertFalse(job.isReady());
+
+        int written = job.refresh();
+
+        assertEquals(2, written);
+        assertTrue(job.isReady());
+        verify(repository).ensureHivstKitPairingTable(connection);
+        verify(repository).upsertHivstKitPairings(connection, List.of(
+                client.withIssueDate(LocalDate.of(2026, 1, 14)),
+                partner.withIssueDate(LocalDate.of(2026, 1, 14))
+        ));
+    }
+}
@@ -0,0 +1,245 @@
+package com.abt.integration.service;
+
+import com.abt.integration.config.PostgresConnectionFactory;
+import com.abt.integration.db.OpenSrpIntegrationRepository;
+import com.abt.integration.db.OpenSrpIntegrationRepository.HtsPayloadRow;
+import com.abt.integration.db.OpenSrpIntegrationRepository.ServiceRow;
+import com.abt.integration.db.OpenSrpIntegrationRepository.SourceChange;
+import com.abt.integration.mapping.IntegrationDataMapper;
+import com.abt.integration.model.PageCursor;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HtsPayloadRefreshJobTest {
+    private static final Clock CLOCK = Clock.fixed(Instant.ofEpochMilli(1768300000000L), ZoneOffset.UTC);
+    private static final long UNTIL_MILLIS = 1768300000000L - 60_000L;
+    private static final long OVERLAP_MILLIS = 600_000L;
+
+    private final PostgresConnectionFactory connectionFactory = mock(PostgresConnectionFactory.class);
+    private final OpenSrpIntegrationRepository repository = mock(OpenSrpIntegrationRepository.class);
+    private final IntegrationDataMapper dataMapper = mock(IntegrationDataMapper.class);
+    private final Connection connection = mock(Connection.class);
+
+    @Test
+    void refresh_shouldSeedChildWatermarksAndMaterializeNewServicesOnFirstRun() throws SQLException {
+        ServiceRow serviceRow = serviceRow("event-1", 1768262800L);
+        PageCursor latestTest = new PageCursor(1768262900000L, "test-9");
+        stubConnection();
+        when(repository.findLatestTestChange(connection)).thenReturn(Optional.of(latestTest));
+        when(repository.findServiceChanges(eq(connection), isNull(), eq(UNTIL_MILLIS), eq(10))).thenReturn(List.of(serviceRow));
+        when(repository.findTestsForServices(connection, List.of(serviceRow), 1768262800000L, 1768300000000L)).thenReturn(Map.of());
+        when(dataMapper.mapServiceRow(serviceRow, List.of(), List.of(), null)).thenReturn(record("CLT1"));
+        // The sweep re-maps the same service right after the first pass, which leaves the stored payload unchanged.
+        when(repository.upsertHtsPayloads(eq(connection), anyList())).thenReturn(1).thenReturn(0);
+
+        HtsPayloadRefreshJob job = new HtsPayloadRefreshJob(connectionFactory, repository, dataMapper, 10, CLOCK);
+        assertFalse(job.isReady());
+
+        int written = job.refresh();
+
+        assertEquals(1, written);
+        assertTrue(job.isReady());
+        verify(repository).ensureHtsPayloadTables(connection);
+        verify(repository).saveHtsPayloadWatermark(connection, "cbhts_tests", latestTest.encode());
+        verify(repository).markAllHivstResultsSeen(connection);
+        verify(repository, times(2)).upsertHtsPayloads(connection, List.of(new HtsPayloadRow(
+                "event-1", "124899-6", "TZ.NT.MY.ML.4", 1768262800000L, "{\"clientCode\":\"CLT1\"}")));
+        verify(repository).saveHtsPayloadWatermark(connection, "cbhts_services", new PageCursor(1768262800000L, "event-1").encode());
+        verify(repository).deleteHtsPayloadWatermark(connection, "sweep");
+    }
+
+    @Test
+    void refresh_shouldRemapServicesWhoseTestsChangedSinceWatermark() throws SQLException {
+        ServiceRow serviceRow = serviceRow("event-1", 1768262800000L);
+        PageCursor servicesWatermark = new PageCursor(1768262800000L, "event-1");
+        PageCursor testsWatermark = new PageCursor(1768262850000L, "test-1");
+        stubConnection();
+        when(repository.findHtsPayloadWatermark(connection, "cbhts_services")).thenReturn(Optional.of(servicesWatermark.encode()));
+        when(repository.findHtsPayloadWatermark(connection, "cbhts_tests")).thenReturn(Optional.of(testsWatermark.encode()));
+        when(repository.findTestChanges(connection, new PageCursor(1768262850000L - OVERLAP_MILLIS, ""), UNTIL_MILLIS, 10)).thenReturn(List.of(
+                new SourceChange("test-2", "visit-1", "base-1", 1768262900000L),
+                new SourceChange("test-3", null, "base-2", 1768262950000L)
+        ));
+        when(repository.findServicesForSourceChanges(connection, Set.of("visit-1"), Set.of("base-2"))).thenReturn(List.of(serviceRow));
+        when(dataMapper.mapServiceRow(serviceRow, List.of(), List.of(), null)).thenReturn(record("CLT2"));
+        when(repository.upsertHtsPayloads(eq(connection), anyList())).thenReturn(1);
+
+        HtsPayloadRefreshJob job = new HtsPayloadRefreshJob(connectionFactory, repository, dataMapper, 10, CLOCK);
+
+        int written = job.refresh();
+
+        assertEquals(1, written);
+        verify(repository, never()).findLatestTestChange(any());
+        verify(repository).upsertHtsPayloads(connection, List.of(new HtsPayloadRow(
+                "event-1", "124899-6", "TZ.NT.MY.ML.4", 1768262800000L, "{\"clientCode\":\"CLT2\"}")));
+        verify(repository).saveHtsPayloadWatermark(connection, "cbhts_tests", new PageCursor(1768262950000L, "test-3").encode());
+    }
+
+    @Test
+    void refresh_shouldRemapServicesOfNewHivstResultsAndMarkThemSeen() throws SQLException {
+        ServiceRow serviceRow = serviceRow("event-1", 1768262800000L);
+        stubConnection();
+        when(repository.findHtsPayloadWatermark(connection, "cbhts_services"))
+                .thenReturn(Optional.of(new PageCursor(1768262800000L, "event-1").encode()));
+        when(repository.findUnseenHivstResults(connection, 10)).thenReturn(Map.of("hivst-1", "base-1"));
+        when(repository.findServicesForSourceChanges(connection, Set.of(), Set.of("base-1"))).thenReturn(List.of(serviceRow));
+        when(dataMapper.mapServiceRow(serviceRow, List.of(), List.of(), null)).thenReturn(record("CLT3"));
+        when(repository.upsertHtsPayloads(eq(connection), anyList())).thenReturn(1);
+
+        HtsPayloadRefreshJob job = new HtsPayloadRefreshJob(connectionFactory, repository, dataMapper, 10, CLOCK);
+
+        assertEquals(1, job.refresh());
+        verify(repository, never()).markAllHivstResultsSeen(connection);
+        verify(repository).markHivstResultsSeen(connection, Set.of("hivst-1"));
+    }
+
+    @Test
+    void refresh_shouldRescanOverlapWithoutMovingWatermarkBack() throws SQLException {
+        PageCursor servicesWatermark = new PageCursor(1768262800000L, "event-5");
+        ServiceRow lateRow = serviceRow("event-4", 1768262700000L);
+        stubConnection();
+        when(repository.findHtsPayloadWatermark(connection, "cbhts_services")).thenReturn(Optional.of(servicesWatermark.encode()));
+        when(repository.findServiceChanges(connection, new PageCursor(1768262800000L - OVERLAP_MILLIS, ""), UNTIL_MILLIS, 10))
+                .thenReturn(List.of(lateRow));
+        when(dataMapper.mapServiceRow(lateRow, List.of(), List.of(), null)).thenReturn(record("CLT4"));
+        when(repository.upsertHtsPayloads(eq(connection), anyList())).thenReturn(1);
+
+        HtsPayloadRefreshJob job = new HtsPayloadRefreshJob(connectionFactory, repository, dataMapper, 10, CLOCK);
+
+        assertEquals(1, job.refresh());
+        verify(repository).upsertHtsPayloads(connection, List.of(new HtsPayloadRow(
+                "event-4", "124899-6", "TZ.NT.MY.ML.4", 1768262700000L, "{\"clientCode\":\"CLT4\"}")));
+        verify(repository, never()).saveHtsPayloadWatermark(eq(connection), eq("cbhts_services"), anyString());
+    }
+
+    @Test
+    void refresh_shouldRemapServicesOfNewEnrollments() throws SQLException {
+        ServiceRow serviceRow = serviceRow("event-1", 1768262800000L);
+        PageCursor enrollmentWatermark = new PageCursor(1768262850000L, "enrollment-1");
+        stubConnection();
+        when(repository.findHtsPayloadWatermark(connection, "cbhts_services"))
+                .thenReturn(Optional.of(new PageCursor(1768262800000L, "event-1").encode()));
+        when(repository.findHtsPayloadWatermark(connection, "cbhts_enrollment")).thenReturn(Optional.of(enrollmentWatermark.encode()));
+        when(repository.findEnrollmentChanges(connection, new PageCursor(1768262850000L - OVERLAP_MILLIS, ""), UNTIL_MILLIS, 10))
+                .thenReturn(List.of(new SourceChange("enrollment-2", null, "base-1", 1768262900000L)));
+        when(repository.findServicesForSourceChanges(connection, Set.of(), Set.of("base-1"))).thenReturn(List.of(serviceRow));
+        when(dataMapper.mapServiceRow(serviceRow, List.of(), List.of(), null)).thenReturn(record("CLT5"));
+        when(repository.upsertHtsPayloads(eq(connection), anyList())).thenReturn(1);
+
+        HtsPayloadRefreshJob job = new HtsPayloadRefreshJob(connectionFactory, repository, dataMapper, 10, CLOCK);
+
+        assertEquals(1, job.refresh());
+        verify(repository).saveHtsPayloadWatermark(connection, "cbhts_enrollment",
+                new PageCursor(1768262900000L, "enrollment-2").encode());
+    }
+
+    @Test
+    void refresh_shouldSweepNextServicesBatchAndAdvanceSweepWatermark() throws SQLException {
+        PageCursor sweepWatermark = new PageCursor(1768000000000L, "event-0");
+        List<ServiceRow> serviceRows = List.of(serviceRow("event-1", 1768000000001L), serviceRow("event-2", 1768000000002L));
+        stubConnection();
+        when(repository.findHtsPayloadWatermark(connection, "cbhts_services"))
+                .thenReturn(Optional.of(new PageCursor(1768262800000L, "event-9").encode()));
+        when(repository.findHtsPayloadWatermark(connection, "sweep")).thenReturn(Optional.of(sweepWatermark.encode()));
+        when(repository.findServiceChanges(connection, sweepWatermark, UNTIL_MILLIS, 2)).thenReturn(serviceRows);
+        when(dataMapper.mapServiceRow(any(), eq(List.of()), eq(List.of()), isNull())).thenReturn(record("CLT6"));
+
+        HtsPayloadRefreshJob job = new HtsPayloadRefreshJob(connectionFactory, repository, dataMapper, 2, CLOCK);
+
+        assertEquals(0, job.refresh());
+        verify(repository).saveHtsPayloadWatermark(connection, "sweep", new PageCursor(1768000000002L, "event-2").encode());
+        verify(repository, never()).deleteHtsPayloadWatermark(connection, "sweep");
+    }
+
+    @Test
+    void isFreshThrough_shouldCoverOnlyWindowsEndingBeforeCommitLagOfLastRun() throws SQLException {
+        stubConnection();
+
+        HtsPayloadRefreshJob job = new HtsPayloadRefreshJob(connectionFactory, repository, dataMapper, 10, CLOCK);
+        assertFalse(job.isFreshThrough(1768200000000L));
+
+        job.refresh();
+
+        assertTrue(job.isFreshThrough(UNTIL_MILLIS));
+        assertFalse(job.isFreshThrough(UNTIL_MILLIS + 1));
+    }
+
+    @Test
+    void refresh_shouldFailFastWhenServiceChangesIndexCannotBeBuilt() throws SQLException {
+        when(connectionFactory.openConnection()).thenReturn(connection);
+        when(repository.hasServiceChangesIndex(connection)).thenReturn(false);
+
+        HtsPayloadRefreshJob job = new HtsPayloadRefreshJob(connectionFactory, repository, dataMapper, 10, CLOCK);
+
+        assertThrows(IllegalStateException.class, job::refresh);
+        verify(repository).ensureServiceChangesIndex(connection);
+        verify(repository, never()).ensureHtsPayloadTables(connection);
+        verify(connection, never()).setAutoCommit(false);
+    }
+
+    @Test
+    void runSafely_shouldStopServingPayloadsAfterRepeatedFailures() throws SQLException {
+        when(connectionFactory.openConnection()).thenReturn(connection).thenThrow(new SQLException("primary down"));
+        when(repository.hasServiceChangesIndex(connection)).thenReturn(true);
+
+        HtsPayloadRefreshJob job = new HtsPayloadRefreshJob(connectionFactory, repository, dataMapper, 10, CLOCK);
+        job.runSafely();
+        assertTrue(job.isReady());
+
+        for (int failure = 1; failure < RefreshJob.MAX_CONSECUTIVE_FAILURES; failure++) {
+            job.runSafely();
+            assertTrue(job.isReady());
+        }
+        job.runSafely();
+
+        assertFalse(job.isReady());
+        assertFalse(job.isFreshThrough(UNTIL_MILLIS));
+    }
+
+    private void stubConnection() throws SQLException {
+        when(connectionFactory.openConnection()).thenReturn(connection);
+        when(repository.hasServiceChangesIndex(connection)).thenReturn(true);
+    }
+
+    private static Map<String, Object> record(String clientCode) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("clientCode", clientCode);
+        return record;
+    }
+
+    private static ServiceRow serviceRow(String eventId, long dateCreated) {
+        ServiceRow serviceRow = mock(ServiceRow.class);
+        when(serviceRow.eventId()).thenReturn(eventId);
+        when(serviceRow.baseEntityId()).thenReturn("base-1");
+        when(serviceRow.htsVisitGroup()).thenReturn("visit-1");
+        when(serviceRow.dateCreated()).thenReturn(dateCreated);
+        when(serviceRow.hfrCode()).thenReturn("124899-6");
+        when(serviceRow.districtCouncil()).thenReturn("TZ.NT.MY.ML.4");
+        return serviceRow;
+    }
+}
@@ -2,22 +2,52 @@ package com.abt.integration.service;
 
 import com.abt.integration.config.PostgresConnectionFactory;
 import com.abt.integration.db.OpenSrpIntegrationRepository;
+import com.abt.integration.exception.QueryTimeoutException;
 import com.abt.integration.exception.ValidationException;
 import com.abt.integration.mapping.IntegrationDataMapper;
+import com.abt.integration.model.ChangeFeedRequest;
+import com.abt.integration.model.HtsRecordSections;
 import com.abt.integration.model.IntegrationRequest;
+import com.abt.integration.model.PageCursor;
 import com.abt.integration.validation.IntegrationRequestValidator;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.postgresql.PGConnection;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -36,12 +66,12 @@ class OpenSrpIntegrationServiceTest {
     @SuppressWarnings("unchecked")
     @Test
     void fetch_shouldReturnPaginatedResponse() throws SQLException {
-        OpenSrpIntegrationService service = new OpenSrpIntegrationService(
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
                 connectionFactory,
                 repository,
                 new IntegrationDataMapper("false", null),
                 new IntegrationRequestValidator()
-        );
+        ).build();
 
         IntegrationRequest request = new IntegrationRequest();
         request.setHfrCode("124899-6");
@@ -111,9 +141,9 @@ class OpenSrpIntegrationServiceTest {
                 1768262800000L
         );
 
-        when(connectionFactory.openConnection()).thenReturn(connection);
-        when(repository.countServices(connection, request)).thenReturn(11L);
-        when(repository.findServices(connection, request)).thenReturn(List.of(serviceRow));
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.countServices(connection, request, null)).thenReturn(11L);
+        when(repository.findServices(connection, request, null)).thenReturn(List.of(serviceRow));
         when(repository.findTestsForServices(connection, List.of(serviceRow), 1768262400L, 1768262800L))
                 .thenReturn(Map.of(OpenSrpIntegrationRepository.serviceKey(serviceRow), List.of(testRow)));
         when(repository.findHivstTestByBaseEntity(connection, List.of(serviceRow)))
@@ -121,7 +151,7 @@ class OpenSrpIntegrationServiceTest {
         when(repository.findEnrollmentEligibilityByBaseEntity(connection, List.of(serviceRow)))
                 .thenReturn(Map.of());
 
-        Map<String, Object> response = service.fetch(request);
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
 
         assertEquals(2, response.get("pageNumber"));
         assertEquals(10, response.get("pageSize"));
@@ -132,11 +162,12 @@ class OpenSrpIntegrationServiceTest {
         assertEquals("CBHTS", data.get(0).get("htcApproach"));
         assertEquals(1768262800000L, data.get(0).get("createdAt"));
         assertEquals("POSITIVE", data.get(0).get("hivResultCode"));
-        Map<String, Object> clientClassification = (Map<String, Object>) data.get(0).get("clientClassification");
-        assertEquals(true, clientClassification.get("eligibleForTesting"));
+        HtsRecordSections.ClientClassification clientClassification =
+                (HtsRecordSections.ClientClassification) data.get(0).get("clientClassification");
+        assertEquals(true, clientClassification.eligibleForTesting());
 
-        verify(repository).countServices(connection, request);
-        verify(repository).findServices(connection, request);
+        verify(repository).countServices(connection, request, null);
+        verify(repository).findServices(connection, request, null);
         verify(repository).findTestsForServices(connection, List.of(serviceRow), 1768262400L, 1768262800L);
         verify(repository).findHivstTestByBaseEntity(connection, List.of(serviceRow));
         verify(repository).findEnrollmentEligibilityByBaseEntity(connection, List.of(serviceRow));
@@ -145,12 +176,12 @@ class OpenSrpIntegrationServiceTest {
     @SuppressWarnings("unchecked")
     @Test
     void fetch_shouldReturnEmptySelfTestingWhenHivstBaseEntityDoesNotMatchServiceClient() throws SQLException {
-        OpenSrpIntegrationService service = new OpenSrpIntegrationService(
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
                 connectionFactory,
                 repository,
                 new IntegrationDataMapper("false", null),
                 new IntegrationRequestValidator()
-        );
+        ).build();
 
         IntegrationRequest request = new IntegrationRequest();
         request.setHfrCode("124899-6");
@@ -234,9 +265,9 @@ class OpenSrpIntegrationServiceTest {
                 "2027-01-11"
         );
 
-        when(connectionFactory.openConnection()).thenReturn(connection);
-        when(repository.countServices(connection, request)).thenReturn(1L);
-        when(repository.findServices(connection, request)).thenReturn(List.of(serviceRow));
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.countServices(connection, request, null)).thenReturn(1L);
+        when(repository.findServices(connection, request, null)).thenReturn(List.of(serviceRow));
         when(repository.findTestsForServices(connection, List.of(serviceRow), 1768262400L, 1768262800L))
                 .thenReturn(Map.of(OpenSrpIntegrationRepository.serviceKey(serviceRow), List.of(reagentTestRow)));
         when(repository.findHivstTestByBaseEntity(connection, List.of(serviceRow)))
@@ -244,27 +275,988 @@ class OpenSrpIntegrationServiceTest {
         when(repository.findEnrollmentEligibilityByBaseEntity(connection, List.of(serviceRow)))
                 .thenReturn(Map.of("base-1", false));
 
-        Map<String, Object> response = service.fetch(request);
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
 
         List<Map<String, Object>> data = (List<Map<String, Object>>) response.get("data");
-        List<Map<String, Object>> selfTesting = (List<Map<String, Object>>) data.get(0).get("selfTesting");
+        List<?> selfTesting = (List<?>) data.get(0).get("selfTesting");
         assertEquals(0, selfTesting.size());
-        Map<String, Object> clientClassification = (Map<String, Object>) data.get(0).get("clientClassification");
-        assertEquals(false, clientClassification.get("eligibleForTesting"));
+        HtsRecordSections.ClientClassification clientClassification =
+                (HtsRecordSections.ClientClassification) data.get(0).get("clientClassification");
+        assertEquals(false, clientClassification.eligibleForTesting());
     }
 
     @Test
-    void fetch_shouldFailForInvalidRequest() {
-        OpenSrpIntegrationService service = new OpenSrpIntegrationService(
+    void fetch_shouldReturnNextCursorWhenPageIsFull() throws SQLException {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        ).build();
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageSize(1);
+        request.setCursor(new PageCursor(1768262500000L, "event-0").encode());
+
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800000L);
+
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.countServices(connection, request, null)).thenReturn(5L);
+        when(repository.findServices(connection, request, null)).thenReturn(List.of(serviceRow));
+        when(repository.findTestsForServices(connection, List.of(serviceRow), 1768262400L, 1768262800L))
+                .thenReturn(Map.of());
+        when(repository.findHivstTestByBaseEntity(connection, List.of(serviceRow)))
+                .thenReturn(Map.of());
+        when(repository.findEnrollmentEligibilityByBaseEntity(connection, List.of(serviceRow)))
+                .thenReturn(Map.of());
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertEquals(new PageCursor(1768262800000L, "event-1").encode(), response.get("nextCursor"));
+    }
+
+    @Test
+    void fetch_shouldOmitNextCursorOnLastPage() throws SQLException {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        ).build();
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(10);
+
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.countServices(connection, request, null)).thenReturn(0L);
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertNull(response.get("nextCursor"));
+        assertEquals(List.of(), response.get("data"));
+    }
+
+    @Test
+    void fetch_shouldReadTotalFromPageStatementInWindowedCountMode() throws SQLException {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        ).build();
+
+        IntegrationRequest request = pagedRequest("windowed");
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800000L);
+
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.findServicePageWithTotal(connection, request, null))
+                .thenReturn(new OpenSrpIntegrationRepository.ServicePage(List.of(serviceRow), 42L));
+        stubChildLookups(serviceRow);
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertEquals(42L, response.get("totalRecords"));
+        assertEquals("windowed", response.get("countMode"));
+        verify(repository, never()).countServices(connection, request, null);
+        verify(connection).setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        verify(connection).setReadOnly(true);
+        verify(connection).commit();
+    }
+
+    @Test
+    void fetch_shouldSkipCountInNoneCountMode() throws SQLException {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        ).build();
+
+        IntegrationRequest request = pagedRequest("none");
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800000L);
+
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.findServices(connection, request, null)).thenReturn(List.of(serviceRow));
+        stubChildLookups(serviceRow);
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertNull(response.get("totalRecords"));
+        verify(repository, never()).countServices(connection, request, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void fetch_shouldSkipChildLookupsForFieldsNotRequested() throws SQLException {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        ).build();
+
+        IntegrationRequest request = pagedRequest("none");
+        request.setFields(List.of("clientCode", "reagentTesting", "createdAt"));
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800000L);
+
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.findServices(connection, request, null)).thenReturn(List.of(serviceRow));
+        when(repository.findTestsForServices(connection, List.of(serviceRow), 1768262400L, 1768262800L))
+                .thenReturn(Map.of());
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        List<Map<String, Object>> data = (List<Map<String, Object>>) response.get("data");
+        assertEquals(List.of("clientCode", "reagentTesting", "createdAt"), List.copyOf(data.get(0).keySet()));
+        verify(repository, never()).findHivstTestByBaseEntity(any(), any());
+        verify(repository, never()).findEnrollmentEligibilityByBaseEntity(any(), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void fetch_shouldReadPageAndChildLookupsInOneStatementWithLateralPageQuery() throws SQLException {
+        System.setProperty("CTC2HTS_PAGE_QUERY", "lateral");
+        OpenSrpIntegrationService service;
+        try {
+            service = OpenSrpIntegrationService.builder(
+                    connectionFactory,
+                    repository,
+                    new IntegrationDataMapper("false", null),
+                    new IntegrationRequestValidator()
+            ).build();
+        } finally {
+            System.clearProperty("CTC2HTS_PAGE_QUERY");
+        }
+
+        IntegrationRequest request = pagedRequest("exact");
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800000L);
+
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.findServicePageWithLookups(connection, request, null, true, true)).thenReturn(
+                new OpenSrpIntegrationRepository.ServicePageWithLookups(
+                        List.of(serviceRow), 12L, Map.of(), Map.of(), Map.of("base-1", false)));
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertEquals(12L, response.get("totalRecords"));
+        List<Map<String, Object>> data = (List<Map<String, Object>>) response.get("data");
+        HtsRecordSections.ClientClassification clientClassification =
+                (HtsRecordSections.ClientClassification) data.get(0).get("clientClassification");
+        assertEquals(false, clientClassification.eligibleForTesting());
+        verify(repository, never()).countServices(connection, request, null);
+        verify(repository, never()).findServices(connection, request, null);
+        verify(repository, never()).findTestsForServices(any(), any(), anyLong(), anyLong());
+        verify(repository, never()).findEnrollmentEligibilityByBaseEntity(any(), any());
+    }
+
+    @Test
+    void fetch_shouldReuseCachedCountInEstimatedCountMode() throws SQLException {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        ).build();
+
+        IntegrationRequest request = pagedRequest("estimated");
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800000L);
+
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.countServices(connection, request, null)).thenReturn(7L);
+        when(repository.findServices(connection, request, null)).thenReturn(List.of(serviceRow));
+        stubChildLookups(serviceRow);
+
+        service.fetch(request).toCompletableFuture().join();
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertEquals(7L, response.get("totalRecords"));
+        verify(repository, times(1)).countServices(connection, request, null);
+        verify(repository, times(2)).findServices(connection, request, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void fetch_shouldRunChildLookupsOnSeparateConnectionsWhenExecutorConfigured() throws SQLException {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        )
+                .lookupExecutor(Runnable::run)
+                .build();
+
+        IntegrationRequest request = pagedRequest(null);
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800000L);
+        Connection testsConnection = mock(Connection.class);
+        Connection hivstConnection = mock(Connection.class);
+        Connection enrollmentConnection = mock(Connection.class);
+
+        when(connectionFactory.openReadConnection())
+                .thenReturn(connection, testsConnection, hivstConnection, enrollmentConnection);
+        when(repository.countServices(connection, request, null)).thenReturn(1L);
+        when(repository.findServices(connection, request, null)).thenReturn(List.of(serviceRow));
+        when(repository.findTestsForServices(testsConnection, List.of(serviceRow), 1768262400L, 1768262800L))
+                .thenReturn(Map.of());
+        when(repository.findHivstTestByBaseEntity(hivstConnection, List.of(serviceRow)))
+                .thenReturn(Map.of());
+        when(repository.findEnrollmentEligibilityByBaseEntity(enrollmentConnection, List.of(serviceRow)))
+                .thenReturn(Map.of("base-1", false));
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        List<Map<String, Object>> data = (List<Map<String, Object>>) response.get("data");
+        HtsRecordSections.ClientClassification clientClassification =
+                (HtsRecordSections.ClientClassification) data.get(0).get("clientClassification");
+        assertEquals(false, clientClassification.eligibleForTesting());
+        verify(testsConnection).close();
+        verify(hivstConnection).close();
+        verify(enrollmentConnection).close();
+    }
+
+    @Test
+    void fetch_shouldReadWideWindowAsParallelSlicesMergedInOrder() throws SQLException {
+        System.setProperty("CTC2HTS_SPLIT_SLICES", "2");
+        OpenSrpIntegrationService service;
+        try {
+            service = OpenSrpIntegrationService.builder(
+                    connectionFactory,
+                    repository,
+                    new IntegrationDataMapper("false", null),
+                    new IntegrationRequestValidator()
+            )
+                    .lookupExecutor(Runnable::run)
+                    .build();
+        } finally {
+            System.clearProperty("CTC2HTS_SPLIT_SLICES");
+        }
+
+        IntegrationRequest request = pagedRequest("none");
+        request.setStartDate(1735689600L);
+        request.setEndDate(1767225599L);
+        request.setPageSize(2);
+        request.setFields(List.of("clientCode"));
+        OpenSrpIntegrationRepository.ServiceRow first = buildServiceRow("event-1", 1740000000000L);
+        OpenSrpIntegrationRepository.ServiceRow second = buildServiceRow("event-3", 1750000000000L);
+        OpenSrpIntegrationRepository.ServiceRow third = buildServiceRow("event-4", 1760000000000L);
+        Connection firstSlice = mock(Connection.class);
+        Connection secondSlice = mock(Connection.class);
+
+        when(connectionFactory.openReadConnection()).thenReturn(connection, firstSlice, secondSlice);
+        when(repository.findDateCreatedHistogramBounds(connection)).thenReturn(List.of(1745000000L));
+        when(repository.exportSnapshot(connection)).thenReturn("00000003-0000001B-1");
+        when(repository.importSnapshot(any(Connection.class), eq("00000003-0000001B-1"))).thenReturn(true);
+        when(repository.findServices(eq(firstSlice), any(IntegrationRequest.class), isNull())).thenReturn(List.of(first));
+        when(repository.findServices(eq(secondSlice), any(IntegrationRequest.class), isNull())).thenReturn(List.of(second, third));
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertEquals(2, ((List<?>) response.get("data")).size());
+        assertEquals(new PageCursor(1750000000000L, "event-3").encode(), response.get("nextCursor"));
+        verify(repository, never()).findServices(eq(connection), any(IntegrationRequest.class), isNull());
+        verify(repository).importSnapshot(firstSlice, "00000003-0000001B-1");
+        verify(repository).importSnapshot(secondSlice, "00000003-0000001B-1");
+        verify(firstSlice).close();
+        verify(secondSlice).close();
+    }
+
+    @Test
+    void fetch_shouldReadSingleStatementWhenSliceCannotImportSnapshot() throws SQLException {
+        System.setProperty("CTC2HTS_SPLIT_SLICES", "2");
+        OpenSrpIntegrationService service;
+        try {
+            service = OpenSrpIntegrationService.builder(
+                    connectionFactory,
+                    repository,
+                    new IntegrationDataMapper("false", null),
+                    new IntegrationRequestValidator()
+            )
+                    .lookupExecutor(Runnable::run)
+                    .build();
+        } finally {
+            System.clearProperty("CTC2HTS_SPLIT_SLICES");
+        }
+
+        IntegrationRequest request = pagedRequest("none");
+        request.setStartDate(1735689600L);
+        request.setEndDate(1767225599L);
+        request.setPageSize(2);
+        request.setFields(List.of("clientCode"));
+        OpenSrpIntegrationRepository.ServiceRow first = buildServiceRow("event-1", 1740000000000L);
+        Connection firstSlice = mock(Connection.class);
+        Connection secondSlice = mock(Connection.class);
+
+        when(connectionFactory.openReadConnection()).thenReturn(connection, firstSlice, secondSlice);
+        when(repository.findDateCreatedHistogramBounds(connection)).thenReturn(List.of(1745000000L));
+        when(repository.exportSnapshot(connection)).thenReturn("00000003-0000001B-1");
+        when(repository.importSnapshot(firstSlice, "00000003-0000001B-1")).thenReturn(true);
+        when(repository.importSnapshot(secondSlice, "00000003-0000001B-1")).thenReturn(false);
+        when(repository.findServices(eq(firstSlice), any(IntegrationRequest.class), isNull())).thenReturn(List.of(first));
+        when(repository.findServices(connection, request, null)).thenReturn(List.of(first));
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertEquals(1, ((List<?>) response.get("data")).size());
+        verify(repository).findServices(connection, request, null);
+        verify(repository, never()).findServices(eq(secondSlice), any(IntegrationRequest.class), isNull());
+    }
+
+    @Test
+    void openStream_shouldReadServicesThroughCursorAndMapEachBatch() throws SQLException {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        ).build();
+
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(1000);
+
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800000L);
+        OpenSrpIntegrationRepository.ServiceRowCursor cursor = mock(OpenSrpIntegrationRepository.ServiceRowCursor.class);
+
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.openServiceCursor(eq(connection), eq(request), anyInt(), isNull())).thenReturn(cursor);
+        when(cursor.next(anyInt())).thenReturn(List.of(serviceRow)).thenReturn(List.of());
+        when(repository.findTestsForServices(connection, List.of(serviceRow), 1768262400L, 1768262800L))
+                .thenReturn(Map.of());
+        when(repository.findHivstTestByBaseEntity(connection, List.of(serviceRow)))
+                .thenReturn(Map.of());
+        when(repository.findEnrollmentEligibilityByBaseEntity(connection, List.of(serviceRow)))
+                .thenReturn(Map.of());
+
+        try (IntegrationRecordStream stream = service.openStream(request)) {
+            List<Map<String, Object>> firstBatch = stream.nextBatch();
+            assertEquals(1, firstBatch.size());
+            assertEquals("CLT123456", firstBatch.get(0).get("clientCode"));
+            assertEquals(List.of(), stream.nextBatch());
+        }
+
+        verify(connection).setAutoCommit(false);
+        verify(cursor).close();
+        verify(connection).close();
+    }
+
+    @Test
+    void openStream_shouldFailForInvalidRequestBeforeOpeningConnection() throws SQLException {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
                 connectionFactory,
                 repository,
                 new IntegrationDataMapper("false", null),
                 new IntegrationRequestValidator()
+        ).build();
+
+        assertThrows(ValidationException.class, () -> service.openStream(new IntegrationRequest()));
+        verify(connectionFactory, never()).openReadConnection();
+    }
+
+    @Test
+    void fetch_shouldReturnEmptyPageForUnknownFacilityWithoutQueryingServices() throws SQLException {
+        FacilityProviderCache facilityProviderCache = mock(FacilityProviderCache.class);
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        )
+                .facilityProviderCache(facilityProviderCache)
+                .build();
+
+        IntegrationRequest request = pagedRequest("exact");
+        when(facilityProviderCache.find("124899-6")).thenReturn(Optional.empty());
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertEquals(0L, response.get("totalRecords"));
+        assertEquals(List.of(), response.get("data"));
+        assertNull(response.get("nextCursor"));
+        verify(connectionFactory, never()).openReadConnection();
+    }
+
+    @Test
+    void fetch_shouldScopeServiceQueriesToCachedFacilityProviders() throws SQLException {
+        FacilityProviderCache facilityProviderCache = mock(FacilityProviderCache.class);
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        )
+                .facilityProviderCache(facilityProviderCache)
+                .build();
+
+        IntegrationRequest request = pagedRequest("exact");
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800000L);
+        OpenSrpIntegrationRepository.FacilityProviders facility = new OpenSrpIntegrationRepository.FacilityProviders(
+                "124899-6",
+                Map.of("provider-1", new OpenSrpIntegrationRepository.ProviderLocation(
+                        "provider-1", "John Doe", "124899-6", "TZ.NT.MY", "TZ.NT.MY.ML", "TZ.NT.MY.ML.4", "TZ.NT.MY.ML.4.8", "TZ.NT.MY.ML.4.8.1.3"))
         );
 
+        when(facilityProviderCache.find("124899-6")).thenReturn(Optional.of(facility));
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.countServices(connection, request, facility)).thenReturn(1L);
+        when(repository.findServices(connection, request, facility)).thenReturn(List.of(serviceRow));
+        stubChildLookups(serviceRow);
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertEquals(1L, response.get("totalRecords"));
+        verify(repository).findServices(connection, request, facility);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void fetch_shouldReturnPerFacilityTotalsAndTagRecordsForMultiFacilityRequest() throws SQLException {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        ).build();
+
+        IntegrationRequest request = pagedRequest("exact");
+        request.setHfrCode(null);
+        request.setHfrCodes(List.of("13211-1", "124899-6"));
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800000L);
+
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.countServicesByFacility(connection, request, null))
+                .thenReturn(new TreeMap<>(Map.of("124899-6", 3L, "13211-1", 1L)));
+        when(repository.findServices(connection, request, null)).thenReturn(List.of(serviceRow));
+        stubChildLookups(serviceRow);
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertEquals(4L, response.get("totalRecords"));
+        assertEquals(List.of(
+                Map.of("hfrCode", "124899-6", "totalRecords", 3L),
+                Map.of("hfrCode", "13211-1", "totalRecords", 1L)
+        ), response.get("facilities"));
+        List<Map<String, Object>> data = (List<Map<String, Object>>) response.get("data");
+        assertEquals("13211-1", data.get(0).get("hfrCode"));
+        verify(repository, never()).countServices(connection, request, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void fetch_shouldServeStoredPayloadsOnceRefreshJobCoversWindowEnd() throws SQLException {
+        HtsPayloadRefreshJob payloadRefreshJob = mock(HtsPayloadRefreshJob.class);
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        )
+                .payloadRefreshJob(payloadRefreshJob)
+                .build();
+
+        IntegrationRequest request = pagedRequest("exact");
+        request.setPageSize(1);
+
+        when(payloadRefreshJob.isFreshThrough(anyLong())).thenReturn(true);
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.countHtsPayloadsByFacility(connection, request)).thenReturn(Map.of("124899-6", 2L));
+        when(repository.findHtsPayloads(connection, request)).thenReturn(List.of(
+                new OpenSrpIntegrationRepository.HtsPayloadRow(
+                        "event-1", "124899-6", "TZ.NT.MY.ML.4", 1768262800000L, "{\"clientCode\":\"CLT123456\"}")
+        ));
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertEquals(2L, response.get("totalRecords"));
+        assertNull(response.get("facilities"));
+        assertEquals(new PageCursor(1768262800000L, "event-1").encode(), response.get("nextCursor"));
+        List<Map<String, Object>> data = (List<Map<String, Object>>) response.get("data");
+        assertEquals("CLT123456", data.get(0).get("clientCode"));
+        verify(payloadRefreshJob).isFreshThrough(OpenSrpIntegrationRepository.normalizeDateCreatedEndMillis(request.getEndDate()));
+        verify(repository, never()).findServices(connection, request, null);
+    }
+
+    @Test
+    void fetch_shouldContinueCursorWalkAcrossLiveAndPayloadPaths() throws SQLException {
+        HtsPayloadRefreshJob payloadRefreshJob = mock(HtsPayloadRefreshJob.class);
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        )
+                .payloadRefreshJob(payloadRefreshJob)
+                .build();
+
+        when(payloadRefreshJob.isFreshThrough(anyLong())).thenReturn(false, true, false);
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+
+        IntegrationRequest livePage = pagedRequest("none");
+        livePage.setPageSize(1);
+        OpenSrpIntegrationRepository.ServiceRow secondsRow = buildServiceRow("event-1", 1768262500L);
+        when(repository.findServices(connection, livePage, null)).thenReturn(List.of(secondsRow));
+        stubChildLookups(secondsRow);
+
+        Object liveCursor = service.fetch(livePage).toCompletableFuture().join().get("nextCursor");
+        assertEquals(new PageCursor(1768262500000L, "event-1").encode(), liveCursor);
+
+        IntegrationRequest payloadPage = pagedRequest("none");
+        payloadPage.setPageSize(1);
+        payloadPage.setCursor((String) liveCursor);
+        when(repository.findHtsPayloads(connection, payloadPage)).thenReturn(List.of(
+                new OpenSrpIntegrationRepository.HtsPayloadRow("event-2", "124899-6", "TZ.NT.MY.ML.4", 1768262600000L, "{}")
+        ));
+
+        Object payloadCursor = service.fetch(payloadPage).toCompletableFuture().join().get("nextCursor");
+        assertEquals(new PageCursor(1768262600000L, "event-2").encode(), payloadCursor);
+
+        IntegrationRequest backToLive = pagedRequest("none");
+        backToLive.setPageSize(1);
+        backToLive.setCursor((String) payloadCursor);
+        when(repository.findServices(connection, backToLive, null)).thenReturn(List.of());
+
+        assertNull(service.fetch(backToLive).toCompletableFuture().join().get("nextCursor"));
+        verify(repository).findServices(connection, backToLive, null);
+    }
+
+    @Test
+    void fetch_shouldHonourEstimatedCountModeOnPayloadPath() throws SQLException {
+        HtsPayloadRefreshJob payloadRefreshJob = mock(HtsPayloadRefreshJob.class);
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        )
+                .payloadRefreshJob(payloadRefreshJob)
+                .build();
+
+        IntegrationRequest firstPage = pagedRequest("estimated");
+        IntegrationRequest secondPage = pagedRequest("estimated");
+        secondPage.setPageIndex(2);
+
+        when(payloadRefreshJob.isFreshThrough(anyLong())).thenReturn(true);
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.countHtsPayloadsByFacility(connection, firstPage)).thenReturn(Map.of("124899-6", 12L));
+        when(repository.findHtsPayloads(eq(connection), any(IntegrationRequest.class))).thenReturn(List.of());
+
+        service.fetch(firstPage).toCompletableFuture().join();
+        Map<String, Object> response = service.fetch(secondPage).toCompletableFuture().join();
+
+        assertEquals(12L, response.get("totalRecords"));
+        verify(repository, never()).countHtsPayloadsByFacility(connection, secondPage);
+    }
+
+    @Test
+    void fetch_shouldTakeWindowedTotalFromPayloadPageStatement() throws SQLException {
+        HtsPayloadRefreshJob payloadRefreshJob = mock(HtsPayloadRefreshJob.class);
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        )
+                .payloadRefreshJob(payloadRefreshJob)
+                .build();
+
+        IntegrationRequest request = pagedRequest("windowed");
+
+        when(payloadRefreshJob.isFreshThrough(anyLong())).thenReturn(true);
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.findHtsPayloadPageWithTotal(connection, request)).thenReturn(new OpenSrpIntegrationRepository.HtsPayloadPage(
+                List.of(new OpenSrpIntegrationRepository.HtsPayloadRow("event-1", "124899-6", "TZ.NT.MY.ML.4", 1768262600000L, "{}")),
+                31L
+        ));
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertEquals(31L, response.get("totalRecords"));
+        verify(repository, never()).countHtsPayloadsByFacility(any(), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void fetch_shouldTrimStoredPayloadsToRequestedFields() throws SQLException {
+        HtsPayloadRefreshJob payloadRefreshJob = mock(HtsPayloadRefreshJob.class);
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        )
+                .payloadRefreshJob(payloadRefreshJob)
+                .build();
+
+        IntegrationRequest request = pagedRequest("none");
+        request.setFields(List.of("hivResultCode", "clientCode"));
+
+        when(payloadRefreshJob.isFreshThrough(anyLong())).thenReturn(true);
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.findHtsPayloads(connection, request)).thenReturn(List.of(
+                new OpenSrpIntegrationRepository.HtsPayloadRow("event-1", "124899-6", "TZ.NT.MY.ML.4", 1768262800000L,
+                        "{\"clientCode\":\"CLT123456\",\"remarks\":\"r\",\"hivResultCode\":\"POSITIVE\"}")
+        ));
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        List<Map<String, Object>> data = (List<Map<String, Object>>) response.get("data");
+        assertEquals(Map.of("clientCode", "CLT123456", "hivResultCode", "POSITIVE"), data.get(0));
+    }
+
+    @Test
+    void fetchChanges_shouldResumeFromStoredConsumerWatermark() throws SQLException {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        ).build();
+
+        ChangeFeedRequest request = new ChangeFeedRequest();
+        request.setHfrCode("124899-6");
+        request.setConsumerId("hts-sync");
+        request.setLimit(1);
+
+        String storedWatermark = new PageCursor(1768262400000L, "event-0").encode();
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800L);
+
+        when(connectionFactory.openConnection()).thenReturn(connection);
+        when(repository.findConsumerWatermark(connection, "hts-sync", "124899-6")).thenReturn(Optional.of(storedWatermark));
+        when(repository.findServiceChanges(eq(connection), eq("124899-6"), eq(PageCursor.decode(storedWatermark)), anyLong(), eq(1), isNull()))
+                .thenReturn(List.of(serviceRow));
+        when(repository.findTestsForServices(eq(connection), eq(List.of(serviceRow)), eq(1768262800000L), anyLong()))
+                .thenReturn(Map.of());
+        when(repository.findHivstTestByBaseEntity(connection, List.of(serviceRow))).thenReturn(Map.of());
+        when(repository.findEnrollmentEligibilityByBaseEntity(connection, List.of(serviceRow))).thenReturn(Map.of());
+
+        Map<String, Object> response = service.fetchChanges(request).toCompletableFuture().join();
+
+        assertEquals(storedWatermark, response.get("since"));
+        assertEquals(new PageCursor(1768262800000L, "event-1").encode(), response.get("nextWatermark"));
+        assertEquals(true, response.get("hasMore"));
+        assertEquals(1, ((List<?>) response.get("data")).size());
+        verify(repository).ensureConsumerWatermarkTable(connection);
+        verify(repository, never()).saveConsumerWatermark(eq(connection), eq("hts-sync"), eq("124899-6"), anyString());
+        verify(connection).setReadOnly(false);
+        verify(connection).commit();
+    }
+
+    @Test
+    void fetchChanges_shouldStopCommitLagBehindCurrentTime() throws SQLException {
+        System.setProperty("CTC2HTS_CHANGES_COMMIT_LAG", "10m");
+        OpenSrpIntegrationService service;
+        try {
+            service = OpenSrpIntegrationService.builder(
+                    connectionFactory,
+                    repository,
+                    new IntegrationDataMapper("false", null),
+                    new IntegrationRequestValidator()
+            ).build();
+        } finally {
+            System.clearProperty("CTC2HTS_CHANGES_COMMIT_LAG");
+        }
+
+        ChangeFeedRequest request = new ChangeFeedRequest();
+        request.setHfrCode("124899-6");
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        ArgumentCaptor<Long> untilCaptor = ArgumentCaptor.forClass(Long.class);
+        when(repository.findServiceChanges(eq(connection), eq("124899-6"), isNull(), untilCaptor.capture(), eq(500), isNull()))
+                .thenReturn(List.of());
+
+        long before = System.currentTimeMillis();
+        service.fetchChanges(request).toCompletableFuture().join();
+        long after = System.currentTimeMillis();
+
+        long lagMillis = Duration.ofMinutes(10).toMillis();
+        assertTrue(untilCaptor.getValue() >= before - lagMillis);
+        assertTrue(untilCaptor.getValue() <= after - lagMillis);
+    }
+
+    @Test
+    void fetchChanges_shouldRecordAcknowledgedWatermarkAndKeepItWhenNoNewRows() throws SQLException {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        ).build();
+
+        String since = new PageCursor(1768262800000L, "event-1").encode();
+        ChangeFeedRequest request = new ChangeFeedRequest();
+        request.setHfrCode("124899-6");
+        request.setConsumerId("hts-sync");
+        request.setSince(since);
+
+        when(connectionFactory.openConnection()).thenReturn(connection);
+        when(repository.findServiceChanges(eq(connection), eq("124899-6"), eq(PageCursor.decode(since)), anyLong(), eq(500), isNull()))
+                .thenReturn(List.of());
+
+        Map<String, Object> response = service.fetchChanges(request).toCompletableFuture().join();
+
+        assertEquals(since, response.get("nextWatermark"));
+        assertEquals(false, response.get("hasMore"));
+        verify(repository).saveConsumerWatermark(connection, "hts-sync", "124899-6", since);
+    }
+
+    @Test
+    void fetch_shouldBoundStatementsAndReportCancelledQueryAsTimeout() throws SQLException {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        ).build();
+
+        IntegrationRequest request = pagedRequest("none");
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.findServices(connection, request, null))
+                .thenThrow(new SQLException("canceling statement due to statement timeout", "57014"));
+
+        CompletionException error = assertThrows(CompletionException.class, () -> service.fetch(request).toCompletableFuture().join());
+
+        assertInstanceOf(QueryTimeoutException.class, error.getCause());
+        verify(repository).setStatementTimeout(connection, Duration.ofSeconds(15));
+    }
+
+    @Test
+    void fetch_shouldCancelRunningStatementWhenRequestIsAbandoned() throws Exception {
+        ExecutorService blockingExecutor = Executors.newSingleThreadExecutor();
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        )
+                .blockingExecutor(blockingExecutor)
+                .build();
+
+        IntegrationRequest request = pagedRequest("none");
+        PGConnection pgConnection = mock(PGConnection.class);
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch queryCancelled = new CountDownLatch(1);
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(connection.isWrapperFor(PGConnection.class)).thenReturn(true);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        doAnswer(invocation -> {
+            queryCancelled.countDown();
+            return null;
+        }).when(pgConnection).cancelQuery();
+        when(repository.findServices(connection, request, null)).thenAnswer(invocation -> {
+            queryStarted.countDown();
+            queryCancelled.await(5, TimeUnit.SECONDS);
+            throw new SQLException("canceling statement due to user request", "57014");
+        });
+
+        try {
+            CompletableFuture<Map<String, Object>> response = service.fetch(request).toCompletableFuture();
+            assertTrue(queryStarted.await(5, TimeUnit.SECONDS));
+
+            response.cancel(true);
+
+            assertTrue(queryCancelled.await(5, TimeUnit.SECONDS));
+            verify(pgConnection).cancelQuery();
+        } finally {
+            blockingExecutor.shutdown();
+            assertTrue(blockingExecutor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        verify(connection).close();
+    }
+
+    @Test
+    void fetch_shouldReadHivstResultsForVisitDatesOncePairingTableIsReady() throws SQLException {
+        HivstKitPairingRefreshJob hivstPairingJob = mock(HivstKitPairingRefreshJob.class);
+        when(hivstPairingJob.isReady()).thenReturn(true);
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        )
+                .blockingExecutor(Runnable::run)
+                .hivstPairingJob(hivstPairingJob)
+                .build();
+
+        IntegrationRequest request = pagedRequest("none");
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800000L);
+        Set<OpenSrpIntegrationRepository.HivstVisit> visits =
+                Set.of(new OpenSrpIntegrationRepository.HivstVisit("base-1", LocalDate.of(2026, 1, 14)));
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.findServices(connection, request, null)).thenReturn(List.of(serviceRow));
+        when(repository.findTestsForServices(connection, List.of(serviceRow), 1768262400L, 1768262800L)).thenReturn(Map.of());
+        when(repository.findHivstTestsForVisits(connection, visits, 10)).thenReturn(Map.of());
+        when(repository.findEnrollmentEligibilityByBaseEntity(connection, List.of(serviceRow))).thenReturn(Map.of());
+
+        service.fetch(request).toCompletableFuture().join();
+
+        verify(repository, never()).findHivstTestByBaseEntity(any(), any());
+    }
+
+    @Test
+    void fetch_shouldReadHivstResultsThroughPairingTableWithLateralPageQuery() throws SQLException {
+        HivstKitPairingRefreshJob hivstPairingJob = mock(HivstKitPairingRefreshJob.class);
+        when(hivstPairingJob.isReady()).thenReturn(true);
+        System.setProperty("CTC2HTS_PAGE_QUERY", "lateral");
+        OpenSrpIntegrationService service;
+        try {
+            service = OpenSrpIntegrationService.builder(
+                    connectionFactory,
+                    repository,
+                    new IntegrationDataMapper("false", null),
+                    new IntegrationRequestValidator()
+            )
+                    .blockingExecutor(Runnable::run)
+                    .hivstPairingJob(hivstPairingJob)
+                    .build();
+        } finally {
+            System.clearProperty("CTC2HTS_PAGE_QUERY");
+        }
+
+        IntegrationRequest request = pagedRequest("exact");
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800000L);
+        Set<OpenSrpIntegrationRepository.HivstVisit> visits =
+                Set.of(new OpenSrpIntegrationRepository.HivstVisit("base-1", LocalDate.of(2026, 1, 14)));
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(repository.findServicePageWithLookups(connection, request, null, true, false)).thenReturn(
+                new OpenSrpIntegrationRepository.ServicePageWithLookups(
+                        List.of(serviceRow), 1L, Map.of(), Map.of(), Map.of()));
+        when(repository.findHivstTestsForVisits(connection, visits, 10)).thenReturn(Map.of());
+
+        Map<String, Object> response = service.fetch(request).toCompletableFuture().join();
+
+        assertEquals(1L, response.get("totalRecords"));
+        verify(repository).findHivstTestsForVisits(connection, visits, 10);
+        verify(repository, never()).findHivstTestByBaseEntity(any(), any());
+    }
+
+    @Test
+    void fetch_shouldServeNextPageFromPrefetchWhenReadPoolIsIdle() throws SQLException {
+        System.setProperty("CTC2HTS_PREFETCH", "true");
+        OpenSrpIntegrationService service;
+        try {
+            service = OpenSrpIntegrationService.builder(
+                    connectionFactory,
+                    repository,
+                    new IntegrationDataMapper("false", null),
+                    new IntegrationRequestValidator()
+            )
+                    .blockingExecutor(Runnable::run)
+                    .build();
+        } finally {
+            System.clearProperty("CTC2HTS_PREFETCH");
+        }
+
+        IntegrationRequest firstPage = pagedRequest("none");
+        firstPage.setPageSize(1);
+        IntegrationRequest secondPage = pagedRequest("none");
+        secondPage.setPageSize(1);
+        secondPage.setPageIndex(2);
+        OpenSrpIntegrationRepository.ServiceRow serviceRow = buildServiceRow("event-1", 1768262800000L);
+        when(connectionFactory.openReadConnection()).thenReturn(connection);
+        when(connectionFactory.hasIdleReadCapacity()).thenReturn(true, false);
+        when(repository.findServices(eq(connection), any(IntegrationRequest.class), isNull())).thenReturn(List.of(serviceRow));
+        stubChildLookups(serviceRow);
+
+        service.fetch(firstPage).toCompletableFuture().join();
+        Map<String, Object> response = service.fetch(secondPage).toCompletableFuture().join();
+
+        assertEquals(2, response.get("pageNumber"));
+        verify(repository, times(2)).findServices(eq(connection), any(IntegrationRequest.class), isNull());
+        Map<String, Object> stats = service.prefetchStats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(1L, stats.get("misses"));
+    }
+
+    @Test
+    void fetch_shouldFailForInvalidRequest() {
+        OpenSrpIntegrationService service = OpenSrpIntegrationService.builder(
+                connectionFactory,
+                repository,
+                new IntegrationDataMapper("false", null),
+                new IntegrationRequestValidator()
+        ).build();
+
         IntegrationRequest request = new IntegrationRequest();
         request.setHfrCode(null);
 
-        assertThrows(ValidationException.class, () -> service.fetch(request));
+        CompletionException error = assertThrows(CompletionException.class, () -> service.fetch(request).toCompletableFuture().join());
+        assertInstanceOf(ValidationException.class, error.getCause());
+    }
+
+    private OpenSrpIntegrationRepository.ServiceRow buildServiceRow(String eventId, long dateCreated) {
+        return new OpenSrpIntegrationRepository.ServiceRow(
+                eventId,
+                "base-1",
+                "visit-group-1",
+                "2026-01-14",
+                "2026-01-14",
+                dateCreated,
+                "provider-1",
+                "cbhts",
+                "new_client",
+                "no",
+                "self",
+                "sto",
+                "reactive",
+                "normal_client",
+                "cbhts",
+                "individual",
+                "tb_suspect",
+                "yes",
+                "relative",
+                "yes",
+                10,
+                5,
+                "prep_services",
+                "CLT123456",
+                "Asha",
+                "Salum",
+                "Hassan",
+                "0712345678",
+                "1990123456789012",
+                null,
+                null,
+                null,
+                "Female",
+                "1995-06-20T03:00:00.000+03:00",
+                "Single",
+                "yes",
+                "13211-1",
+                "TZ.NT.MY",
+                "TZ.NT.MY.ML",
+                "TZ.NT.MY.ML.4",
+                "TZ.NT.MY.ML.4.8",
+                "TZ.NT.MY.ML.4.8.1",
+                "TZ.NT.MY.ML.4.8.1.3",
+                "John Doe"
+        );
+    }
+
+    private IntegrationRequest pagedRequest(String countMode) {
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(10);
+        request.setCountMode(countMode);
+        return request;
+    }
+
+    private void stubChildLookups(OpenSrpIntegrationRepository.ServiceRow serviceRow) throws SQLException {
+        when(repository.findTestsForServices(connection, List.of(serviceRow), 1768262400L, 1768262800L))
+                .thenReturn(Map.of());
+        when(repository.findHivstTestByBaseEntity(connection, List.of(serviceRow)))
+                .thenReturn(Map.of());
+        when(repository.findEnrollmentEligibilityByBaseEntity(connection, List.of(serviceRow)))
+                .thenReturn(Map.of());
     }
 }
@@ -18,8 +18,10 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -80,7 +82,7 @@ class OpenSrpVerificationResultsServiceTest {
         when(eventSender.send(any(EventRequest.class), eq("http://opensrp/events"), eq("user"), eq("pass")))
                 .thenReturn("sending successful");
 
-        Map<String, Object> response = service.process(request);
+        Map<String, Object> response = service.process(request).toCompletableFuture().join();
 
         assertEquals(2, response.get("processedCount"));
         assertEquals(1, response.get("successCount"));
@@ -141,7 +143,7 @@ class OpenSrpVerificationResultsServiceTest {
         when(eventSender.send(any(EventRequest.class), eq("http://opensrp/events"), eq("user"), eq("pass")))
                 .thenReturn("Error: Sending data to UCS failed");
 
-        Map<String, Object> response = service.process(request);
+        Map<String, Object> response = service.process(request).toCompletableFuture().join();
 
         assertEquals(1, response.get("processedCount"));
         assertEquals(0, response.get("successCount"));
@@ -169,7 +171,8 @@ class OpenSrpVerificationResultsServiceTest {
         VerificationResultsRequest request = new VerificationResultsRequest();
         request.setHfrCode(null);
 
-        assertThrows(ValidationException.class, () -> service.process(request));
+        CompletionException error = assertThrows(CompletionException.class, () -> service.process(request).toCompletableFuture().join());
+        assertInstanceOf(ValidationException.class, error.getCause());
     }
 
     @SuppressWarnings("unchecked")
@@ -193,7 +196,7 @@ class OpenSrpVerificationResultsServiceTest {
         when(repository.receivedVerificationResultExists(connection, "CLT123456", "VISIT-1"))
                 .thenReturn(true);
 
-        Map<String, Object> response = service.process(request);
+        Map<String, Object> response = service.process(request).toCompletableFuture().join();
 
         assertEquals(1, response.get("processedCount"));
         assertEquals(0, response.get("successCount"));
@@ -246,7 +249,7 @@ class OpenSrpVerificationResultsServiceTest {
         when(eventSender.send(any(EventRequest.class), eq("http://opensrp/events"), eq("user"), eq("pass")))
                 .thenReturn("sending successful");
 
-        Map<String, Object> response = service.process(request);
+        Map<String, Object> response = service.process(request).toCompletableFuture().join();
 
         assertEquals(2, response.get("processedCount"));
         assertEquals(1, response.get("successCount"));
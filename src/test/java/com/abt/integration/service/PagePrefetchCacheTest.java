@@ -0,0 +1,65 @@
+package com.abt.integration.service;
+
+import com.abt.integration.model.IntegrationRequest;
+import com.abt.util.MutableClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PagePrefetchCacheTest {
+
+    @Test
+    void nextPageRequest_shouldAdvancePageIndexOrCursorOnlyAfterFullPage() {
+        IntegrationRequest request = request(1);
+
+        IntegrationRequest next = PagePrefetchCache.nextPageRequest(request, Map.of("data", List.of(1, 2)));
+        assertEquals(2, next.getPageIndex());
+        assertNull(next.getCursor());
+        assertNull(PagePrefetchCache.nextPageRequest(request, Map.of("data", List.of(1))));
+
+        request.setCursor("cursor-1");
+        next = PagePrefetchCache.nextPageRequest(request, Map.of("data", List.of(1, 2), "nextCursor", "cursor-2"));
+        assertEquals("cursor-2", next.getCursor());
+    }
+
+    @Test
+    void take_shouldAnswerOnlyThePredictedPageOnceBeforeTtl() {
+        MutableClock clock = new MutableClock(Instant.ofEpochMilli(1768300000000L));
+        PagePrefetchCache cache = new PagePrefetchCache(Duration.ofSeconds(30), 10, clock);
+        CompletableFuture<Map<String, Object>> page = CompletableFuture.completedFuture(Map.of());
+
+        cache.put(request(2), page);
+        assertNull(cache.take(request(3)));
+        cache.put(request(2), page);
+        assertSame(page, cache.take(request(2)));
+        assertNull(cache.take(request(2)));
+
+        cache.put(request(3), page);
+        clock.advance(Duration.ofSeconds(30));
+        assertNull(cache.take(request(3)));
+
+        Map<String, Object> stats = cache.stats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(3L, stats.get("misses"));
+        assertEquals(2L, stats.get("discarded"));
+        assertEquals(0.25, stats.get("hitRate"));
+    }
+
+    private static IntegrationRequest request(int pageIndex) {
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(pageIndex);
+        request.setPageSize(2);
+        return request;
+    }
+}
@@ -0,0 +1,42 @@
+package com.abt.integration.validation;
+
+import com.abt.integration.model.ChangeFeedRequest;
+import com.abt.integration.model.PageCursor;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeFeedRequestValidatorTest {
+
+    private final ChangeFeedRequestValidator validator = new ChangeFeedRequestValidator();
+
+    @Test
+    void validate_shouldReturnErrorsForInvalidRequest() {
+        ChangeFeedRequest request = new ChangeFeedRequest();
+        request.setHfrCode(" ");
+        request.setSince("not-a-watermark");
+        request.setLimit(0);
+        request.setConsumerId(" ");
+
+        List<String> errors = validator.validate(request);
+
+        assertTrue(errors.contains("hfrCode is required"));
+        assertTrue(errors.contains("since is invalid"));
+        assertTrue(errors.contains("limit must be between 1 and 5000"));
+        assertTrue(errors.contains("consumerId must be between 1 and 255 characters"));
+    }
+
+    @Test
+    void validate_shouldPassForValidRequest() {
+        ChangeFeedRequest request = new ChangeFeedRequest();
+        request.setHfrCode("124899-6");
+        request.setSince(new PageCursor(1768262500000L, "event-1").encode());
+        request.setLimit(500);
+        request.setConsumerId("hts-sync");
+
+        assertEquals(0, validator.validate(request).size());
+    }
+}
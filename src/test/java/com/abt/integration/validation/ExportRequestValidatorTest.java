@@ -0,0 +1,42 @@
+package com.abt.integration.validation;
+
+import com.abt.integration.model.ExportRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportRequestValidatorTest {
+
+    private final ExportRequestValidator validator = new ExportRequestValidator();
+
+    @Test
+    void validate_shouldReturnFacilityDateAndFormatErrors() {
+        ExportRequest request = new ExportRequest();
+        request.setHfrCode("124899-6");
+        request.setCouncilCode("TZ.NT.MY.ML.4");
+        request.setStartDate(1768348800L);
+        request.setEndDate(1768262400L);
+        request.setFormat("xlsx");
+
+        List<String> errors = validator.validate(request);
+
+        assertTrue(errors.contains("only one of hfrCode, hfrCodes or councilCode may be provided"));
+        assertTrue(errors.contains("startDate must be less than or equal to endDate"));
+        assertTrue(errors.contains("format must be one of ndjson, csv"));
+    }
+
+    @Test
+    void validate_shouldPassWithoutPagingFields() {
+        ExportRequest request = new ExportRequest();
+        request.setCouncilCode("TZ.NT.MY.ML.4");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768348800L);
+        request.setFormat(" CSV ");
+
+        assertEquals(0, validator.validate(request).size());
+        assertEquals(ExportRequest.FORMAT_CSV, request.resolvedFormat());
+    }
+}
@@ -1,6 +1,7 @@
 package com.abt.integration.validation;
 
 import com.abt.integration.model.IntegrationRequest;
+import com.abt.integration.model.PageCursor;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
@@ -42,4 +43,121 @@ class IntegrationRequestValidatorTest {
 
         assertEquals(0, errors.size());
     }
+
+    @Test
+    void validate_shouldAllowMissingPageIndexWhenCursorIsPresent() {
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageSize(100);
+        request.setCursor(new PageCursor(1768262500L, "event-1").encode());
+
+        List<String> errors = validator.validate(request);
+
+        assertEquals(0, errors.size());
+    }
+
+    @Test
+    void validate_shouldRejectMalformedCursor() {
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageSize(100);
+        request.setCursor("not-a-cursor");
+
+        List<String> errors = validator.validate(request);
+
+        assertTrue(errors.contains("cursor is invalid"));
+    }
+
+    @Test
+    void validate_shouldRejectUnknownCountMode() {
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(100);
+        request.setCountMode("approximate");
+
+        List<String> errors = validator.validate(request);
+
+        assertTrue(errors.contains("countMode must be one of exact, windowed, estimated, none"));
+    }
+
+    @Test
+    void validate_shouldRejectMoreThanOneFacilitySelector() {
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setCouncilCode("TZ.NT.MY.ML.4");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(100);
+
+        List<String> errors = validator.validate(request);
+
+        assertTrue(errors.contains("only one of hfrCode, hfrCodes or councilCode may be provided"));
+    }
+
+    @Test
+    void validate_shouldRejectEmptyOrBlankHfrCodes() {
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCodes(List.of());
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(100);
+
+        assertTrue(validator.validate(request).contains("hfrCodes must not be empty"));
+
+        request.setHfrCodes(List.of("124899-6", " "));
+
+        assertTrue(validator.validate(request).contains("hfrCodes must not contain blank values"));
+    }
+
+    @Test
+    void validate_shouldPassForCouncilCodeRequest() {
+        IntegrationRequest request = new IntegrationRequest();
+        request.setCouncilCode("TZ.NT.MY.ML.4");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(100);
+
+        assertEquals(0, validator.validate(request).size());
+    }
+
+    @Test
+    void validate_shouldRejectUnknownFieldsAndUnregisteredProjection() {
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(100);
+        request.setFields(List.of("clientCode", "clientAge"));
+        request.setProjection("linkage");
+
+        List<String> errors = validator.validate(request);
+
+        assertTrue(errors.contains("only one of fields or projection may be provided"));
+        assertTrue(errors.stream().anyMatch(error -> error.startsWith("fields must be among htcApproach, ") && error.endsWith("; unknown: clientAge")));
+        assertTrue(errors.contains("projection is not registered: linkage"));
+    }
+
+    @Test
+    void validate_shouldRejectEmptyFields() {
+        IntegrationRequest request = new IntegrationRequest();
+        request.setHfrCode("124899-6");
+        request.setStartDate(1768262400L);
+        request.setEndDate(1768262800L);
+        request.setPageIndex(1);
+        request.setPageSize(100);
+        request.setFields(List.of());
+
+        assertEquals(List.of("fields must not be empty"), validator.validate(request));
+    }
 }